@@ -80,7 +80,7 @@ public class DrtModeRoutingModule extends AbstractDvrpModeModule {
 						DvrpRoutingModuleProvider.Stage.MAIN)
 				.toProvider(new DefaultMainLegRouterProvider(getMode()));// not singleton
 		bindModal(DefaultMainLegRouter.RouteCreator.class).toProvider(
-				new DrtRouteCreatorProvider(drtCfg));// not singleton
+				new DrtRouteCreatorProvider(drtCfg, getConfig()));// not singleton
 
 		bindModal(DrtStopNetwork.class).toProvider(new DrtStopNetworkProvider(getConfig(), drtCfg)).asEagerSingleton();
 
@@ -120,10 +120,10 @@ public class DrtModeRoutingModule extends AbstractDvrpModeModule {
 
 		private final DrtConfigGroup drtCfg;
 
-		private DrtRouteCreatorProvider(DrtConfigGroup drtCfg) {
+		private DrtRouteCreatorProvider(DrtConfigGroup drtCfg, Config config) {
 			super(drtCfg.getMode(), DvrpModes::mode);
 			this.drtCfg = drtCfg;
-			leastCostPathCalculatorFactory = new SpeedyALTFactory();
+			leastCostPathCalculatorFactory = new SpeedyALTFactory(config);
 		}
 
 		@Override
@@ -53,8 +53,22 @@ public class SwissRailRaptor implements TransitRouter {
                            RaptorStopFinder stopFinder,
 													 RaptorInVehicleCostCalculator inVehicleCostCalculator,
 													 RaptorTransferCostCalculator transferCostCalculator) {
+        this(data, parametersForPerson, routeSelector, stopFinder, inVehicleCostCalculator, transferCostCalculator, 1);
+    }
+
+    /**
+     * @param numberOfThreads the number of threads exploring the routes when calculating trees, see
+     *                        {@link Builder#withNumberOfThreads(int)}.
+     */
+    public SwissRailRaptor(SwissRailRaptorData data,
+                           RaptorParametersForPerson parametersForPerson,
+                           RaptorRouteSelector routeSelector,
+                           RaptorStopFinder stopFinder,
+                           RaptorInVehicleCostCalculator inVehicleCostCalculator,
+                           RaptorTransferCostCalculator transferCostCalculator,
+                           int numberOfThreads) {
         this.data = data;
-        this.raptor = new SwissRailRaptorCore(data, inVehicleCostCalculator, transferCostCalculator);
+        this.raptor = new SwissRailRaptorCore(data, inVehicleCostCalculator, transferCostCalculator, numberOfThreads);
         this.parametersForPerson = parametersForPerson;
         this.defaultRouteSelector = routeSelector;
         this.stopFinder = stopFinder;
@@ -235,6 +249,24 @@ public class SwissRailRaptor implements TransitRouter {
         return this.calcLeastCostTree(accessStops, departureTime, parameters, person);
     }
 
+    /**
+     * Calculates the connections from the given stops to all other stops for all departures within the time window,
+     * in a single pass instead of one tree per departure time.
+     *
+     * @return for each reached stop the travel infos of the found connections, see {@link SwissRailRaptorCore#calcLeastCostTreeProfile}.
+     */
+    public Map<Id<TransitStopFacility>, List<SwissRailRaptorCore.TravelInfo>> calcTreeProfile(Collection<TransitStopFacility> fromStops, double earliestDepartureTime, double latestDepartureTime, RaptorParameters parameters, Person person) {
+        if (this.data.config.getOptimization() != RaptorStaticConfig.RaptorOptimization.OneToAllRouting && !this.treeWarningShown) {
+            log.warn("SwissRailRaptorData was not initialized with full support for tree calculations and may result in unexpected results. Use `RaptorStaticConfig.setOptimization(RaptorOptimization.OneToAllRouting)` to fix this issue.");
+            this.treeWarningShown = true;
+        }
+        List<InitialStop> accessStops = new ArrayList<>();
+        for (TransitStopFacility stop : fromStops) {
+            accessStops.add(new InitialStop(stop, 0, 0, 0, null));
+        }
+        return this.raptor.calcLeastCostTreeProfile(earliestDepartureTime, latestDepartureTime, accessStops, parameters, person);
+    }
+
     public Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo> calcTree(Facility fromFacility, double departureTime, Person person, Attributes routingAttributes) {
         RaptorParameters parameters = this.parametersForPerson.getRaptorParameters(person);
         List<InitialStop> accessStops = findAccessStops(fromFacility, fromFacility, person, departureTime, routingAttributes, parameters);
@@ -277,6 +309,7 @@ public class SwissRailRaptor implements TransitRouter {
 			private RaptorStopFinder stopFinder = new DefaultRaptorStopFinder(new DefaultRaptorIntermodalAccessEgress(), null);
 			private RaptorInVehicleCostCalculator inVehicleCostCalculator = new DefaultRaptorInVehicleCostCalculator();
 			private RaptorTransferCostCalculator transferCostCalculator = new DefaultRaptorTransferCostCalculator();
+			private int numberOfThreads = 1;
 
 			public Builder(SwissRailRaptorData data, Config config) {
 				this.data = data;
@@ -308,8 +341,22 @@ public class SwissRailRaptor implements TransitRouter {
 				return this;
 			}
 
+			/**
+			 * Uses multiple threads to explore the routes in each round when calculating trees, which speeds up large
+			 * one-to-all trees (e.g. for skim matrices or accessibility computations). Routing single trips is not
+			 * affected. The results are the same as with a single thread, but the in-vehicle and transfer cost
+			 * calculators must be thread-safe. The calling thread is helped by threads shared by all routers.
+			 */
+			public Builder withNumberOfThreads(int numberOfThreads) {
+				if (numberOfThreads < 1) {
+					throw new IllegalArgumentException("numberOfThreads must be at least 1, but is " + numberOfThreads);
+				}
+				this.numberOfThreads = numberOfThreads;
+				return this;
+			}
+
 			public SwissRailRaptor build() {
-				return new SwissRailRaptor(this.data, this.parametersForPerson, this.routeSelector, this.stopFinder, this.inVehicleCostCalculator, this.transferCostCalculator);
+				return new SwissRailRaptor(this.data, this.parametersForPerson, this.routeSelector, this.stopFinder, this.inVehicleCostCalculator, this.transferCostCalculator, this.numberOfThreads);
 			}
 		}
 
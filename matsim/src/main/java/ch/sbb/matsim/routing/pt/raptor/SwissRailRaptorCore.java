@@ -29,6 +29,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The actual RAPTOR implementation, based on Delling et al, Round-Based Public Transit Routing.
@@ -56,10 +63,19 @@ public class SwissRailRaptorCore {
     private final RaptorInVehicleCostCalculator inVehicleCostCalculator;
     private final RaptorTransferCostCalculator transferCostCalculator;
     private final RouteSegmentIteratorImpl routeSegmentIterator;
+    private final ParallelRouteExplorer parallelRouteExplorer;
 
     private final static int TIME_UNDEFINED = Integer.MIN_VALUE;
 
     SwissRailRaptorCore(SwissRailRaptorData data, RaptorInVehicleCostCalculator inVehicleCostCalculator, RaptorTransferCostCalculator transferCostCalculator) {
+        this(data, inVehicleCostCalculator, transferCostCalculator, 1);
+    }
+
+    /**
+     * @param numberOfThreads if larger than 1, the routes of each round are explored by this number of threads when
+     *                        calculating trees. The in-vehicle and transfer cost calculators must be thread-safe then.
+     */
+    SwissRailRaptorCore(SwissRailRaptorData data, RaptorInVehicleCostCalculator inVehicleCostCalculator, RaptorTransferCostCalculator transferCostCalculator, int numberOfThreads) {
         this.data = data;
         this.arrivalPathPerRouteStop = new PathElement[data.countRouteStops];
         this.egressCostsPerRouteStop = new double[data.countRouteStops];
@@ -76,6 +92,7 @@ public class SwissRailRaptorCore {
         this.inVehicleCostCalculator = inVehicleCostCalculator;
         this.transferCostCalculator = transferCostCalculator;
         this.routeSegmentIterator = new RouteSegmentIteratorImpl(this.data);
+        this.parallelRouteExplorer = numberOfThreads > 1 ? new ParallelRouteExplorer(numberOfThreads) : null;
     }
 
     private void reset() {
@@ -286,42 +303,7 @@ public class SwissRailRaptorCore {
          * have the same cost. This allows us to filter and score the different routes afterwards.
          */
 
-        List<DepartureAtRouteStop> departures = new ArrayList<>();
-        for (InitialStop accessStop : accessStops) {
-            double earliestTimeAtStop = earliestDepTime + accessStop.accessTime;
-            double latestTimeAtStop = latestDepTime + accessStop.accessTime;
-            TransitStopFacility stop = accessStop.stop;
-            int[] routeStopIndices = this.data.routeStopsPerStopFacility.get(stop);
-            if (routeStopIndices != null) {
-                for (int routeStopIndex : routeStopIndices) {
-                    RRouteStop routeStop = this.data.routeStops[routeStopIndex];
-                    if (routeStop.routeStop == routeStop.route.getStops().get(routeStop.route.getStops().size() - 1)) {
-                        // this is the last stop of a route
-                        continue;
-                    }
-                    RRoute route = this.data.routes[routeStop.transitRouteIndex];
-                    int depOffset = routeStop.departureOffset;
-                    for (int depIndex = route.indexFirstDeparture; depIndex < route.indexFirstDeparture + route.countDepartures; depIndex++) {
-                        int depTimeAtStart = this.data.departures[depIndex];
-                        int depTimeAtStop = depTimeAtStart + depOffset;
-                        if (depTimeAtStop >= earliestTimeAtStop && depTimeAtStop <= latestTimeAtStop) {
-                            double costOffset = (depTimeAtStop - earliestTimeAtStop) * marginalUtilityOfWaitingPt_utl_s;
-                            departures.add(new DepartureAtRouteStop(routeStop, routeStopIndex, depIndex, depTimeAtStop, costOffset, accessStop));
-                        }
-                    }
-                }
-            }
-        }
-        departures.sort((d1, d2) -> {
-            // sort the departures by cost, not by time as in the original algorithm
-            double c1 = d1.costOffset + d1.accessStop.accessCost;
-            double c2 = d2.costOffset + d2.accessStop.accessCost;
-            int cmp = Double.compare(c1, c2);
-            if (cmp == 0) {
-                cmp = Integer.compare(d1.departureIndex, d2.departureIndex);
-            }
-            return -cmp; // negate, we want to order from biggest to smallest
-        });
+        List<DepartureAtRouteStop> departures = findDepartures(earliestDepTime, latestDepTime, accessStops, marginalUtilityOfWaitingPt_utl_s);
 
         Map<TransitStopFacility, InitialStop> destinationStops = new HashMap<>();
         for (InitialStop egressStop : egressStops) {
@@ -403,6 +385,50 @@ public class SwissRailRaptorCore {
         return routes;
     }
 
+    /**
+     * Collects all departures at the given stops within the time window, ordered by decreasing cost, see the comment
+     * in {@link #calcRoutes}.
+     */
+    private List<DepartureAtRouteStop> findDepartures(double earliestDepTime, double latestDepTime, Collection<InitialStop> accessStops, double marginalUtilityOfWaitingPt_utl_s) {
+        List<DepartureAtRouteStop> departures = new ArrayList<>();
+        for (InitialStop accessStop : accessStops) {
+            double earliestTimeAtStop = earliestDepTime + accessStop.accessTime;
+            double latestTimeAtStop = latestDepTime + accessStop.accessTime;
+            TransitStopFacility stop = accessStop.stop;
+            int[] routeStopIndices = this.data.routeStopsPerStopFacility.get(stop);
+            if (routeStopIndices != null) {
+                for (int routeStopIndex : routeStopIndices) {
+                    RRouteStop routeStop = this.data.routeStops[routeStopIndex];
+                    if (routeStop.routeStop == routeStop.route.getStops().get(routeStop.route.getStops().size() - 1)) {
+                        // this is the last stop of a route
+                        continue;
+                    }
+                    RRoute route = this.data.routes[routeStop.transitRouteIndex];
+                    int depOffset = routeStop.departureOffset;
+                    for (int depIndex = route.indexFirstDeparture; depIndex < route.indexFirstDeparture + route.countDepartures; depIndex++) {
+                        int depTimeAtStart = this.data.departures[depIndex];
+                        int depTimeAtStop = depTimeAtStart + depOffset;
+                        if (depTimeAtStop >= earliestTimeAtStop && depTimeAtStop <= latestTimeAtStop) {
+                            double costOffset = (depTimeAtStop - earliestTimeAtStop) * marginalUtilityOfWaitingPt_utl_s;
+                            departures.add(new DepartureAtRouteStop(routeStop, routeStopIndex, depIndex, depTimeAtStop, costOffset, accessStop));
+                        }
+                    }
+                }
+            }
+        }
+        departures.sort((d1, d2) -> {
+            // sort the departures by cost, not by time as in the original algorithm
+            double c1 = d1.costOffset + d1.accessStop.accessCost;
+            double c2 = d2.costOffset + d2.accessStop.accessCost;
+            int cmp = Double.compare(c1, c2);
+            if (cmp == 0) {
+                cmp = Integer.compare(d1.departureIndex, d2.departureIndex);
+            }
+            return -cmp; // negate, we want to order from biggest to smallest
+        });
+        return departures;
+    }
+
     private double calculateOptimalDepartureTime(PathElement leastCostPath, Map<PathElement, InitialStop> initialStopsPerStartPath) {
         PathElement firstPE = leastCostPath;
         while (firstPE.comingFrom != null) {
@@ -534,6 +560,70 @@ public class SwissRailRaptorCore {
         return result;
     }
 
+    /**
+     * Calculates the least cost trees for all departures at the start stops within the time window in one pass, similar
+     * to rRAPTOR. The departures are processed from the latest to the earliest one, and the waiting time from the
+     * earliest departure time is added to the costs. Thus the arrival costs found for later departures remain valid
+     * for earlier departures, and every departure only has to explore the stops it actually improves.
+     * This results in the same connections as calculating a least cost tree for every departure time in the window,
+     * but connections transferring by foot at the start stops are not considered.
+     *
+     * @return for each reached stop the travel infos of all departures that improved the arrival at this stop, ordered
+     * by decreasing departure time.
+     */
+    public Map<Id<TransitStopFacility>, List<TravelInfo>> calcLeastCostTreeProfile(double earliestDepTime, double latestDepTime, Collection<InitialStop> startStops, RaptorParameters parameters, Person person) {
+        reset();
+
+        List<DepartureAtRouteStop> departures = findDepartures(earliestDepTime, latestDepTime, startStops, -parameters.getMarginalUtilityOfWaitingPt_utl_s());
+        Map<Id<TransitStopFacility>, List<TravelInfo>> result = new HashMap<>();
+        BitSet changedStops = new BitSet(this.data.countStops);
+
+        for (DepartureAtRouteStop depAtRouteStop : departures) {
+            this.improvedStops.clear();
+            this.improvedRouteStopIndices.clear();
+            changedStops.clear();
+            { // initialization for this departure Time
+                double arrivalCost = depAtRouteStop.accessStop.accessCost + depAtRouteStop.costOffset;
+                RRouteStop toRouteStop = depAtRouteStop.routeStop;
+                int routeStopIndex = depAtRouteStop.routeStopIndex;
+                PathElement pe = new PathElement(null, toRouteStop, TIME_UNDEFINED, TIME_UNDEFINED, depAtRouteStop.depTime, arrivalCost, 0, depAtRouteStop.accessStop.distance, 0, true, null, depAtRouteStop.accessStop);
+                this.arrivalPathPerRouteStop[routeStopIndex] = pe;
+                this.leastArrivalCostAtRouteStop[routeStopIndex] = arrivalCost;
+                this.improvedRouteStopIndices.set(routeStopIndex);
+            }
+
+            // the main loop
+            while (true) {
+                exploreRoutes(parameters, person);
+                changedStops.or(this.improvedStops);
+
+                if (this.improvedStops.isEmpty()) {
+                    break;
+                }
+
+                handleTransfers(true, parameters);
+                changedStops.or(this.tmpImprovedStops);
+
+                if (this.improvedRouteStopIndices.isEmpty()) {
+                    break;
+                }
+            }
+
+            // collect the connections of this departure
+            for (int stopIndex = changedStops.nextSetBit(0); stopIndex >= 0; stopIndex = changedStops.nextSetBit(stopIndex + 1)) {
+                PathElement destination = this.arrivalPathPerStop[stopIndex];
+                TravelInfo ti = getTravelInfo(destination, parameters);
+                List<TravelInfo> infos = result.computeIfAbsent(destination.toRouteStop.routeStop.getStopFacility().getId(), id -> new ArrayList<>());
+                TravelInfo previous = infos.isEmpty() ? null : infos.get(infos.size() - 1);
+                if (previous == null || previous.ptDepartureTime != ti.ptDepartureTime || previous.ptArrivalTime != ti.ptArrivalTime || !previous.departureStop.equals(ti.departureStop)) {
+                    // stops reached with the same costs are marked as improved again, do not store the same connection twice
+                    infos.add(ti);
+                }
+            }
+        }
+        return result;
+    }
+
     private TravelInfo getTravelInfo(PathElement destination, RaptorParameters parameters) {
         PathElement firstStage = destination;
         PathElement secondStage = null;
@@ -569,12 +659,28 @@ public class SwissRailRaptorCore {
         this.improvedStops.clear();
         this.reachedRouteStopIndices.clear();
 
+        // only used for trees: without destinations, the best arrival cost cannot change while exploring the routes
+        if (this.parallelRouteExplorer != null && this.destinationRouteStopIndices.isEmpty() && this.parallelRouteExplorer.explore(parameters, person)) {
+            return;
+        }
+        exploreRoutes(0, this.data.countRouteStops, parameters, person, this.routeSegmentIterator, null);
+    }
+
+    /**
+     * Explores the routes of the improved route stops with an index in [rangeStart, rangeEnd). The range must not
+     * split a route.
+     *
+     * @param stopArrivals if null, the arrivals at the stop facilities are updated directly. Otherwise, the path
+     *                     elements possibly improving a stop facility are only collected and must be applied with
+     *                     {@link #updateStopArrival} afterwards.
+     */
+    private void exploreRoutes(int rangeStart, int rangeEnd, RaptorParameters parameters, Person person, RouteSegmentIteratorImpl routeSegmentIterator, List<PathElement> stopArrivals) {
         CachingTransferProvider transferProvider = this.data.new CachingTransferProvider();
 
         double marginalUtilityOfWaitingPt_utl_s = parameters.getMarginalUtilityOfWaitingPt_utl_s();
 
         int routeIndex = -1;
-        for (int firstRouteStopIndex = this.improvedRouteStopIndices.nextSetBit(0); firstRouteStopIndex >= 0; firstRouteStopIndex = this.improvedRouteStopIndices.nextSetBit(firstRouteStopIndex+1)) {
+        for (int firstRouteStopIndex = this.improvedRouteStopIndices.nextSetBit(rangeStart); firstRouteStopIndex >= 0 && firstRouteStopIndex < rangeEnd; firstRouteStopIndex = this.improvedRouteStopIndices.nextSetBit(firstRouteStopIndex+1)) {
             RRouteStop firstRouteStop = this.data.routeStops[firstRouteStopIndex];
             if (firstRouteStop.transitRouteIndex == routeIndex) {
                 continue; // we've handled this route already
@@ -629,11 +735,10 @@ public class SwissRailRaptorCore {
                         PathElement pe = new PathElement(boardingPE, toRouteStop, firstDepartureTime, currentAgentBoardingTime, arrivalTime, arrivalTravelCost, arrivalTransferCost, distance, boardingPE.transferCount, false, null, null);
                         this.arrivalPathPerRouteStop[toRouteStopIndex] = pe;
                         this.leastArrivalCostAtRouteStop[toRouteStopIndex] = totalArrivalCost;
-                        if (totalArrivalCost <= this.leastArrivalCostAtStop[toRouteStop.stopFacilityIndex]) {
-                            this.leastArrivalCostAtStop[toRouteStop.stopFacilityIndex] = totalArrivalCost;
-                            this.arrivalPathPerStop[toRouteStop.stopFacilityIndex] = pe;
-                            this.improvedStops.set(toRouteStop.stopFacilityIndex);
-                            checkForBestArrival(toRouteStopIndex, totalArrivalCost);
+                        if (stopArrivals == null) {
+                            updateStopArrival(pe, totalArrivalCost);
+                        } else if (totalArrivalCost <= this.leastArrivalCostAtStop[toRouteStop.stopFacilityIndex]) {
+                            stopArrivals.add(pe);
                         }
                     } else /*if (previousArrivalCost < arrivalCost)*/ {
                         // looks like we could reach this stop with better cost from somewhere else
@@ -680,6 +785,16 @@ public class SwissRailRaptorCore {
         }
     }
 
+    private void updateStopArrival(PathElement pe, double totalArrivalCost) {
+        int stopIndex = pe.toRouteStop.stopFacilityIndex;
+        if (totalArrivalCost <= this.leastArrivalCostAtStop[stopIndex]) {
+            this.leastArrivalCostAtStop[stopIndex] = totalArrivalCost;
+            this.arrivalPathPerStop[stopIndex] = pe;
+            this.improvedStops.set(stopIndex);
+            checkForBestArrival(pe.toRouteStop.index, totalArrivalCost);
+        }
+    }
+
     private void checkForBestArrival(int routeStopIndex, double arrivalCost) {
         if (this.destinationRouteStopIndices.get(routeStopIndex)) {
             // this is a destination stop
@@ -737,17 +852,17 @@ public class SwissRailRaptorCore {
             int firstTransferIndex = fromRouteStop.indexFirstTransfer;
             int lastTransferIndex = firstTransferIndex + fromRouteStop.countTransfers;
             for (int transferIndex = firstTransferIndex; transferIndex < lastTransferIndex; transferIndex++) {
-                RTransfer transfer = this.data.transfers[transferIndex];
-                int toRouteStopIndex = transfer.toRouteStop;
-                transferProvider.reset(transfer);
-                int newArrivalTime = arrivalTime + transfer.transferTime;
-                double newArrivalTravelCost = arrivalTravelCost - transfer.transferTime * margUtilityTransitWalk;
+                int toRouteStopIndex = this.data.getTransferToRouteStop(transferIndex);
+                int transferTime = this.data.getTransferTime(transferIndex);
+                transferProvider.reset(transferIndex);
+                int newArrivalTime = arrivalTime + transferTime;
+                double newArrivalTravelCost = arrivalTravelCost - transferTime * margUtilityTransitWalk;
                 double newArrivalTransferCost = (fromPE.firstDepartureTime != TIME_UNDEFINED) ? (arrivalTransferCost + this.transferCostCalculator.calcTransferCost(transferProvider, raptorParams, newArrivalTime - fromPE.firstDepartureTime, fromPE.transferCount + 1, arrivalTransferCost, arrivalTime)) : 0;
                 double newTotalArrivalCost = newArrivalTravelCost + newArrivalTransferCost;
                 double prevLeastArrivalCost = this.leastArrivalCostAtRouteStop[toRouteStopIndex];
                 if (newTotalArrivalCost < prevLeastArrivalCost || (!strict && newTotalArrivalCost <= prevLeastArrivalCost)) {
                     RRouteStop toRouteStop = this.data.routeStops[toRouteStopIndex];
-                    PathElement pe = new PathElement(fromPE, toRouteStop, fromPE.firstDepartureTime, TIME_UNDEFINED, newArrivalTime, newArrivalTravelCost, newArrivalTransferCost, transfer.transferDistance, fromPE.transferCount + 1, true, transfer, null);
+                    PathElement pe = new PathElement(fromPE, toRouteStop, fromPE.firstDepartureTime, TIME_UNDEFINED, newArrivalTime, newArrivalTravelCost, newArrivalTransferCost, this.data.getTransferDistance(transferIndex), fromPE.transferCount + 1, true, this.data.getTransfer(transferIndex), null);
                     this.arrivalPathPerRouteStop[toRouteStopIndex] = pe;
                     this.leastArrivalCostAtRouteStop[toRouteStopIndex] = newTotalArrivalCost;
                     this.improvedRouteStopIndices.set(toRouteStopIndex);
@@ -967,6 +1082,146 @@ public class SwissRailRaptorCore {
         }
     }
 
+    /**
+     * Explores the routes of a round with multiple threads. Each route only changes the arrivals at its own route stops,
+     * so the routes can be explored independently of each other. The arrivals at the stop facilities are shared by all
+     * routes: they are collected per chunk of routes and applied in the original order of the routes afterwards, which
+     * results in exactly the same arrivals as exploring the routes with a single thread.
+     * <p>
+     * The calling thread explores chunks as well, helped by up to numberOfThreads - 1 threads of a pool shared by all
+     * raptor instances, so creating many routers does not create any additional threads.
+     */
+    private final class ParallelRouteExplorer {
+
+        private static final int MIN_ROUTE_STOPS = 256; // exploring fewer route stops is faster with a single thread
+        private static final int CHUNKS_PER_THREAD = 4;
+
+        private final int numberOfThreads;
+        private final int chunkCount;
+        private final int[] chunkStarts;
+        private final List<List<PathElement>> chunkArrivals = new ArrayList<>();
+        private final List<RouteSegmentIteratorImpl> chunkIterators = new ArrayList<>();
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final List<Future<?>> helpers = new ArrayList<>();
+
+        ParallelRouteExplorer(int numberOfThreads) {
+            this.numberOfThreads = numberOfThreads;
+            this.chunkCount = numberOfThreads * CHUNKS_PER_THREAD;
+            this.chunkStarts = new int[this.chunkCount + 2];
+            for (int i = 0; i <= this.chunkCount; i++) {
+                this.chunkArrivals.add(new ArrayList<>());
+                this.chunkIterators.add(new RouteSegmentIteratorImpl(SwissRailRaptorCore.this.data));
+            }
+        }
+
+        /**
+         * @return false if there are too few improved route stops, so the routes were not explored.
+         */
+        boolean explore(RaptorParameters parameters, Person person) {
+            BitSet improvedRouteStops = SwissRailRaptorCore.this.improvedRouteStopIndices;
+            int count = improvedRouteStops.cardinality();
+            if (count < MIN_ROUTE_STOPS) {
+                return false;
+            }
+            SwissRailRaptorData data = SwissRailRaptorCore.this.data;
+            int routeStopsPerChunk = count / this.chunkCount + 1;
+            int chunks = 0;
+            int chunkSize = 0;
+            this.chunkStarts[0] = 0;
+            for (int routeStopIndex = improvedRouteStops.nextSetBit(0); routeStopIndex >= 0; routeStopIndex = improvedRouteStops.nextSetBit(routeStopIndex + 1)) {
+                chunkSize++;
+                if (chunkSize >= routeStopsPerChunk) {
+                    // end the chunk after the last stop of this route
+                    RRoute route = data.routes[data.routeStops[routeStopIndex].transitRouteIndex];
+                    routeStopIndex = route.indexFirstRouteStop + route.countRouteStops - 1;
+                    chunks++;
+                    this.chunkStarts[chunks] = routeStopIndex + 1;
+                    chunkSize = 0;
+                }
+            }
+            if (this.chunkStarts[chunks] < data.countRouteStops) {
+                chunks++;
+                this.chunkStarts[chunks] = data.countRouteStops;
+            }
+
+            final int chunkTotal = chunks;
+            this.nextChunk.set(0);
+            this.helpers.clear();
+            for (int i = Math.min(this.numberOfThreads, chunkTotal) - 1; i > 0; i--) {
+                this.helpers.add(SharedExecutor.INSTANCE.submit(() -> exploreChunks(chunkTotal, parameters, person)));
+            }
+            try {
+                exploreChunks(chunkTotal, parameters, person);
+            } finally {
+                // the helpers write into the arrays of this raptor, so they must be finished in any case
+                awaitHelpers();
+            }
+
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                for (PathElement pe : this.chunkArrivals.get(chunk)) {
+                    updateStopArrival(pe, pe.arrivalTravelCost + pe.arrivalTransferCost);
+                }
+            }
+            return true;
+        }
+
+        private void exploreChunks(int chunks, RaptorParameters parameters, Person person) {
+            for (int chunk = this.nextChunk.getAndIncrement(); chunk < chunks; chunk = this.nextChunk.getAndIncrement()) {
+                List<PathElement> arrivals = this.chunkArrivals.get(chunk);
+                arrivals.clear();
+                exploreRoutes(this.chunkStarts[chunk], this.chunkStarts[chunk + 1], parameters, person, this.chunkIterators.get(chunk), arrivals);
+            }
+        }
+
+        private void awaitHelpers() {
+            RuntimeException failure = null;
+            boolean interrupted = false;
+            for (Future<?> helper : this.helpers) {
+                while (true) {
+                    try {
+                        helper.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = new RuntimeException(e.getCause());
+                        }
+                        break;
+                    }
+                }
+            }
+            this.helpers.clear();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * The threads helping to explore routes, shared by all raptor instances. They are daemon threads and terminate
+     * when idle, so they neither keep the JVM alive nor accumulate when routers are created and discarded.
+     */
+    private static final class SharedExecutor {
+
+        private static final ExecutorService INSTANCE = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            int threads = Runtime.getRuntime().availableProcessors();
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "SwissRailRaptorCore-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
     private static class RouteSegmentIteratorImpl implements RouteSegmentIterator {
 
         SwissRailRaptorData data;
@@ -26,6 +26,15 @@ import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.Vehicles;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -39,12 +48,22 @@ import java.util.Set;
 import java.util.function.Supplier;
 
 /**
+ * The transfers between route stops are stored in a compact table of primitive values. As calculating the transfers
+ * takes most of the time when preparing the data for large schedules, the table can be stored in a cache directory,
+ * see {@link #create(TransitSchedule, Vehicles, RaptorStaticConfig, Network, OccupancyData, Path)}. The file is
+ * memory-mapped when it is loaded again, so multiple processes using the same schedule share the memory.
+ *
  * @author mrieser / SBB
  */
 public class SwissRailRaptorData {
 
     private static final Logger log = LogManager.getLogger(SwissRailRaptorData.class);
 
+    private static final long FILE_MAGIC = 0x3154534652525253L; // "SRRRFST1" in little endian
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int TRANSFER_SIZE = 4; // fromRouteStop, toRouteStop, transferTime, transferDistance
+
     final RaptorStaticConfig config;
     final int countStops;
     final int countRouteStops;
@@ -53,7 +72,8 @@ public class SwissRailRaptorData {
     final Vehicle[] departureVehicles; // the vehicle used for each departure
     final Id<Departure>[] departureIds;
     final RRouteStop[] routeStops; // list of all route stops
-    final RTransfer[] transfers;
+    final int countTransfers;
+    private final IntBuffer transfers; // TRANSFER_SIZE values per transfer, either on heap or memory-mapped
     final Map<TransitStopFacility, Integer> stopFacilityIndices;
     final Map<TransitStopFacility, int[]> routeStopsPerStopFacility;
     final QuadTree<TransitStopFacility> stopsQT;
@@ -62,7 +82,7 @@ public class SwissRailRaptorData {
 
     private SwissRailRaptorData(RaptorStaticConfig config, int countStops,
                                 RRoute[] routes, int[] departures, Vehicle[] departureVehicles, Id<Departure>[] departureIds, RRouteStop[] routeStops,
-                                RTransfer[] transfers, Map<TransitStopFacility, Integer> stopFacilityIndices,
+                                IntBuffer transfers, Map<TransitStopFacility, Integer> stopFacilityIndices,
                                 Map<TransitStopFacility, int[]> routeStopsPerStopFacility, QuadTree<TransitStopFacility> stopsQT,
                                 OccupancyData occupancyData) {
         this.config = config;
@@ -73,6 +93,7 @@ public class SwissRailRaptorData {
         this.departureVehicles = departureVehicles;
         this.departureIds = departureIds;
         this.routeStops = routeStops;
+        this.countTransfers = transfers.capacity() / TRANSFER_SIZE;
         this.transfers = transfers;
         this.stopFacilityIndices = stopFacilityIndices;
         this.routeStopsPerStopFacility = routeStopsPerStopFacility;
@@ -82,6 +103,14 @@ public class SwissRailRaptorData {
     }
 
     public static SwissRailRaptorData create(TransitSchedule schedule, @Nullable Vehicles transitVehicles, RaptorStaticConfig staticConfig, Network network, OccupancyData occupancyData) {
+        return create(schedule, transitVehicles, staticConfig, network, occupancyData, null);
+    }
+
+    /**
+     * @param cacheDirectory if not null, the transfers are loaded from this directory if they were calculated for the
+     *                       same schedule and configuration before, or stored in it otherwise.
+     */
+    public static SwissRailRaptorData create(TransitSchedule schedule, @Nullable Vehicles transitVehicles, RaptorStaticConfig staticConfig, Network network, OccupancyData occupancyData, @Nullable Path cacheDirectory) {
         log.info("Preparing data for SwissRailRaptor...");
         long startMillis = System.currentTimeMillis();
 
@@ -184,15 +213,59 @@ public class SwissRailRaptorData {
         QuadTree<TransitStopFacility> stopsQT = TransitScheduleUtils.createQuadTreeOfTransitStopFacilities(stops);
         int countStopFacilities = stops.size();
 
-        Map<Integer, RTransfer[]> allTransfers = calculateRouteStopTransfers(schedule, stopsQT, routeStopsPerStopFacility, routeStops, staticConfig);
+        IntBuffer transfers = null;
+        Path cacheFile = null;
+        long signature = 0;
+        if (cacheDirectory != null) {
+            signature = calcSignature(schedule, routeStops, staticConfig);
+            cacheFile = cacheDirectory.resolve("raptor-transfers-" + Long.toHexString(signature) + ".bin");
+            if (Files.exists(cacheFile)) {
+                try {
+                    transfers = readTransfers(cacheFile, routeStops, signature);
+                    if (transfers != null) {
+                        log.info("loaded transfers from " + cacheFile);
+                    } else {
+                        log.info("transfers in " + cacheFile + " do not match the schedule, calculating them again.");
+                    }
+                } catch (IOException e) {
+                    log.warn("could not read transfers from " + cacheFile + ", calculating them again.", e);
+                }
+            }
+        }
+        if (transfers == null) {
+            transfers = calculateTransfers(schedule, stopsQT, routeStopsPerStopFacility, routeStops, staticConfig);
+            if (cacheFile != null) {
+                try {
+                    Files.createDirectories(cacheDirectory);
+                    writeTransfers(cacheFile, routeStops, transfers, signature);
+                } catch (IOException | IllegalStateException e) {
+                    log.warn("could not write transfers to " + cacheFile, e);
+                }
+            }
+        }
+
+        SwissRailRaptorData data = new SwissRailRaptorData(staticConfig, countStopFacilities, routes, departures, departureVehicles, departureIds, routeStops, transfers, stopFacilityIndices, routeStopsPerStopFacility, stopsQT, occupancyData);
+
+        long endMillis = System.currentTimeMillis();
+        log.info("SwissRailRaptor data preparation done. Took " + (endMillis - startMillis) / 1000 + " seconds.");
+        log.info("SwissRailRaptor statistics:  #routes = " + routes.length);
+        log.info("SwissRailRaptor statistics:  #departures = " + departures.length);
+        log.info("SwissRailRaptor statistics:  #routeStops = " + routeStops.length);
+        log.info("SwissRailRaptor statistics:  #stopFacilities = " + countStopFacilities);
+        log.info("SwissRailRaptor statistics:  #transfers (between routeStops) = " + data.countTransfers);
+        return data;
+    }
+
+    private static IntBuffer calculateTransfers(TransitSchedule schedule, QuadTree<TransitStopFacility> stopsQT, Map<TransitStopFacility, int[]> routeStopsPerStopFacility, RRouteStop[] routeStops, RaptorStaticConfig config) {
+        Map<Integer, RTransfer[]> allTransfers = calculateRouteStopTransfers(schedule, stopsQT, routeStopsPerStopFacility, routeStops, config);
         long countTransfers = 0;
         for (RTransfer[] transfers : allTransfers.values()) {
             countTransfers += transfers.length;
         }
-        if (countTransfers > Integer.MAX_VALUE) {
+        if (countTransfers * TRANSFER_SIZE > Integer.MAX_VALUE) {
             throw new RuntimeException("TransitSchedule has too many Transfers: " + countTransfers);
         }
-        RTransfer[] transfers = new RTransfer[(int) countTransfers];
+        int[] transfers = new int[(int) countTransfers * TRANSFER_SIZE];
         int indexTransfer = 0;
         for (int routeStopIndex = 0; routeStopIndex < routeStops.length; routeStopIndex++) {
             RTransfer[] stopTransfers = allTransfers.get(routeStopIndex);
@@ -201,21 +274,121 @@ public class SwissRailRaptorData {
                 RRouteStop routeStop = routeStops[routeStopIndex];
                 routeStop.indexFirstTransfer = indexTransfer;
                 routeStop.countTransfers = transferCount;
-                System.arraycopy(stopTransfers, 0, transfers, indexTransfer, transferCount);
-                indexTransfer += transferCount;
+                for (RTransfer transfer : stopTransfers) {
+                    int offset = indexTransfer * TRANSFER_SIZE;
+                    transfers[offset] = transfer.fromRouteStop;
+                    transfers[offset + 1] = transfer.toRouteStop;
+                    transfers[offset + 2] = transfer.transferTime;
+                    transfers[offset + 3] = transfer.transferDistance;
+                    indexTransfer++;
+                }
             }
         }
+        return IntBuffer.wrap(transfers);
+    }
 
-        SwissRailRaptorData data = new SwissRailRaptorData(staticConfig, countStopFacilities, routes, departures, departureVehicles, departureIds, routeStops, transfers, stopFacilityIndices, routeStopsPerStopFacility, stopsQT, occupancyData);
+    /**
+     * A hash over everything the transfers depend on: the route stops in the order of their indices, the departures
+     * of the routes, the minimal transfer times of the schedule and the static configuration.
+     */
+    static long calcSignature(TransitSchedule schedule, RRouteStop[] routeStops, RaptorStaticConfig config) {
+        long hash = mix(FILE_VERSION, routeStops.length);
+        hash = mix(hash, Double.doubleToLongBits(config.getBeelineWalkConnectionDistance()));
+        hash = mix(hash, Double.doubleToLongBits(config.getBeelineWalkSpeed()));
+        hash = mix(hash, Double.doubleToLongBits(config.getBeelineWalkDistanceFactor()));
+        hash = mix(hash, Double.doubleToLongBits(config.getMinimalTransferTime()));
+        hash = mix(hash, config.getOptimization().ordinal());
+        TransitRoute lastRoute = null;
+        for (RRouteStop routeStop : routeStops) {
+            if (routeStop.route != lastRoute) {
+                lastRoute = routeStop.route;
+                hash = mix(hash, lastRoute.getId().toString().hashCode());
+                Departure earliest = getEarliestDeparture(lastRoute);
+                Departure latest = getLatestDeparture(lastRoute);
+                hash = mix(hash, earliest == null ? -1 : Double.doubleToLongBits(earliest.getDepartureTime()));
+                hash = mix(hash, latest == null ? -1 : Double.doubleToLongBits(latest.getDepartureTime()));
+            }
+            TransitStopFacility stop = routeStop.routeStop.getStopFacility();
+            hash = mix(hash, stop.getId().toString().hashCode());
+            hash = mix(hash, Double.doubleToLongBits(stop.getCoord().getX()));
+            hash = mix(hash, Double.doubleToLongBits(stop.getCoord().getY()));
+            hash = mix(hash, routeStop.stopFacilityIndex);
+            hash = mix(hash, routeStop.arrivalOffset);
+            hash = mix(hash, routeStop.departureOffset);
+        }
+        MinimalTransferTimes.MinimalTransferTimesIterator iter = schedule.getMinimalTransferTimes().iterator();
+        long mttHash = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            // the iteration order is not defined, so combine the entries independent of their order
+            long entryHash = mix(iter.getFromStopId().toString().hashCode(), iter.getToStopId().toString().hashCode());
+            mttHash += mix(entryHash, Double.doubleToLongBits(iter.getSeconds()));
+        }
+        return mix(hash, mttHash);
+    }
 
-        long endMillis = System.currentTimeMillis();
-        log.info("SwissRailRaptor data preparation done. Took " + (endMillis - startMillis) / 1000 + " seconds.");
-        log.info("SwissRailRaptor statistics:  #routes = " + routes.length);
-        log.info("SwissRailRaptor statistics:  #departures = " + departures.length);
-        log.info("SwissRailRaptor statistics:  #routeStops = " + routeStops.length);
-        log.info("SwissRailRaptor statistics:  #stopFacilities = " + countStopFacilities);
-        log.info("SwissRailRaptor statistics:  #transfers (between routeStops) = " + transfers.length);
-        return data;
+    private static long mix(long hash, long value) {
+        long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static void writeTransfers(Path file, RRouteStop[] routeStops, IntBuffer transfers, long signature) throws IOException {
+        long size = HEADER_SIZE + 8L * routeStops.length + 4L * transfers.capacity();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("transfers are too large to be stored in a single file: " + size + " bytes.");
+        }
+        Path tmpFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putLong(FILE_MAGIC);
+                buffer.putInt(FILE_VERSION);
+                buffer.putInt(routeStops.length);
+                buffer.putInt(transfers.capacity() / TRANSFER_SIZE);
+                buffer.putInt(0); // padding
+                buffer.putLong(signature);
+                for (RRouteStop routeStop : routeStops) {
+                    buffer.putInt(routeStop.indexFirstTransfer);
+                    buffer.putInt(routeStop.countTransfers);
+                }
+                buffer.asIntBuffer().put(transfers.duplicate().clear());
+                buffer.force();
+            }
+            // move the complete file into place, so other processes never see a partially written file
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Reads the transfers and sets the transfer indices of the route stops.
+     *
+     * @return the memory-mapped transfers, or null if the file was written for a different schedule or configuration.
+     */
+    private static IntBuffer readTransfers(Path file, RRouteStop[] routeStops, long signature) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getLong() != FILE_MAGIC || buffer.getInt() != FILE_VERSION || buffer.getInt() != routeStops.length) {
+                return null;
+            }
+            int countTransfers = buffer.getInt();
+            buffer.getInt(); // padding
+            if (buffer.getLong() != signature || channel.size() != HEADER_SIZE + 8L * routeStops.length + 4L * TRANSFER_SIZE * countTransfers) {
+                return null;
+            }
+            for (RRouteStop routeStop : routeStops) {
+                routeStop.indexFirstTransfer = buffer.getInt();
+                routeStop.countTransfers = buffer.getInt();
+            }
+            return buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
     }
 
     // calculate possible transfers between TransitRouteStops
@@ -471,6 +644,26 @@ public class SwissRailRaptorData {
         return this.stopsQT.getClosest(x, y);
     }
 
+    int getTransferFromRouteStop(int transferIndex) {
+        return this.transfers.get(transferIndex * TRANSFER_SIZE);
+    }
+
+    int getTransferToRouteStop(int transferIndex) {
+        return this.transfers.get(transferIndex * TRANSFER_SIZE + 1);
+    }
+
+    int getTransferTime(int transferIndex) {
+        return this.transfers.get(transferIndex * TRANSFER_SIZE + 2);
+    }
+
+    int getTransferDistance(int transferIndex) {
+        return this.transfers.get(transferIndex * TRANSFER_SIZE + 3);
+    }
+
+    RTransfer getTransfer(int transferIndex) {
+        return new RTransfer(transferIndex, getTransferFromRouteStop(transferIndex), getTransferToRouteStop(transferIndex), getTransferTime(transferIndex), getTransferDistance(transferIndex));
+    }
+
     /**
      * "Translates" an internally used {@link RTransfer} into a publicly usable {@link Transfer} object.
      * @param transfer
@@ -530,16 +723,22 @@ public class SwissRailRaptorData {
     }
 
     public static final class RTransfer {
+        final int index; // the index in the transfers of SwissRailRaptorData, or -1 while calculating the transfers
         final int fromRouteStop;
         final int toRouteStop;
         final int transferTime;
         final int transferDistance;
 
         RTransfer(int fromRouteStop, int toRouteStop, double transferTime, double transferDistance) {
+            this(-1, fromRouteStop, toRouteStop, (int) Math.ceil(transferTime), (int) Math.ceil(transferDistance));
+        }
+
+        RTransfer(int index, int fromRouteStop, int toRouteStop, int transferTime, int transferDistance) {
+            this.index = index;
             this.fromRouteStop = fromRouteStop;
             this.toRouteStop = toRouteStop;
-            this.transferTime = (int) Math.ceil(transferTime);
-            this.transferDistance = (int) Math.ceil(transferDistance);
+            this.transferTime = transferTime;
+            this.transferDistance = transferDistance;
         }
     }
     
@@ -570,22 +769,27 @@ public class SwissRailRaptorData {
 
 	public class CachingTransferProvider implements Supplier<Transfer> {
 
-	    private RTransfer raptorTransfer = null;
+	    private int transferIndex = -1;
 	    private Transfer transfer = new Transfer();
 
       public CachingTransferProvider() {
       }
 
       void reset(RTransfer raptorTransfer) {
-          this.raptorTransfer = raptorTransfer;
+          this.transferIndex = raptorTransfer == null ? -1 : raptorTransfer.index;
+      }
+
+      void reset(int transferIndex) {
+          this.transferIndex = transferIndex;
       }
 
       @Override
       public Transfer get() {
-          if (this.transfer.rTransfer != this.raptorTransfer) {
-              RRouteStop fromStop = SwissRailRaptorData.this.routeStops[this.raptorTransfer.fromRouteStop];
-              RRouteStop toStop = SwissRailRaptorData.this.routeStops[this.raptorTransfer.toRouteStop];
-              this.transfer.reset(this.raptorTransfer, fromStop, toStop);
+          if (this.transfer.transferIndex != this.transferIndex) {
+              SwissRailRaptorData data = SwissRailRaptorData.this;
+              RRouteStop fromStop = data.routeStops[data.getTransferFromRouteStop(this.transferIndex)];
+              RRouteStop toStop = data.routeStops[data.getTransferToRouteStop(this.transferIndex)];
+              this.transfer.reset(this.transferIndex, data.getTransferTime(this.transferIndex), data.getTransferDistance(this.transferIndex), fromStop, toStop);
           }
           return this.transfer;
       }
@@ -4,10 +4,12 @@
 
 package ch.sbb.matsim.routing.pt.raptor;
 
+import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
 import org.matsim.pt.router.TransitScheduleChangedEventHandler;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.vehicles.Vehicles;
@@ -15,6 +17,8 @@ import org.matsim.vehicles.Vehicles;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * @author mrieser / SBB
@@ -34,6 +38,7 @@ public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
     private final RaptorTransferCostCalculator transferCostCalculator;
 
     private final Network network;
+    private final Path transferCacheDirectory;
 
     @Inject
     public SwissRailRaptorFactory(final Scenario scenario, final Config config,
@@ -52,6 +57,8 @@ public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
         this.occupancyData = occupancyData;
         this.inVehicleCostCalculator = inVehicleCostCalculator;
         this.transferCostCalculator = transferCostCalculator;
+        String cacheDirectory = ConfigUtils.addOrGetModule(config, SwissRailRaptorConfigGroup.class).getTransferCacheDirectory();
+        this.transferCacheDirectory = cacheDirectory == null ? null : Paths.get(cacheDirectory);
 
         if (events != null) {
             events.addHandler((TransitScheduleChangedEventHandler) event -> this.data = null);
@@ -77,7 +84,7 @@ public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
             // prevent doing the work twice.
             return this.data;
         }
-        this.data = SwissRailRaptorData.create(this.schedule, this.transitVehicles, this.raptorConfig, this.network, this.occupancyData);
+        this.data = SwissRailRaptorData.create(this.schedule, this.transitVehicles, this.raptorConfig, this.network, this.occupancyData, this.transferCacheDirectory);
         return this.data;
     }
 
@@ -1,7 +1,6 @@
 package ch.sbb.matsim.routing.pt.raptor;
 
 import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData.RRouteStop;
-import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData.RTransfer;
 import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
@@ -10,12 +9,16 @@ import org.matsim.pt.transitSchedule.api.TransitStopFacility;
  * @author mrieser / Simunto
  */
 public class Transfer {
-	RTransfer rTransfer = null;
+	int transferIndex = -1;
+	int transferTime;
+	int transferDistance;
 	RRouteStop fromStop = null;
 	RRouteStop toStop = null;
 
-	void reset(RTransfer transfer, RRouteStop rFromStop, RRouteStop rToStop) {
-		this.rTransfer = transfer;
+	void reset(int transferIndex, int transferTime, int transferDistance, RRouteStop rFromStop, RRouteStop rToStop) {
+		this.transferIndex = transferIndex;
+		this.transferTime = transferTime;
+		this.transferDistance = transferDistance;
 		this.fromStop = rFromStop;
 		this.toStop = rToStop;
 	}
@@ -29,11 +32,11 @@ public class Transfer {
 	}
 
 	public double getTransferTime() {
-		return this.rTransfer.transferTime;
+		return this.transferTime;
 	}
 
 	public double getTransferDistance() {
-		return this.rTransfer.transferDistance;
+		return this.transferDistance;
 	}
 
 	public TransitLine getFromTransitLine() {
@@ -28,6 +28,7 @@ import org.matsim.core.config.groups.ControlerConfigGroup.RoutingAlgorithmType;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ActivityParams;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ModeParams;
+import org.matsim.core.config.groups.PlansCalcRouteConfigGroup;
 import org.matsim.pt.PtConstants;
 
 /**
@@ -52,6 +53,16 @@ public final class ConfigConsistencyCheckerImpl implements ConfigConsistencyChec
 		checkPlanCalcScore(config);
 		checkTransit(config);
 		checkConsistencyBetweenRouterAndTravelTimeCalculator( config );
+		checkRoutingAlgorithm( config );
+	}
+
+	/*package because of test */ static void checkRoutingAlgorithm( final Config config ) {
+		if ( config.controler().getRoutingAlgorithmType() == RoutingAlgorithmType.SpeedyCH
+				&& config.plansCalcRoute().getRoutingRandomness() != 0. ) {
+			// the contraction hierarchy is customized with costs that do not depend on the person
+			throw new RuntimeException( "The routing algorithm " + RoutingAlgorithmType.SpeedyCH + " cannot be used with routing randomness. "
+					+ "Set " + PlansCalcRouteConfigGroup.GROUP_NAME + ".routingRandomness to 0, or use another routing algorithm." );
+		}
 	}
 
 	static boolean checkConsistencyBetweenRouterAndTravelTimeCalculator( final Config config ) {
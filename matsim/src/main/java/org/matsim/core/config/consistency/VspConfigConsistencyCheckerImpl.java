@@ -405,6 +405,7 @@ public final class VspConfigConsistencyCheckerImpl implements ConfigConsistencyC
 				System.out.flush();
 				break;
 			case SpeedyALT:
+			case SpeedyCH:
 				break;
 		}
 		return problem;
@@ -34,11 +34,12 @@ import java.util.*;
 public final class ControlerConfigGroup extends ReflectiveConfigGroup {
 	private static final Logger log = LogManager.getLogger( ControlerConfigGroup.class );
 
-	public enum RoutingAlgorithmType {Dijkstra, AStarLandmarks, FastDijkstra, FastAStarLandmarks, SpeedyALT}
+	public enum RoutingAlgorithmType {Dijkstra, AStarLandmarks, FastDijkstra, FastAStarLandmarks, SpeedyALT, SpeedyCH}
 	
 	public enum EventTypeToCreateScoringFunctions {IterationStarts, BeforeMobsim}
 	
-	public enum EventsFileFormat {xml, pb, json}
+	public enum EventsFileFormat {xml, pb, json, binary}
+	public enum PlansFileFormat {xml, binary}
 
 	public enum CompressionType {
 		none(""),
@@ -59,12 +60,15 @@ public final class ControlerConfigGroup extends ReflectiveConfigGroup {
 	private static final String FIRST_ITERATION = "firstIteration";
 	private static final String LAST_ITERATION = "lastIteration";
 	private static final String ROUTINGALGORITHM_TYPE = "routingAlgorithmType";
+	private static final String LANDMARKS_CACHE_DIRECTORY = "landmarksCacheDirectory";
 	private static final String RUNID = "runId";
 	private static final String LINKTOLINK_ROUTING_ENABLED = "enableLinkToLinkRouting";
 	/*package*/ static final String EVENTS_FILE_FORMAT = "eventsFileFormat";
 	private static final String SNAPSHOT_FORMAT = "snapshotFormat";
 	private static final String WRITE_EVENTS_INTERVAL = "writeEventsInterval";
 	private static final String WRITE_PLANS_INTERVAL = "writePlansInterval";
+	private static final String WRITE_PLANS_ASYNCHRONOUSLY = "writePlansAsynchronously";
+	private static final String PLANS_FILE_FORMAT = "plansFileFormat";
 	private static final String WRITE_TRIPS_INTERVAL = "writeTripsInterval";
 	private static final String OVERWRITE_FILE = "overwriteFiles";
 	private static final String CREATE_GRAPHS = "createGraphs";
@@ -82,6 +86,7 @@ public final class ControlerConfigGroup extends ReflectiveConfigGroup {
 	private int firstIteration = 0;
 	private int lastIteration = 1000;
 	private RoutingAlgorithmType routingAlgorithmType = RoutingAlgorithmType.AStarLandmarks;
+	private String landmarksCacheDirectory = null;
 	private EventTypeToCreateScoringFunctions eventTypeToCreateScoringFunctions = EventTypeToCreateScoringFunctions.IterationStarts;
 	
 	private boolean linkToLinkRoutingEnabled = false;
@@ -92,6 +97,8 @@ public final class ControlerConfigGroup extends ReflectiveConfigGroup {
 
 	private int writeEventsInterval= 50;
 	private int writePlansInterval= 50;
+	private boolean writePlansAsynchronously = false;
+	private Set<PlansFileFormat> plansFileFormats = Collections.unmodifiableSet(EnumSet.of(PlansFileFormat.xml));
 	private int writeTripsInterval = 50;
 	private String mobsim = MobsimType.qsim.toString();
 	private int writeSnapshotsInterval = 1;
@@ -108,6 +115,8 @@ public final class ControlerConfigGroup extends ReflectiveConfigGroup {
 	public final Map<String, String> getComments() {
 		Map<String,String> map = super.getComments();
 		map.put(ROUTINGALGORITHM_TYPE, "The type of routing (least cost path) algorithm used, may have the values: " + Arrays.toString(RoutingAlgorithmType.values()));
+		map.put(LANDMARKS_CACHE_DIRECTORY, "If set, the landmarks of the " + RoutingAlgorithmType.SpeedyALT + " router are stored in this directory and re-used by later runs "
+				+ "with the same network and travel disutility, also by other processes. Also used by " + RoutingAlgorithmType.SpeedyCH + " for the routes it cannot compute itself.");
 		map.put(RUNID, "An identifier for the current run which is used as prefix for output files and mentioned in output xml files etc.");
 		map.put(EVENTS_FILE_FORMAT, "Default="+EventsFileFormat.xml+"; Specifies the file format for writing events. Currently supported: " + Arrays.toString(EventsFileFormat.values()) + IOUtils.NATIVE_NEWLINE+ "\t\t" +
 				"Multiple values can be specified separated by commas (',').");
@@ -117,6 +126,10 @@ public final class ControlerConfigGroup extends ReflectiveConfigGroup {
                 "to a file. `0' disables trips writing completely.");
 		map.put(WRITE_PLANS_INTERVAL, "iterationNumber % writePlansInterval == 0 defines (hopefully) in which iterations plans are " +
                 "written to a file. `0' disables plans writing completely.  Some plans in early iterations are always written");
+		map.put(WRITE_PLANS_ASYNCHRONOUSLY, "Default=false. If true, the plans of an iteration are copied before the mobsim starts and written to the file " +
+				"while the mobsim is running. This needs memory for a copy of all plans, but the iteration does not have to wait for the file to be written.");
+		map.put(PLANS_FILE_FORMAT, "Default="+PlansFileFormat.xml+"; Specifies the file format for writing plans, in the iterations and at the end. Currently supported: " + Arrays.toString(PlansFileFormat.values()) + IOUtils.NATIVE_NEWLINE+ "\t\t" +
+				"Multiple values can be specified separated by commas (','). The binary format (plans.bin) can be read much faster than xml, e.g. to restart a run from its output plans.");
 		map.put(LINKTOLINK_ROUTING_ENABLED, "Default=false. If enabled, the router takes travel times needed for turning moves into account."
 		        + " Cannot be used if the (Fast)AStarLandmarks routing or TravelTimeCalculator.separateModes is enabled.");
 		map.put(FIRST_ITERATION, "Default=0. First Iteration of a simulation.");
@@ -185,6 +198,16 @@ public final class ControlerConfigGroup extends ReflectiveConfigGroup {
 		this.routingAlgorithmType = type;
 	}
 
+	@StringGetter( LANDMARKS_CACHE_DIRECTORY )
+	public String getLandmarksCacheDirectory() {
+		return this.landmarksCacheDirectory;
+	}
+
+	@StringSetter( LANDMARKS_CACHE_DIRECTORY )
+	public void setLandmarksCacheDirectory(final String landmarksCacheDirectory) {
+		this.landmarksCacheDirectory = landmarksCacheDirectory;
+	}
+
 	@StringGetter( COMPRESSION_TYPE )
 	public CompressionType getCompressionType() {
 		return this.compressionType;
@@ -269,6 +292,41 @@ public final class ControlerConfigGroup extends ReflectiveConfigGroup {
 	public void setEventsFileFormats(final Set<EventsFileFormat> eventsFileFormats) {
 		this.eventsFileFormats = Collections.unmodifiableSet(EnumSet.copyOf(eventsFileFormats));
 	}
+
+	@StringGetter( PLANS_FILE_FORMAT )
+	private String getPlansFileFormatAsString() {
+		boolean isFirst = true;
+		StringBuilder str = new StringBuilder();
+		for (PlansFileFormat format : this.plansFileFormats) {
+			if (!isFirst) {
+				str.append(',');
+			}
+			str.append(format.toString());
+			isFirst = false;
+		}
+		return str.toString();
+	}
+
+	@StringSetter( PLANS_FILE_FORMAT )
+	private void setPlansFileFormats( final String value ) {
+		String[] parts = StringUtils.explode(value, ',');
+		Set<PlansFileFormat> formats = EnumSet.noneOf(PlansFileFormat.class);
+		for (String part : parts) {
+			String trimmed = part.trim();
+			if (trimmed.length() > 0) {
+				formats.add(PlansFileFormat.valueOf(trimmed));
+			}
+		}
+		this.plansFileFormats = formats;
+	}
+
+	public Set<PlansFileFormat> getPlansFileFormats() {
+		return this.plansFileFormats;
+	}
+
+	public void setPlansFileFormats(final Set<PlansFileFormat> plansFileFormats) {
+		this.plansFileFormats = Collections.unmodifiableSet(EnumSet.copyOf(plansFileFormats));
+	}
 	// ---
 	public enum SnapshotFormat { transims, googleearth, otfvis, positionevents }
 	private Set<SnapshotFormat> snapshotFormat = Collections.emptySet();
@@ -338,6 +396,16 @@ public final class ControlerConfigGroup extends ReflectiveConfigGroup {
 		this.writePlansInterval = writePlansInterval;
 	}
 	
+	@StringGetter( WRITE_PLANS_ASYNCHRONOUSLY )
+	public boolean isWritePlansAsynchronously() {
+		return this.writePlansAsynchronously;
+	}
+
+	@StringSetter( WRITE_PLANS_ASYNCHRONOUSLY )
+	public void setWritePlansAsynchronously(final boolean writePlansAsynchronously) {
+		this.writePlansAsynchronously = writePlansAsynchronously;
+	}
+
 	@StringGetter( WRITE_SNAPSHOTS_INTERVAL )
 	public int getWriteSnapshotsInterval() {
 		return writeSnapshotsInterval;
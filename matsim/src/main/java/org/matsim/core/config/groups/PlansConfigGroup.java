@@ -53,6 +53,16 @@ public final class PlansConfigGroup extends ReflectiveConfigGroup {
 		/** When routing along a plan, travel times are accumulated and activity end times may be shifted, if necessary */
 		shiftActivityEndTimes 
 	}
+
+	/**
+	 * Defines how the activities and legs of plans are stored in memory
+	 */
+	public enum PlanElementsStorage {
+		/** One object per activity and leg */
+		objects,
+		/** The values of all activities and legs of a plan are kept in a few primitive arrays per plan */
+		compact
+	}
 	
 	private static final String INPUT_FILE = "inputPlansFile";
 	private static final String INPUT_PERSON_ATTRIBUTES_FILE = "inputPersonAttributesFile";
@@ -70,9 +80,11 @@ public final class PlansConfigGroup extends ReflectiveConfigGroup {
 	
 	private static final String ACTIVITY_DURATION_INTERPRETATION="activityDurationInterpretation" ;
 	private static final String TRIP_DURATION_HANDLING="tripDurationHandling";
+	private static final String PLAN_ELEMENTS_STORAGE="planElementsStorage";
 	
 	private ActivityDurationInterpretation activityDurationInterpretation = ActivityDurationInterpretation.tryEndTimeThenDuration ;
 	private TripDurationHandling tripDurationHandling = TripDurationHandling.ignoreDelays;
+	private PlanElementsStorage planElementsStorage = PlanElementsStorage.objects;
 
 	//--
 
@@ -107,6 +119,18 @@ public final class PlansConfigGroup extends ReflectiveConfigGroup {
 				"the departure time of a trip when routing along a plan will always be the nominal (plan-based) activity end time. If set to '" + TripDurationHandling.shiftActivityEndTimes + "', " + 
 				"routing along a plan will accumulate travel times and shift activity end times if necessary");
 		
+		comments.put(PLAN_ELEMENTS_STORAGE, "Defines how activities and legs are stored in memory. If set to '" + PlanElementsStorage.compact + "', " +
+				"the values of all activities and legs of a plan are kept in a few arrays, which needs considerably less memory for large populations. " +
+				"Activities and legs are then only views on these arrays; activity coordinates are created on every access.");
+
+		comments.put(PARALLEL_READING, "If set to true and global.numberOfThreads is larger than 1, the persons of population_v6 files " +
+				"are created by several threads. The attribute converters are then called by several threads at the same time, so " +
+				"they must be thread-safe. default=false.");
+
+		comments.put(PARALLEL_WRITING, "If set to true and global.numberOfThreads is larger than 1, the plans dumped in the iterations are " +
+				"written in xml by several threads. The coordinate transformation and the attribute converters are then used by several " +
+				"threads at the same time, so they must be thread-safe. default=false.");
+
 		comments.put(REMOVING_UNNECESSARY_PLAN_ATTRIBUTES, "(not tested) will remove plan attributes that are presumably not used, such as " +
                 "activityStartTime. default=false. Use with Caution!");
 
@@ -233,6 +257,42 @@ public final class PlansConfigGroup extends ReflectiveConfigGroup {
 		this.tripDurationHandling = value;
 	}
 	
+	@StringGetter(PLAN_ELEMENTS_STORAGE)
+	public PlansConfigGroup.PlanElementsStorage getPlanElementsStorage() {
+		return this.planElementsStorage;
+	}
+
+	@StringSetter(PLAN_ELEMENTS_STORAGE)
+	public void setPlanElementsStorage( final PlansConfigGroup.PlanElementsStorage value ) {
+		this.planElementsStorage = value;
+	}
+	
+	// ---
+
+	private static final String PARALLEL_READING = "parallelReading";
+	private boolean parallelReading = false;
+	@StringGetter(PARALLEL_READING)
+	public boolean isParallelReading() {
+		return this.parallelReading;
+	}
+	@StringSetter(PARALLEL_READING)
+	public void setParallelReading(final boolean parallelReading) {
+		this.parallelReading = parallelReading;
+	}
+
+	// ---
+
+	private static final String PARALLEL_WRITING = "parallelWriting";
+	private boolean parallelWriting = false;
+	@StringGetter(PARALLEL_WRITING)
+	public boolean isParallelWriting() {
+		return this.parallelWriting;
+	}
+	@StringSetter(PARALLEL_WRITING)
+	public void setParallelWriting(final boolean parallelWriting) {
+		this.parallelWriting = parallelWriting;
+	}
+
 	// ---
 	
 	private static final String REMOVING_UNNECESSARY_PLAN_ATTRIBUTES = "removingUnnecessaryPlanAttributes";
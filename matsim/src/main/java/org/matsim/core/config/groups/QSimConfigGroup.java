@@ -65,6 +65,8 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 			"time in seconds.  Time after which the frontmost vehicle on a link is called `stuck' if it does not move.";
 	private static final String FILTER_SNAPSHOTS = "filterSnapshots";
 	private static final String LINK_DYNAMICS = "linkDynamics";
+	private static final String NETSIM_DOMAIN_DECOMPOSITION = "netsimDomainDecomposition";
+	private static final String NETSIM_SYNCHRONIZATION = "netsimSynchronization";
 	private InflowCapacitySetting inflowCapacitySetting = InflowCapacitySetting.INFLOW_FROM_FDIAG;
 
 	public enum StarttimeInterpretation {maxOfStarttimeAndEarliestActivityEnd, onlyUseStarttime}
@@ -139,6 +141,28 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 	public enum LinkDynamics {FIFO, PassingQ, SeepageQ}
 
 	private LinkDynamics linkDynamics = LinkDynamics.FIFO;
+
+	// ---
+	/**
+	 * Defines how the nodes (and with them their outgoing links) of the network are distributed over the threads of the netsim engine.
+	 * <li>{@code roundRobin} assigns the nodes in turn, i.e. every thread works on elements spread over the whole network.</li>
+	 * <li>{@code connectedRegions} grows connected regions of roughly equal load, where the load is estimated from the link volumes
+	 * of the previous iteration.  Elements handled by one thread are then close to each other, and only links at the region
+	 * boundaries connect different threads.</li>
+	 */
+	public enum NetsimDomainDecomposition {roundRobin, connectedRegions}
+
+	private NetsimDomainDecomposition netsimDomainDecomposition = NetsimDomainDecomposition.roundRobin;
+
+	/**
+	 * Defines how the threads of the netsim engine are synchronized within a time step.
+	 * <li>{@code barriers}: all threads first move their nodes, wait for each other, then move their links, and wait again.</li>
+	 * <li>{@code localClocks}: every thread moves its links as soon as the threads owning the downstream nodes of its links have
+	 * moved their nodes, i.e. without waiting for all other threads.  Works best with {@link NetsimDomainDecomposition#connectedRegions}.</li>
+	 */
+	public enum NetsimSynchronization {barriers, localClocks}
+
+	private NetsimSynchronization netsimSynchronization = NetsimSynchronization.barriers;
 	private Collection<String> mainModes = Collections.singletonList(TransportMode.car);
 
 	// ---
@@ -209,6 +233,25 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 			}
 			map.put(LINK_DYNAMICS, "default: FIFO; options:" + stb);
 		}
+		{
+			StringBuilder stb = new StringBuilder();
+			for (NetsimDomainDecomposition dd : NetsimDomainDecomposition.values()) {
+				stb.append(" ").append(dd.toString());
+			}
+			map.put(NETSIM_DOMAIN_DECOMPOSITION, "Defines how network nodes and links are distributed over the threads of the netsim engine. "
+					+ NetsimDomainDecomposition.connectedRegions + " builds connected regions which are balanced by the link volumes "
+					+ "of the previous iteration.  Only relevant if " + NUMBER_OF_THREADS + " > 1.  Default: "
+					+ NetsimDomainDecomposition.roundRobin + "; options:" + stb);
+		}
+		{
+			StringBuilder stb = new StringBuilder();
+			for (NetsimSynchronization sync : NetsimSynchronization.values()) {
+				stb.append(" ").append(sync.toString());
+			}
+			map.put(NETSIM_SYNCHRONIZATION, "Defines how the threads of the netsim engine wait for each other within a time step. "
+					+ NetsimSynchronization.localClocks + " only waits for the threads owning neighbouring parts of the network.  Default: "
+					+ NetsimSynchronization.barriers + "; options:" + stb);
+		}
 		map.put(USE_PERSON_ID_FOR_MISSING_VEHICLE_ID, "If a route does not reference a vehicle, agents will use the vehicle with the same id as their own.");
 		map.put(FAST_CAPACITY_UPDATE, "If false, the qsim accumulates fractional flows up to one flow unit in every time step.  If true, "
 				+ "flows are updated only if an agent wants to enter the link or an agent is added to buffer. "
@@ -553,6 +596,26 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 		this.linkDynamics = linkDynamics ;
 	}
 
+	@StringGetter(NETSIM_DOMAIN_DECOMPOSITION)
+	public NetsimDomainDecomposition getNetsimDomainDecomposition() {
+		return this.netsimDomainDecomposition;
+	}
+
+	@StringSetter(NETSIM_DOMAIN_DECOMPOSITION)
+	public void setNetsimDomainDecomposition(NetsimDomainDecomposition netsimDomainDecomposition) {
+		this.netsimDomainDecomposition = netsimDomainDecomposition;
+	}
+
+	@StringGetter(NETSIM_SYNCHRONIZATION)
+	public NetsimSynchronization getNetsimSynchronization() {
+		return this.netsimSynchronization;
+	}
+
+	@StringSetter(NETSIM_SYNCHRONIZATION)
+	public void setNetsimSynchronization(NetsimSynchronization netsimSynchronization) {
+		this.netsimSynchronization = netsimSynchronization;
+	}
+
 	@StringGetter(USE_PERSON_ID_FOR_MISSING_VEHICLE_ID)
 	public boolean getUsePersonIdForMissingVehicleId() {
 		return usePersonIdForMissingVehicleId;
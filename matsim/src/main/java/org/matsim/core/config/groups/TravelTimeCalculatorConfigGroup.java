@@ -45,6 +45,8 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 
 	public enum TravelTimeCalculatorType {TravelTimeCalculatorArray,TravelTimeCalculatorHashMap}
 
+	public enum TravelTimeSnapshotType {none, heap, offHeap}
+
 	private static final String TRAVEL_TIME_CALCULATOR = "travelTimeCalculator";
 	private static final String TRAVEL_TIME_BIN_SIZE = "travelTimeBinSize";
 	private static final String TRAVEL_TIME_AGGREGATOR = "travelTimeAggregator";
@@ -57,6 +59,7 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 	private static final String ANALYZEDMODES = "analyzedModes";
 	private static final String FILTERMODES = "filterModes";
 	private static final String SEPARATEMODES = "separateModes";
+	private static final String TRAVEL_TIME_SNAPSHOT = "travelTimeSnapshot";
 
 	private TravelTimeCalculatorType travelTimeCalculator = TravelTimeCalculatorType.TravelTimeCalculatorArray;
 	private String travelTimeAggregator = "optimistic";
@@ -70,6 +73,7 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 	private Set<String> analyzedModes = new LinkedHashSet<>(  ) ;
 	private boolean filterModes = false;
 	private boolean separateModes = true;
+	private TravelTimeSnapshotType travelTimeSnapshot = TravelTimeSnapshotType.none;
 
 	public TravelTimeCalculatorConfigGroup() {
 		super(GROUPNAME);
@@ -92,6 +96,10 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 		map.put(FILTERMODES, "(only for backwards compatiblity; only used if " + SEPARATEMODES + "==false)  Only modes included in analyzedModes are included." ) ;
 		map.put(SEPARATEMODES, "(only for backwards compatibility) If false, link travel times are measured and aggregated over all vehicles using the link." ) ;
 		map.put( TRAVEL_TIME_CALCULATOR, "possible values: " + Arrays.stream( TravelTimeCalculatorType.values() ).map( type -> type.toString() + ' ' ).collect( Collectors.joining() ) );
+		map.put( TRAVEL_TIME_SNAPSHOT, "If not 'none', the routers use a read-only copy of the observed link travel times, stored in a single float array " +
+				"(on the java heap or off-heap) and updated after every mobsim. Faster than the default, but the travel times are only updated " +
+				"after the mobsim, i.e. within-day replanning does not see the travel times of the current iteration. Possible values: " +
+				Arrays.stream( TravelTimeSnapshotType.values() ).map( type -> type.toString() + ' ' ).collect( Collectors.joining() ) );
 		return map;
 	}
 
@@ -214,5 +222,15 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 	public void setSeparateModes(boolean separateModes) {
 		this.separateModes = separateModes;
 	}
+	// ---
+	@StringGetter(TRAVEL_TIME_SNAPSHOT)
+	public TravelTimeSnapshotType getTravelTimeSnapshot() {
+		return this.travelTimeSnapshot;
+	}
+
+	@StringSetter(TRAVEL_TIME_SNAPSHOT)
+	public void setTravelTimeSnapshot(TravelTimeSnapshotType travelTimeSnapshot) {
+		this.travelTimeSnapshot = travelTimeSnapshot;
+	}
 
 }
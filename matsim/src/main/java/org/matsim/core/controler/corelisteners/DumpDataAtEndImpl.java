@@ -39,6 +39,7 @@ import org.matsim.core.controler.listener.ShutdownListener;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.io.NetworkChangeEventsWriter;
 import org.matsim.core.network.io.NetworkWriter;
+import org.matsim.core.population.io.PopulationWriterBinary;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.core.utils.io.UncheckedIOException;
@@ -146,6 +147,7 @@ final class DumpDataAtEndImpl implements DumpDataAtEnd, ShutdownListener {
 		for (ControlerConfigGroup.EventsFileFormat format : this.controlerConfigGroup.getEventsFileFormats()) {
 			try {
 				Controler.DefaultFiles file;
+				boolean compressed = true;
 				switch (format) {
 					case xml:
 						file = Controler.DefaultFiles.events;
@@ -156,12 +158,18 @@ final class DumpDataAtEndImpl implements DumpDataAtEnd, ShutdownListener {
 					case json:
 						file = Controler.DefaultFiles.eventsJson;
 						break;
+					case binary:
+						file = Controler.DefaultFiles.eventsBinary;
+						compressed = false;
+						break;
 					default:
 						continue;
 				}
 
-				File toFile = new File(this.controlerIO.getOutputFilename(file));
-				File fromFile = new File(this.controlerIO.getIterationFilename(iteration, file));
+				File toFile = new File(compressed ? this.controlerIO.getOutputFilename(file)
+						: this.controlerIO.getOutputFilename(file, ControlerConfigGroup.CompressionType.none));
+				File fromFile = new File(compressed ? this.controlerIO.getIterationFilename(iteration, file)
+						: this.controlerIO.getIterationFilename(iteration, file, ControlerConfigGroup.CompressionType.none));
 				try {
 					Files.copy(fromFile.toPath(), toFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
 				} catch (IOException e) {
@@ -333,9 +341,20 @@ final class DumpDataAtEndImpl implements DumpDataAtEnd, ShutdownListener {
 	private void dumpPlans() {
 		// dump plans
 
-		final PopulationWriter writer = new PopulationWriter(this.population, this.network);
-		writer.putAttributeConverters(this.attributeConverters);
-		writer.write(this.controlerIO.getOutputFilename(Controler.DefaultFiles.population));
+		for (ControlerConfigGroup.PlansFileFormat format : this.controlerConfigGroup.getPlansFileFormats()) {
+			switch (format) {
+				case xml:
+					final PopulationWriter writer = new PopulationWriter(this.population, this.network);
+					writer.putAttributeConverters(this.attributeConverters);
+					writer.write(this.controlerIO.getOutputFilename(Controler.DefaultFiles.population));
+					break;
+				case binary:
+					final PopulationWriterBinary binaryWriter = new PopulationWriterBinary(this.population);
+					binaryWriter.putAttributeConverters(this.attributeConverters);
+					binaryWriter.write(this.controlerIO.getOutputFilename(Controler.DefaultFiles.populationBinary, ControlerConfigGroup.CompressionType.none));
+					break;
+			}
+		}
 	}
 
 }
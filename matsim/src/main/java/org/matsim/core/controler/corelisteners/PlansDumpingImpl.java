@@ -20,22 +20,43 @@
 
 package org.matsim.core.controler.corelisteners;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.analysis.IterationStopWatch;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.Population;
-import org.matsim.api.core.v01.population.PopulationWriter;
+import org.matsim.api.core.v01.population.PopulationFactory;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.groups.ControlerConfigGroup;
 import org.matsim.core.controler.Controler;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
 import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationWriter;
+import org.matsim.core.population.io.PopulationWriterBinary;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 
 /**
@@ -44,11 +65,15 @@ import org.matsim.core.utils.geometry.transformations.TransformationFactory;
  * ({@link ControlerConfigGroup#getWritePlansInterval()} as well as in the first
  * iteration, just in case someone might check that the replanning worked
  * correctly in the first iteration.
+ * <p>
+ * If {@link ControlerConfigGroup#isWritePlansAsynchronously()} is set, the plans
+ * are copied at the start of the iteration, and the copy is written while the
+ * mobsim is running.  The file is complete at the end of the iteration.
  *
  * @author mrieser
  */
 @Singleton
-final class PlansDumpingImpl implements PlansDumping, BeforeMobsimListener {
+final class PlansDumpingImpl implements PlansDumping, BeforeMobsimListener, IterationEndsListener, ShutdownListener {
 
 	static final private Logger log = LogManager.getLogger(PlansDumpingImpl.class);
 
@@ -57,14 +82,20 @@ final class PlansDumpingImpl implements PlansDumping, BeforeMobsimListener {
 	@Inject private Population population;
 	@Inject private IterationStopWatch stopwatch;
 	@Inject private OutputDirectoryHierarchy controlerIO;
+	@Inject private Map<Class<?>, AttributeConverter<?>> attributeConverters = Collections.emptyMap();
 	private int writePlansInterval ;
 
 	private int writeMoreUntilIteration;
 
+	private final boolean writeAsynchronously;
+	private ExecutorService executor = null;
+	private Future<?> pendingDump = null;
+
 	@Inject
 	PlansDumpingImpl(ControlerConfigGroup config) {
 		this.writePlansInterval = config.getWritePlansInterval();
 		this.writeMoreUntilIteration = config.getWritePlansUntilIteration() ;
+		this.writeAsynchronously = config.isWritePlansAsynchronously();
 	}
 
 	@Override
@@ -78,22 +109,125 @@ final class PlansDumpingImpl implements PlansDumping, BeforeMobsimListener {
 			final String inputCRS = config.plans().getInputCRS();
 			final String internalCRS = config.global().getCoordinateSystem();
 
+			final CoordinateTransformation transformation;
 			if ( inputCRS == null ) {
-				new PopulationWriter(population, network).write(controlerIO.getIterationFilename(event.getIteration(), Controler.DefaultFiles.population));
+				transformation = new IdentityTransformation();
 			}
 			else {
 				log.info( "re-projecting population from "+internalCRS+" back to "+inputCRS+" for export" );
 
-				final CoordinateTransformation transformation =
+				transformation =
 						TransformationFactory.getCoordinateTransformation(
 								internalCRS,
 								inputCRS );
+			}
+			final int iteration = event.getIteration();
 
-				new PopulationWriter(transformation, population, network).write(controlerIO.getIterationFilename(event.getIteration(), Controler.DefaultFiles.population));
+			if ( writeAsynchronously ) {
+				waitForPendingDump();
+				final Population snapshot = createSnapshot();
+				if ( executor == null ) {
+					executor = Executors.newSingleThreadExecutor(runnable -> {
+						Thread thread = new Thread(runnable, PlansDumpingImpl.class.getSimpleName());
+						thread.setDaemon(true);
+						return thread;
+					});
+				}
+				pendingDump = executor.submit(() -> {
+					writePlans(transformation, snapshot, iteration);
+					log.info("finished plans dump.");
+				});
+				log.info("plans copied, writing them while the mobsim is running.");
+			}
+			else {
+				writePlans(transformation, population, iteration);
+				log.info("finished plans dump.");
 			}
-			log.info("finished plans dump.");
 			stopwatch.endOperation("dump all plans");
 		}
 	}
 
+	@Override
+	public void notifyIterationEnds(final IterationEndsEvent event) {
+		waitForPendingDump();
+	}
+
+	@Override
+	public void notifyShutdown(final ShutdownEvent event) {
+		waitForPendingDump();
+		if ( executor != null ) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	private void writePlans(CoordinateTransformation transformation, Population population, int iteration) {
+		for ( ControlerConfigGroup.PlansFileFormat format : config.controler().getPlansFileFormats() ) {
+			switch ( format ) {
+				case xml:
+					PopulationWriter writer = new PopulationWriter(transformation, population, network);
+					if ( config.plans().isParallelWriting() ) {
+						writer.setNumberOfThreads(config.global().getNumberOfThreads());
+					}
+					writer.write(controlerIO.getIterationFilename(iteration, Controler.DefaultFiles.population));
+					break;
+				case binary:
+					// the binary format compresses its blocks itself, and keeps the internal coordinates
+					PopulationWriterBinary binaryWriter = new PopulationWriterBinary(population);
+					binaryWriter.putAttributeConverters(attributeConverters);
+					binaryWriter.write(controlerIO.getIterationFilename(iteration,
+							Controler.DefaultFiles.populationBinary, ControlerConfigGroup.CompressionType.none));
+					break;
+			}
+		}
+	}
+
+	private void waitForPendingDump() {
+		if ( pendingDump == null ) {
+			return;
+		}
+		try {
+			pendingDump.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("writing the plans failed", e.getCause());
+		} finally {
+			pendingDump = null;
+		}
+	}
+
+	/**
+	 * Copies the persons with their plans, so the plans can be written while they are modified by the mobsim
+	 * or within-day replanning.
+	 */
+	private Population createSnapshot() {
+		Population snapshot = PopulationUtils.createPopulation(config, network);
+		snapshot.setName(population.getName());
+		AttributesUtils.copyTo(population.getAttributes(), snapshot.getAttributes());
+		PopulationFactory factory = snapshot.getFactory();
+		for (Person person : population.getPersons().values()) {
+			Person copy = factory.createPerson(person.getId());
+			AttributesUtils.copyAttributesFromTo(person, copy);
+			for (Plan plan : person.getPlans()) {
+				Plan planCopy = factory.createPlan();
+				PopulationUtils.copyFromTo(plan, planCopy);
+				// copyFromTo() drops the z coordinate, and coords are immutable anyway
+				for (int i = 0; i < plan.getPlanElements().size(); i++) {
+					PlanElement pe = plan.getPlanElements().get(i);
+					if (pe instanceof Activity) {
+						((Activity) planCopy.getPlanElements().get(i)).setCoord(((Activity) pe).getCoord());
+					}
+				}
+				copy.addPlan(planCopy);
+				if (plan == person.getSelectedPlan()) {
+					copy.setSelectedPlan(planCopy);
+				}
+			}
+			snapshot.addPerson(copy);
+		}
+		return snapshot;
+	}
+
 }
@@ -0,0 +1,172 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventRingBuffer.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+
+/**
+ * A ring buffer of events with one producer thread and several consumer threads. Every consumer reads every event,
+ * so that all consumers see the same events in the same order without copying them.
+ * <p></p>
+ * The slots of the ring are reused. The producer writes events into free slots and publishes them in batches; each
+ * consumer has its own sequence counter, and a slot becomes free again once all consumers have passed it. No locks
+ * are involved, threads that have to wait spin shortly and then park.
+ */
+final class EventRingBuffer {
+
+	// consumers tell the producer about their progress at least every this many events
+	private static final int CONSUMER_PROGRESS_INTERVAL = 1024;
+
+	private final Event[] slots;
+	private final int mask;
+	private final List<Consumer> consumers = new ArrayList<>();
+
+	// number of events written by the producer, only accessed by the producer thread
+	private long written = 0;
+	// the producer may write up to here without checking the consumers again, only accessed by the producer thread
+	private long writeLimit = 0;
+	// number of events visible to the consumers
+	private final AtomicLong published = new AtomicLong(0);
+
+	/**
+	 * @param minCapacity the ring holds at least this many events, the capacity is rounded up to a power of two.
+	 */
+	EventRingBuffer(int minCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+		this.slots = new Event[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Registers a new consumer. All consumers need to be registered before the first event is put.
+	 *
+	 * @param thread the thread reading from the consumer. If it dies, it is no longer waited for.
+	 */
+	Consumer addConsumer(Thread thread) {
+		Consumer consumer = new Consumer(thread);
+		this.consumers.add(consumer);
+		return consumer;
+	}
+
+	/**
+	 * Writes the event into the next free slot. The event is not visible to the consumers before {@link #publish()}
+	 * is called. Waits if the ring is full.
+	 */
+	void put(Event event) throws InterruptedException {
+		if (this.written == this.writeLimit) {
+			this.writeLimit = minimumConsumed() + this.slots.length;
+			if (this.written == this.writeLimit) {
+				publish();
+				int attempt = 0;
+				while (this.written == this.writeLimit) {
+					backOff(attempt++);
+					this.writeLimit = minimumConsumed() + this.slots.length;
+				}
+			}
+		}
+		this.slots[(int) (this.written & this.mask)] = event;
+		this.written++;
+	}
+
+	/**
+	 * Makes all events written so far visible to the consumers.
+	 */
+	void publish() {
+		this.published.lazySet(this.written);
+	}
+
+	/**
+	 * @return <code>true</code> if all live consumers have processed all published events.
+	 */
+	boolean isConsumed() {
+		return minimumConsumed() == this.published.get();
+	}
+
+	/**
+	 * Removes the references to the events, so that they can be garbage collected. Only call this if no consumer is
+	 * running anymore.
+	 */
+	void clear() {
+		Arrays.fill(this.slots, null);
+	}
+
+	private long minimumConsumed() {
+		long minimum = this.published.get();
+		for (Consumer consumer : this.consumers) {
+			if (consumer.thread.isAlive()) {
+				minimum = Math.min(minimum, consumer.consumed.get());
+			}
+		}
+		return minimum;
+	}
+
+	/**
+	 * Spins for a short while, yields for a bit longer and parks afterwards.
+	 */
+	static void backOff(int attempt) throws InterruptedException {
+		if (attempt < 100) {
+			Thread.onSpinWait();
+		} else if (attempt < 200) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(50_000);
+		}
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+	}
+
+	final class Consumer {
+
+		private final Thread thread;
+		// number of events processed by this consumer
+		private final AtomicLong consumed = new AtomicLong(0);
+
+		private Consumer(Thread thread) {
+			this.thread = thread;
+		}
+
+		/**
+		 * Passes all published events that this consumer did not see yet to the events manager.
+		 *
+		 * @return the number of processed events.
+		 */
+		int process(EventsManager eventsManager) {
+			long start = this.consumed.get();
+			long end = EventRingBuffer.this.published.get();
+			for (long sequence = start; sequence < end; sequence++) {
+				eventsManager.processEvent(EventRingBuffer.this.slots[(int) (sequence & EventRingBuffer.this.mask)]);
+				if ((sequence + 1) % CONSUMER_PROGRESS_INTERVAL == 0) {
+					this.consumed.lazySet(sequence + 1);
+				}
+			}
+			this.consumed.set(end);
+			return (int) (end - start);
+		}
+	}
+}
@@ -20,14 +20,21 @@
 
 package org.matsim.core.events;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -44,26 +51,10 @@ import org.matsim.api.core.v01.events.PersonMoneyEvent;
 import org.matsim.api.core.v01.events.PersonStuckEvent;
 import org.matsim.api.core.v01.events.TransitDriverStartsEvent;
 import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
-import org.matsim.api.core.v01.events.handler.ActivityEndEventHandler;
-import org.matsim.api.core.v01.events.handler.ActivityStartEventHandler;
-import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
-import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
-import org.matsim.api.core.v01.events.handler.PersonArrivalEventHandler;
-import org.matsim.api.core.v01.events.handler.PersonDepartureEventHandler;
-import org.matsim.api.core.v01.events.handler.PersonEntersVehicleEventHandler;
-import org.matsim.api.core.v01.events.handler.PersonLeavesVehicleEventHandler;
-import org.matsim.api.core.v01.events.handler.PersonMoneyEventHandler;
-import org.matsim.api.core.v01.events.handler.PersonStuckEventHandler;
-import org.matsim.api.core.v01.events.handler.TransitDriverStartsEventHandler;
-import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
 import org.matsim.core.api.experimental.events.AgentWaitingForPtEvent;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
 import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
-import org.matsim.core.api.experimental.events.handler.AgentWaitingForPtEventHandler;
-import org.matsim.core.api.experimental.events.handler.VehicleArrivesAtFacilityEventHandler;
-import org.matsim.core.api.experimental.events.handler.VehicleDepartsAtFacilityEventHandler;
-import org.matsim.core.events.handler.BasicEventHandler;
 import org.matsim.core.events.handler.EventHandler;
 
 /**
@@ -74,10 +65,15 @@ import org.matsim.core.events.handler.EventHandler;
  * <li>add method public void handleEvent(MyEvent event) to it</li>
  * <li>ready to go, just implement the interface somewhere and add a
  * HandlerObject with a call to <code>Events.addHandler(HandlerObject)</code></li>
- * <li>(optional) add an appropriate line in callHandlerFast() for speeding
- * up execution!</li>
  * </ol>
  *
+ * Handlers are called through a dispatch table per event class, with generated callers instead of reflection. An events
+ * manager must only be fed by one thread at a time (see {@link EventsUtils#getParallelFeedableInstance(EventsManager)}), so
+ * only handlers that are registered with several events managers of the same group are synchronized on themselves, as
+ * they might be called by another events manager of the group at the same time. The parallel events managers put the
+ * events managers of their threads into one group. A handler that is added to events managers which are created
+ * independently and fed by different threads has to be thread-safe itself.
+ *
  * @author dstrippgen
  * @author mrieser
  */
@@ -85,15 +81,36 @@ public final class EventsManagerImpl implements EventsManager {
 
 	private static final Logger log = LogManager.getLogger(EventsManagerImpl.class);
 
+	/**
+	 * Calls the handleEvent method of an event handler interface.
+	 */
+	@FunctionalInterface
+	private interface HandlerCaller {
+		void call(EventHandler handler, Event event);
+	}
+
+	/**
+	 * Exceptions of handlers for these event classes are passed on as they are, exceptions of handlers for all other
+	 * event classes are wrapped into a RuntimeException naming the handler.
+	 */
+	private static final Set<Class<?>> UNWRAPPED_EXCEPTIONS_EVENT_CLASSES = Set.of(LinkLeaveEvent.class,
+			LinkEnterEvent.class, VehicleEntersTrafficEvent.class, PersonArrivalEvent.class, PersonDepartureEvent.class,
+			ActivityEndEvent.class, ActivityStartEvent.class, TransitDriverStartsEvent.class, PersonStuckEvent.class,
+			PersonMoneyEvent.class, AgentWaitingForPtEvent.class, PersonEntersVehicleEvent.class,
+			PersonLeavesVehicleEvent.class, VehicleDepartsAtFacilityEvent.class, VehicleArrivesAtFacilityEvent.class,
+			Event.class);
+
 	static private class HandlerData {
 
 		protected Class<? extends Event> eventClass;
 		protected ArrayList<EventHandler> handlerList = new ArrayList<EventHandler>(5);
 		protected Method method;
+		protected HandlerCaller caller;
 
 		protected HandlerData(final Class<? extends Event> eventClass, final Method method) {
 			this.eventClass = eventClass;
 			this.method = method;
+			this.caller = createCaller(method);
 		}
 
 		protected void removeHandler(final EventHandler handler) {
@@ -104,23 +121,54 @@ public final class EventsManagerImpl implements EventsManager {
 	static private class HandlerInfo {
 		protected final Class<? extends Event> eventClass;
 		protected final EventHandler eventHandler;
-		protected final Method method;
+		protected final HandlerCaller caller;
+		protected final boolean shared;
+		protected final long[] time;
 
 		protected HandlerInfo(final Class<? extends Event> eventClass, final EventHandler eventHandler,
-				final Method method) {
+				final HandlerCaller caller, final boolean shared, final long[] time) {
 			this.eventClass = eventClass;
 			this.eventHandler = eventHandler;
-			this.method = method;
+			this.caller = caller;
+			this.shared = shared;
+			this.time = time;
 		}
 	}
 
+	/**
+	 * Number of events managers of this manager's group each handler was added to.
+	 */
+	private final HandlerRegistrations registrations;
+
 	private final List<HandlerData> handlerData = new ArrayList<>();
 
 	private final Map<Class<? extends Event>, HandlerInfo[]> cacheHandlers = new ConcurrentHashMap<>(15);
+	private volatile int cacheRegistrationsVersion;
+
+	// guards the handler times, which are read and reset by another thread
+	private final ReentrantLock handlerTimesLock = new ReentrantLock();
+
+	// the processing time of the handlers is measured for every 16th event
+	private static final long TIME_SAMPLING_MASK = 15;
+	private boolean measureHandlerTimes = false;
+	private final Map<EventHandler, long[]> handlerTimes = new IdentityHashMap<>();
 
 	private long counter = 0;
 	private long nextCounterMsg = 1;
 
+	public EventsManagerImpl() {
+		this(new HandlerRegistrations());
+	}
+
+	/**
+	 * Creates an events manager that is part of a group of events managers fed by different threads. Handlers that
+	 * are added to more than one manager of the group are synchronized.
+	 */
+	/*package*/ EventsManagerImpl(final HandlerRegistrations registrations) {
+		this.registrations = registrations;
+		this.cacheRegistrationsVersion = registrations.getVersion();
+	}
+
 	private HandlerData findHandler(final Class<? extends Event> evklass) {
 		for (HandlerData handler : this.handlerData) {
 			if (handler.eventClass == evklass) {
@@ -132,27 +180,46 @@ public final class EventsManagerImpl implements EventsManager {
 
 	@Override
 	public void processEvent(final Event event) {
+		int registrationsVersion = this.registrations.getVersion();
+		if (registrationsVersion != this.cacheRegistrationsVersion) {
+			// one of our handlers might have been added to another events manager in the meantime
+			this.cacheRegistrationsVersion = registrationsVersion;
+			this.cacheHandlers.clear();
+		}
+		HandlerInfo[] handlers = getHandlersForClass(event.getClass());
 		this.counter++;
 		if (this.counter == this.nextCounterMsg) {
 			this.nextCounterMsg *= 4;
 			log.info(" event # " + this.counter);
 		}
-		for (HandlerInfo info : getHandlersForClass( event.getClass() )) {
-			synchronized(info.eventHandler) {
-				if (callHandlerFast(info.eventClass, event, info.eventHandler )) {
-					continue;
-				}
-				try {
-					info.method.invoke(info.eventHandler, event );
-				} catch (IllegalArgumentException | IllegalAccessException e) {
-					throw new RuntimeException("problem invoking EventHandler " + info.eventHandler.getClass().getCanonicalName() + " for event-class " + info.eventClass.getCanonicalName(), e);
-				} catch (InvocationTargetException e) {
-					throw new RuntimeException("problem invoking EventHandler " + info.eventHandler.getClass().getCanonicalName() + " for event-class " + info.eventClass.getCanonicalName(), e.getCause());
+		if (this.measureHandlerTimes && (this.counter & TIME_SAMPLING_MASK) == 0) {
+			// the times are read by another thread, see getEstimatedHandlerTime()
+			this.handlerTimesLock.lock();
+			try {
+				for (HandlerInfo info : handlers) {
+					long start = System.nanoTime();
+					callHandler(info, event);
+					info.time[0] += System.nanoTime() - start;
 				}
+			} finally {
+				this.handlerTimesLock.unlock();
+			}
+		} else {
+			for (HandlerInfo info : handlers) {
+				callHandler(info, event);
 			}
 		}
 	}
 
+	private static void callHandler(final HandlerInfo info, final Event event) {
+		if (info.shared) {
+			synchronized (info.eventHandler) {
+				info.caller.call(info.eventHandler, event);
+			}
+		} else {
+			info.caller.call(info.eventHandler, event);
+		}
+	}
 
 	@Override
 	public void addHandler (final EventHandler handler) {
@@ -173,6 +240,7 @@ public final class EventsManagerImpl implements EventsManager {
 			test = test.getSuperclass();
 		} while ((EventHandler.class.isAssignableFrom(test)));
 
+		this.registrations.add(handler);
 		this.cacheHandlers.clear();
 		log.info("");
 	}
@@ -183,6 +251,13 @@ public final class EventsManagerImpl implements EventsManager {
 		for (HandlerData handlerList : this.handlerData) {
 			handlerList.removeHandler(handler);
 		}
+		this.registrations.remove(handler);
+		this.handlerTimesLock.lock();
+		try {
+			this.handlerTimes.remove(handler);
+		} finally {
+			this.handlerTimesLock.unlock();
+		}
 		this.cacheHandlers.clear();
 	}
 
@@ -251,7 +326,8 @@ public final class EventsManagerImpl implements EventsManager {
 			HandlerData dat = findHandler(eventKlass);
 			if (dat != null) {
 				for (EventHandler handler : dat.handlerList) {
-					info.add(new HandlerInfo(eventKlass, handler, dat.method));
+					long[] time = this.measureHandlerTimes ? getHandlerTime(handler) : null;
+					info.add(new HandlerInfo(eventKlass, handler, dat.caller, this.registrations.isShared(handler), time));
 				}
 			}
 			klass = klass.getSuperclass();
@@ -262,59 +338,108 @@ public final class EventsManagerImpl implements EventsManager {
 		return cache;
 	}
 
-	// this method is purely for performance reasons and need not be implemented
-	private static boolean callHandlerFast(final Class<? extends Event> klass, final Event ev,
-			final EventHandler handler) {
-		if (klass == LinkLeaveEvent.class) {
-			((LinkLeaveEventHandler)handler).handleEvent((LinkLeaveEvent)ev);
-			return true;
-		} else if (klass == LinkEnterEvent.class) {
-			((LinkEnterEventHandler)handler).handleEvent((LinkEnterEvent)ev);
-			return true;
-		} else if (klass == VehicleEntersTrafficEvent.class) {
-			((VehicleEntersTrafficEventHandler)handler).handleEvent((VehicleEntersTrafficEvent)ev);
-			return true;
-		} else if (klass == PersonArrivalEvent.class) {
-			((PersonArrivalEventHandler)handler).handleEvent((PersonArrivalEvent)ev);
-			return true;
-		} else if (klass == PersonDepartureEvent.class) {
-			((PersonDepartureEventHandler)handler).handleEvent((PersonDepartureEvent)ev);
-			return true;
-		} else if (klass == ActivityEndEvent.class) {
-			((ActivityEndEventHandler)handler).handleEvent((ActivityEndEvent)ev);
-			return true;
-		} else if (klass == ActivityStartEvent.class) {
-			((ActivityStartEventHandler)handler).handleEvent((ActivityStartEvent)ev);
-			return true;
-		} else if (klass == TransitDriverStartsEvent.class) {
-			((TransitDriverStartsEventHandler) handler).handleEvent((TransitDriverStartsEvent) ev);
-			return true;
-		} else if (klass == PersonStuckEvent.class) {
-			((PersonStuckEventHandler)handler).handleEvent((PersonStuckEvent)ev);
-			return true;
-		} else if (klass == PersonMoneyEvent.class) {
-			((PersonMoneyEventHandler)handler).handleEvent((PersonMoneyEvent)ev);
-			return true;
-		} else if (klass == AgentWaitingForPtEvent.class) {
-			((AgentWaitingForPtEventHandler)handler).handleEvent((AgentWaitingForPtEvent)ev);
-			return true;
-		} else if (klass == PersonEntersVehicleEvent.class) {
-			((PersonEntersVehicleEventHandler)handler).handleEvent((PersonEntersVehicleEvent)ev);
-			return true;
-		} else if (klass == PersonLeavesVehicleEvent.class) {
-			((PersonLeavesVehicleEventHandler)handler).handleEvent((PersonLeavesVehicleEvent)ev);
-			return true;
-		} else if (klass == VehicleDepartsAtFacilityEvent.class) {
-			((VehicleDepartsAtFacilityEventHandler) handler).handleEvent((VehicleDepartsAtFacilityEvent) ev);
-			return true;
-		} else if (klass == VehicleArrivesAtFacilityEvent.class) {
-			((VehicleArrivesAtFacilityEventHandler) handler).handleEvent((VehicleArrivesAtFacilityEvent) ev);
-			return true;
-		} else if (klass == Event.class) {
-			((BasicEventHandler)handler).handleEvent(ev);
-			return true;
+	/**
+	 * Creates the caller of a handler method, see {@link #UNWRAPPED_EXCEPTIONS_EVENT_CLASSES} for the exceptions.
+	 */
+	private static HandlerCaller createCaller(final Method method) {
+		HandlerCaller caller = createDirectCaller(method);
+		if (caller == null) {
+			return createReflectionCaller(method);
+		}
+		if (UNWRAPPED_EXCEPTIONS_EVENT_CLASSES.contains(method.getParameterTypes()[0])) {
+			return caller;
+		}
+		return (handler, event) -> {
+			try {
+				caller.call(handler, event);
+			} catch (RuntimeException | Error e) {
+				throw new RuntimeException(getProblemMessage(handler, method), e);
+			}
+		};
+	}
+
+	/**
+	 * Generates a class that calls the handler method directly, which is as fast as a hand-written cast and call.
+	 *
+	 * @return the caller, or <code>null</code> if the handler interface is not accessible from here
+	 */
+	private static HandlerCaller createDirectCaller(final Method method) {
+		try {
+			ClassLoader classLoader = EventsManagerImpl.class.getClassLoader();
+			if (Class.forName(method.getDeclaringClass().getName(), false, classLoader) == method.getDeclaringClass()
+					&& Class.forName(method.getParameterTypes()[0].getName(), false, classLoader) == method.getParameterTypes()[0]) {
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				MethodHandle target = lookup.unreflect(method);
+				CallSite site = LambdaMetafactory.metafactory(lookup, "call", MethodType.methodType(HandlerCaller.class),
+						MethodType.methodType(void.class, EventHandler.class, Event.class), target, target.type());
+				return (HandlerCaller) site.getTarget().invokeExact();
+			}
+		} catch (Throwable e) {
+			log.debug("cannot generate caller for " + method + ", using reflection", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Calls the handler method by reflection, wrapping every exception of the handler.
+	 */
+	private static HandlerCaller createReflectionCaller(final Method method) {
+		return (handler, event) -> {
+			try {
+				method.invoke(handler, event);
+			} catch (IllegalArgumentException | IllegalAccessException e) {
+				throw new RuntimeException(getProblemMessage(handler, method), e);
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException(getProblemMessage(handler, method), e.getCause());
+			}
+		};
+	}
+
+	private static String getProblemMessage(final EventHandler handler, final Method method) {
+		return "problem invoking EventHandler " + handler.getClass().getCanonicalName() + " for event-class " + method.getParameterTypes()[0].getCanonicalName();
+	}
+
+	/**
+	 * Enables measuring how much time the handlers spend processing events. The time is sampled, so that measuring
+	 * costs only a fraction of the time for calling the handlers.
+	 */
+	/*package*/ void setMeasureHandlerTimes(boolean measureHandlerTimes) {
+		this.measureHandlerTimes = measureHandlerTimes;
+		this.cacheHandlers.clear();
+	}
+
+	private long[] getHandlerTime(EventHandler handler) {
+		this.handlerTimesLock.lock();
+		try {
+			return this.handlerTimes.computeIfAbsent(handler, h -> new long[1]);
+		} finally {
+			this.handlerTimesLock.unlock();
+		}
+	}
+
+	/**
+	 * @return the estimated time in nanoseconds the handler spent processing events since the last call of
+	 * {@link #resetHandlerTimes()}, 0 if times are not measured.
+	 */
+	/*package*/ long getEstimatedHandlerTime(EventHandler handler) {
+		this.handlerTimesLock.lock();
+		try {
+			long[] time = this.handlerTimes.get(handler);
+			return time == null ? 0 : time[0] * (TIME_SAMPLING_MASK + 1);
+		} finally {
+			this.handlerTimesLock.unlock();
+		}
+	}
+
+	/*package*/ void resetHandlerTimes() {
+		this.handlerTimesLock.lock();
+		try {
+			for (long[] time : this.handlerTimes.values()) {
+				time[0] = 0;
+			}
+		} finally {
+			this.handlerTimesLock.unlock();
 		}
-		return false;
 	}
 
 	public void printEventHandlers() {
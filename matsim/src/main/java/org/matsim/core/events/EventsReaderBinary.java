@@ -0,0 +1,328 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventsReaderBinary.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.MatsimEventsReader.CustomEventMapper;
+import org.matsim.core.events.algorithms.EventWriterBinary;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Reads events written by {@link EventWriterBinary}. The events are created in the same way as by the xml reader,
+ * including custom event mappers.
+ * <p></p>
+ * If only some event types are of interest, they can be set with {@link #setEventTypes(Collection)}. The attributes
+ * of all other events are then not even decompressed.
+ */
+public final class EventsReaderBinary {
+
+	private final static Logger LOG = LogManager.getLogger(EventsReaderBinary.class);
+
+	// marks attributes that an event does not have
+	private static final String MISSING = new String();
+
+	private final EventsReaderXMLv1 delegate;
+	private Set<String> eventTypes = null;
+
+	private final List<String> dictionary = new ArrayList<>();
+	private final Inflater inflater = new Inflater();
+	private byte[] compressed = new byte[64 * 1024];
+
+	public EventsReaderBinary(final EventsManager events) {
+		this.delegate = new EventsReaderXMLv1(events);
+	}
+
+	public void addCustomEventMapper(String eventType, CustomEventMapper cem) {
+		this.delegate.addCustomEventMapper(eventType, cem);
+	}
+
+	/**
+	 * Only events of the given types will be read. <code>null</code> reads all events, which is the default.
+	 */
+	public void setEventTypes(Collection<String> eventTypes) {
+		this.eventTypes = eventTypes == null ? null : new HashSet<>(eventTypes);
+	}
+
+	public void readFile(final String filename) throws UncheckedIOException {
+		readURL(IOUtils.resolveFileOrResource(filename));
+	}
+
+	public void readURL(final URL url) throws UncheckedIOException {
+		LOG.info("starting to read binary events from " + url + " ...");
+		try (InputStream in = IOUtils.getInputStream(url)) {
+			readStream(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void readStream(final InputStream in) throws UncheckedIOException {
+		try {
+			byte[] magic = readBytes(in, EventWriterBinary.MAGIC.length);
+			if (!Arrays.equals(magic, EventWriterBinary.MAGIC)) {
+				throw new IllegalArgumentException("The data does not contain binary MATSim events.");
+			}
+			int version = (int) readVarint(in);
+			if (version != EventWriterBinary.VERSION) {
+				throw new IllegalArgumentException("Unsupported version of binary events: " + version);
+			}
+			this.dictionary.clear();
+			while (readByte(in) != 0) {
+				readChunk(in);
+			}
+		} catch (IOException | DataFormatException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.inflater.reset();
+		}
+	}
+
+	private void readChunk(InputStream in) throws IOException, DataFormatException {
+		Buffer header = new Buffer(readPart(in));
+		int size = (int) header.readVarint();
+		int newEntries = (int) header.readVarint();
+		for (int i = 0; i < newEntries; i++) {
+			this.dictionary.add(header.readString());
+		}
+		int[] types = new int[size];
+		for (int i = 0; i < size; i++) {
+			types[i] = (int) header.readVarint();
+		}
+		double[] times = readTimes(header, size);
+
+		int numberOfBlocks = (int) readVarint(in);
+		Block[] blocks = new Block[this.dictionary.size()];
+		for (int b = 0; b < numberOfBlocks; b++) {
+			int type = (int) readVarint(in);
+			if (this.eventTypes == null || this.eventTypes.contains(this.dictionary.get(type))) {
+				blocks[type] = new Block(new Buffer(readPart(in)));
+			} else {
+				skipPart(in);
+			}
+		}
+
+		AttributesImpl attributes = new AttributesImpl();
+		for (int i = 0; i < size; i++) {
+			Block block = blocks[types[i]];
+			if (block == null) {
+				continue;
+			}
+			attributes.clear();
+			block.fillNext(attributes);
+			this.delegate.startEvent(times[i], this.dictionary.get(types[i]), attributes);
+		}
+	}
+
+	private static double[] readTimes(Buffer buffer, int size) {
+		double[] times = new double[size];
+		int encoding = (int) buffer.readVarint();
+		if (encoding == EventWriterBinary.TIMES_DELTA) {
+			long time = 0;
+			for (int i = 0; i < size; i++) {
+				long zigzag = buffer.readVarint();
+				time += (zigzag >>> 1) ^ -(zigzag & 1);
+				times[i] = time;
+			}
+		} else if (encoding == EventWriterBinary.TIMES_RAW) {
+			for (int i = 0; i < size; i++) {
+				long bits = 0;
+				for (int j = 0; j < 8; j++) {
+					bits = (bits << 8) | buffer.readByte();
+				}
+				times[i] = Double.longBitsToDouble(bits);
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown encoding of event times: " + encoding);
+		}
+		return times;
+	}
+
+	private byte[] readPart(InputStream in) throws IOException, DataFormatException {
+		int rawLength = (int) readVarint(in);
+		int compressedLength = (int) readVarint(in);
+		if (this.compressed.length < compressedLength) {
+			this.compressed = new byte[compressedLength];
+		}
+		readFully(in, this.compressed, compressedLength);
+		byte[] raw = new byte[rawLength];
+		this.inflater.reset();
+		this.inflater.setInput(this.compressed, 0, compressedLength);
+		int length = 0;
+		while (length < rawLength) {
+			int n = this.inflater.inflate(raw, length, rawLength - length);
+			if (n == 0 && (this.inflater.finished() || this.inflater.needsInput())) {
+				throw new EOFException("Unexpected end of compressed events data.");
+			}
+			length += n;
+		}
+		return raw;
+	}
+
+	private static void skipPart(InputStream in) throws IOException {
+		readVarint(in);
+		long compressedLength = readVarint(in);
+		while (compressedLength > 0) {
+			long skipped = in.skip(compressedLength);
+			if (skipped <= 0) {
+				readByte(in);
+				skipped = 1;
+			}
+			compressedLength -= skipped;
+		}
+	}
+
+	private static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException("Unexpected end of binary events data.");
+		}
+		return b;
+	}
+
+	private static byte[] readBytes(InputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		readFully(in, bytes, length);
+		return bytes;
+	}
+
+	private static void readFully(InputStream in, byte[] bytes, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			int n = in.read(bytes, offset, length - offset);
+			if (n < 0) {
+				throw new EOFException("Unexpected end of binary events data.");
+			}
+			offset += n;
+		}
+	}
+
+	private static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = readByte(in);
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * The decoded attributes of all events of one type in a chunk.
+	 */
+	private final class Block {
+
+		private final String[] keys;
+		private final String[][] values;
+		private int next = 0;
+
+		Block(Buffer buffer) {
+			int size = (int) buffer.readVarint();
+			int numberOfColumns = (int) buffer.readVarint();
+			this.keys = new String[numberOfColumns];
+			this.values = new String[numberOfColumns][size];
+			for (int c = 0; c < numberOfColumns; c++) {
+				this.keys[c] = dictionary.get((int) buffer.readVarint());
+				int encoding = (int) buffer.readVarint();
+				String[] column = this.values[c];
+				for (int i = 0; i < size; i++) {
+					long value = buffer.readVarint();
+					if (value == 0) {
+						column[i] = MISSING;
+					} else if (value == 1) {
+						column[i] = null;
+					} else if (encoding == EventWriterBinary.COLUMN_DICTIONARY) {
+						column[i] = dictionary.get((int) (value - 2));
+					} else if (encoding == EventWriterBinary.COLUMN_INLINE) {
+						column[i] = buffer.readString((int) (value - 2));
+					} else {
+						throw new IllegalArgumentException("Unknown encoding of event attributes: " + encoding);
+					}
+				}
+			}
+		}
+
+		void fillNext(AttributesImpl attributes) {
+			for (int c = 0; c < this.keys.length; c++) {
+				String value = this.values[c][this.next];
+				if (value != MISSING) {
+					attributes.addAttribute("", this.keys[c], this.keys[c], "CDATA", value);
+				}
+			}
+			this.next++;
+		}
+	}
+
+	private static final class Buffer {
+
+		private final byte[] data;
+		private int position = 0;
+
+		Buffer(byte[] data) {
+			this.data = data;
+		}
+
+		int readByte() {
+			return this.data[this.position++] & 0xFF;
+		}
+
+		long readVarint() {
+			long value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = readByte();
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		String readString() {
+			return readString((int) readVarint());
+		}
+
+		String readString(int length) {
+			String value = new String(this.data, this.position, length, StandardCharsets.UTF_8);
+			this.position += length;
+			return value;
+		}
+	}
+}
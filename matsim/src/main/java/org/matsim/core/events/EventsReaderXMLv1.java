@@ -96,8 +96,14 @@ public final class EventsReaderXMLv1 extends MatsimXmlEventsParser {
 	}
 
 	private void startEvent(final Attributes atts) {
-		double time = Double.parseDouble(atts.getValue("time"));
-		String eventType = atts.getValue("type");
+		startEvent(Double.parseDouble(atts.getValue("time")), atts.getValue("type"), atts);
+	}
+
+	/**
+	 * Creates the event from its attributes and passes it to the events manager. Also used by
+	 * {@link EventsReaderBinary}, where time and type are not part of the attributes.
+	 */
+	void startEvent(final double time, final String eventType, final Attributes atts) {
 
 		// === material related to wait2link below here ===
 		if (LinkLeaveEvent.EVENT_TYPE.equals(eventType)) {
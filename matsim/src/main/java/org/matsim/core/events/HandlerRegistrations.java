@@ -0,0 +1,59 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * HandlerRegistrations.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.matsim.core.events.handler.EventHandler;
+
+/**
+ * Counts how often each event handler was added to a group of {@link EventsManagerImpl}s that are fed by different
+ * threads, e.g. the events managers of the threads of a parallel events manager. A handler that was added more than
+ * once may be called from different threads at the same time, so it has to be synchronized.
+ * <p></p>
+ * Every events manager that is not part of such a group has its own registrations. Handlers are compared by identity.
+ */
+final class HandlerRegistrations {
+
+	private final Map<EventHandler, Integer> counts = new IdentityHashMap<>();
+	// incremented whenever a handler becomes shared, so that cached dispatch tables can be updated
+	private volatile int version = 0;
+
+	synchronized void add(EventHandler handler) {
+		int count = this.counts.merge(handler, 1, Integer::sum);
+		if (count == 2) {
+			this.version++;
+		}
+	}
+
+	synchronized void remove(EventHandler handler) {
+		this.counts.computeIfPresent(handler, (h, count) -> count == 1 ? null : count - 1);
+	}
+
+	synchronized boolean isShared(EventHandler handler) {
+		return this.counts.getOrDefault(handler, 0) > 1;
+	}
+
+	int getVersion() {
+		return this.version;
+	}
+}
@@ -25,7 +25,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import org.apache.logging.log4j.LogManager;
@@ -89,7 +88,8 @@ public final class ParallelEventsManager implements EventsManager {
 
 	private void initialize() {
 		int numHandlers = oneThreadPerHandler ? this.eventsHandlers.size() : Math.min(this.numOfThreads, this.eventsHandlers.size());
-		this.distributor = new Distributor(new ArrayList<ProcessEventsRunnable>(), eventQueue);
+		EventRingBuffer ringBuffer = new EventRingBuffer(this.eventsArraySize * 32);
+		this.distributor = new Distributor(new ArrayList<ProcessEventsRunnable>(), eventQueue, ringBuffer);
 		this.eventsManagers = new ArrayList<>(numHandlers);
 
 		// create event managers
@@ -99,8 +99,9 @@ public final class ParallelEventsManager implements EventsManager {
 			}
 		} else {
 			// TODO - check if this slow path is correct
+			HandlerRegistrations registrations = new HandlerRegistrations();
 			for (int i = 0; i < this.numOfThreads; i++) {
-				this.eventsManagers.add(new EventsManagerImpl());
+				this.eventsManagers.add(new EventsManagerImpl(registrations));
 			}
 			for (int i = 0; i < this.eventsHandlers.size(); i++) {
 				this.eventsManagers.get(i % numOfThreads).addHandler(this.eventsHandlers.get(i));
@@ -110,7 +111,7 @@ public final class ParallelEventsManager implements EventsManager {
 		// initialize runnables (threads that will execute the event managers)
 		for (int i = 0; i < this.eventsManagers.size(); i++) {
 			EventsManager eventsManager = this.eventsManagers.get(i);
-			ProcessEventsRunnable processEventsRunnable = new ProcessEventsRunnable(eventsManager, distributor);
+			ProcessEventsRunnable processEventsRunnable = new ProcessEventsRunnable(eventsManager, ringBuffer);
 			distributor.runnables.add(processEventsRunnable);
 			processEventsRunnable.setDaemon(true);
 			processEventsRunnable.setUncaughtExceptionHandler(this.uncaughtExceptionHandler);
@@ -139,6 +140,7 @@ public final class ParallelEventsManager implements EventsManager {
 			}
 			distributor.interrupt();
 			distributor.join();
+			distributor.ringBuffer.clear();
 		} catch (InterruptedException e) {
 			throw new RuntimeException("Exception while waiting on join...", e);
 		}
@@ -246,19 +248,25 @@ public final class ParallelEventsManager implements EventsManager {
 		}
 	}
 
+	/**
+	 * Takes the events from the event queue and puts them into the ring buffer, which is read by all
+	 * {@link ProcessEventsRunnable}s.
+	 */
 	private class Distributor extends Thread {
 
 		private final ArrayList<ProcessEventsRunnable> runnables;
 		private final BlockingQueue<EventArray> eventQueue;
+		private final EventRingBuffer ringBuffer;
 
 		// When set to true, the distributor will process all events until all events in the event manager are processed.
 		// This is used when the simulation needs to sync with event processing and make sure there are no unprocessed
 		// events in the system.
 		private volatile boolean shouldFlush = false;
 
-		public Distributor(ArrayList<ProcessEventsRunnable> runnables, BlockingQueue<EventArray> eventQueue) {
+		public Distributor(ArrayList<ProcessEventsRunnable> runnables, BlockingQueue<EventArray> eventQueue, EventRingBuffer ringBuffer) {
 			this.runnables = runnables;
 			this.eventQueue = eventQueue;
+			this.ringBuffer = ringBuffer;
 		}
 
 		public void flush() throws InterruptedException {
@@ -270,45 +278,23 @@ public final class ParallelEventsManager implements EventsManager {
 			}
 		}
 
-		private void distribute(EventArray events) {
-			for (ProcessEventsRunnable runnable : this.runnables) {
-				runnable.eventsQueue.add(events);
-			}
-		}
-
-		@SuppressWarnings("unused")
 		@Override
 		public final void run() {
 			try {
-				EventArray events = new EventArray(eventsArraySize);
 				while (true) {
 					EventArray earray = this.eventQueue.poll(50, TimeUnit.MICROSECONDS);
 					if (earray == null) {
-						synchronized (this) {
-							// check if we can finish the flush
-							if (shouldFlush) {
-								// distribute missing events
-								if (events.size() > 0) {
-									distribute(events);
-									events = new EventArray(eventsArraySize);
-								}
-
-								// We'll ask the ProcessEventsRunnables to flush
-								for (ProcessEventsRunnable runnable : this.runnables)
-									runnable.flush();
-
-								// Wait until all the ProcessEventsRunnables have finished flushing
-								boolean stillFlushing = true;
-								while (stillFlushing) {
-									this.wait(1);
-
-									stillFlushing = false;
-									for (ProcessEventsRunnable runnable : this.runnables)
-										stillFlushing |= runnable.isFlushing();
-								}
+						if (shouldFlush) {
+							// Wait until all the ProcessEventsRunnables have processed all events
+							ringBuffer.publish();
+							int attempt = 0;
+							while (!ringBuffer.isConsumed()) {
+								EventRingBuffer.backOff(attempt++);
+							}
 
-								// termination criteria for the flush
-								if (eventQueue.isEmpty()) {
+							// termination criteria for the flush, the handlers might have created new events
+							if (eventQueue.isEmpty()) {
+								synchronized (this) {
 									shouldFlush = false;
 									this.notify();
 								}
@@ -317,28 +303,10 @@ public final class ParallelEventsManager implements EventsManager {
 						continue;
 					}
 
-					// this is an optimization, if we receive a large buffer, avoid copying it and send it directly.
-					if (earray.size() >= eventsArraySize) {
-						// make sure we don't miss events already buffered
-						if (events.size() > 0) {
-							distribute(events);
-							events = new EventArray(eventsArraySize);
-						}
-						// send newly received events
-						distribute(earray);
-					}
-					// this is the non-optimized path, where we receive small number of events at a time
-					else {
-						for (int i = 0; i < earray.size(); i++) {
-							Event event = earray.get(i);
-							events.add(event);
-							// if the buffer is full or if we need to flush
-							if (events.size() == eventsArraySize || shouldFlush) {
-								distribute(events);
-								events = new EventArray(eventsArraySize);
-							}
-						}
+					for (int i = 0; i < earray.size(); i++) {
+						ringBuffer.put(earray.get(i));
 					}
+					ringBuffer.publish();
 				}
 			} catch (InterruptedException e) {
 					return;
@@ -348,45 +316,23 @@ public final class ParallelEventsManager implements EventsManager {
 
 	private class ProcessEventsRunnable extends Thread {
 
-		private final Distributor distributor;
 		private final EventsManager eventsManager;
-		private final BlockingQueue<EventArray> eventsQueue;
-		private boolean flush = false;
+		private final EventRingBuffer.Consumer events;
 
-		public ProcessEventsRunnable(EventsManager eventsManager, Distributor distributor) {
+		public ProcessEventsRunnable(EventsManager eventsManager, EventRingBuffer ringBuffer) {
 			this.eventsManager = eventsManager;
-			this.eventsQueue = new LinkedBlockingQueue<>();
-			this.distributor = distributor;
-		}
-
-		public synchronized void flush() {
-			flush = true;
-		}
-
-		public boolean isFlushing() {
-			return flush && this.isAlive();
+			this.events = ringBuffer.addConsumer(this);
 		}
 
 		@Override
 		public void run() {
 			try {
+				int attempt = 0;
 				while (true) {
-					EventArray events = this.eventsQueue.poll(50, TimeUnit.MICROSECONDS);
-
-					if (events != null) {
-						for (int i = 0; i < events.size(); i++) {
-							this.eventsManager.processEvent(events.get(i));
-						}
-					}
-
-					// If flush is over, then try to wake up distributor
-					if (flush && this.eventsQueue.isEmpty()) {
-						synchronized (this) {
-							flush = false;
-						}
-						synchronized (this.distributor) {
-							this.distributor.notify();
-						}
+					if (this.events.process(this.eventsManager) > 0) {
+						attempt = 0;
+					} else {
+						EventRingBuffer.backOff(attempt++);
 					}
 				}
 			} catch (InterruptedException e) {
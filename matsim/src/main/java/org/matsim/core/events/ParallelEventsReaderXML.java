@@ -0,0 +1,506 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelEventsReaderXML.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.internal.MatsimReader;
+import org.matsim.core.events.MatsimEventsReader.CustomEventMapper;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Reads xml events files (also compressed ones) using several threads, for analyses that read large events files.
+ * <p></p>
+ * The work is done in a pipeline: One thread reads and decompresses the file and cuts it into chunks of complete
+ * events, several threads parse the chunks, and one thread creates the events in the original order, in the same way
+ * as {@link MatsimEventsReader} does. The events are passed as {@link EventArray}s to the events manager from the
+ * thread that calls the reader, so the event handlers do not need to be thread-safe.
+ * <p></p>
+ * The parser only understands the subset of xml that is used by events files: empty <code>event</code> elements
+ * with attributes, surrounded by an <code>events</code> element.
+ */
+public final class ParallelEventsReaderXML implements MatsimReader {
+
+	private final static Logger log = LogManager.getLogger(ParallelEventsReaderXML.class);
+
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	private static final byte[] EVENT_START = "<event".getBytes(StandardCharsets.US_ASCII);
+	private static final String ATTRIBUTE_TIME = "time";
+	private static final String ATTRIBUTE_TYPE = "type";
+
+	private static final ParsedChunk END = new ParsedChunk(0);
+	private static final Batch LAST_BATCH = new Batch(null, null);
+
+	private final EventsManager events;
+	private final int numberOfThreads;
+	private final List<CustomEventMapper> customEventMappers = new ArrayList<>();
+	private final List<String> customEventTypes = new ArrayList<>();
+
+	public ParallelEventsReaderXML(final EventsManager events) {
+		this(events, Math.max(1, Runtime.getRuntime().availableProcessors() - 2));
+	}
+
+	/**
+	 * @param numberOfThreads the number of threads parsing the xml, in addition to the reading thread and the thread
+	 *                        creating the events.
+	 */
+	public ParallelEventsReaderXML(final EventsManager events, int numberOfThreads) {
+		this.events = events;
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	public void addCustomEventMapper(String eventType, CustomEventMapper mapper) {
+		this.customEventTypes.add(eventType);
+		this.customEventMappers.add(mapper);
+	}
+
+	@Override
+	public void readFile(final String filename) {
+		readURL(IOUtils.resolveFileOrResource(filename));
+	}
+
+	@Override
+	public void readURL(final URL url) {
+		log.info("starting to read events from " + url + " using " + this.numberOfThreads + " parser threads...");
+		try (InputStream in = IOUtils.getInputStream(url)) {
+			readStream(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void readStream(final InputStream in) {
+		ExecutorService parsers = Executors.newFixedThreadPool(this.numberOfThreads, r -> {
+			Thread thread = new Thread(r, "ParallelEventsReaderXML-parser");
+			thread.setDaemon(true);
+			return thread;
+		});
+		BlockingQueue<Future<ParsedChunk>> chunks = new ArrayBlockingQueue<>(2 * this.numberOfThreads + 2);
+		BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(4);
+
+		Thread readThread = new Thread(() -> readChunks(in, parsers, chunks), "ParallelEventsReaderXML-reader");
+		Thread eventsThread = new Thread(() -> createEvents(chunks, batches), "ParallelEventsReaderXML-events");
+		readThread.setDaemon(true);
+		eventsThread.setDaemon(true);
+		readThread.start();
+		eventsThread.start();
+
+		try {
+			while (true) {
+				Batch batch = batches.take();
+				if (batch.error != null) {
+					throw new RuntimeException("Error while reading events.", batch.error);
+				}
+				if (batch == LAST_BATCH) {
+					break;
+				}
+				this.events.processEvents(batch.events);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			readThread.interrupt();
+			eventsThread.interrupt();
+			parsers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Cuts the decompressed data into chunks that only contain complete events and hands them to the parsers.
+	 */
+	private static void readChunks(InputStream in, ExecutorService parsers, BlockingQueue<Future<ParsedChunk>> chunks) {
+		try {
+			try {
+				byte[] buffer = new byte[CHUNK_SIZE];
+				int length = 0;
+				while (true) {
+					int n = in.read(buffer, length, buffer.length - length);
+					if (n < 0) {
+						break;
+					}
+					length += n;
+					if (length < buffer.length) {
+						continue;
+					}
+					int end = lastEventStart(buffer, length);
+					if (end <= 0) {
+						// a single event that is larger than the buffer
+						buffer = Arrays.copyOf(buffer, buffer.length * 2);
+						continue;
+					}
+					byte[] chunk = Arrays.copyOf(buffer, end);
+					chunks.put(parsers.submit(() -> parse(chunk, chunk.length)));
+					byte[] next = new byte[Math.max(CHUNK_SIZE, 2 * (length - end))];
+					System.arraycopy(buffer, end, next, 0, length - end);
+					buffer = next;
+					length = length - end;
+				}
+				byte[] chunk = buffer;
+				int chunkLength = length;
+				chunks.put(parsers.submit(() -> parse(chunk, chunkLength)));
+				chunks.put(CompletableFuture.completedFuture(END));
+			} catch (IOException | RuntimeException | Error e) {
+				chunks.put(CompletableFuture.failedFuture(e));
+			}
+		} catch (InterruptedException e) {
+			// the reader was stopped
+		}
+	}
+
+	/**
+	 * @return the position of the last event start tag in the buffer, -1 if there is none.
+	 */
+	private static int lastEventStart(byte[] buffer, int length) {
+		outer:
+		for (int i = length - EVENT_START.length - 1; i >= 0; i--) {
+			for (int j = 0; j < EVENT_START.length; j++) {
+				if (buffer[i + j] != EVENT_START[j]) {
+					continue outer;
+				}
+			}
+			if (isWhitespace(buffer[i + EVENT_START.length])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Creates the events of the parsed chunks in the original order.
+	 */
+	private void createEvents(BlockingQueue<Future<ParsedChunk>> chunks, BlockingQueue<Batch> batches) {
+		try {
+			try {
+				BatchCollector collector = new BatchCollector();
+				EventsReaderXMLv1 delegate = new EventsReaderXMLv1(collector);
+				for (int i = 0; i < this.customEventTypes.size(); i++) {
+					delegate.addCustomEventMapper(this.customEventTypes.get(i), this.customEventMappers.get(i));
+				}
+				AttributesImpl attributes = new AttributesImpl();
+				while (true) {
+					ParsedChunk chunk = chunks.take().get();
+					if (chunk == END) {
+						break;
+					}
+					collector.batch = new EventArray();
+					for (int e = 0; e < chunk.size; e++) {
+						attributes.clear();
+						for (int a = chunk.attributeOffsets[e]; a < chunk.attributeOffsets[e + 1]; a += 2) {
+							String key = chunk.attributes[a];
+							attributes.addAttribute("", key, key, "CDATA", chunk.attributes[a + 1]);
+						}
+						delegate.startEvent(chunk.times[e], chunk.types[e], attributes);
+					}
+					if (collector.batch.size() > 0) {
+						batches.put(new Batch(collector.batch, null));
+					}
+				}
+				batches.put(LAST_BATCH);
+			} catch (ExecutionException e) {
+				batches.put(new Batch(null, e.getCause()));
+			} catch (RuntimeException | Error e) {
+				batches.put(new Batch(null, e));
+			}
+		} catch (InterruptedException e) {
+			// the reader was stopped
+		}
+	}
+
+	/**
+	 * Extracts the time, type and other attributes of all events in the data.
+	 */
+	static ParsedChunk parse(byte[] data, int length) {
+		ParsedChunk chunk = new ParsedChunk(length / 100 + 16);
+		KeyCache keys = new KeyCache();
+		List<String> attributes = new ArrayList<>(length / 15 + 16);
+		int pos = 0;
+		while (true) {
+			while (pos < length && data[pos] != '<') {
+				pos++;
+			}
+			if (pos >= length) {
+				break;
+			}
+			if (!startsWith(data, pos, length, EVENT_START) || pos + EVENT_START.length >= length || !isWhitespace(data[pos + EVENT_START.length])) {
+				pos = skipTag(data, pos, length);
+				continue;
+			}
+			pos += EVENT_START.length;
+
+			double time = Double.NaN;
+			String type = null;
+			int attributesStart = attributes.size();
+			while (true) {
+				while (pos < length && isWhitespace(data[pos])) {
+					pos++;
+				}
+				if (pos >= length) {
+					throw new IllegalArgumentException("Unexpected end of events data.");
+				}
+				if (data[pos] == '/' || data[pos] == '>') {
+					pos = skipTag(data, pos, length);
+					break;
+				}
+				int nameStart = pos;
+				while (pos < length && data[pos] != '=' && !isWhitespace(data[pos])) {
+					pos++;
+				}
+				String key = keys.get(data, nameStart, pos - nameStart);
+				while (pos < length && data[pos] != '"' && data[pos] != '\'') {
+					pos++;
+				}
+				if (pos >= length) {
+					throw new IllegalArgumentException("Unexpected end of events data.");
+				}
+				byte quote = data[pos++];
+				int valueStart = pos;
+				boolean hasEntities = false;
+				while (pos < length && data[pos] != quote) {
+					hasEntities |= data[pos] == '&';
+					pos++;
+				}
+				if (pos >= length) {
+					throw new IllegalArgumentException("Unexpected end of events data.");
+				}
+				int valueLength = pos - valueStart;
+				pos++;
+				if (key.equals(ATTRIBUTE_TYPE)) {
+					type = keys.get(data, valueStart, valueLength);
+				} else {
+					String value = new String(data, valueStart, valueLength, StandardCharsets.UTF_8);
+					if (hasEntities) {
+						value = decodeEntities(value);
+					}
+					if (key.equals(ATTRIBUTE_TIME)) {
+						time = Double.parseDouble(value);
+					} else {
+						attributes.add(key);
+						attributes.add(value);
+					}
+				}
+			}
+			if (type == null || Double.isNaN(time)) {
+				throw new IllegalArgumentException("Event without time or type: attributes " + attributes.subList(attributesStart, attributes.size()));
+			}
+			chunk.add(time, type, attributes.size());
+		}
+		chunk.attributes = attributes.toArray(new String[0]);
+		return chunk;
+	}
+
+	private static int skipTag(byte[] data, int pos, int length) {
+		if (startsWith(data, pos, length, "<!--".getBytes(StandardCharsets.US_ASCII))) {
+			while (pos < length && !(data[pos] == '>' && data[pos - 1] == '-' && data[pos - 2] == '-')) {
+				pos++;
+			}
+			return pos + 1;
+		}
+		while (pos < length && data[pos] != '>') {
+			pos++;
+		}
+		return pos + 1;
+	}
+
+	private static boolean startsWith(byte[] data, int pos, int length, byte[] prefix) {
+		if (pos + prefix.length > length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[pos + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	private static String decodeEntities(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		int pos = 0;
+		while (pos < value.length()) {
+			char c = value.charAt(pos);
+			int end = c == '&' ? value.indexOf(';', pos) : -1;
+			if (end < 0) {
+				sb.append(c);
+				pos++;
+				continue;
+			}
+			String entity = value.substring(pos + 1, end);
+			switch (entity) {
+				case "lt": sb.append('<'); break;
+				case "gt": sb.append('>'); break;
+				case "amp": sb.append('&'); break;
+				case "quot": sb.append('"'); break;
+				case "apos": sb.append('\''); break;
+				default:
+					if (entity.startsWith("#x")) {
+						sb.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+					} else if (entity.startsWith("#")) {
+						sb.appendCodePoint(Integer.parseInt(entity.substring(1)));
+					} else {
+						throw new IllegalArgumentException("Unknown entity &" + entity + "; in events data.");
+					}
+			}
+			pos = end + 1;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Re-uses the strings of attribute names and event types, there are only a few different ones.
+	 */
+	private static final class KeyCache {
+
+		private byte[][] bytes = new byte[16][];
+		private String[] strings = new String[16];
+		private int size = 0;
+
+		String get(byte[] data, int start, int length) {
+			outer:
+			for (int i = 0; i < this.size; i++) {
+				byte[] candidate = this.bytes[i];
+				if (candidate.length != length) {
+					continue;
+				}
+				for (int j = 0; j < length; j++) {
+					if (candidate[j] != data[start + j]) {
+						continue outer;
+					}
+				}
+				return this.strings[i];
+			}
+			String string = new String(data, start, length, StandardCharsets.UTF_8);
+			if (this.size < 256) {
+				if (this.size == this.bytes.length) {
+					this.bytes = Arrays.copyOf(this.bytes, this.size * 2);
+					this.strings = Arrays.copyOf(this.strings, this.size * 2);
+				}
+				this.bytes[this.size] = Arrays.copyOfRange(data, start, start + length);
+				this.strings[this.size] = string;
+				this.size++;
+			}
+			return string;
+		}
+	}
+
+	static final class ParsedChunk {
+
+		int size = 0;
+		double[] times;
+		String[] types;
+		// the attributes of event i are at attributeOffsets[i] until attributeOffsets[i + 1], as key and value
+		int[] attributeOffsets;
+		String[] attributes;
+
+		ParsedChunk(int capacity) {
+			this.times = new double[capacity];
+			this.types = new String[capacity];
+			this.attributeOffsets = new int[capacity + 1];
+		}
+
+		void add(double time, String type, int attributesEnd) {
+			if (this.size == this.times.length) {
+				int capacity = this.size * 2;
+				this.times = Arrays.copyOf(this.times, capacity);
+				this.types = Arrays.copyOf(this.types, capacity);
+				this.attributeOffsets = Arrays.copyOf(this.attributeOffsets, capacity + 1);
+			}
+			this.times[this.size] = time;
+			this.types[this.size] = type;
+			this.size++;
+			this.attributeOffsets[this.size] = attributesEnd;
+		}
+	}
+
+	private static final class Batch {
+
+		private final EventArray events;
+		private final Throwable error;
+
+		Batch(EventArray events, Throwable error) {
+			this.events = events;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Collects the events created by {@link EventsReaderXMLv1}.
+	 */
+	private static final class BatchCollector implements EventsManager {
+
+		private EventArray batch;
+
+		@Override
+		public void processEvent(Event event) {
+			this.batch.add(event);
+		}
+
+		@Override
+		public void addHandler(EventHandler handler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void removeHandler(EventHandler handler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void resetHandlers(int iteration) {
+		}
+
+		@Override
+		public void initProcessing() {
+		}
+
+		@Override
+		public void afterSimStep(double time) {
+		}
+
+		@Override
+		public void finishProcessing() {
+		}
+	}
+}
@@ -22,7 +22,11 @@ package org.matsim.core.events;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
@@ -34,10 +38,15 @@ import javax.inject.Inject;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.HasLinkId;
+import org.matsim.api.core.v01.events.HasPersonId;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.groups.ParallelEventHandlingConfigGroup;
 import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.events.handler.PartitionableEventHandler;
+import org.matsim.core.events.handler.PartitionableEventHandler.Partitioning;
 import org.matsim.core.gbl.Gbl;
 
 /**
@@ -45,6 +54,10 @@ import org.matsim.core.gbl.Gbl;
  * When a Time Step of the QSim ends, all Events that have been created
  * in that Time Step are processed before the simulation can go on.
  * This is necessary e.g. when using Within-day Replanning.
+ * <p></p>
+ * The processing time of the handlers is measured, and before each iteration the handlers are assigned to the threads
+ * such that all threads have about the same load.  Handlers that implement {@link PartitionableEventHandler} are split
+ * into one partition per thread.
  *
  * @author cdobler
  */
@@ -52,17 +65,27 @@ class SimStepParallelEventsManagerImpl implements EventsManager {
 
 	private final static Logger log = LogManager.getLogger(SimStepParallelEventsManagerImpl.class);
 
+	private final static Partitioning[] PARTITIONINGS = Partitioning.values();
+
 	private final int numOfThreads;
 	private CyclicBarrier simStepEndBarrier;
 	private CyclicBarrier iterationEndBarrier;
     private ProcessEventsRunnable[] runnables;
 	private EventsManagerImpl[] eventsManagers;
 	private EventsManagerImpl delegate;
+	private HandlerRegistrations registrations;
 	private ProcessedEventsChecker processedEventsChecker;
 
 	private boolean parallelMode = false;
 	private int handlerCount = 0;
 
+	// the handlers that are assigned to one of the threads as a whole, in the order they were added
+	private final List<EventHandler> handlers = new ArrayList<>();
+	private final Map<EventHandler, Integer> handlerThreads = new IdentityHashMap<>();
+	// the partition handlers per partitionable handler, and the events managers per thread and partitioning
+	private final Map<EventHandler, EventHandler[]> partitionHandlers = new IdentityHashMap<>();
+	private EventsManagerImpl[][] partitionEventsManagers;
+
 	private AtomicLong counter;
 	private AtomicReference<Throwable> hadException = new AtomicReference<>();
 
@@ -90,7 +113,14 @@ class SimStepParallelEventsManagerImpl implements EventsManager {
 		this.delegate = new EventsManagerImpl();
 
 		this.eventsManagers = new EventsManagerImpl[this.numOfThreads];
-		for (int i = 0; i < numOfThreads; i++) this.eventsManagers[i] = new EventsManagerImpl();
+		// the delegate is only used while the threads are not processing events
+		this.registrations = new HandlerRegistrations();
+		for (int i = 0; i < numOfThreads; i++) this.eventsManagers[i] = new EventsManagerImpl(this.registrations);
+
+		this.partitionEventsManagers = new EventsManagerImpl[this.numOfThreads][PARTITIONINGS.length];
+		if (this.numOfThreads > 1) {
+			for (EventsManagerImpl eventsManager : this.eventsManagers) eventsManager.setMeasureHandlerTimes(true);
+		}
 	}
 
 	@Override
@@ -109,7 +139,25 @@ class SimStepParallelEventsManagerImpl implements EventsManager {
 	public void addHandler(final EventHandler handler) {
 		delegate.addHandler(handler);
 
-		eventsManagers[handlerCount % numOfThreads].addHandler(handler);
+		if (numOfThreads > 1 && handler instanceof PartitionableEventHandler) {
+			PartitionableEventHandler partitionable = (PartitionableEventHandler) handler;
+			int partitioning = partitionable.getPartitioning().ordinal();
+			EventHandler[] partitions = new EventHandler[numOfThreads];
+			for (int i = 0; i < numOfThreads; i++) {
+				partitions[i] = partitionable.getPartitionHandler(i, numOfThreads);
+				if (partitionEventsManagers[i][partitioning] == null) {
+					partitionEventsManagers[i][partitioning] = new EventsManagerImpl(this.registrations);
+					partitionEventsManagers[i][partitioning].setMeasureHandlerTimes(true);
+				}
+				partitionEventsManagers[i][partitioning].addHandler(partitions[i]);
+			}
+			partitionHandlers.put(handler, partitions);
+		} else {
+			int thread = handlerCount % numOfThreads;
+			eventsManagers[thread].addHandler(handler);
+			handlers.add(handler);
+			handlerThreads.put(handler, thread);
+		}
 		handlerCount++;
 	}
 
@@ -118,16 +166,97 @@ class SimStepParallelEventsManagerImpl implements EventsManager {
 		delegate.removeHandler(handler);
 
 		for (EventsManager eventsManager : eventsManagers) eventsManager.removeHandler(handler);
+		handlers.remove(handler);
+		handlerThreads.remove(handler);
+
+		EventHandler[] partitions = partitionHandlers.remove(handler);
+		if (partitions != null) {
+			for (int i = 0; i < numOfThreads; i++) {
+				for (EventsManager eventsManager : partitionEventsManagers[i]) {
+					if (eventsManager != null) eventsManager.removeHandler(partitions[i]);
+				}
+			}
+		}
 	}
 
 	@Override
 	public void resetHandlers(int iteration) {
 		delegate.resetHandlers(iteration);
+		for (EventsManagerImpl[] eventsManagers : partitionEventsManagers) {
+			for (EventsManagerImpl eventsManager : eventsManagers) {
+				if (eventsManager != null) eventsManager.resetHandlers(iteration);
+			}
+		}
 		counter.set(0);
 	}
 
+	/**
+	 * Assigns the handlers to the threads based on their processing time in the last iteration, with the heaviest
+	 * handlers first, each to the thread with the least load so far.  The partitions of partitionable handlers stay
+	 * with their threads.  The handlers are only moved if this reduces the load of the busiest thread noticeably.
+	 */
+	private void rebalanceHandlers() {
+		if (numOfThreads == 1) return;
+
+		double[] currentLoad = new double[numOfThreads];
+		double[] newLoad = new double[numOfThreads];
+		for (int i = 0; i < numOfThreads; i++) {
+			for (EventHandler[] partitions : partitionHandlers.values()) {
+				for (EventsManagerImpl eventsManager : partitionEventsManagers[i]) {
+					if (eventsManager != null) newLoad[i] += eventsManager.getEstimatedHandlerTime(partitions[i]);
+				}
+			}
+		}
+		System.arraycopy(newLoad, 0, currentLoad, 0, numOfThreads);
+
+		Map<EventHandler, Long> handlerTimes = new IdentityHashMap<>();
+		for (EventHandler handler : handlers) {
+			int thread = handlerThreads.get(handler);
+			long time = eventsManagers[thread].getEstimatedHandlerTime(handler);
+			handlerTimes.put(handler, time);
+			currentLoad[thread] += time;
+		}
+		if (Arrays.stream(currentLoad).max().orElse(0) == 0) return; // nothing measured yet
+
+		List<EventHandler> sortedHandlers = new ArrayList<>(handlers);
+		sortedHandlers.sort(Comparator.comparing(handlerTimes::get).reversed());
+		Map<EventHandler, Integer> newHandlerThreads = new IdentityHashMap<>();
+		for (EventHandler handler : sortedHandlers) {
+			int thread = 0;
+			for (int i = 1; i < numOfThreads; i++) {
+				if (newLoad[i] < newLoad[thread]) thread = i;
+			}
+			newHandlerThreads.put(handler, thread);
+			newLoad[thread] += handlerTimes.get(handler);
+		}
+
+		double currentMax = Arrays.stream(currentLoad).max().getAsDouble();
+		double newMax = Arrays.stream(newLoad).max().getAsDouble();
+		log.info(String.format("events processing load of the busiest thread in the last iteration: %.0f ms, after rebalancing: %.0f ms", currentMax / 1e6, newMax / 1e6));
+		if (newMax > 0.9 * currentMax) return;
+
+		for (EventHandler handler : handlers) {
+			int oldThread = handlerThreads.get(handler);
+			int newThread = newHandlerThreads.get(handler);
+			if (oldThread != newThread) {
+				log.info("moving " + handler.getClass().getName() + " (" + handlerTimes.get(handler) / 1000000 + " ms) from thread " + oldThread + " to thread " + newThread);
+				eventsManagers[oldThread].removeHandler(handler);
+				eventsManagers[newThread].addHandler(handler);
+				handlerThreads.put(handler, newThread);
+			}
+		}
+	}
+
 	@Override
 	public void initProcessing() {
+		rebalanceHandlers();
+		for (EventsManagerImpl eventsManager : this.eventsManagers) eventsManager.resetHandlerTimes();
+		for (EventsManagerImpl[] eventsManagers : this.partitionEventsManagers) {
+			for (EventsManagerImpl eventsManager : eventsManagers) {
+				if (eventsManager != null) eventsManager.resetHandlerTimes();
+			}
+		}
+
 		delegate.initProcessing();
 		for (EventsManager eventsManager : this.eventsManagers) eventsManager.initProcessing();
 
@@ -161,7 +290,7 @@ class SimStepParallelEventsManagerImpl implements EventsManager {
 
 		runnables = new ProcessEventsRunnable[numOfThreads];
 		for (int i = 0; i < numOfThreads; i++) {
-			ProcessEventsRunnable processEventsRunnable = new ProcessEventsRunnable(eventsManagers[i], processedEventsChecker,
+			ProcessEventsRunnable processEventsRunnable = new ProcessEventsRunnable(eventsManagers[i], partitionEventsManagers[i], i, numOfThreads, processedEventsChecker,
                     waitForEmptyQueuesBarrier, simStepEndBarrier, iterationEndBarrier, eventsQueues.get(i), eventsQueues.get(i + 1));
 			runnables[i] = processEventsRunnable;
 			Thread thread = new Thread(processEventsRunnable);
@@ -250,6 +379,10 @@ class SimStepParallelEventsManagerImpl implements EventsManager {
 	private static class ProcessEventsRunnable implements Runnable {
 
 		private final EventsManager eventsManager;
+		// per partitioning, null if there are no handlers with that partitioning
+		private final EventsManager[] partitionEventsManagers;
+		private final int partition;
+		private final int numberOfPartitions;
 		private final ProcessedEventsChecker processedEventsChecker;
 		private final CyclicBarrier waitForEmptyQueuesBarrier;
 		private final CyclicBarrier simStepEndBarrier;
@@ -258,10 +391,14 @@ class SimStepParallelEventsManagerImpl implements EventsManager {
 		private final Queue<Event> nextEventsQueue;
 		private double lastEventTime = 0.0;
 
-		public ProcessEventsRunnable(EventsManager eventsManager, ProcessedEventsChecker processedEventsChecker,
+		public ProcessEventsRunnable(EventsManager eventsManager, EventsManager[] partitionEventsManagers, int partition,
+				int numberOfPartitions, ProcessedEventsChecker processedEventsChecker,
 				CyclicBarrier waitForEmptyQueuesBarrier,CyclicBarrier simStepEndBarrier,
 				CyclicBarrier iterationEndBarrier, Queue<Event> eventsQueue, Queue<Event> nextEventsQueue) {
 			this.eventsManager = eventsManager;
+			this.partitionEventsManagers = partitionEventsManagers;
+			this.partition = partition;
+			this.numberOfPartitions = numberOfPartitions;
 			this.processedEventsChecker = processedEventsChecker;
 			this.waitForEmptyQueuesBarrier = waitForEmptyQueuesBarrier;
 			this.simStepEndBarrier = simStepEndBarrier;
@@ -342,6 +479,11 @@ class SimStepParallelEventsManagerImpl implements EventsManager {
 						}
 					}
 					eventsManager.processEvent(event);
+					for (int i = 0; i < partitionEventsManagers.length; i++) {
+						if (partitionEventsManagers[i] != null && isInPartition(event, PARTITIONINGS[i])) {
+							partitionEventsManagers[i].processEvent(event);
+						}
+					}
 				}
 				iterationEndBarrier.await();
 			} catch (InterruptedException | BrokenBarrierException e) {
@@ -354,6 +496,16 @@ class SimStepParallelEventsManagerImpl implements EventsManager {
 			this.eventsQueue.add(event);
 		}
 
+		private boolean isInPartition(Event event, Partitioning partitioning) {
+			Id<?> id = null;
+			if (partitioning == Partitioning.byPerson && event instanceof HasPersonId) {
+				id = ((HasPersonId) event).getPersonId();
+			} else if (partitioning == Partitioning.byLink && event instanceof HasLinkId) {
+				id = ((HasLinkId) event).getLinkId();
+			}
+			return id == null || id.index() % numberOfPartitions == partition;
+		}
+
 	}	// ProcessEventsRunnable
 
 	private static class ProcessedEventsChecker implements Runnable {
@@ -0,0 +1,354 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventWriterBinary.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.algorithms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+
+/**
+ * Writes events in a binary, column oriented format that can be read much faster than xml, see
+ * {@link org.matsim.core.events.EventsReaderBinary}.
+ * <p></p>
+ * The events are written in chunks of up to {@link #CHUNK_SIZE} events. The header of a chunk contains the type and
+ * the time of every event, the times being delta-encoded. All other attributes are stored in one block per event
+ * type, column by column. Attribute values are replaced by indices into a dictionary that grows over the whole file,
+ * so every id is only stored once. Columns where almost every value is new are stored inline instead. The header and
+ * the blocks are compressed separately, so a reader can skip the blocks of event types it is not interested in.
+ * <p></p>
+ * Layout of the file, all numbers are unsigned varints unless noted otherwise:
+ * <pre>
+ * file    := MAGIC VERSION chunk* 0
+ * chunk   := 1 part(header) numberOfBlocks (eventType part(block))*
+ * part    := rawLength compressedLength deflatedBytes
+ * header  := numberOfEvents numberOfNewEntries string* eventType* timeEncoding time*
+ * block   := numberOfEvents numberOfColumns column*
+ * column  := key encoding value*
+ * string  := length utf8Bytes
+ * </pre>
+ * Event types and keys are dictionary indices. Times are either zigzag-encoded differences of whole seconds
+ * ({@link #TIMES_DELTA}) or 8 byte doubles ({@link #TIMES_RAW}). A value is <code>0</code> if the event does not
+ * have the attribute, <code>1</code> if the attribute is <code>null</code>, and otherwise either the dictionary index
+ * plus 2 ({@link #COLUMN_DICTIONARY}) or the length of the string plus 2 followed by its bytes ({@link
+ * #COLUMN_INLINE}).
+ */
+public final class EventWriterBinary implements EventWriter, BasicEventHandler {
+
+	public static final byte[] MAGIC = "MATSIMEV".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 1;
+	public static final int CHUNK_SIZE = 65536;
+
+	public static final int TIMES_DELTA = 0;
+	public static final int TIMES_RAW = 1;
+	public static final int COLUMN_DICTIONARY = 0;
+	public static final int COLUMN_INLINE = 1;
+
+	// a column is stored inline once this many values were written and almost all of them were new
+	private static final int INLINE_MIN_VALUES = 4096;
+	private static final double INLINE_NEW_SHARE = 0.9;
+
+	// marks attributes with value null, missing attributes are stored as null
+	private static final String NULL_VALUE = new String();
+
+	private final OutputStream out;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final byte[] deflateBuffer = new byte[64 * 1024];
+
+	private final Map<String, Integer> dictionary = new HashMap<>();
+	private final List<String> newEntries = new ArrayList<>();
+
+	private int size = 0;
+	private final String[] types = new String[CHUNK_SIZE];
+	private final double[] times = new double[CHUNK_SIZE];
+	private final Map<String, TypeBlock> blocks = new LinkedHashMap<>();
+
+	public EventWriterBinary(final String outfilename) {
+		this(IOUtils.getOutputStream(IOUtils.getFileUrl(outfilename), false));
+	}
+
+	public EventWriterBinary(final OutputStream stream) {
+		this.out = stream;
+		try {
+			this.out.write(MAGIC);
+			writeVarint(this.out, VERSION);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void handleEvent(final Event event) {
+		String type = event.getEventType();
+		this.types[this.size] = type;
+		this.times[this.size] = event.getTime();
+		this.blocks.computeIfAbsent(type, t -> new TypeBlock()).add(event.getAttributes());
+		this.size++;
+		if (this.size == CHUNK_SIZE) {
+			writeChunk();
+		}
+	}
+
+	@Override
+	public void closeFile() {
+		try {
+			if (this.size > 0) {
+				writeChunk();
+			}
+			this.out.write(0);
+			this.out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.deflater.end();
+		}
+	}
+
+	@Override
+	public void reset(final int iter) {
+	}
+
+	private void writeChunk() {
+		try {
+			// the blocks are encoded before the header, so that the header knows all new dictionary entries
+			int[] typeIndices = new int[this.size];
+			for (int i = 0; i < this.size; i++) {
+				typeIndices[i] = index(this.types[i]);
+			}
+			List<Integer> blockTypes = new ArrayList<>();
+			List<byte[]> encodedBlocks = new ArrayList<>();
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			for (Map.Entry<String, TypeBlock> e : this.blocks.entrySet()) {
+				TypeBlock block = e.getValue();
+				if (block.size > 0) {
+					buffer.reset();
+					block.encode(buffer);
+					blockTypes.add(index(e.getKey()));
+					encodedBlocks.add(buffer.toByteArray());
+				}
+			}
+
+			buffer.reset();
+			writeVarint(buffer, this.size);
+			writeVarint(buffer, this.newEntries.size());
+			for (String entry : this.newEntries) {
+				writeString(buffer, entry);
+			}
+			this.newEntries.clear();
+			for (int typeIndex : typeIndices) {
+				writeVarint(buffer, typeIndex);
+			}
+			encodeTimes(buffer);
+
+			this.out.write(1);
+			writePart(buffer.toByteArray());
+			writeVarint(this.out, encodedBlocks.size());
+			for (int i = 0; i < encodedBlocks.size(); i++) {
+				writeVarint(this.out, blockTypes.get(i));
+				writePart(encodedBlocks.get(i));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Arrays.fill(this.types, 0, this.size, null);
+		this.size = 0;
+	}
+
+	private void encodeTimes(ByteArrayOutputStream buffer) {
+		boolean wholeSeconds = true;
+		for (int i = 0; i < this.size && wholeSeconds; i++) {
+			double time = this.times[i];
+			wholeSeconds = time == (long) time && Math.abs(time) < 1e15;
+		}
+		if (wholeSeconds) {
+			writeVarint(buffer, TIMES_DELTA);
+			long previous = 0;
+			for (int i = 0; i < this.size; i++) {
+				long time = (long) this.times[i];
+				long delta = time - previous;
+				writeVarint(buffer, (delta << 1) ^ (delta >> 63));
+				previous = time;
+			}
+		} else {
+			writeVarint(buffer, TIMES_RAW);
+			for (int i = 0; i < this.size; i++) {
+				long bits = Double.doubleToLongBits(this.times[i]);
+				for (int shift = 56; shift >= 0; shift -= 8) {
+					buffer.write((int) (bits >>> shift));
+				}
+			}
+		}
+	}
+
+	private void writePart(byte[] raw) throws IOException {
+		this.deflater.reset();
+		this.deflater.setInput(raw);
+		this.deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 16);
+		while (!this.deflater.finished()) {
+			int length = this.deflater.deflate(this.deflateBuffer);
+			compressed.write(this.deflateBuffer, 0, length);
+		}
+		writeVarint(this.out, raw.length);
+		writeVarint(this.out, compressed.size());
+		compressed.writeTo(this.out);
+	}
+
+	private int index(String value) {
+		Integer index = this.dictionary.get(value);
+		if (index == null) {
+			index = this.dictionary.size();
+			this.dictionary.put(value, index);
+			this.newEntries.add(value);
+		}
+		return index;
+	}
+
+	private static void writeVarint(OutputStream out, long value) {
+		try {
+			while ((value & ~0x7FL) != 0) {
+				out.write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.write((int) value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * The attributes of all events of one type in the current chunk.
+	 */
+	private final class TypeBlock {
+
+		private int size = 0;
+		private int capacity = 64;
+		private final Map<String, Column> columns = new LinkedHashMap<>();
+
+		void add(Map<String, String> attributes) {
+			if (this.size == this.capacity) {
+				this.capacity = Math.min(CHUNK_SIZE, this.capacity * 2);
+				for (Column column : this.columns.values()) {
+					column.values = Arrays.copyOf(column.values, this.capacity);
+				}
+			}
+			for (Map.Entry<String, String> e : attributes.entrySet()) {
+				String key = e.getKey();
+				if (key.equals(Event.ATTRIBUTE_TIME) || key.equals(Event.ATTRIBUTE_TYPE)) {
+					continue;
+				}
+				Column column = this.columns.get(key);
+				if (column == null) {
+					column = new Column(this.capacity);
+					this.columns.put(key, column);
+				}
+				String value = e.getValue();
+				column.values[this.size] = value == null ? NULL_VALUE : value;
+			}
+			this.size++;
+		}
+
+		void encode(ByteArrayOutputStream buffer) {
+			int usedColumns = 0;
+			for (Column column : this.columns.values()) {
+				if (column.isUsed(this.size)) {
+					usedColumns++;
+				}
+			}
+			writeVarint(buffer, this.size);
+			writeVarint(buffer, usedColumns);
+			for (Map.Entry<String, Column> e : this.columns.entrySet()) {
+				Column column = e.getValue();
+				if (column.isUsed(this.size)) {
+					writeVarint(buffer, index(e.getKey()));
+					column.encode(buffer, this.size);
+				}
+			}
+			this.size = 0;
+		}
+	}
+
+	private final class Column {
+
+		private String[] values;
+		private boolean inline = false;
+		private long writtenValues = 0;
+		private long newValues = 0;
+
+		Column(int capacity) {
+			this.values = new String[capacity];
+		}
+
+		boolean isUsed(int size) {
+			for (int i = 0; i < size; i++) {
+				if (this.values[i] != null) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void encode(ByteArrayOutputStream buffer, int size) {
+			writeVarint(buffer, this.inline ? COLUMN_INLINE : COLUMN_DICTIONARY);
+			for (int i = 0; i < size; i++) {
+				String value = this.values[i];
+				this.values[i] = null;
+				if (value == null) {
+					writeVarint(buffer, 0);
+				} else if (value == NULL_VALUE) {
+					writeVarint(buffer, 1);
+				} else if (this.inline) {
+					byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+					writeVarint(buffer, bytes.length + 2L);
+					buffer.write(bytes, 0, bytes.length);
+				} else {
+					int entries = EventWriterBinary.this.dictionary.size();
+					writeVarint(buffer, index(value) + 2L);
+					this.writtenValues++;
+					if (EventWriterBinary.this.dictionary.size() > entries) {
+						this.newValues++;
+					}
+				}
+			}
+			if (!this.inline && this.writtenValues >= INLINE_MIN_VALUES && this.newValues > INLINE_NEW_SHARE * this.writtenValues) {
+				this.inline = true;
+			}
+		}
+	}
+}
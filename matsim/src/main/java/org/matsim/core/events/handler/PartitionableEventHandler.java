@@ -0,0 +1,48 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PartitionableEventHandler.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.handler;
+
+/**
+ * An event handler whose work can be split by person or by link, so that events managers that process events in
+ * parallel can spread an expensive handler over several threads.
+ * <p></p>
+ * Such an events manager asks the handler for one partition handler per thread.  A partition handler receives all
+ * events whose person id (see {@link org.matsim.api.core.v01.events.HasPersonId}) or link id (see
+ * {@link org.matsim.api.core.v01.events.HasLinkId}) belongs to its partition, i.e. <code>id.index() % numberOfPartitions
+ * == partition</code>, and all events without such an id.  The partition handlers are called concurrently, so they
+ * must only touch state that belongs to the ids of their own partition.
+ * <p></p>
+ * Events managers that do not split handlers just call the handler itself, and also the splitting events managers do so
+ * for events that are processed outside of the mobsim.  So typically, the partition handlers are views of the handler
+ * that share its state.  {@link #reset(int)} is called on the handler and on all partition handlers.
+ */
+public interface PartitionableEventHandler extends EventHandler {
+
+	enum Partitioning { byPerson, byLink }
+
+	Partitioning getPartitioning();
+
+	/**
+	 * @return the handler for the events of the given partition. Is called once per partition.
+	 */
+	EventHandler getPartitionHandler(int partition, int numberOfPartitions);
+
+}
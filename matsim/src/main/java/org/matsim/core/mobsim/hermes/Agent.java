@@ -20,7 +20,7 @@
 package org.matsim.core.mobsim.hermes;
 
 import org.matsim.api.core.v01.Id;
-import org.matsim.core.events.EventArray;
+import org.matsim.api.core.v01.population.Plan;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
 import java.util.ArrayList;
@@ -97,14 +97,22 @@ class Agent {
     // <0110> StopDepartType  | 4 bits unused | 16 bit event id  | 8 bits unused   | 16 bit route id | 16 station id
     protected final PlanArray plan; // TODO - use a byte buffer instead of a long[]...
 
-    protected final EventArray events;
+    // Events of the plan, built when the corresponding plan entry is activated.
+    protected final EventTemplateArray events;
+
+    // Selected plan that plan and events were generated from, and a fingerprint of its content at that time.
+    // Used to keep the encoding across iterations if the plan did not change.
+    private Plan encodedPlan = null;
+    private long encodedPlanFingerprint;
 
     // Current position in plan. Using this index in the plan will yield what
     // the agent is doing currently. Note that we trigger the corresponding
     // events when the plan entry is activated.
     protected int planIndex;
 
-    protected int eventsIndex;
+    // Id of the transit vehicle agent this agent is riding (or last rode), -1 if none.
+    // Used for the enter/leave vehicle events, which are planned without a vehicle.
+    private int transitVehicle = -1;
 
     // Timestamp of when the agent will be ready to exit link.
     protected int linkFinishTime;
@@ -123,7 +131,7 @@ class Agent {
 
     private final static List<Agent> NO_PASSENGERS = Collections.emptyList();
 
-    public Agent(int id, int capacity, PlanArray plan, EventArray events) {
+    public Agent(int id, int capacity, PlanArray plan, EventTemplateArray events) {
         this.id = id;
         this.plan = plan;
         this.events = events;
@@ -159,7 +167,7 @@ class Agent {
         return this.plan;
     }
 
-    public EventArray events() {
+    public EventTemplateArray events() {
         return this.events;
     }
 
@@ -233,6 +241,14 @@ class Agent {
         }
     }
 
+    public int getTransitVehicle() {
+        return transitVehicle;
+    }
+
+    public void setTransitVehicle(int transitVehicle) {
+        this.transitVehicle = transitVehicle;
+    }
+
     public int getNextStopPlanEntry() {
         // TODO - install assert checking if the next entry is an egress?
         // +2 is used to peek where the agent wants to leave the vehicle.
@@ -305,11 +321,31 @@ class Agent {
         return (routeid << 16) | stopid;
     }
 
-    public void reset() {
+    public boolean isEncodedFrom(Plan plan, long fingerprint) {
+        return this.encodedPlan == plan && this.encodedPlanFingerprint == fingerprint;
+    }
+
+    public void setEncodedFrom(Plan plan, long fingerprint) {
+        this.encodedPlan = plan;
+        this.encodedPlanFingerprint = fingerprint;
+    }
+
+    /*
+     * Drops the plan and events, so that they can be generated again.
+     */
+    public void clearPlan() {
         plan.clear();
         events.clear();
+        encodedPlan = null;
+    }
+
+    /*
+     * Rewinds the agent to the beginning of its plan, keeping the plan and events.
+     */
+    public void reset() {
+        events.rewind();
         planIndex = 0;
-        eventsIndex = 0;
+        transitVehicle = -1;
         linkFinishTime = 0;
         if (this.passengersByStop != null) {
             passengersInside = 0;
@@ -0,0 +1,395 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.mobsim.hermes;
+
+import java.util.Arrays;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
+import org.matsim.api.core.v01.events.TransitDriverStartsEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.AgentWaitingForPtEvent;
+import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
+import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
+import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * The events an agent will generate, in the order of its plan. Instead of keeping one {@link Event} object per
+ * planned event for the whole iteration, every event is stored as a template of a few bytes (a type byte followed by
+ * variable-length encoded id indices) and only turned into an event object when the agent actually emits it.
+ * Objects that cannot be encoded as numbers (activities and mode strings, which are owned by the scenario anyway)
+ * are referenced from a small per-agent table.
+ * <p></p>
+ * Events are emitted strictly in order, so the templates are read with a cursor and never need random access.
+ */
+final class EventTemplateArray {
+
+	private static final byte ACTIVITY_START = 1;
+	private static final byte ACTIVITY_END = 2;
+	private static final byte DEPARTURE = 3;
+	private static final byte ARRIVAL = 4;
+	private static final byte TELEPORTATION_ARRIVAL = 5;
+	private static final byte PERSON_ENTERS_VEHICLE = 6;
+	private static final byte PERSON_LEAVES_VEHICLE = 7;
+	private static final byte VEHICLE_ENTERS_TRAFFIC = 8;
+	private static final byte VEHICLE_LEAVES_TRAFFIC = 9;
+	private static final byte LINK_ENTER = 10;
+	private static final byte LINK_LEAVE = 11;
+	private static final byte WAITING_FOR_PT = 12;
+	private static final byte TRANSIT_DRIVER_STARTS = 13;
+	private static final byte VEHICLE_ARRIVES_AT_FACILITY = 14;
+	private static final byte VEHICLE_DEPARTS_AT_FACILITY = 15;
+
+	private byte[] data = new byte[64];
+	// number of bytes used in data
+	private int length = 0;
+	// number of events
+	private int size = 0;
+	private Object[] references = new Object[4];
+	private int referencesSize = 0;
+
+	// position of the next event to be emitted
+	private int cursor = 0;
+	private int cursorIndex = 0;
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the index of the next event that {@link #next} will build.
+	 */
+	int nextIndex() {
+		return cursorIndex;
+	}
+
+	/**
+	 * Moves the cursor back to the first event, keeping all templates.
+	 */
+	void rewind() {
+		cursor = 0;
+		cursorIndex = 0;
+	}
+
+	void clear() {
+		Arrays.fill(references, 0, referencesSize, null);
+		referencesSize = 0;
+		length = 0;
+		size = 0;
+		cursor = 0;
+		cursorIndex = 0;
+	}
+
+	void addActivityStart(Id<Person> person, Id<Link> link, Activity activity) {
+		begin(ACTIVITY_START);
+		writeInt(person.index());
+		writeInt(link.index());
+		writeInt(reference(activity));
+	}
+
+	void addActivityEnd(Id<Person> person, Id<Link> link, Activity activity) {
+		begin(ACTIVITY_END);
+		writeInt(person.index());
+		writeInt(link.index());
+		writeInt(reference(activity));
+	}
+
+	void addDeparture(Id<Person> person, Id<Link> link, String mode, String routingMode) {
+		begin(DEPARTURE);
+		writeInt(person.index());
+		writeInt(link.index());
+		writeInt(reference(mode));
+		writeInt(reference(routingMode));
+	}
+
+	void addArrival(Id<Person> person, Id<Link> link, String mode) {
+		begin(ARRIVAL);
+		writeInt(person.index());
+		writeInt(link.index());
+		writeInt(reference(mode));
+	}
+
+	void addTeleportationArrival(Id<Person> person, double distance, String mode) {
+		begin(TELEPORTATION_ARRIVAL);
+		writeInt(person.index());
+		writeDouble(distance);
+		writeInt(reference(mode));
+	}
+
+	/**
+	 * @param vehicle the vehicle, or <code>null</code> if it is only known at runtime (the transit vehicle the agent boards).
+	 */
+	void addPersonEntersVehicle(Id<Person> person, Id<Vehicle> vehicle) {
+		begin(PERSON_ENTERS_VEHICLE);
+		writeInt(person.index());
+		writeInt(vehicle == null ? 0 : vehicle.index() + 1);
+	}
+
+	/**
+	 * @param vehicle the vehicle, or <code>null</code> if it is only known at runtime (the transit vehicle the agent leaves).
+	 */
+	void addPersonLeavesVehicle(Id<Person> person, Id<Vehicle> vehicle) {
+		begin(PERSON_LEAVES_VEHICLE);
+		writeInt(person.index());
+		writeInt(vehicle == null ? 0 : vehicle.index() + 1);
+	}
+
+	void addVehicleEntersTraffic(Id<Person> driver, Id<Link> link, Id<Vehicle> vehicle, String mode) {
+		begin(VEHICLE_ENTERS_TRAFFIC);
+		writeInt(driver.index());
+		writeInt(link.index());
+		writeInt(vehicle.index());
+		writeInt(reference(mode));
+	}
+
+	void addVehicleLeavesTraffic(Id<Person> driver, Id<Link> link, Id<Vehicle> vehicle, String mode) {
+		begin(VEHICLE_LEAVES_TRAFFIC);
+		writeInt(driver.index());
+		writeInt(link.index());
+		writeInt(vehicle.index());
+		writeInt(reference(mode));
+	}
+
+	void addLinkEnter(Id<Vehicle> vehicle, Id<Link> link) {
+		begin(LINK_ENTER);
+		writeInt(vehicle.index());
+		writeInt(link.index());
+	}
+
+	void addLinkLeave(Id<Vehicle> vehicle, Id<Link> link) {
+		begin(LINK_LEAVE);
+		writeInt(vehicle.index());
+		writeInt(link.index());
+	}
+
+	void addWaitingForPt(Id<Person> person, Id<TransitStopFacility> access, Id<TransitStopFacility> egress) {
+		begin(WAITING_FOR_PT);
+		writeInt(person.index());
+		writeInt(access.index());
+		writeInt(egress.index());
+	}
+
+	void addTransitDriverStarts(Id<Person> driver, Id<Vehicle> vehicle, Id<TransitLine> line, Id<TransitRoute> route, Id<Departure> departure) {
+		begin(TRANSIT_DRIVER_STARTS);
+		writeInt(driver.index());
+		writeInt(vehicle.index());
+		writeInt(line.index());
+		writeInt(route.index());
+		writeInt(departure.index());
+	}
+
+	/**
+	 * @param scheduledTime the scheduled arrival; the delay of the event is computed from it when the event is emitted.
+	 */
+	void addVehicleArrivesAtFacility(Id<Vehicle> vehicle, Id<TransitStopFacility> stop, double scheduledTime) {
+		begin(VEHICLE_ARRIVES_AT_FACILITY);
+		writeInt(vehicle.index());
+		writeInt(stop.index());
+		writeDouble(scheduledTime);
+	}
+
+	/**
+	 * @param scheduledTime the scheduled departure; the delay of the event is computed from it when the event is emitted.
+	 */
+	void addVehicleDepartsAtFacility(Id<Vehicle> vehicle, Id<TransitStopFacility> stop, double scheduledTime) {
+		begin(VEHICLE_DEPARTS_AT_FACILITY);
+		writeInt(vehicle.index());
+		writeInt(stop.index());
+		writeDouble(scheduledTime);
+	}
+
+	/**
+	 * Builds the next event and advances the cursor.
+	 *
+	 * @param transitVehicle index of the vehicle to use for enter/leave vehicle events whose vehicle is only known at runtime.
+	 */
+	Event next(double time, int transitVehicle) {
+		byte type = data[cursor++];
+		cursorIndex++;
+		switch (type) {
+			case ACTIVITY_START: {
+				Id<Person> person = Id.get(readInt(), Person.class);
+				Id<Link> link = Id.get(readInt(), Link.class);
+				Activity activity = (Activity) references[readInt()];
+				return new ActivityStartEvent(time, person, link, activity.getFacilityId(), activity.getType(), activity.getCoord());
+			}
+			case ACTIVITY_END: {
+				Id<Person> person = Id.get(readInt(), Person.class);
+				Id<Link> link = Id.get(readInt(), Link.class);
+				Activity activity = (Activity) references[readInt()];
+				return new ActivityEndEvent(time, person, link, activity.getFacilityId(), activity.getType(), activity.getCoord());
+			}
+			case DEPARTURE: {
+				Id<Person> person = Id.get(readInt(), Person.class);
+				Id<Link> link = Id.get(readInt(), Link.class);
+				String mode = (String) references[readInt()];
+				String routingMode = (String) references[readInt()];
+				return new PersonDepartureEvent(time, person, link, mode, routingMode);
+			}
+			case ARRIVAL: {
+				Id<Person> person = Id.get(readInt(), Person.class);
+				Id<Link> link = Id.get(readInt(), Link.class);
+				return new PersonArrivalEvent(time, person, link, (String) references[readInt()]);
+			}
+			case TELEPORTATION_ARRIVAL: {
+				Id<Person> person = Id.get(readInt(), Person.class);
+				double distance = readDouble();
+				return new TeleportationArrivalEvent(time, person, distance, (String) references[readInt()]);
+			}
+			case PERSON_ENTERS_VEHICLE: {
+				Id<Person> person = Id.get(readInt(), Person.class);
+				return new PersonEntersVehicleEvent(time, person, readVehicle(transitVehicle));
+			}
+			case PERSON_LEAVES_VEHICLE: {
+				Id<Person> person = Id.get(readInt(), Person.class);
+				return new PersonLeavesVehicleEvent(time, person, readVehicle(transitVehicle));
+			}
+			case VEHICLE_ENTERS_TRAFFIC: {
+				Id<Person> driver = Id.get(readInt(), Person.class);
+				Id<Link> link = Id.get(readInt(), Link.class);
+				Id<Vehicle> vehicle = Id.get(readInt(), Vehicle.class);
+				return new VehicleEntersTrafficEvent(time, driver, link, vehicle, (String) references[readInt()], 1);
+			}
+			case VEHICLE_LEAVES_TRAFFIC: {
+				Id<Person> driver = Id.get(readInt(), Person.class);
+				Id<Link> link = Id.get(readInt(), Link.class);
+				Id<Vehicle> vehicle = Id.get(readInt(), Vehicle.class);
+				return new VehicleLeavesTrafficEvent(time, driver, link, vehicle, (String) references[readInt()], 1);
+			}
+			case LINK_ENTER: {
+				Id<Vehicle> vehicle = Id.get(readInt(), Vehicle.class);
+				return new LinkEnterEvent(time, vehicle, Id.get(readInt(), Link.class));
+			}
+			case LINK_LEAVE: {
+				Id<Vehicle> vehicle = Id.get(readInt(), Vehicle.class);
+				return new LinkLeaveEvent(time, vehicle, Id.get(readInt(), Link.class));
+			}
+			case WAITING_FOR_PT: {
+				Id<Person> person = Id.get(readInt(), Person.class);
+				Id<TransitStopFacility> access = Id.get(readInt(), TransitStopFacility.class);
+				return new AgentWaitingForPtEvent(time, person, access, Id.get(readInt(), TransitStopFacility.class));
+			}
+			case TRANSIT_DRIVER_STARTS: {
+				Id<Person> driver = Id.get(readInt(), Person.class);
+				Id<Vehicle> vehicle = Id.get(readInt(), Vehicle.class);
+				Id<TransitLine> line = Id.get(readInt(), TransitLine.class);
+				Id<TransitRoute> route = Id.get(readInt(), TransitRoute.class);
+				return new TransitDriverStartsEvent(time, driver, vehicle, line, route, Id.get(readInt(), Departure.class));
+			}
+			case VEHICLE_ARRIVES_AT_FACILITY: {
+				Id<Vehicle> vehicle = Id.get(readInt(), Vehicle.class);
+				Id<TransitStopFacility> stop = Id.get(readInt(), TransitStopFacility.class);
+				return new VehicleArrivesAtFacilityEvent(time, vehicle, stop, time - readDouble());
+			}
+			case VEHICLE_DEPARTS_AT_FACILITY: {
+				Id<Vehicle> vehicle = Id.get(readInt(), Vehicle.class);
+				Id<TransitStopFacility> stop = Id.get(readInt(), TransitStopFacility.class);
+				return new VehicleDepartsAtFacilityEvent(time, vehicle, stop, time - readDouble());
+			}
+			default:
+				throw new RuntimeException("unknown event template type " + type + " at event " + (cursorIndex - 1));
+		}
+	}
+
+	private Id<Vehicle> readVehicle(int transitVehicle) {
+		int vehicle = readInt();
+		return Id.get(vehicle == 0 ? transitVehicle : vehicle - 1, Vehicle.class);
+	}
+
+	private void begin(byte type) {
+		ensureCapacity(1);
+		data[length++] = type;
+		size++;
+	}
+
+	private int reference(Object object) {
+		// the same few objects (mostly mode strings) are referenced again and again
+		for (int i = 0; i < referencesSize; i++) {
+			if (references[i] == object) {
+				return i;
+			}
+		}
+		if (referencesSize == references.length) {
+			references = Arrays.copyOf(references, references.length * 2);
+		}
+		references[referencesSize] = object;
+		return referencesSize++;
+	}
+
+	private void ensureCapacity(int bytes) {
+		if (length + bytes > data.length) {
+			data = Arrays.copyOf(data, Math.max(data.length * 2, length + bytes));
+		}
+	}
+
+	// unsigned LEB128: 7 bits per byte, the high bit marks that more bytes follow
+	private void writeInt(int value) {
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			data[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data[length++] = (byte) value;
+	}
+
+	private int readInt() {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = data[cursor++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	private void writeDouble(double value) {
+		ensureCapacity(8);
+		long bits = Double.doubleToRawLongBits(value);
+		for (int i = 0; i < 8; i++) {
+			data[length++] = (byte) (bits >>> (8 * i));
+		}
+	}
+
+	private double readDouble() {
+		long bits = 0;
+		for (int i = 0; i < 8; i++) {
+			bits |= (data[cursor++] & 0xFFL) << (8 * i);
+		}
+		return Double.longBitsToDouble(bits);
+	}
+}
@@ -0,0 +1,130 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.mobsim.hermes;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventArray;
+
+/**
+ * Runs several realms in parallel, one thread per realm. Every second consists of two phases:
+ * <ol>
+ *     <li>all realms process their own agents and links in parallel ({@link Realm#step()}),</li>
+ *     <li>the agents that cross a realm border are handed over on a single thread. As in a single realm, the
+ *     agents waking up are handled before the links: first the border agents of all realms
+ *     ({@link Realm#exchangeAgents()}), then the border links of all realms ({@link Realm#exchangeLinks()}), each realm
+ *     after realm. Afterwards the events of the second are merged in the order of the realm index.</li>
+ * </ol>
+ * Since nothing in the parallel phase depends on another realm, the event output does not depend on the thread scheduling
+ * and is the same for every run with the same number of realms.
+ * <p>
+ * The output is not identical to a single realm, though. Within a second, the events of agents in different realms are
+ * merged realm after realm, and agents crossing a border are moved after the parallel phase. The events stay ordered
+ * by time and the events of every agent stay in their order, which is all that the single-threaded QSim guarantees as
+ * well. Under congestion, agents merging into a link from different realms in the same second may also pass it in
+ * another order than with a single realm, where the order depends on when the links were scheduled. Every agent
+ * still passes the same links, but the times of single agents can differ, while aggregate results stay about the same.
+ */
+class ParallelRealms {
+
+	private final Realm[] realms;
+	private final EventsManager eventsManager;
+	private final CyclicBarrier stepBarrier;
+	// queue of sorted events by time, merged from all realms
+	private EventArray sortedEvents = new EventArray();
+	private volatile Throwable failure = null;
+
+	ParallelRealms(Realm[] realms, EventsManager eventsManager) {
+		this.realms = realms;
+		this.eventsManager = eventsManager;
+		this.stepBarrier = new CyclicBarrier(realms.length, this::exchange);
+	}
+
+	private void exchange() {
+		int secs = realms[0].getTime();
+		for (Realm realm : realms) {
+			realm.exchangeAgents();
+		}
+		for (Realm realm : realms) {
+			realm.exchangeLinks();
+		}
+		for (Realm realm : realms) {
+			realm.drainEvents(sortedEvents);
+			realm.nextSecond();
+		}
+		if (HermesConfigGroup.CONCURRENT_EVENT_PROCESSING && secs % 3600 == 0 && sortedEvents.size() > 0) {
+			eventsManager.processEvents(sortedEvents);
+			sortedEvents = new EventArray();
+		}
+	}
+
+	void run() throws Exception {
+		Thread[] threads = new Thread[realms.length];
+		for (int i = 0; i < realms.length; i++) {
+			Realm realm = realms[i];
+			threads[i] = new Thread(() -> {
+				try {
+					while (realm.getTime() != HermesConfigGroup.SIM_STEPS) {
+						realm.step();
+						stepBarrier.await();
+					}
+				} catch (BrokenBarrierException | InterruptedException e) {
+					// another realm failed, its exception is reported
+				} catch (Throwable t) {
+					fail(t, threads);
+				}
+			}, "HermesRealm_" + i);
+			threads[i].setDaemon(true);
+		}
+		// all threads must exist before the first one runs, so that a failing realm can interrupt all others
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure instanceof Exception) {
+			throw (Exception) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+	}
+
+	/**
+	 * Records the first failure and stops the other realms. Resetting the barrier is not enough, as realms that are
+	 * still stepping would wait at the fresh barrier forever, so the other threads are interrupted as well.
+	 */
+	private synchronized void fail(Throwable t, Thread[] threads) {
+		if (failure != null) {
+			return;
+		}
+		failure = t;
+		for (Thread thread : threads) {
+			if (thread != Thread.currentThread()) {
+				thread.interrupt();
+			}
+		}
+	}
+
+	EventArray getSortedEvents() {
+		return sortedEvents;
+	}
+}
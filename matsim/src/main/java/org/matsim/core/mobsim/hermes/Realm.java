@@ -20,35 +20,37 @@ package org.matsim.core.mobsim.hermes;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.events.ActivityEndEvent;
 import org.matsim.api.core.v01.events.Event;
-import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
-import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
 import org.matsim.core.api.experimental.events.EventsManager;
-import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
-import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
 import org.matsim.core.events.EventArray;
-import org.matsim.core.events.ParallelEventsManager;
 import org.matsim.core.utils.collections.IntArrayMap;
 import org.matsim.core.utils.misc.Time;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
-import org.matsim.vehicles.Vehicle;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 
 class Realm {
 	private final ScenarioImporter si;
+    // Index of this realm in ScenarioImporter.realms.
+    private final int realmIndex;
+    private final boolean multipleRealms;
     // Global array of links.
     // Note: the id of the link is its index in the array.
     private final HLink[] links;
-    // Internal realm links on hold until a specific timestamp (in seconds).
-    // Internal means that the source and destination realm of are the same.
+    // Realm links on hold until a specific timestamp (in seconds).
+    // The queues are only created once something is scheduled for that second.
     private final ArrayList<ArrayDeque<HLink>> delayedLinksByWakeupTime;
     // Agents on hold until a specific timestamp (in seconds).
     private final ArrayList<ArrayDeque<Agent>> delayedAgentsByWakeupTime;
+    // Agents and links of this realm whose next step touches a link or stop of another realm. They are
+    // processed in the exchange phase at the end of the current second, when no other realm is running.
+    private final ArrayList<Agent> borderAgents = new ArrayList<>();
+    private final ArrayList<HLink> borderLinks = new ArrayList<>();
+    private boolean exchanging = false;
     // Agents waiting in pt stations. Should be used as follows:
     // agent_stops.get(curr station id).get(line id) -> queue of agents
     private final IdMap<TransitStopFacility, IntArrayMap<ArrayDeque<Agent>>> agent_stops;
@@ -64,23 +66,20 @@ class Realm {
     private int secs;
     Logger log = LogManager.getLogger(Realm.class);
 
-    public Realm(ScenarioImporter scenario, EventsManager eventsManager) throws Exception {
+    public Realm(ScenarioImporter scenario, EventsManager eventsManager, int realmIndex, int numberOfRealms) throws Exception {
     	this.si = scenario;
+        this.realmIndex = realmIndex;
+        this.multipleRealms = numberOfRealms > 1;
         this.links = scenario.hermes_links;
         // The plus one is necessary because we peek into the next slot on each tick.
-        this.delayedLinksByWakeupTime = new ArrayList<>();
-        this.delayedAgentsByWakeupTime = new ArrayList<>();
+        // the last position is to store events that will not happen...
+        this.delayedLinksByWakeupTime = new ArrayList<>(Collections.nCopies(HermesConfigGroup.SIM_STEPS + 2, null));
+        this.delayedAgentsByWakeupTime = new ArrayList<>(Collections.nCopies(HermesConfigGroup.SIM_STEPS + 2, null));
         this.agent_stops = scenario.agent_stops;
         this.route_stops_by_route_no = scenario.route_stops_by_route_no;
         this.line_of_route = scenario.line_of_route;
         this.sorted_events = new EventArray();
         this.eventsManager = eventsManager;
-
-	// the last position is to store events that will not happen...
-        for (int i = 0; i <= HermesConfigGroup.SIM_STEPS + 1; i++) {
-            delayedLinksByWakeupTime.add(new ArrayDeque<>());
-            delayedAgentsByWakeupTime.add(new ArrayDeque<>());
-        }
     }
 
     public void log(int time, String s) {
@@ -89,15 +88,47 @@ class Realm {
         }
     }
 
+    private static <T> ArrayDeque<T> wakeupQueue(ArrayList<ArrayDeque<T>> queuesByWakeupTime, int until) {
+        int slot = Math.min(until, HermesConfigGroup.SIM_STEPS + 1);
+        ArrayDeque<T> queue = queuesByWakeupTime.get(slot);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            queuesByWakeupTime.set(slot, queue);
+        }
+        return queue;
+    }
+
     private void add_delayed_agent(Agent agent, int until) {
         if (HermesConfigGroup.DEBUG_REALMS) log(secs, String.format("agent %d delayed until %d", agent.id, until));
-        delayedAgentsByWakeupTime.get(Math.min(until, HermesConfigGroup.SIM_STEPS + 1)).add(agent);
+        wakeupQueue(delayedAgentsByWakeupTime, until).add(agent);
     }
 
     private void add_delayed_link(HLink link, int until) {
         if (HermesConfigGroup.DEBUG_REALMS)
             log(secs, String.format("link %d delayed until %d size %d peek agent %d", link.id(), until, link.queue().size(), link.queue().peek().id));
-        delayedLinksByWakeupTime.get(Math.min(until, HermesConfigGroup.SIM_STEPS + 1)).add(link);
+        // during the exchange phase, agents may be pushed to links of other realms
+        Realm owner = multipleRealms ? si.realms[si.linkRealms[link.id()]] : this;
+        wakeupQueue(owner.delayedLinksByWakeupTime, until).add(link);
+    }
+
+    /**
+     * @return true if the next plan element of the agent needs a link or stop of another realm. Such agents are
+     * not processed while the realms run in parallel, but in the exchange phase at the end of the second.
+     */
+    private boolean crossesBorder(Agent agent) {
+        if (!multipleRealms || exchanging || agent.finished()) {
+            return false;
+        }
+        long planentry = agent.nextPlan();
+        switch (Agent.getPlanHeader(planentry)) {
+            case Agent.LinkType:
+                return si.linkRealms[Agent.getLinkPlanEntry(planentry)] != realmIndex;
+            case Agent.WaitType:
+            case Agent.StopDepartType:
+                return si.stopRealms[Agent.getStopPlanEntry(planentry)] != realmIndex;
+            default:
+                return false;
+        }
     }
 
     private void advanceAgentandSetEventTime(Agent agent) {
@@ -207,10 +238,10 @@ class Realm {
         // drop agents
         for (Agent out : agent.egress(stopid)) {
             add_delayed_agent(out, secs + 1);
+            // set driver for the agent's events
+            out.setTransitVehicle(agent.id);
             // consume access, activate egress
             advanceAgentandSetEventTime(out);
-            // set driver in agent's event
-            setEventVehicle(out, Agent.getPlanEvent(out.currPlan()), agent.id);
         }
 
         // True is returned as the agent is already in the delayed list.
@@ -232,10 +263,10 @@ class Realm {
                     if (agent.willServeStop(egressStop)) {
                         if (agent.access(egressStop, in)) {
                             removed.add(in);
+                            // set driver for the agent's events
+                            in.setTransitVehicle(agent.id);
                             // consume wait in stop, activate access
                             advanceAgentandSetEventTime(in);
-                            // set driver in agent's event
-                            setEventVehicle(in, Agent.getPlanEvent(in.currPlan()), agent.id);
                         } else {
                             // agent could not enter, likely the vehicle is full
                             break;
@@ -280,6 +311,10 @@ class Realm {
         if (finished) {
             setEventTime(agent, agent.events().size() - 1, secs, true);
         }
+        if (crossesBorder(agent)) {
+            borderAgents.add(agent);
+            return 0;
+        }
         // -1 is used in the processAgent because the agent is not in a link currently.
         if (!finished && !processAgent(agent, -1)) {
             add_delayed_agent(agent, secs + 1);
@@ -291,7 +326,15 @@ class Realm {
     protected int processLinks(HLink link) {
         int routed = 0;
         Agent agent = link.queue().peek();
-        while (agent.linkFinishTime <= secs && link.flow(secs, agent.getFlowCapacityPCUE())) {
+        while (agent.linkFinishTime <= secs) {
+            if (crossesBorder(agent)) {
+                // the rest of the link is processed (and delayed) in the exchange phase
+                borderLinks.add(link);
+                return routed;
+            }
+            if (!link.flow(secs, agent.getFlowCapacityPCUE())) {
+                break;
+            }
             boolean finished = agent.finished();
             // if finished, install times on last event.
             if (finished) {
@@ -317,94 +360,122 @@ class Realm {
     }
 
     public void run() throws Exception {
-    	int routed = 0;
-        Agent agent = null;
-        HLink link = null;
-
         while (secs != HermesConfigGroup.SIM_STEPS) {
-            if (secs % 3600 == 0) {
-                log.info("Hermes running at " + Time.writeTime(secs));
-            }
-            while ((agent = delayedAgentsByWakeupTime.get(secs).poll()) != null) {
-                if (HermesConfigGroup.DEBUG_REALMS) {
-                    log(secs, String.format("Processing agent %d", agent.id));
-                }
-                routed += processAgentActivities(agent);
-
-            }
-            delayedAgentsByWakeupTime.set(secs, null);
-            if (si.isDeterministicPt()) {
-                for (Event e : si.getDeterministicPtEvents().get(secs)) {
-                    sorted_events.add(e);
-                }
-                si.getDeterministicPtEvents().get(secs).clear();
-            }
-
-            while ((link = delayedLinksByWakeupTime.get(secs).poll()) != null) {
-                if (HermesConfigGroup.DEBUG_REALMS) {
-                    log(secs, String.format("Processing link %d", link.id()));
-                }
-                routed += processLinks(link);
-            }
-            delayedLinksByWakeupTime.set(secs, null);
-            if (HermesConfigGroup.DEBUG_REALMS && routed > 0) {
-                log(secs, String.format("Processed %d agents", routed));
-            }
+            step();
             if (HermesConfigGroup.CONCURRENT_EVENT_PROCESSING && secs % 3600 == 0 && sorted_events.size() > 0) {
                 eventsManager.processEvents(sorted_events);
                 sorted_events = new EventArray();
             }
-
-            routed = 0;
             secs += 1;
         }
     }
 
-    public void setEventTime(Agent agent, int eventid, int time, boolean lastevent) {
-        if (eventid != 0) {
-        	EventArray agentevents = agent.events();
-            Event event = agentevents.get(eventid);
+    /**
+     * Processes the agents and links of this realm that wake up in the current second. Agents and links that
+     * need to enter another realm are left for {@link #exchangeAgents()} and {@link #exchangeLinks()}.
+     */
+    void step() {
+        int routed = 0;
+        Agent agent = null;
+        HLink link = null;
 
-            for (; agent.eventsIndex <= eventid; agent.eventsIndex++) {
-            	agentevents.get(agent.eventsIndex).setTime(time);
-                if (HermesConfigGroup.DEBUG_REALMS)
-                    log(secs, String.format("agent %d setEventTime (eventsIndex=%d) %s", agent.id, agent.eventsIndex, agentevents.get(agent.eventsIndex).toString()));
-                sorted_events.add(agentevents.get(agent.eventsIndex));
+        if (secs % 3600 == 0 && realmIndex == 0) {
+            log.info("Hermes running at " + Time.writeTime(secs));
+        }
+        ArrayDeque<Agent> agents = delayedAgentsByWakeupTime.get(secs);
+        while (agents != null && (agent = agents.poll()) != null) {
+            if (HermesConfigGroup.DEBUG_REALMS) {
+                log(secs, String.format("Processing agent %d", agent.id));
             }
+            routed += processAgentActivities(agent);
 
-            // Fix delay for PT events.
-            if (event instanceof VehicleArrivesAtFacilityEvent) {
-                VehicleArrivesAtFacilityEvent vaafe = (VehicleArrivesAtFacilityEvent) event;
-                vaafe.setDelay(vaafe.getTime() - vaafe.getDelay());
+        }
+        delayedAgentsByWakeupTime.set(secs, null);
+        if (si.isDeterministicPt() && realmIndex == 0) {
+            for (Event e : si.getDeterministicPtEvents().get(secs)) {
+                sorted_events.add(e);
+            }
+            si.getDeterministicPtEvents().get(secs).clear();
+        }
 
+        ArrayDeque<HLink> links = delayedLinksByWakeupTime.get(secs);
+        while (links != null && (link = links.poll()) != null) {
+            if (HermesConfigGroup.DEBUG_REALMS) {
+                log(secs, String.format("Processing link %d", link.id()));
             }
-            else if (event instanceof VehicleDepartsAtFacilityEvent) {
-			    VehicleDepartsAtFacilityEvent vdafe = (VehicleDepartsAtFacilityEvent) event;
-			    vdafe.setDelay(vdafe.getTime() - vdafe.getDelay());
-		    }
-		    // This removes actend that is not issued by QSim.
-		    else if (lastevent && event instanceof ActivityEndEvent) {
-		        sorted_events.removeLast();
-		    }
+            routed += processLinks(link);
+        }
+        delayedLinksByWakeupTime.set(secs, null);
+        if (HermesConfigGroup.DEBUG_REALMS && routed > 0) {
+            log(secs, String.format("Processed %d agents", routed));
+        }
+    }
+
+    /**
+     * Processes the agents that were held back by {@link #step()} because they cross the border to another realm.
+     * Must only be called while no other realm is running, since links and stops of other realms are modified.
+     * The realms are exchanged one after the other in the order of their index, which makes the result independent
+     * of the thread scheduling.
+     */
+    void exchangeAgents() {
+        exchanging = true;
+        for (Agent agent : borderAgents) {
+            processAgentActivities(agent);
+        }
+        borderAgents.clear();
+        exchanging = false;
+    }
+
+    /**
+     * Processes the links that were held back by {@link #step()} because their first agent crosses the border to
+     * another realm. Like {@link #exchangeAgents()}, but called after the agents of all realms were exchanged.
+     */
+    void exchangeLinks() {
+        exchanging = true;
+        for (HLink link : borderLinks) {
+            processLinks(link);
+        }
+        borderLinks.clear();
+        exchanging = false;
+    }
+
+    /**
+     * Moves the events of the current second to the given array, to be merged with the events of the other realms.
+     */
+    void drainEvents(EventArray target) {
+        for (int i = 0; i < sorted_events.size(); i++) {
+            target.add(sorted_events.get(i));
         }
+        sorted_events.clear();
+    }
+
+    void nextSecond() {
+        secs += 1;
     }
 
-    public void setEventVehicle(Agent agent, int eventid, int vehicleid) {
+    int getTime() {
+        return secs;
+    }
+
+    public void setEventTime(Agent agent, int eventid, int time, boolean lastevent) {
         if (eventid != 0) {
-            Event event = agent.events().get(eventid);
-            Id<Vehicle> vid = Id.get(si.matsim_id(vehicleid,  true), Vehicle.class);
-            if (event instanceof PersonEntersVehicleEvent) {
-                ((PersonEntersVehicleEvent)event).setVehicleId(vid);
-            } else if (event instanceof PersonLeavesVehicleEvent) {
-                ((PersonLeavesVehicleEvent)event).setVehicleId(vid);
-            } else {
-                throw new RuntimeException(
-                    String.format("vehicle id could not be set for event: %d", eventid));
+            EventTemplateArray agentevents = agent.events();
+            int transitVehicle = agent.getTransitVehicle() < 0 ? -1 : si.matsim_id(agent.getTransitVehicle(), true);
+
+            while (agentevents.nextIndex() <= eventid) {
+                Event event = agentevents.next(time, transitVehicle);
+                if (HermesConfigGroup.DEBUG_REALMS)
+                    log(secs, String.format("agent %d setEventTime (eventsIndex=%d) %s", agent.id, agentevents.nextIndex() - 1, event.toString()));
+                // This removes actend that is not issued by QSim.
+                if (lastevent && agentevents.nextIndex() > eventid && event instanceof ActivityEndEvent) {
+                    break;
+                }
+                sorted_events.add(event);
             }
         }
     }
 
-    ArrayList<ArrayDeque<HLink>> delayedLinks() { return this.delayedLinksByWakeupTime; }
-    ArrayList<ArrayDeque<Agent>> delayedAgents() { return this.delayedAgentsByWakeupTime; }
+    void addDelayedLink(HLink link, int until) { add_delayed_link(link, until); }
+    void addDelayedAgent(Agent agent, int until) { add_delayed_agent(agent, until); }
     EventArray getSortedEvents() { return this.sorted_events; }
 }
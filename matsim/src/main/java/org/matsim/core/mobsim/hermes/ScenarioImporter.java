@@ -25,33 +25,22 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
-import org.matsim.api.core.v01.events.ActivityEndEvent;
-import org.matsim.api.core.v01.events.ActivityStartEvent;
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
-import org.matsim.api.core.v01.events.PersonArrivalEvent;
-import org.matsim.api.core.v01.events.PersonDepartureEvent;
-import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
-import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
-import org.matsim.api.core.v01.events.TransitDriverStartsEvent;
-import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
-import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.api.core.v01.population.Route;
-import org.matsim.core.api.experimental.events.AgentWaitingForPtEvent;
 import org.matsim.core.api.experimental.events.EventsManager;
-import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
-import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
-import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
-import org.matsim.core.events.EventArray;
 import org.matsim.core.mobsim.hermes.Agent.PlanArray;
+import org.matsim.core.mobsim.qsim.qnetsimengine.QNetworkPartitioner;
 import org.matsim.core.population.routes.GenericRouteImpl;
 import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.router.TripStructureUtils;
@@ -78,6 +67,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
 
 class ScenarioImporter {
 
@@ -116,7 +107,13 @@ class ScenarioImporter {
 	// Note: in order to make MATSim Agent ids, some positions in the array might be null.
 	protected Agent[] hermes_agents;
 
-	protected Realm realm;
+	// Realms that simulate the network, one per thread.
+	protected Realm[] realms;
+
+	// realm index of every link and every stop. Should be used as follows:
+	// linkRealms[link id] -> realm index, stopRealms[stop id] -> realm index
+	protected int[] linkRealms;
+	protected int[] stopRealms;
 	private final boolean deterministicPt;
 	// Agents waiting in pt stations. Should be used as follows:
 	// agent_stops.get(curr station id).get(line id) -> queue of agents
@@ -210,7 +207,7 @@ class ScenarioImporter {
 						link.reset();
 					}
 				}
-				// reset agent plans and events
+				// rewind agents, their plans and events are kept for the next iteration
 				for (int i = 0; i < hermes_agents.length; i++) {
 					if (hermes_agents[i] != null) {
 						hermes_agents[i].reset();
@@ -310,7 +307,12 @@ class ScenarioImporter {
 	}
 
 	private void generateRealms() throws Exception {
-		realm = new Realm(this, eventsManager);
+		int numberOfRealms = scenario.getConfig().hermes().getNumberOfRealms();
+		assignRealms(numberOfRealms);
+		realms = new Realm[numberOfRealms];
+		for (int i = 0; i < numberOfRealms; i++) {
+			realms[i] = new Realm(this, eventsManager, i, numberOfRealms);
+		}
 
 		// Put agents in their initial location (link or activity center)
 		for (Agent agent : hermes_agents) {
@@ -332,7 +334,7 @@ class ScenarioImporter {
 				case Agent.SleepForType:
 				case Agent.SleepUntilType:
 					int sleep = Agent.getSleepPlanEntry(planentry);
-					realm.delayedAgents().get(Math.min(sleep, scenario.getConfig().hermes().getEndTime() + 1)).add(agent);
+					realms[initialRealm(agent)].addDelayedAgent(agent, sleep);
 					break;
 				default:
 					LogManager.getLogger(getClass()).error(String.format("ERROR -> unknown plan element type %d", type));
@@ -343,22 +345,78 @@ class ScenarioImporter {
 			if (link != null) {
 				int nextwakeup = link.nexttime();
 				if (nextwakeup > 0) {
-					realm.delayedLinks().get(nextwakeup).add(link);
+					realms[linkRealms[link.id()]].addDelayedLink(link, nextwakeup);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Assigns every link (by its from node) and every stop (by its link) to a realm. The realms are connected regions
+	 * of the network which carry roughly the same number of planned link traversals.
+	 */
+	private void assignRealms(int numberOfRealms) {
+		linkRealms = new int[hermes_links.length];
+		stopRealms = new int[Id.getNumberOfIds(TransitStopFacility.class)];
+		if (numberOfRealms == 1) {
+			return;
+		}
+
+		int[] plannedTraversals = new int[hermes_links.length];
+		for (Agent agent : hermes_agents) {
+			if (agent == null) {
+				continue;
+			}
+			for (int i = 0; i < agent.plan.size(); i++) {
+				long planentry = agent.plan.get(i);
+				if (Agent.getPlanHeader(planentry) == Agent.LinkType) {
+					plannedTraversals[Agent.getLinkPlanEntry(planentry)]++;
 				}
 			}
 		}
+
+		Network network = scenario.getNetwork();
+		IdMap<Node, Integer> nodeRealms = QNetworkPartitioner.partition(network, numberOfRealms,
+				link -> 1 + plannedTraversals[link.getId().index()]);
+		for (Link link : network.getLinks().values()) {
+			linkRealms[link.getId().index()] = nodeRealms.get(link.getFromNode().getId());
+		}
+		for (TransitStopFacility stop : scenario.getTransitSchedule().getFacilities().values()) {
+			if (stop.getLinkId() != null && network.getLinks().containsKey(stop.getLinkId())) {
+				stopRealms[stop.getId().index()] = linkRealms[stop.getLinkId().index()];
+			}
+		}
+	}
+
+	/**
+	 * @return the realm in which the agent will start its first leg, so that it does not need to be handed over.
+	 */
+	private int initialRealm(Agent agent) {
+		if (agent.plan.size() < 2) {
+			return 0;
+		}
+		long planentry = agent.plan.get(1);
+		switch (Agent.getPlanHeader(planentry)) {
+			case Agent.LinkType:
+				return linkRealms[Agent.getLinkPlanEntry(planentry)];
+			case Agent.WaitType:
+			case Agent.StopArriveType:
+			case Agent.StopDepartType:
+				return stopRealms[Agent.getStopPlanEntry(planentry)];
+			default:
+				return 0;
+		}
 	}
 
 	private void processPlanActivity(
 			Id<Person> id,
 			PlanArray flatplan,
-			EventArray events,
+			EventTemplateArray events,
 			Activity act) {
 		int time = 0;
 		int eventid = 0;
 		Id<org.matsim.api.core.v01.network.Link> linkid;
 		Id<ActivityFacility> facid = act.getFacilityId();
-		String type = act.getType();
 
 		// This logic comes from how QSim agents do it...
 		if (facid == null) {
@@ -376,7 +434,7 @@ class ScenarioImporter {
 
 		// hack to avoid a actstart as first event (hermes does not have it).
 		if (flatplan.size() != 0) {
-			events.add(new ActivityStartEvent(0, id, linkid, facid, type, act.getCoord()));
+			events.addActivityStart(id, linkid, act);
 			eventid = events.size() - 1;
 		} else {
 			eventid = 0;
@@ -392,21 +450,20 @@ class ScenarioImporter {
 			// TODO - better way to handle this?
 			flatplan.add(Agent.prepareSleepForEntry(eventid, 0));
 		}
-		events.add(new ActivityEndEvent(0, id, linkid, facid, type, act.getCoord()));
+		events.addActivityEnd(id, linkid, act);
 	}
 
 	private void processPlanNetworkRoute(
 			Person person,
 			PlanArray flatplan,
-			EventArray events,
+			EventTemplateArray events,
 			Leg leg,
 			NetworkRoute netroute,
 			Agent agent) {
 		var id = person.getId();
 		Id<org.matsim.api.core.v01.network.Link> startLId = netroute.getStartLinkId();
 		Id<org.matsim.api.core.v01.network.Link> endLId = netroute.getEndLinkId();
-		Map<Id<Vehicle>, Vehicle> vehicles = scenario.getVehicles().getVehicles();
-		Vehicle v = vehicles.get(VehicleUtils.getVehicleId(person, leg.getMode()));
+		Vehicle v = getVehicle(person, leg);
 		Id<VehicleType> vtypeid = v == null ? VehicleUtils.getDefaultVehicleType().getId() : v.getType().getId();
 		int pcuCategory = this.vehicleTypeMapping.get(vtypeid);
 		Id<Vehicle> vid = v == null ? Id.createVehicleId("v" + person.getId()) : v.getId();
@@ -421,23 +478,27 @@ class ScenarioImporter {
 		if (agent.getStorageCapacityPCUE() == -1) {
 			agent.setStorageCapacityPCUE(getStorageCapacityPCE(pcuCategory));
 		}
-		events.add(new PersonEntersVehicleEvent(0, id, vid));
-		events.add(new VehicleEntersTrafficEvent(0, id, startLId, vid, leg.getMode(), 1));
+		events.addPersonEntersVehicle(id, vid);
+		events.addVehicleEntersTraffic(id, startLId, vid, leg.getMode());
 		if (netroute.getLinkIds().size() > 1 || !startLId.equals(endLId)) {
-			events.add(new LinkLeaveEvent(0, vid, startLId));
+			events.addLinkLeave(vid, startLId);
 		}
 		for (Id<org.matsim.api.core.v01.network.Link> linkid : netroute.getLinkIds()) {
 			int linkId = linkid.index();
-			events.add(new LinkEnterEvent(0, vid, linkid));
+			events.addLinkEnter(vid, linkid);
 			flatplan.add(Agent.prepareLinkEntry(events.size() - 1, linkId, velocity, pcuCategory));
-			events.add(new LinkLeaveEvent(0, vid, linkid));
+			events.addLinkLeave(vid, linkid);
 		}
 		if (netroute.getLinkIds().size() > 1 || !startLId.equals(endLId)) {
-			events.add(new LinkEnterEvent(0, vid, endLId));
+			events.addLinkEnter(vid, endLId);
 			flatplan.add(Agent.prepareLinkEntry(events.size() - 1, egressId, velocity, pcuCategory));
 		}
-		events.add(new VehicleLeavesTrafficEvent(0, id, endLId, vid, leg.getMode(), 1));
-		events.add(new PersonLeavesVehicleEvent(0, id, vid));
+		events.addVehicleLeavesTraffic(id, endLId, vid, leg.getMode());
+		events.addPersonLeavesVehicle(id, vid);
+	}
+
+	private Vehicle getVehicle(Person person, Leg leg) {
+		return scenario.getVehicles().getVehicles().get(VehicleUtils.getVehicleId(person, leg.getMode()));
 	}
 
 	private void populateStops(int srcStopId, int lineId) {
@@ -448,7 +509,7 @@ class ScenarioImporter {
 	private void processPlanTransitRoute(
 			Id<Person> id,
 			PlanArray flatplan,
-			EventArray events,
+			EventTemplateArray events,
 			TransitPassengerRoute troute) {
 		Id<TransitStopFacility> access = troute.getAccessStopId();
 		Id<TransitStopFacility> egress = troute.getEgressStopId();
@@ -459,21 +520,19 @@ class ScenarioImporter {
 
 		populateStops(accessid, lineid);
 
-		// this will be replaced dynamically
-		Id<Vehicle> vid = Id.createVehicleId("tr_X");
-		// Add public transport access
-		events.add(new AgentWaitingForPtEvent(0, id, access, egress));
+		// Add public transport access. The vehicle is only known when the agent boards.
+		events.addWaitingForPt(id, access, egress);
 		flatplan.add(Agent.prepareWaitEntry(events.size() - 1, routeNo, accessid));
-		events.add(new PersonEntersVehicleEvent(0, id, vid));
+		events.addPersonEntersVehicle(id, null);
 		flatplan.add(Agent.prepareAccessEntry(events.size() - 1, routeNo, accessid));
-		events.add(new PersonLeavesVehicleEvent(0, id, vid));
+		events.addPersonLeavesVehicle(id, null);
 		flatplan.add(Agent.prepareEgressEntry(events.size() - 1, routeNo, egressid));
 	}
 
 	private void processPlanElement(
 			Person person,
 			PlanArray flatplan,
-			EventArray events,
+			EventTemplateArray events,
 			PlanElement element,
 			Agent agent) {
 		var id = person.getId();
@@ -486,7 +545,7 @@ class ScenarioImporter {
 				return;
 			}
 
-			events.add(new PersonDepartureEvent(0, id, route.getStartLinkId(), leg.getMode(), TripStructureUtils.getRoutingMode(leg)));
+			events.addDeparture(id, route.getStartLinkId(), leg.getMode(), TripStructureUtils.getRoutingMode(leg));
 			if (route instanceof NetworkRoute) {
 				if (scenario.getConfig().hermes().getMainModes().contains(leg.getMode())) {
 					processPlanNetworkRoute(person, flatplan, events, leg, (NetworkRoute) route, agent);
@@ -502,7 +561,7 @@ class ScenarioImporter {
 				throw new RuntimeException("Route type not supported by Hermes: " + route.getRouteType() + "\n Person:" + id + "\n Leg" + leg + "\n Leg" + route);
 			}
 
-			events.add(new PersonArrivalEvent(0, id, route.getEndLinkId(), leg.getMode()));
+			events.addArrival(id, route.getEndLinkId(), leg.getMode());
 
 		} else if (element instanceof Activity) {
 			processPlanActivity(id, flatplan, events, (Activity) element);
@@ -511,20 +570,20 @@ class ScenarioImporter {
 		}
 	}
 
-	private void processTeleport(Id<Person> id, PlanArray flatplan, EventArray events, Leg element, Route route, String mode) {
+	private void processTeleport(Id<Person> id, PlanArray flatplan, EventTemplateArray events, Leg element, Route route, String mode) {
 		double routeTravelTime = route.getTravelTime().orElse(0.0);
 		double legTravelTime = element.getTravelTime().orElse(0.0);
 		int time = Math.max(0, (int) Math.round(Math.max(routeTravelTime, legTravelTime)) - 2);
 		//2 second is deducted as this is the maximum possible loss during interaction activities
 		flatplan.add(Agent.prepareSleepForEntry(events.size() - 1, time));
-		events.add(new TeleportationArrivalEvent(0, id, route.getDistance(), mode));
+		events.addTeleportationArrival(id, route.getDistance(), mode);
 	}
 
 	private void generateAgent(
 			int agent_id,
 			int capacity,
 			PlanArray flatplan,
-			EventArray events) {
+			EventTemplateArray events) {
 
 		if (events.size() >= HermesConfigGroup.MAX_EVENTS_AGENT) {
 			throw new RuntimeException("exceeded maximum number of agent events");
@@ -554,7 +613,7 @@ class ScenarioImporter {
 	private static class TransitRouteContext {
 		final Agent agent;
 		final PlanArray flatplan;
-		final EventArray flatevents;
+		final EventTemplateArray flatevents;
 		final TransitLine tl;
 		final TransitRoute tr;
 		final int routeNo;
@@ -682,14 +741,14 @@ class ScenarioImporter {
 					c.flatplan.add(Agent.prepareSleepUntilEntry(0, (int) arrivalTime));
 				}
 
-				c.flatevents.add(new VehicleArrivesAtFacilityEvent(0, c.vehId, stopId, arrivalTime));
+				c.flatevents.addVehicleArrivesAtFacility(c.vehId, stopId, arrivalTime);
 				c.flatplan.add(Agent.prepareStopArrivalEntry(c.flatevents.size() - 1, c.routeNo, stopIdIndex));
 				c.agent.setServeStop(stopIdIndex);
 
 				// no event associated to stop delay
 				c.flatplan.add(Agent.prepareStopDelayEntry((int) departureTime, c.routeNo, stopIdIndex));
 
-				c.flatevents.add(new VehicleDepartsAtFacilityEvent(0, c.vehId, stopId, departureTime));
+				c.flatevents.addVehicleDepartsAtFacility(c.vehId, stopId, departureTime);
 				c.flatplan.add(Agent.prepareStopDepartureEntry(c.flatevents.size() - 1, c.routeNo, stopIdIndex));
 
 				c.time = (int) departureTime;
@@ -743,7 +802,7 @@ class ScenarioImporter {
 
 		TransitRouteContext context = new TransitRouteContext(agent, tl, tr, routeNo, depart, this.scenario.getNetwork());
 		PlanArray flatplan = agent.plan;
-		EventArray flatevents = agent.events;
+		EventTemplateArray flatevents = agent.events;
 
 		VehicleType vt = v.getType();
 		NetworkRoute nr = tr.getRoute();
@@ -753,11 +812,11 @@ class ScenarioImporter {
 		String routingmode = TransportMode.pt;
 
 		// Prepare to leave
-		flatevents.add(new TransitDriverStartsEvent(0, driverid, v.getId(), tl.getId(), tr.getId(), depart.getId()));
-		flatevents.add(new PersonDepartureEvent(0, driverid, nr.getStartLinkId(), legmode, routingmode));
-		flatevents.add(new PersonEntersVehicleEvent(0, driverid, v.getId()));
+		flatevents.addTransitDriverStarts(driverid, v.getId(), tl.getId(), tr.getId(), depart.getId());
+		flatevents.addDeparture(driverid, nr.getStartLinkId(), legmode, routingmode);
+		flatevents.addPersonEntersVehicle(driverid, v.getId());
 
-		flatevents.add(new VehicleEntersTrafficEvent(context.time, driverid, nr.getStartLinkId(), v.getId(), legmode, 1));
+		flatevents.addVehicleEntersTraffic(driverid, nr.getStartLinkId(), v.getId(), legmode);
 
 		// Sleep until the time of departure
 		//  the very first flat plan entry does not handle events, so actually add two entries, so the events are correctly handled
@@ -775,14 +834,14 @@ class ScenarioImporter {
 		// last link
 		generateDeterministicVehicleOnLink(context, nr.getEndLinkId(), true, false);
 
-		flatevents.add(new VehicleLeavesTrafficEvent(0, driverid, nr.getEndLinkId(), v.getId(), legmode, 1));
-		flatevents.add(new PersonLeavesVehicleEvent(0, driverid, v.getId()));
-		flatevents.add(new PersonArrivalEvent(0, driverid, nr.getEndLinkId(), legmode));
+		flatevents.addVehicleLeavesTraffic(driverid, nr.getEndLinkId(), v.getId(), legmode);
+		flatevents.addPersonLeavesVehicle(driverid, v.getId());
+		flatevents.addArrival(driverid, nr.getEndLinkId(), legmode);
 	}
 
 	private void generateNondeterministicVehicleOnLink(TransitRouteContext c, Id<Link> linkId, boolean generateLinkEnterEvent, boolean generateLinkLeaveEvent, int velocity, int pcuCategory) {
 		if (generateLinkEnterEvent) {
-			c.flatevents.add(new LinkEnterEvent(0, c.vehId, linkId));
+			c.flatevents.addLinkEnter(c.vehId, linkId);
 			c.flatplan.add(Agent.prepareLinkEntry(c.flatevents.size() - 1, linkId.index(), velocity, pcuCategory));
 		}
 
@@ -798,14 +857,14 @@ class ScenarioImporter {
 				double arrivalTime = arrivalOffsetHelper(c.depart, routeStop);
 				double departureTime = departureOffsetHelper(c.depart, routeStop);
 
-				c.flatevents.add(new VehicleArrivesAtFacilityEvent(0, c.vehId, stopId, arrivalTime));
+				c.flatevents.addVehicleArrivesAtFacility(c.vehId, stopId, arrivalTime);
 				c.flatplan.add(Agent.prepareStopArrivalEntry(c.flatevents.size() - 1, c.routeNo, stopIdIndex));
 				c.agent.setServeStop(stopIdIndex);
 
 				// no event associated to stop delay
 				c.flatplan.add(Agent.prepareStopDelayEntry((int) departureTime, c.routeNo, stopIdIndex));
 
-				c.flatevents.add(new VehicleDepartsAtFacilityEvent(0, c.vehId, stopId, departureTime));
+				c.flatevents.addVehicleDepartsAtFacility(c.vehId, stopId, departureTime);
 				c.flatplan.add(Agent.prepareStopDepartureEntry(c.flatevents.size() - 1, c.routeNo, stopIdIndex));
 
 				c.stopidx++;
@@ -815,7 +874,7 @@ class ScenarioImporter {
 		}
 
 		if (generateLinkLeaveEvent) {
-			c.flatevents.add(new LinkLeaveEvent(0, c.vehId, linkId));
+			c.flatevents.addLinkLeave(c.vehId, linkId);
 		}
 	}
 
@@ -828,7 +887,7 @@ class ScenarioImporter {
 		int routeNo = this.route_numbers.get(tl.getId()).get(tr.getId());
 		TransitRouteContext context = new TransitRouteContext(agent, tl, tr, routeNo, depart, this.scenario.getNetwork());
 		PlanArray flatplan = agent.plan;
-		EventArray flatevents = agent.events;
+		EventTemplateArray flatevents = agent.events;
 		Vehicle v = this.scenario.getTransitVehicles().getVehicles().get(depart.getVehicleId());
 		VehicleType vt = v.getType();
 		NetworkRoute nr = tr.getRoute();
@@ -844,10 +903,10 @@ class ScenarioImporter {
 		flatplan.add(Agent.prepareSleepUntilEntry(0, (int) Math.round(depart.getDepartureTime())));
 
 		// Prepare to leave
-		flatevents.add(new TransitDriverStartsEvent(0, driverid, v.getId(), tl.getId(), tr.getId(), depart.getId()));
-		flatevents.add(new PersonDepartureEvent(0, driverid, nr.getStartLinkId(), legmode, routingmode));
-		flatevents.add(new PersonEntersVehicleEvent(0, driverid, v.getId()));
-		flatevents.add(new VehicleEntersTrafficEvent(0, driverid, nr.getStartLinkId(), v.getId(), legmode, 1));
+		flatevents.addTransitDriverStarts(driverid, v.getId(), tl.getId(), tr.getId(), depart.getId());
+		flatevents.addDeparture(driverid, nr.getStartLinkId(), legmode, routingmode);
+		flatevents.addPersonEntersVehicle(driverid, v.getId());
+		flatevents.addVehicleEntersTraffic(driverid, nr.getStartLinkId(), v.getId(), legmode);
 
 		generateNondeterministicVehicleOnLink(context, nr.getStartLinkId(), false, true, velocity, pcuCategory);
 
@@ -857,12 +916,18 @@ class ScenarioImporter {
 
 		generateNondeterministicVehicleOnLink(context, nr.getEndLinkId(), true, false, velocity, pcuCategory);
 
-		flatevents.add(new VehicleLeavesTrafficEvent(0, driverid, nr.getEndLinkId(), v.getId(), legmode, 1));
-		flatevents.add(new PersonLeavesVehicleEvent(0, driverid, v.getId()));
-		flatevents.add(new PersonArrivalEvent(0, driverid, nr.getEndLinkId(), legmode));
+		flatevents.addVehicleLeavesTraffic(driverid, nr.getEndLinkId(), v.getId(), legmode);
+		flatevents.addPersonLeavesVehicle(driverid, v.getId());
+		flatevents.addArrival(driverid, nr.getEndLinkId(), legmode);
 	}
 
 	private void generateTransitVehiclePlans() {
+		// transit vehicle plans are cheap to generate, and the deterministic pt events are consumed by the simulation
+		for (int i = agent_persons; i < hermes_agents.length; i++) {
+			if (hermes_agents[i] != null) {
+				hermes_agents[i].clearPlan();
+			}
+		}
 		Map<Id<Vehicle>, Vehicle> vehicles = scenario.getTransitVehicles().getVehicles();
 		scenario.getTransitSchedule().getTransitLines().values().stream().forEach((tl) -> {
 			for (TransitRoute tr : tl.getRoutes().values()) {
@@ -886,16 +951,100 @@ class ScenarioImporter {
 
 	}
 
+	/**
+	 * Generates the plans and events of all persons whose selected plan changed since the last iteration. Usually,
+	 * only the replanned persons need to be encoded again.
+	 */
 	private void generatePersonPlans() {
 		Population population = scenario.getPopulation();
+		boolean[] inPopulation = new boolean[agent_persons];
+		LongAdder encoded = new LongAdder();
 		population.getPersons().values().parallelStream().forEach((person) -> {
 			int hermes_id = hermes_id(person.getId().index(), false);
-			PlanArray plan = hermes_agents[hermes_id].plan();
-			EventArray events = hermes_agents[hermes_id].events();
-			for (PlanElement element : person.getSelectedPlan().getPlanElements()) {
-				processPlanElement(person, plan, events, element, hermes_agents[hermes_id]);
+			Agent agent = hermes_agents[hermes_id];
+			Plan selectedPlan = person.getSelectedPlan();
+			long fingerprint = planFingerprint(person, selectedPlan);
+			inPopulation[hermes_id] = true;
+			if (agent.isEncodedFrom(selectedPlan, fingerprint)) {
+				return;
+			}
+			agent.clearPlan();
+			PlanArray plan = agent.plan();
+			EventTemplateArray events = agent.events();
+			for (PlanElement element : selectedPlan.getPlanElements()) {
+				processPlanElement(person, plan, events, element, agent);
 			}
+			agent.setEncodedFrom(selectedPlan, fingerprint);
+			encoded.increment();
 		});
+		// persons removed from the population must not be simulated with their old plans
+		for (int i = 0; i < agent_persons; i++) {
+			if (!inPopulation[i] && hermes_agents[i] != null) {
+				hermes_agents[i].clearPlan();
+			}
+		}
+		log.info(String.format("Hermes encoded the plans of %d persons, %d were unchanged",
+				encoded.sum(), population.getPersons().size() - encoded.sum()));
+	}
+
+	/**
+	 * Hashes everything of a plan that ends up in the plan entries or events of an agent, including the vehicles used
+	 * on network routes. Together with the identity of the plan, this detects plans that were modified in place, e.g.
+	 * when routes are added before the mobsim.
+	 */
+	private long planFingerprint(Person person, Plan plan) {
+		long hash = 17;
+		for (PlanElement element : plan.getPlanElements()) {
+			if (element instanceof Activity) {
+				Activity act = (Activity) element;
+				hash = 31 * hash + Objects.hashCode(act.getType());
+				hash = 31 * hash + indexOf(act.getLinkId());
+				hash = 31 * hash + indexOf(act.getFacilityId());
+				hash = 31 * hash + Objects.hashCode(act.getCoord());
+				hash = 31 * hash + Double.hashCode(act.getEndTime().orElse(Double.NaN));
+				hash = 31 * hash + Double.hashCode(act.getMaximumDuration().orElse(Double.NaN));
+			} else if (element instanceof Leg) {
+				Leg leg = (Leg) element;
+				hash = 31 * hash + Objects.hashCode(leg.getMode());
+				hash = 31 * hash + Objects.hashCode(TripStructureUtils.getRoutingMode(leg));
+				hash = 31 * hash + Double.hashCode(leg.getTravelTime().orElse(Double.NaN));
+				Route route = leg.getRoute();
+				if (route == null) {
+					hash = 31 * hash - 1;
+					continue;
+				}
+				hash = 31 * hash + route.getClass().hashCode();
+				hash = 31 * hash + indexOf(route.getStartLinkId());
+				hash = 31 * hash + indexOf(route.getEndLinkId());
+				hash = 31 * hash + Double.hashCode(route.getTravelTime().orElse(Double.NaN));
+				hash = 31 * hash + Double.hashCode(route.getDistance());
+				if (route instanceof NetworkRoute) {
+					if (scenario.getConfig().hermes().getMainModes().contains(leg.getMode())) {
+						// see processPlanNetworkRoute
+						Vehicle v = getVehicle(person, leg);
+						VehicleType type = v == null ? VehicleUtils.getDefaultVehicleType() : v.getType();
+						hash = 31 * hash + indexOf(v == null ? null : v.getId());
+						hash = 31 * hash + type.getId().index();
+						hash = 31 * hash + Double.hashCode(type.getPcuEquivalents());
+						hash = 31 * hash + Double.hashCode(type.getMaximumVelocity());
+					}
+					for (Id<Link> linkId : ((NetworkRoute) route).getLinkIds()) {
+						hash = 31 * hash + linkId.index();
+					}
+				} else if (route instanceof TransitPassengerRoute) {
+					TransitPassengerRoute troute = (TransitPassengerRoute) route;
+					hash = 31 * hash + indexOf(troute.getAccessStopId());
+					hash = 31 * hash + indexOf(troute.getEgressStopId());
+					hash = 31 * hash + indexOf(troute.getLineId());
+					hash = 31 * hash + indexOf(troute.getRouteId());
+				}
+			}
+		}
+		return hash;
+	}
+
+	private static int indexOf(Id<?> id) {
+		return id == null ? -1 : id.index();
 	}
 
 	private void generateAgents() {
@@ -909,7 +1058,7 @@ class ScenarioImporter {
 		for (Person person : population.getPersons().values()) {
 			int hermes_id = hermes_id(person.getId().index(), false);
 			assert hermes_agents[hermes_id] == null;
-			generateAgent(hermes_id, 0, new PlanArray(), new EventArray());
+			generateAgent(hermes_id, 0, new PlanArray(), new EventTemplateArray());
 		}
 
 		// Generate vehicles
@@ -918,7 +1067,7 @@ class ScenarioImporter {
 			int capacity = vc.getSeats() + vc.getStandingRoom();
 			int hermes_id = hermes_id(vehicle.getId().index(), true);
 			assert hermes_agents[hermes_id] == null;
-			generateAgent(hermes_id, capacity, new PlanArray(), new EventArray());
+			generateAgent(hermes_id, capacity, new PlanArray(), new EventTemplateArray());
 		}
 	}
 
@@ -31,6 +31,7 @@ import java.util.Set;
 import javax.inject.Inject;
 
 import org.matsim.core.config.Config;
+import org.matsim.core.config.groups.QSimConfigGroup.NetsimDomainDecomposition;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.mobsim.framework.Mobsim;
 import org.matsim.core.mobsim.qsim.changeeventsengine.NetworkChangeEventsModule;
@@ -44,8 +45,10 @@ import org.matsim.core.mobsim.qsim.qnetsimengine.DefaultQNetworkFactory;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QLanesNetworkFactory;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QNetsimEngineModule;
 import org.matsim.core.mobsim.qsim.qnetsimengine.QNetworkFactory;
+import org.matsim.core.mobsim.qsim.qnetsimengine.QNetworkPartitionWeights;
 
 import com.google.inject.Key;
+import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Names;
 
@@ -110,6 +113,12 @@ public class QSimModule extends AbstractModule {
 		// I don't know why this is here.  kai, nov'18
 
 		bind(Mobsim.class).toProvider(QSimProvider.class);
+
+		if (getConfig().qsim().getNetsimDomainDecomposition() == NetsimDomainDecomposition.connectedRegions) {
+			// the link volumes need to survive from one iteration to the next, so they cannot be kept in QSim scope:
+			bind(QNetworkPartitionWeights.class).in(Singleton.class);
+			addControlerListenerBinding().to(QNetworkPartitionWeights.class);
+		}
 		
 		// yyyy the following will eventually be moved to QSim scope, and into QNetsimEngineModule:
 //		if ( config.qsim().isUseLanes() ) {
@@ -28,14 +28,17 @@ import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.groups.QSimConfigGroup;
 import org.matsim.core.config.groups.QSimConfigGroup.LinkDynamics;
+import org.matsim.core.config.groups.QSimConfigGroup.NetsimDomainDecomposition;
 import org.matsim.core.config.groups.QSimConfigGroup.SnapshotStyle;
 import org.matsim.core.config.groups.QSimConfigGroup.VehicleBehavior;
 import org.matsim.core.gbl.Gbl;
@@ -51,6 +54,8 @@ import org.matsim.core.utils.misc.Time;
 import org.matsim.vehicles.Vehicle;
 import org.matsim.vis.snapshotwriters.SnapshotLinkWidthCalculator;
 
+import com.google.inject.Inject;
+
 /**
  * Coordinates the movement of vehicles on the links and the nodes.
  *
@@ -87,9 +92,12 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 //	private final Set<QLinkI> linksToActivateInitially = new HashSet<>();
 	protected final int numOfThreads;
 	protected final QNetwork network;
+	private final NetsimDomainDecomposition domainDecomposition;
+	private QNetworkPartitionWeights partitionWeights = null;
 
 	private double infoTime = 0;
 	private List<A> engines;
+	private final IdMap<Node, Integer> runnerIndexOfNode = new IdMap<>(Node.class);
 	private InternalInterface internalInterface = null;
 	
 	AbstractQNetsimEngine(final QSim sim, QNetworkFactory netsimNetworkFactory) {
@@ -131,6 +139,16 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 		network.initialize(this, sim.getAgentCounter(), sim.getSimTimer() );
 
 		this.numOfThreads = sim.getScenario().getConfig().qsim().getNumberOfThreads();
+		this.domainDecomposition = qSimConfigGroup.getNetsimDomainDecomposition();
+	}
+
+	/**
+	 * The weights are only bound if they are needed (and a controler is around to collect them), see
+	 * {@link org.matsim.core.mobsim.qsim.QSimModule}.
+	 */
+	@Inject(optional = true)
+	final void setPartitionWeights(QNetworkPartitionWeights partitionWeights) {
+		this.partitionWeights = partitionWeights;
 	}
 	
 	static AbstractAgentSnapshotInfoBuilder createAgentSnapshotInfoBuilder(Scenario scenario, SnapshotLinkWidthCalculator linkWidthCalculator) {
@@ -390,9 +408,19 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 		int nodes[] = new int[this.engines.size()];
 		int links[] = new int[this.engines.size()];
 
+		IdMap<Node, Integer> partitions = null;
+		if (this.domainDecomposition == NetsimDomainDecomposition.connectedRegions && this.engines.size() > 1) {
+			if (this.partitionWeights == null || !this.partitionWeights.hasData()) {
+				log.info("No link volumes from a previous iteration available, all links are weighted equally for the domain decomposition.");
+			}
+			partitions = QNetworkPartitioner.partition(this.network.getNetwork(), this.engines.size(),
+					link -> this.partitionWeights == null ? 1.0 : this.partitionWeights.getLinkWeight(link.getId()));
+		}
+
 		int roundRobin = 0;
 		for (QNodeI node : network.getNetsimNodes().values()) {
-			int i = roundRobin % this.engines.size();
+			int i = partitions == null ? roundRobin % this.engines.size() : partitions.get(node.getNode().getId());
+			this.runnerIndexOfNode.put(node.getNode().getId(), i);
 			if( node instanceof AbstractQNode){
 				((AbstractQNode) node).setNetElementActivationRegistry(this.engines.get(i));
 			}
@@ -435,6 +463,14 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 		internalInterface.arrangeNextAgentState(pp);
 	}
 	
+	/**
+	 * @return the index (in {@link #getQnetsimEngineRunner()}) of the runner which moves the node and its outgoing links.
+	 * Only available after the net elements were assigned to the runners, i.e. from {@link #initMultiThreading()} on.
+	 */
+	protected final int getRunnerIndexOfNode(Id<Node> nodeId) {
+		return this.runnerIndexOfNode.get(nodeId);
+	}
+
 	/**
 	 * @return the {@link AbstractQNetsimEngineRunner} created by {@link #initQSimEngineRunners()}
 	 */
@@ -28,7 +28,16 @@ public class QNetsimEngineModule extends AbstractQSimModule {
 	
 	@Override
 	protected void configureQSim() {
-		bind(QNetsimEngineI.class).to(QNetsimEngineWithThreadpool.class).asEagerSingleton();
+		switch (this.getConfig().qsim().getNetsimSynchronization()) {
+			case barriers:
+				bind(QNetsimEngineI.class).to(QNetsimEngineWithThreadpool.class).asEagerSingleton();
+				break;
+			case localClocks:
+				bind(QNetsimEngineI.class).to(QNetsimEngineWithLocalClocks.class).asEagerSingleton();
+				break;
+			default:
+				throw new RuntimeException("not implemented: " + this.getConfig().qsim().getNetsimSynchronization());
+		}
 
 		bind(VehicularDepartureHandler.class).toProvider(QNetsimEngineDepartureHandlerProvider.class).asEagerSingleton();
 
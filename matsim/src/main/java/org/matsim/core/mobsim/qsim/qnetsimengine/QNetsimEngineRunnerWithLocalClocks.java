@@ -0,0 +1,126 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QNetsimEngineRunnerWithLocalClocks.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import org.matsim.core.gbl.Gbl;
+
+/**
+ * Runner of the {@link QNetsimEngineWithLocalClocks}.  Every runner has its own thread.  Within a time step, the runner
+ * only waits for the runners that own the to-nodes of its links, instead of for all other runners.
+ */
+final class QNetsimEngineRunnerWithLocalClocks extends AbstractQNetsimEngineRunner implements Runnable {
+
+	private static final int SPINS_BEFORE_YIELD = 1000;
+
+	private final CyclicBarrier startBarrier;
+	private final CyclicBarrier endBarrier;
+
+	private volatile boolean simulationRunning = true;
+
+	/*
+	 * The runner-local clock: number of time steps in which this runner has completed moving its nodes.
+	 * Written only by the own thread, read by the upstream runners.
+	 */
+	private volatile long nodesMovedSteps = 0;
+	private long steps = 0;
+
+	private QNetsimEngineRunnerWithLocalClocks[] downstreamRunners = new QNetsimEngineRunnerWithLocalClocks[0];
+	private volatile Throwable throwable = null;
+
+	QNetsimEngineRunnerWithLocalClocks(CyclicBarrier startBarrier, CyclicBarrier endBarrier) {
+		this.startBarrier = startBarrier;
+		this.endBarrier = endBarrier;
+	}
+
+	/**
+	 * @param downstreamRunners the runners owning the to-nodes of the links of this runner (without this runner itself).
+	 */
+	void setDownstreamRunners(QNetsimEngineRunnerWithLocalClocks[] downstreamRunners) {
+		this.downstreamRunners = downstreamRunners;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				this.startBarrier.await();
+				if (!this.simulationRunning) {
+					break;
+				}
+
+				this.steps++;
+				try {
+					moveNodes();
+				} catch (Throwable e) {
+					this.throwable = e;
+				} finally {
+					// also advance the clock in case of an exception, otherwise upstream runners would wait forever
+					this.nodesMovedSteps = this.steps;
+				}
+
+				if (this.throwable == null) {
+					try {
+						/*
+						 * The nodes of the downstream runners take vehicles out of the buffers of our links. We may only
+						 * fill the buffers again once they are done with it.
+						 */
+						awaitDownstreamNodes();
+						moveLinks();
+					} catch (Throwable e) {
+						this.throwable = e;
+					}
+				}
+
+				this.endBarrier.await();
+			}
+		} catch (InterruptedException | BrokenBarrierException e) {
+			throw new RuntimeException(e);
+		} finally {
+			Gbl.printCurrentThreadCpuTime();
+		}
+	}
+
+	private void awaitDownstreamNodes() {
+		for (QNetsimEngineRunnerWithLocalClocks downstream : this.downstreamRunners) {
+			int spins = 0;
+			while (downstream.nodesMovedSteps < this.steps) {
+				if (spins < SPINS_BEFORE_YIELD) {
+					spins++;
+					Thread.onSpinWait();
+				} else {
+					Thread.yield();
+				}
+			}
+		}
+	}
+
+	/*package*/ Throwable getThrowable() {
+		return this.throwable;
+	}
+
+	@Override
+	public void afterSim() {
+		this.simulationRunning = false;
+	}
+}
@@ -0,0 +1,148 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QNetsimEngineWithLocalClocks.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import javax.inject.Inject;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.mobsim.qsim.QSim;
+
+/**
+ * Coordinates the movement of vehicles on the links and the nodes, but without the global barrier between moving the
+ * nodes and moving the links of {@link QNetsimEngineWithThreadpool}.
+ * <p></p>
+ * Each runner has its own thread and a runner-local clock that counts the time steps in which it has moved its nodes.
+ * Before moving its links, a runner only waits until the runners that own the to-nodes of its links have moved their
+ * nodes in the current time step (since they empty the buffers of these links).  A runner that is slow on the nodes
+ * can thus overlap with a runner that is slow on the links.  This works best together with a domain decomposition into
+ * connected regions, where each runner only has a few neighbours.
+ * <p></p>
+ * The runners still wait for each other at the end of every time step, since the other mobsim engines (departures,
+ * activities, ...) interact with the network between the time steps.
+ *
+ * @see org.matsim.core.config.groups.QSimConfigGroup.NetsimSynchronization
+ */
+final class QNetsimEngineWithLocalClocks extends AbstractQNetsimEngine<QNetsimEngineRunnerWithLocalClocks> {
+
+	private static final Logger log = LogManager.getLogger(QNetsimEngineWithLocalClocks.class);
+
+	private final int numOfRunners;
+	private final CyclicBarrier startBarrier;
+	private final CyclicBarrier endBarrier;
+	private final List<Thread> threads = new ArrayList<>();
+
+	public QNetsimEngineWithLocalClocks(final QSim sim) {
+		this(sim, null);
+	}
+
+	@Inject
+	public QNetsimEngineWithLocalClocks(final QSim sim, QNetworkFactory netsimNetworkFactory) {
+		super(sim, netsimNetworkFactory);
+		this.numOfRunners = this.numOfThreads;
+		this.startBarrier = new CyclicBarrier(this.numOfRunners + 1);
+		this.endBarrier = new CyclicBarrier(this.numOfRunners + 1);
+	}
+
+	@Override
+	protected void run(double time) {
+		for (AbstractQNetsimEngineRunner engine : this.getQnetsimEngineRunner()) {
+			engine.setTime(time);
+		}
+
+		try {
+			this.startBarrier.await();
+			this.endBarrier.await();
+		} catch (InterruptedException | BrokenBarrierException e) {
+			throw new RuntimeException(e);
+		}
+
+		for (QNetsimEngineRunnerWithLocalClocks engine : this.getQnetsimEngineRunner()) {
+			if (engine.getThrowable() != null) {
+				throw new RuntimeException(engine.getThrowable());
+			}
+		}
+	}
+
+	@Override
+	protected List<QNetsimEngineRunnerWithLocalClocks> initQSimEngineRunners() {
+		List<QNetsimEngineRunnerWithLocalClocks> engines = new ArrayList<>();
+		for (int i = 0; i < this.numOfRunners; i++) {
+			engines.add(new QNetsimEngineRunnerWithLocalClocks(this.startBarrier, this.endBarrier));
+		}
+		return engines;
+	}
+
+	@Override
+	protected void initMultiThreading() {
+		List<QNetsimEngineRunnerWithLocalClocks> runners = this.getQnetsimEngineRunner();
+
+		List<Set<Integer>> downstreamRunnerIndices = new ArrayList<>();
+		for (int i = 0; i < runners.size(); i++) {
+			downstreamRunnerIndices.add(new TreeSet<>());
+		}
+		for (Link link : this.network.getNetwork().getLinks().values()) {
+			int owner = getRunnerIndexOfNode(link.getFromNode().getId());
+			int downstream = getRunnerIndexOfNode(link.getToNode().getId());
+			if (owner != downstream) {
+				downstreamRunnerIndices.get(owner).add(downstream);
+			}
+		}
+
+		for (int i = 0; i < runners.size(); i++) {
+			Set<Integer> indices = downstreamRunnerIndices.get(i);
+			QNetsimEngineRunnerWithLocalClocks[] downstreamRunners = new QNetsimEngineRunnerWithLocalClocks[indices.size()];
+			int j = 0;
+			for (Integer index : indices) {
+				downstreamRunners[j++] = runners.get(index);
+			}
+			runners.get(i).setDownstreamRunners(downstreamRunners);
+			log.info("QSimEngineRunner #" + i + " waits for " + downstreamRunners.length + " other runners before moving its links.");
+
+			Thread thread = new Thread(runners.get(i), "QNetsimEngine_LocalClockThread_" + i);
+			thread.setDaemon(true);
+			this.threads.add(thread);
+			thread.start();
+		}
+	}
+
+	@Override
+	protected void finishMultiThreading() {
+		// the runners were told by afterSim() to stop, so releasing them once more lets them leave their loop
+		try {
+			this.startBarrier.await();
+			for (Thread thread : this.threads) {
+				thread.join();
+			}
+		} catch (InterruptedException | BrokenBarrierException e) {
+			throw new RuntimeException(e);
+		}
+		this.threads.clear();
+	}
+}
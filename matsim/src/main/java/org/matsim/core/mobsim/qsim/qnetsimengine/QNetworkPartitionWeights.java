@@ -0,0 +1,80 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QNetworkPartitionWeights.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import org.matsim.analysis.VolumesAnalyzer;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+
+import com.google.inject.Inject;
+
+/**
+ * Remembers the link volumes of the last iteration, so that the netsim engine of the next iteration can use them
+ * to balance its domain decomposition (see {@link org.matsim.core.config.groups.QSimConfigGroup.NetsimDomainDecomposition}).
+ * <p></p>
+ * The volumes need to be copied at the end of the iteration, since the {@link VolumesAnalyzer} is reset before the
+ * next mobsim starts.  If no data is available (first iteration, or no controler or volumes analysis around), all links
+ * have the same weight.
+ */
+public final class QNetworkPartitionWeights implements IterationEndsListener {
+
+	@Inject(optional = true)
+	private VolumesAnalyzer volumesAnalyzer = null;
+	private final IdMap<Link, Double> linkVolumes = new IdMap<>(Link.class);
+
+	@Inject
+	QNetworkPartitionWeights() {
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		this.linkVolumes.clear();
+		if (this.volumesAnalyzer == null) {
+			return;
+		}
+		for (Id<Link> linkId : this.volumesAnalyzer.getLinkIds()) {
+			int[] volumesPerTimeBin = this.volumesAnalyzer.getVolumesForLink(linkId);
+			if (volumesPerTimeBin != null) {
+				double sum = 0;
+				for (int v : volumesPerTimeBin) {
+					sum += v;
+				}
+				this.linkVolumes.put(linkId, sum);
+			}
+		}
+	}
+
+	/**
+	 * @return the estimated computational load of the link, which is 1 for a link without traffic plus the number of vehicles
+	 * that left the link in the previous iteration.
+	 */
+	public double getLinkWeight(Id<Link> linkId) {
+		Double volume = this.linkVolumes.get(linkId);
+		return volume == null ? 1.0 : 1.0 + volume;
+	}
+
+	/*package*/ boolean hasData() {
+		return !this.linkVolumes.isEmpty();
+	}
+}
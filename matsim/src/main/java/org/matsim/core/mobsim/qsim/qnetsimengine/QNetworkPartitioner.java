@@ -0,0 +1,155 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QNetworkPartitioner.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.ToDoubleFunction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Splits a network into connected regions of roughly equal load, to be used as domain decomposition for the
+ * runners of the netsim engine and for the realms of the Hermes mobsim.
+ * <p></p>
+ * The regions are grown one after the other with a breadth-first search over the (undirected) network, starting from
+ * the western-most node that is not yet assigned.  A region is closed as soon as it has reached its share of the
+ * remaining load.  If a region runs out of reachable nodes (e.g. because the network is not connected), growing
+ * continues at the next free seed node.  The result only depends on the network and the weights, i.e. it is deterministic.
+ * <p></p>
+ * The load of a node is the weight of its incoming links (which are handled when the node is moved) plus the weight
+ * of its outgoing links (which are handled by the same runner as the node).
+ */
+public final class QNetworkPartitioner {
+
+	private static final Logger log = LogManager.getLogger(QNetworkPartitioner.class);
+
+	private QNetworkPartitioner() {
+	}
+
+	/**
+	 * @return the partition index (in <code>[0, numberOfPartitions)</code>) for every node of the network.
+	 */
+	public static IdMap<Node, Integer> partition(Network network, int numberOfPartitions, ToDoubleFunction<Link> linkWeight) {
+		Node[] nodes = network.getNodes().values().toArray(new Node[0]);
+		IdMap<Node, Integer> nodeIndices = new IdMap<>(Node.class, nodes.length);
+		for (int i = 0; i < nodes.length; i++) {
+			nodeIndices.put(nodes[i].getId(), i);
+		}
+
+		double[] nodeWeights = new double[nodes.length];
+		double totalWeight = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			double weight = 0;
+			for (Link inLink : nodes[i].getInLinks().values()) {
+				weight += linkWeight.applyAsDouble(inLink);
+			}
+			for (Link outLink : nodes[i].getOutLinks().values()) {
+				weight += linkWeight.applyAsDouble(outLink);
+			}
+			nodeWeights[i] = weight;
+			totalWeight += weight;
+		}
+
+		// seeds are taken from west to east, which keeps the regions compact also for disconnected networks
+		Integer[] seeds = new Integer[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			seeds[i] = i;
+		}
+		Arrays.sort(seeds, Comparator.comparingDouble((Integer i) -> nodes[i].getCoord().getX())
+				.thenComparingDouble(i -> nodes[i].getCoord().getY()));
+		int nextSeed = 0;
+
+		int[] partitions = new int[nodes.length];
+		Arrays.fill(partitions, -1);
+		boolean[] queued = new boolean[nodes.length];
+		double[] loads = new double[numberOfPartitions];
+		double remainingWeight = totalWeight;
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+		for (int p = 0; p < numberOfPartitions; p++) {
+			boolean isLastPartition = p == numberOfPartitions - 1;
+			double targetLoad = remainingWeight / (numberOfPartitions - p);
+
+			while (isLastPartition || loads[p] < targetLoad) {
+				Integer current = queue.poll();
+				if (current == null) {
+					while (nextSeed < seeds.length && partitions[seeds[nextSeed]] >= 0) {
+						nextSeed++;
+					}
+					if (nextSeed == seeds.length) {
+						break; // all nodes assigned
+					}
+					queued[seeds[nextSeed]] = true;
+					queue.add(seeds[nextSeed]);
+					continue;
+				}
+				partitions[current] = p;
+				loads[p] += nodeWeights[current];
+				remainingWeight -= nodeWeights[current];
+
+				for (Link outLink : nodes[current].getOutLinks().values()) {
+					enqueue(nodeIndices.get(outLink.getToNode().getId()), partitions, queued, queue);
+				}
+				for (Link inLink : nodes[current].getInLinks().values()) {
+					enqueue(nodeIndices.get(inLink.getFromNode().getId()), partitions, queued, queue);
+				}
+			}
+
+			// the frontier of this region becomes available again for the next one
+			for (Integer leftOver : queue) {
+				queued[leftOver] = false;
+			}
+			queue.clear();
+		}
+
+		IdMap<Node, Integer> result = new IdMap<>(Node.class, nodes.length);
+		for (int i = 0; i < nodes.length; i++) {
+			result.put(nodes[i].getId(), partitions[i]);
+		}
+
+		int boundaryLinks = 0;
+		for (Link link : network.getLinks().values()) {
+			if (!result.get(link.getFromNode().getId()).equals(result.get(link.getToNode().getId()))) {
+				boundaryLinks++;
+			}
+		}
+		for (int p = 0; p < numberOfPartitions; p++) {
+			log.info("Partition #" + p + " has an estimated load of " + loads[p] + " (" + (totalWeight > 0 ? 100.0 * loads[p] / totalWeight : 0) + "%).");
+		}
+		log.info(boundaryLinks + " of " + network.getLinks().size() + " links connect different partitions.");
+
+		return result;
+	}
+
+	private static void enqueue(int node, int[] partitions, boolean[] queued, ArrayDeque<Integer> queue) {
+		if (partitions[node] < 0 && !queued[node]) {
+			queued[node] = true;
+			queue.add(node);
+		}
+	}
+}
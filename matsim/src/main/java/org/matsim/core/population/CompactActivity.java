@@ -0,0 +1,153 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CompactActivity.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.core.utils.misc.Time;
+import org.matsim.facilities.ActivityFacility;
+
+/**
+ * An {@link Activity} stored in a {@link PlanElementStore}.  Behaves like {@link ActivityImpl}, except that the coord
+ * is stored as numbers, so {@link #getCoord()} returns a new, equal object on every call.
+ */
+/* deliberately package */ final class CompactActivity extends CompactPlanElement implements Activity {
+
+	CompactActivity(PlanElementStore store, int slot) {
+		super(store, slot);
+	}
+
+	@Override
+	public OptionalTime getEndTime() {
+		return getTime(PlanElementStore.END_TIME);
+	}
+
+	@Override
+	public void setEndTime(final double seconds) {
+		setTime(PlanElementStore.END_TIME, seconds);
+	}
+
+	@Override
+	public void setEndTimeUndefined() {
+		setTimeUndefined(PlanElementStore.END_TIME);
+	}
+
+	@Override
+	public OptionalTime getStartTime() {
+		return getTime(PlanElementStore.START_TIME);
+	}
+
+	@Override
+	public void setStartTime(final double seconds) {
+		setTime(PlanElementStore.START_TIME, seconds);
+	}
+
+	@Override
+	public void setStartTimeUndefined() {
+		setTimeUndefined(PlanElementStore.START_TIME);
+	}
+
+	@Override
+	public OptionalTime getMaximumDuration() {
+		return getTime(PlanElementStore.MAX_DURATION);
+	}
+
+	@Override
+	public void setMaximumDuration(final double seconds) {
+		setTime(PlanElementStore.MAX_DURATION, seconds);
+	}
+
+	@Override
+	public void setMaximumDurationUndefined() {
+		setTimeUndefined(PlanElementStore.MAX_DURATION);
+	}
+
+	@Override
+	public String getType() {
+		return (String) getStore().getObject(getSlot(), PlanElementStore.TYPE);
+	}
+
+	@Override
+	public void setType(final String type) {
+		getStore().setObject(getSlot(), PlanElementStore.TYPE, type.intern());
+	}
+
+	@Override
+	public Coord getCoord() {
+		PlanElementStore store = getStore();
+		int slot = getSlot();
+		if (!store.hasCoord(slot)) {
+			return null;
+		}
+		double x = store.getDouble(slot, PlanElementStore.X);
+		double y = store.getDouble(slot, PlanElementStore.Y);
+		double z = store.getDouble(slot, PlanElementStore.Z);
+		return z == Double.NEGATIVE_INFINITY ? new Coord(x, y) : new Coord(x, y, z);
+	}
+
+	@Override
+	public void setCoord(final Coord coord) {
+		PlanElementStore store = getStore();
+		int slot = getSlot();
+		store.setHasCoord(slot, coord != null);
+		if (coord != null) {
+			store.setDouble(slot, PlanElementStore.X, coord.getX());
+			store.setDouble(slot, PlanElementStore.Y, coord.getY());
+			store.setDouble(slot, PlanElementStore.Z, coord.hasZ() ? coord.getZ() : Double.NEGATIVE_INFINITY);
+		}
+	}
+
+	@Override
+	public Id<Link> getLinkId() {
+		int index = getStore().getInt(getSlot(), PlanElementStore.LINK);
+		return index < 0 ? null : Id.get(index, Link.class);
+	}
+
+	@Override
+	public void setLinkId(final Id<Link> linkId) {
+		getStore().setInt(getSlot(), PlanElementStore.LINK, linkId == null ? -1 : linkId.index());
+	}
+
+	@Override
+	public Id<ActivityFacility> getFacilityId() {
+		int index = getStore().getInt(getSlot(), PlanElementStore.FACILITY);
+		return index < 0 ? null : Id.get(index, ActivityFacility.class);
+	}
+
+	@Override
+	public void setFacilityId(final Id<ActivityFacility> facilityId) {
+		getStore().setInt(getSlot(), PlanElementStore.FACILITY, facilityId == null ? -1 : facilityId.index());
+	}
+
+	@Override
+	public String toString() {
+		return "act [type=" + this.getType() + "]"
+				+ "[coord=" + this.getCoord() + "]"
+				+ "[linkId=" + this.getLinkId() + "]"
+				+ "[startTime=" + Time.writeTime(getStartTime()) + "]"
+				+ "[endTime=" + Time.writeTime(getEndTime()) + "]"
+				+ "[duration=" + Time.writeTime(getMaximumDuration()) + "]"
+				+ "[facilityId=" + this.getFacilityId() + "]";
+	}
+}
@@ -0,0 +1,102 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CompactLeg.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population;
+
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.core.utils.misc.Time;
+
+/**
+ * A {@link Leg} stored in a {@link PlanElementStore}.  Behaves like {@link LegImpl}.
+ */
+/* deliberately package */ final class CompactLeg extends CompactPlanElement implements Leg {
+
+	CompactLeg(PlanElementStore store, int slot) {
+		super(store, slot);
+	}
+
+	@Override
+	public String getMode() {
+		return (String) getStore().getObject(getSlot(), PlanElementStore.TYPE);
+	}
+
+	@Override
+	public void setMode(String mode) {
+		getStore().setObject(getSlot(), PlanElementStore.TYPE, mode);
+		TripStructureUtils.setRoutingMode(this, null);
+		// (same as in LegImpl)
+	}
+
+	@Override
+	public OptionalTime getDepartureTime() {
+		return getTime(PlanElementStore.DEPARTURE_TIME);
+	}
+
+	@Override
+	public void setDepartureTime(final double seconds) {
+		setTime(PlanElementStore.DEPARTURE_TIME, seconds);
+	}
+
+	@Override
+	public void setDepartureTimeUndefined() {
+		setTimeUndefined(PlanElementStore.DEPARTURE_TIME);
+	}
+
+	@Override
+	public OptionalTime getTravelTime() {
+		return getTime(PlanElementStore.TRAVEL_TIME);
+	}
+
+	@Override
+	public void setTravelTime(final double seconds) {
+		setTime(PlanElementStore.TRAVEL_TIME, seconds);
+	}
+
+	@Override
+	public void setTravelTimeUndefined() {
+		setTimeUndefined(PlanElementStore.TRAVEL_TIME);
+	}
+
+	@Override
+	public Route getRoute() {
+		return (Route) getStore().getObject(getSlot(), PlanElementStore.ROUTE);
+	}
+
+	@Override
+	public void setRoute(Route route) {
+		getStore().setObject(getSlot(), PlanElementStore.ROUTE, route);
+	}
+
+	@Override
+	public String toString() {
+		OptionalTime depTime = getDepartureTime();
+		OptionalTime travTime = getTravelTime();
+		return "leg [mode=" + this.getMode() + "]"
+				+ "[depTime=" + Time.writeTime(depTime) + "]"
+				+ "[travTime=" + Time.writeTime(travTime) + "]"
+				+ "[arrTime=" + (depTime.isDefined() && travTime.isDefined() ?
+						Time.writeTime(depTime.seconds() + travTime.seconds()) :
+						Time.writeTime(OptionalTime.undefined())) + "]"
+				+ "[route=" + this.getRoute() + "]";
+	}
+}
@@ -0,0 +1,189 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CompactPlan.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.matsim.api.core.v01.Customizable;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.scenario.CustomizableUtils;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
+
+/**
+ * A {@link Plan} that keeps its activities and legs in a {@link PlanElementStore} instead of one object per element.
+ * Behaves like {@link PlanImpl}, but needs considerably less memory for large populations.
+ *
+ * @see CompactPopulationFactoryImpl
+ */
+/* deliberately package */ final class CompactPlan implements Plan {
+
+	private final PlanElementStore store = new PlanElementStore(this, 8);
+	private final List<PlanElement> actsLegs = new PlanElementList();
+
+	private Double score = null;
+	private Person person = null;
+
+	private String type = null;
+
+	private Customizable customizableDelegate;
+
+	private Attributes attributes;
+
+	/* package */ CompactPlan() {}
+
+	@Override
+	public final Attributes getAttributes() {
+		if (this.attributes == null) {
+			this.attributes = new Attributes();
+		}
+		return this.attributes;
+	}
+
+	@Override
+	public final Person getPerson() {
+		return this.person;
+	}
+
+	@Override
+	public void setPerson(final Person person) {
+		this.person = person;
+	}
+
+	@Override
+	public final Double getScore() {
+		return this.score;
+	}
+
+	@Override
+	public void setScore(final Double score) {
+		this.score = score;
+	}
+
+	@Override
+	public String getType() {
+		return this.type;
+	}
+
+	@Override
+	public void setType(final String type) {
+		this.type = type;
+	}
+
+	@Override
+	public final List<PlanElement> getPlanElements() {
+		return this.actsLegs;
+	}
+
+	@Override
+	public final void addLeg(final Leg leg) {
+		this.actsLegs.add(leg);
+	}
+
+	@Override
+	public final void addActivity(final Activity act) {
+		this.actsLegs.add(act);
+	}
+
+	/**
+	 * @return a deep copy of this plan, without the person.  Copies the columns at once instead of element by element.
+	 */
+	CompactPlan createCopy() {
+		CompactPlan copy = new CompactPlan();
+		copy.store.copyAll(this.store);
+		copy.score = this.score;
+		copy.type = this.type;
+		if (this.attributes != null) {
+			AttributesUtils.copyTo(this.attributes, copy.getAttributes());
+		}
+		return copy;
+	}
+
+	@Override
+	public final String toString() {
+
+		String scoreString = "undefined";
+		if (this.getScore() != null) {
+			scoreString = this.getScore().toString();
+		}
+		String personIdString = "undefined" ;
+		if ( this.getPerson() != null ) {
+			personIdString = this.getPerson().getId().toString() ;
+		}
+
+		return "[score=" + scoreString + "]" +
+				"[nof_acts_legs=" + getPlanElements().size() + "]" +
+				"[type=" + this.type + "]" +
+				"[personId=" + personIdString + "]" ;
+	}
+
+	@Override
+	public final Map<String, Object> getCustomAttributes() {
+		if (this.customizableDelegate == null) {
+			this.customizableDelegate = CustomizableUtils.createCustomizable();
+		}
+		return this.customizableDelegate.getCustomAttributes();
+	}
+
+	private final class PlanElementList extends AbstractList<PlanElement> implements RandomAccess {
+
+		@Override
+		public PlanElement get(int index) {
+			return store.get(index);
+		}
+
+		@Override
+		public PlanElement set(int index, PlanElement element) {
+			return store.set(index, element);
+		}
+
+		@Override
+		public void add(int index, PlanElement element) {
+			store.add(index, element);
+			this.modCount++;
+		}
+
+		@Override
+		public PlanElement remove(int index) {
+			PlanElement old = store.remove(index);
+			this.modCount++;
+			return old;
+		}
+
+		@Override
+		public void clear() {
+			store.clear();
+			this.modCount++;
+		}
+
+		@Override
+		public int size() {
+			return store.size();
+		}
+	}
+}
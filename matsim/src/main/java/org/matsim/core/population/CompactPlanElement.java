@@ -0,0 +1,79 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CompactPlanElement.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population;
+
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+/**
+ * A view on the data of a plan element in a {@link PlanElementStore}.
+ */
+/* deliberately package */ abstract class CompactPlanElement implements PlanElement {
+
+	private PlanElementStore store;
+	private int slot;
+
+	CompactPlanElement(PlanElementStore store, int slot) {
+		this.store = store;
+		this.slot = slot;
+	}
+
+	final PlanElementStore getStore() {
+		return this.store;
+	}
+
+	final int getSlot() {
+		return this.slot;
+	}
+
+	/**
+	 * Called when the data of this element is moved to another store, e.g. when it is added to or removed from a plan.
+	 */
+	final void attach(PlanElementStore store, int slot) {
+		this.store = store;
+		this.slot = slot;
+	}
+
+	final OptionalTime getTime(int field) {
+		double time = this.store.getDouble(this.slot, field);
+		return Double.isNaN(time) ? OptionalTime.undefined() : OptionalTime.defined(time);
+	}
+
+	final void setTime(int field, double time) {
+		// same checks as in OptionalTime.defined()
+		if (time == Double.NEGATIVE_INFINITY) {
+			throw new IllegalArgumentException("Undefined time is not allowed");
+		} else if (Double.isNaN(time)) {
+			throw new IllegalArgumentException("NaN time is not allowed");
+		}
+		this.store.setDouble(this.slot, field, time);
+	}
+
+	final void setTimeUndefined(int field) {
+		this.store.setDouble(this.slot, field, Double.NaN);
+	}
+
+	@Override
+	public final Attributes getAttributes() {
+		return this.store.getAttributes(this.slot);
+	}
+}
@@ -81,8 +81,15 @@ import org.matsim.utils.objectattributes.attributable.Attributes;
 		if (oldPlan == null) {
 			return null;
 		}
-		Plan newPlan = PopulationUtils.createPlan(oldPlan.getPerson());
-		PopulationUtils.copyFromTo(oldPlan, newPlan);
+		Plan newPlan;
+		if (oldPlan instanceof CompactPlan) {
+			// keep the compact storage, and copy the columns at once
+			newPlan = ((CompactPlan) oldPlan).createCopy();
+			newPlan.setPerson(oldPlan.getPerson());
+		} else {
+			newPlan = PopulationUtils.createPlan(oldPlan.getPerson());
+			PopulationUtils.copyFromTo(oldPlan, newPlan);
+		}
 		this.getPlans().add(newPlan);
 		this.setSelectedPlan(newPlan);
 		return newPlan;
@@ -0,0 +1,360 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PlanElementStore.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population;
+
+import java.util.Arrays;
+
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
+
+/**
+ * Stores the data of plan elements in primitive columns, one slot per element.  Activities and legs are stored as
+ * values; {@link CompactActivity} and {@link CompactLeg} are only views on a slot, which are created when an element
+ * is accessed.  Other plan element implementations are stored as they are.
+ *
+ * Slots of removed elements are re-used.  The order of the elements in the plan is kept separately, so inserting
+ * or removing elements does not move the data of the other elements, and views stay valid.
+ *
+ * @see CompactPlan
+ */
+/* deliberately package */ final class PlanElementStore {
+
+	static final byte FREE = 0;
+	static final byte ACTIVITY = 1;
+	static final byte LEG = 2;
+	static final byte OTHER = 3;
+	private static final byte KIND_MASK = 0x0f;
+	private static final byte HAS_COORD = 0x10;
+
+	// per slot: link id index, facility id index.  The first int of free slots links to the next free slot.
+	private static final int INTS = 2;
+	static final int LINK = 0;
+	static final int FACILITY = 1;
+
+	// per slot: activities: start time, end time, maximum duration, x, y, z; legs: departure time, travel time
+	private static final int DOUBLES = 6;
+	static final int START_TIME = 0;
+	static final int END_TIME = 1;
+	static final int MAX_DURATION = 2;
+	static final int X = 3;
+	static final int Y = 4;
+	static final int Z = 5;
+	static final int DEPARTURE_TIME = 0;
+	static final int TRAVEL_TIME = 1;
+
+	// per slot: activity type or mode, attributes (created when needed), route or other plan element
+	private static final int OBJECTS = 3;
+	static final int TYPE = 0;
+	static final int ATTRIBUTES = 1;
+	static final int ROUTE = 2;
+
+	private static final CompactPlanElement[] NO_VIEWS = new CompactPlanElement[0];
+
+	private final CompactPlan owner;
+	private byte[] kinds;
+	private int[] ints;
+	private double[] doubles;
+	private Object[] objects;
+	private CompactPlanElement[] views = NO_VIEWS;
+	private int slotCount = 0;
+	private int firstFree = -1;
+
+	private int[] order;
+	private int size = 0;
+
+	/**
+	 * @param owner the plan of the elements, or {@code null} for the store of a single element not (yet) added to a plan.
+	 */
+	PlanElementStore(CompactPlan owner, int capacity) {
+		this.owner = owner;
+		this.kinds = new byte[capacity];
+		this.ints = new int[capacity * INTS];
+		this.doubles = new double[capacity * DOUBLES];
+		this.objects = new Object[capacity * OBJECTS];
+		this.order = new int[capacity];
+	}
+
+	CompactPlan getOwner() {
+		return this.owner;
+	}
+
+	// ---------- element data ----------
+
+	byte getKind(int slot) {
+		return (byte) (this.kinds[slot] & KIND_MASK);
+	}
+
+	int getInt(int slot, int field) {
+		return this.ints[slot * INTS + field];
+	}
+
+	void setInt(int slot, int field, int value) {
+		this.ints[slot * INTS + field] = value;
+	}
+
+	double getDouble(int slot, int field) {
+		return this.doubles[slot * DOUBLES + field];
+	}
+
+	void setDouble(int slot, int field, double value) {
+		this.doubles[slot * DOUBLES + field] = value;
+	}
+
+	Object getObject(int slot, int field) {
+		return this.objects[slot * OBJECTS + field];
+	}
+
+	void setObject(int slot, int field, Object value) {
+		this.objects[slot * OBJECTS + field] = value;
+	}
+
+	boolean hasCoord(int slot) {
+		return (this.kinds[slot] & HAS_COORD) != 0;
+	}
+
+	void setHasCoord(int slot, boolean hasCoord) {
+		this.kinds[slot] = (byte) (hasCoord ? this.kinds[slot] | HAS_COORD : this.kinds[slot] & ~HAS_COORD);
+	}
+
+	Attributes getAttributes(int slot) {
+		int index = slot * OBJECTS + ATTRIBUTES;
+		Attributes attributes = (Attributes) this.objects[index];
+		if (attributes == null) {
+			attributes = new Attributes();
+			this.objects[index] = attributes;
+		}
+		return attributes;
+	}
+
+	/**
+	 * Creates a new slot for an element of the given kind, with all values undefined.
+	 */
+	int allocate(byte kind) {
+		int slot;
+		if (this.firstFree >= 0) {
+			slot = this.firstFree;
+			this.firstFree = this.ints[slot * INTS];
+		} else {
+			if (this.slotCount == this.kinds.length) {
+				grow();
+			}
+			slot = this.slotCount++;
+		}
+		this.kinds[slot] = kind;
+		Arrays.fill(this.ints, slot * INTS, (slot + 1) * INTS, -1);
+		Arrays.fill(this.doubles, slot * DOUBLES, (slot + 1) * DOUBLES, Double.NaN);
+		this.doubles[slot * DOUBLES + Z] = Double.NEGATIVE_INFINITY;
+		return slot;
+	}
+
+	private void free(int slot) {
+		this.kinds[slot] = FREE;
+		Arrays.fill(this.objects, slot * OBJECTS, (slot + 1) * OBJECTS, null);
+		if (slot < this.views.length) {
+			this.views[slot] = null;
+		}
+		this.ints[slot * INTS] = this.firstFree;
+		this.firstFree = slot;
+	}
+
+	private void grow() {
+		int capacity = Math.max(4, this.kinds.length + (this.kinds.length >> 1));
+		this.kinds = Arrays.copyOf(this.kinds, capacity);
+		this.ints = Arrays.copyOf(this.ints, capacity * INTS);
+		this.doubles = Arrays.copyOf(this.doubles, capacity * DOUBLES);
+		this.objects = Arrays.copyOf(this.objects, capacity * OBJECTS);
+	}
+
+	/**
+	 * Copies the data of a slot in another store into a new slot of this store.
+	 *
+	 * @param move if true, attributes and route are taken over, otherwise they are copied.
+	 */
+	private int copyFrom(PlanElementStore from, int fromSlot, boolean move) {
+		int slot = allocate(from.kinds[fromSlot]);
+		this.kinds[slot] = from.kinds[fromSlot];
+		System.arraycopy(from.ints, fromSlot * INTS, this.ints, slot * INTS, INTS);
+		System.arraycopy(from.doubles, fromSlot * DOUBLES, this.doubles, slot * DOUBLES, DOUBLES);
+		System.arraycopy(from.objects, fromSlot * OBJECTS, this.objects, slot * OBJECTS, OBJECTS);
+		if (!move) {
+			copyAttributesAndRoute(slot);
+		}
+		return slot;
+	}
+
+	private void copyAttributesAndRoute(int slot) {
+		int index = slot * OBJECTS;
+		Attributes attributes = (Attributes) this.objects[index + ATTRIBUTES];
+		if (attributes != null) {
+			Attributes copy = new Attributes();
+			AttributesUtils.copyTo(attributes, copy);
+			this.objects[index + ATTRIBUTES] = copy;
+		}
+		Object element = this.objects[index + ROUTE];
+		if (this.kinds[slot] == OTHER) {
+			if (element instanceof Activity) {
+				this.objects[index + ROUTE] = PopulationUtils.createActivity((Activity) element);
+			} else if (element instanceof Leg) {
+				this.objects[index + ROUTE] = PopulationUtils.createLeg((Leg) element);
+			} else {
+				throw new IllegalArgumentException("unrecognized plan element type discovered");
+			}
+		} else if (element != null) {
+			this.objects[index + ROUTE] = ((Route) element).clone();
+		}
+	}
+
+	/**
+	 * Replaces the content of this store with a deep copy of the given store.
+	 */
+	void copyAll(PlanElementStore from) {
+		this.kinds = from.kinds.clone();
+		this.ints = from.ints.clone();
+		this.doubles = from.doubles.clone();
+		this.objects = from.objects.clone();
+		this.views = NO_VIEWS;
+		this.slotCount = from.slotCount;
+		this.firstFree = from.firstFree;
+		this.order = from.order.clone();
+		this.size = from.size;
+		for (int i = 0; i < this.size; i++) {
+			copyAttributesAndRoute(this.order[i]);
+		}
+	}
+
+	// ---------- list of elements ----------
+
+	int size() {
+		return this.size;
+	}
+
+	PlanElement get(int index) {
+		checkIndex(index, this.size);
+		return getElement(this.order[index]);
+	}
+
+	private PlanElement getElement(int slot) {
+		if (getKind(slot) == OTHER) {
+			return (PlanElement) this.objects[slot * OBJECTS + ROUTE];
+		}
+		if (slot >= this.views.length) {
+			this.views = Arrays.copyOf(this.views, this.kinds.length);
+		}
+		CompactPlanElement view = this.views[slot];
+		if (view == null) {
+			view = getKind(slot) == ACTIVITY ? new CompactActivity(this, slot) : new CompactLeg(this, slot);
+			this.views[slot] = view;
+		}
+		return view;
+	}
+
+	void add(int index, PlanElement element) {
+		checkIndex(index, this.size + 1);
+		int slot = store(element);
+		if (this.size == this.order.length) {
+			this.order = Arrays.copyOf(this.order, Math.max(4, this.size + (this.size >> 1)));
+		}
+		System.arraycopy(this.order, index, this.order, index + 1, this.size - index);
+		this.order[index] = slot;
+		this.size++;
+	}
+
+	PlanElement set(int index, PlanElement element) {
+		checkIndex(index, this.size);
+		int oldSlot = this.order[index];
+		PlanElement old = getElement(oldSlot);
+		detach(old, oldSlot);
+		this.order[index] = store(element);
+		return old;
+	}
+
+	PlanElement remove(int index) {
+		checkIndex(index, this.size);
+		int slot = this.order[index];
+		PlanElement old = getElement(slot);
+		detach(old, slot);
+		System.arraycopy(this.order, index + 1, this.order, index, this.size - index - 1);
+		this.size--;
+		return old;
+	}
+
+	/**
+	 * Removes all elements, without creating views for elements that were never accessed.
+	 */
+	void clear() {
+		for (int i = 0; i < this.size; i++) {
+			int slot = this.order[i];
+			if (getKind(slot) != OTHER && slot < this.views.length && this.views[slot] != null) {
+				detach(this.views[slot], slot);
+			} else {
+				free(slot);
+			}
+		}
+		this.size = 0;
+	}
+
+	private int store(PlanElement element) {
+		if (element instanceof CompactPlanElement) {
+			CompactPlanElement view = (CompactPlanElement) element;
+			PlanElementStore from = view.getStore();
+			if (from.owner == null) {
+				// a new element, or one that was removed from a plan: take it over
+				int slot = copyFrom(from, view.getSlot(), true);
+				if (slot >= this.views.length) {
+					this.views = Arrays.copyOf(this.views, this.kinds.length);
+				}
+				this.views[slot] = view;
+				view.attach(this, slot);
+				return slot;
+			}
+			// the element is already part of a plan: store a copy
+			return copyFrom(from, view.getSlot(), false);
+		}
+		if (!(element instanceof Activity) && !(element instanceof Leg)) {
+			throw new IllegalArgumentException("unrecognized plan element type discovered");
+		}
+		int slot = allocate(OTHER);
+		this.objects[slot * OBJECTS + ROUTE] = element;
+		return slot;
+	}
+
+	/**
+	 * Moves the data of an element that is removed from this store into its own store, so the element remains usable.
+	 */
+	private void detach(PlanElement element, int slot) {
+		if (element instanceof CompactPlanElement) {
+			PlanElementStore single = new PlanElementStore(null, 1);
+			int newSlot = single.copyFrom(this, slot, true);
+			((CompactPlanElement) element).attach(single, newSlot);
+		}
+		free(slot);
+	}
+
+	private static void checkIndex(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
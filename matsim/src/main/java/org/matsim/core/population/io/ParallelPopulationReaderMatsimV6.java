@@ -0,0 +1,260 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelPopulationReaderMatsimV6.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Parallel implementation of the {@link PopulationReaderMatsimV6}.  The parsing thread only decompresses and parses
+ * the file and collects the xml data of the persons in chunks.  The chunks are interpreted by worker threads, which
+ * create the persons with their plans, routes and attributes.  The persons are added to the population by the parsing
+ * thread in the order of the file, so the population looks the same as with the sequential reader.
+ *
+ * As the persons are added by the parsing thread one by one, this also works with a
+ * {@link StreamingPopulationReader.StreamingPopulation}: the person algorithms are run on the parsing thread in the
+ * order of the file, while the following persons are already being created.  The number of chunks in progress is
+ * limited, so only a small part of the population is in memory at any time.
+ *
+ * The ids of the persons, activities and routes are created by the parsing thread, in the same order as by the
+ * sequential reader, so that their indices do not depend on the scheduling of the workers.  Attribute converters are
+ * shared by the worker threads, so they must be thread-safe; that is why this reader is only used if
+ * {@link org.matsim.core.config.groups.PlansConfigGroup#isParallelReading()} is set.
+ */
+/* deliberately package */ final class ParallelPopulationReaderMatsimV6 extends PopulationReaderMatsimV6 {
+
+	private static final Logger log = LogManager.getLogger(ParallelPopulationReaderMatsimV6.class);
+
+	private final static String POPULATION = "population";
+	private final static String PERSON = "person";
+
+	private static final int PERSONS_PER_CHUNK = 200;
+
+	private final Scenario scenario;
+	private final int numThreads;
+	private final Map<Class<?>, AttributeConverter<?>> attributeConverters = new HashMap<>();
+	private final IdCreator idCreator;
+
+	private ExecutorService executor = null;
+	private final Deque<Future<List<Person>>> pendingChunks = new ArrayDeque<>();
+	private Chunk currentChunk = null;
+	private int personDepth = 0;
+	private int personCount = 0;
+
+	ParallelPopulationReaderMatsimV6(
+			final String inputCRS,
+			final String targetCRS,
+			final Scenario scenario,
+			final int numThreads) {
+		super(inputCRS, targetCRS, scenario);
+		this.scenario = scenario;
+		this.numThreads = Math.max(1, numThreads);
+		this.idCreator = new IdCreator(scenario);
+	}
+
+	@Override
+	public void putAttributeConverter(final Class<?> clazz, final AttributeConverter<?> converter) {
+		super.putAttributeConverter(clazz, converter);
+		this.attributeConverters.put(clazz, converter);
+	}
+
+	@Override
+	public void putAttributeConverters(final Map<Class<?>, AttributeConverter<?>> converters) {
+		super.putAttributeConverters(converters);
+		this.attributeConverters.putAll(converters);
+	}
+
+	@Override
+	public void startTag(final String name, final Attributes atts, final Stack<String> context) {
+		if (this.personDepth == 0 && !PERSON.equals(name)) {
+			// population and its attributes are read by this thread
+			super.startTag(name, atts, context);
+			return;
+		}
+		if (this.currentChunk == null) {
+			this.currentChunk = new Chunk(context);
+		}
+		this.idCreator.startTag(name, atts);
+		// copy the attributes, as the parser re-uses the object
+		this.currentChunk.tags.add(new Tag(name, new AttributesImpl(atts), null));
+		this.personDepth++;
+	}
+
+	@Override
+	public void endTag(final String name, final String content, final Stack<String> context) {
+		if (this.personDepth == 0) {
+			if (POPULATION.equals(name)) {
+				finishReading();
+			}
+			super.endTag(name, content, context);
+			return;
+		}
+		this.idCreator.endTag(name, content);
+		this.currentChunk.tags.add(new Tag(name, null, content));
+		this.personDepth--;
+		if (this.personDepth == 0) {
+			this.currentChunk.personCount++;
+			if (this.currentChunk.personCount == PERSONS_PER_CHUNK) {
+				submitChunk();
+			}
+		}
+	}
+
+	private void submitChunk() {
+		if (this.executor == null) {
+			log.info("Start parallel population reading with " + this.numThreads + " threads...");
+			AtomicInteger threadCount = new AtomicInteger();
+			this.executor = Executors.newFixedThreadPool(this.numThreads, runnable -> {
+				Thread thread = new Thread(runnable, ParallelPopulationReaderMatsimV6.class.getSimpleName() + threadCount.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		Chunk chunk = this.currentChunk;
+		CoordinateTransformation transformation = getCoordinateTransformation();
+		this.pendingChunks.add(this.executor.submit(() -> readPersons(chunk, transformation)));
+		this.currentChunk = null;
+
+		// add the persons of finished chunks, and wait if the workers are too far behind
+		while (!this.pendingChunks.isEmpty() && (this.pendingChunks.peekFirst().isDone() || this.pendingChunks.size() > 2 * this.numThreads)) {
+			addPersons(this.pendingChunks.pollFirst());
+		}
+	}
+
+	private void finishReading() {
+		if (this.currentChunk != null) {
+			submitChunk();
+		}
+		while (!this.pendingChunks.isEmpty()) {
+			addPersons(this.pendingChunks.pollFirst());
+		}
+		if (this.executor != null) {
+			this.executor.shutdown();
+			this.executor = null;
+			log.info("Finished parallel population reading of " + this.personCount + " persons.");
+		}
+	}
+
+	private void addPersons(Future<List<Person>> chunk) {
+		List<Person> persons;
+		try {
+			persons = chunk.get();
+		} catch (InterruptedException e) {
+			this.executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			this.executor.shutdownNow();
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		for (Person person : persons) {
+			addPerson(person);
+		}
+		this.personCount += persons.size();
+	}
+
+	/**
+	 * Runs on a worker thread.
+	 */
+	private List<Person> readPersons(Chunk chunk, CoordinateTransformation transformation) {
+		PersonsReader reader = new PersonsReader(transformation, this.scenario, chunk.personCount);
+		reader.putAttributeConverters(this.attributeConverters);
+		Stack<String> context = new Stack<>();
+		context.addAll(chunk.context);
+		for (Tag tag : chunk.tags) {
+			if (tag.atts != null) {
+				reader.startTag(tag.name, tag.atts, context);
+				context.push(tag.name);
+			} else {
+				context.pop();
+				reader.endTag(tag.name, tag.content, context);
+			}
+		}
+		return reader.persons;
+	}
+
+	/**
+	 * The xml data of some persons.
+	 */
+	private static final class Chunk {
+		final List<String> context;
+		final List<Tag> tags = new ArrayList<>();
+		int personCount = 0;
+
+		Chunk(Stack<String> context) {
+			this.context = new ArrayList<>(context);
+		}
+	}
+
+	/**
+	 * A start tag if it has attributes, otherwise an end tag.
+	 */
+	private static final class Tag {
+		final String name;
+		final Attributes atts;
+		final String content;
+
+		Tag(String name, Attributes atts, String content) {
+			this.name = name;
+			this.atts = atts;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * Collects the persons read instead of adding them to the population.
+	 */
+	private static final class PersonsReader extends PopulationReaderMatsimV6 {
+		final List<Person> persons;
+
+		PersonsReader(CoordinateTransformation transformation, Scenario scenario, int expectedPersons) {
+			super(transformation, scenario);
+			this.persons = new ArrayList<>(expectedPersons);
+		}
+
+		@Override
+		void addPerson(Person person) {
+			this.persons.add(person);
+		}
+	}
+}
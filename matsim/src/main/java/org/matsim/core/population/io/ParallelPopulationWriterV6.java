@@ -0,0 +1,212 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelPopulationWriterV6.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.utils.objectattributes.AttributeConverter;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Writes a population in the v6 format using multiple threads.  The persons are formatted by worker threads in blocks,
+ * and every block is compressed on its own.  The compressed blocks are written to the file in the order of the
+ * persons, as concatenated gzip members or zstd frames, so the file can be read by the usual tools and by
+ * {@link org.matsim.core.utils.io.IOUtils}.  Files without a known compression are written as plain text.
+ *
+ * Every block is formatted with its own {@link PopulationWriterHandlerImplV6}, but the coordinate transformation and
+ * the attribute converters are shared by the worker threads, so they must be thread-safe.
+ *
+ * @see PopulationWriter#setNumberOfThreads(int)
+ */
+/* deliberately package */ final class ParallelPopulationWriterV6 {
+
+	private static final Logger log = LogManager.getLogger(ParallelPopulationWriterV6.class);
+
+	private static final int PERSONS_PER_BLOCK = 200;
+
+	enum Compression {none, gzip, zstd}
+
+	private final CoordinateTransformation coordinateTransformation;
+	private final Map<Class<?>, AttributeConverter<?>> converters;
+	private final int numThreads;
+	private final Compression compression;
+
+	private ExecutorService executor = null;
+	private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+	ParallelPopulationWriterV6(
+			final CoordinateTransformation coordinateTransformation,
+			final Map<Class<?>, AttributeConverter<?>> converters,
+			final Compression compression,
+			final int numThreads) {
+		this.coordinateTransformation = coordinateTransformation;
+		this.converters = new HashMap<>(converters);
+		this.compression = compression;
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Returns the compression to use for the given file, or {@code null} if the file cannot be written in compressed
+	 * blocks, e.g. because its format does not support concatenation.
+	 */
+	static Compression getCompression(final String filename) {
+		String name = filename.toLowerCase(Locale.ROOT);
+		if (name.endsWith(".gz")) {
+			return Compression.gzip;
+		}
+		if (name.endsWith(".zst")) {
+			return Compression.zstd;
+		}
+		if (name.endsWith(".lz4") || name.endsWith(".bz2") || name.endsWith(".enc")) {
+			return null;
+		}
+		return Compression.none;
+	}
+
+	/**
+	 * Writes the given persons of the population to the file.
+	 */
+	void write(final Population population, final Iterable<? extends Person> persons, final String filename) {
+		log.info("Start parallel population writing with " + this.numThreads + " threads...");
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(this.numThreads, runnable -> {
+			Thread thread = new Thread(runnable, ParallelPopulationWriterV6.class.getSimpleName() + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try (OutputStream out = new FileOutputStream(filename)) {
+			PopulationWriterHandler handler = createHandler();
+			out.write(writeBlock(writer -> {
+				handler.writeHeaderAndStartElement(writer);
+				handler.startPlans(population, writer);
+				handler.writeSeparator(writer);
+			}));
+
+			List<Person> block = new ArrayList<>(PERSONS_PER_BLOCK);
+			for (Person person : persons) {
+				block.add(person);
+				if (block.size() == PERSONS_PER_BLOCK) {
+					submitBlock(block, out);
+					block = new ArrayList<>(PERSONS_PER_BLOCK);
+				}
+			}
+			if (!block.isEmpty()) {
+				submitBlock(block, out);
+			}
+			while (!this.pendingBlocks.isEmpty()) {
+				out.write(getBlock(this.pendingBlocks.pollFirst()));
+			}
+
+			out.write(writeBlock(handler::endPlans));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.executor.shutdownNow();
+			this.executor = null;
+			this.pendingBlocks.clear();
+		}
+	}
+
+	private void submitBlock(final List<Person> block, final OutputStream out) throws IOException {
+		this.pendingBlocks.add(this.executor.submit(() -> {
+			PopulationWriterHandler handler = createHandler();
+			return writeBlock(writer -> {
+				for (Person person : block) {
+					handler.writePerson(person, writer);
+				}
+			});
+		}));
+
+		// write the finished blocks, and wait if the workers are too far behind
+		while (!this.pendingBlocks.isEmpty() && (this.pendingBlocks.peekFirst().isDone() || this.pendingBlocks.size() > 2 * this.numThreads)) {
+			out.write(getBlock(this.pendingBlocks.pollFirst()));
+		}
+	}
+
+	private static byte[] getBlock(final Future<byte[]> block) {
+		try {
+			return block.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private PopulationWriterHandler createHandler() {
+		PopulationWriterHandler handler = new PopulationWriterHandlerImplV6(this.coordinateTransformation);
+		handler.putAttributeConverters(this.converters);
+		return handler;
+	}
+
+	/**
+	 * Formats a block and compresses it on its own.  The text is formatted uncompressed first, as the handler flushes
+	 * after every person, which would end a block of the compressed stream every time.
+	 */
+	private byte[] writeBlock(final BlockContent content) throws IOException {
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(text, StandardCharsets.UTF_8));
+		content.write(writer);
+		writer.close();
+		if (this.compression == Compression.none) {
+			return text.toByteArray();
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(text.size() / 4 + 64);
+		try (OutputStream compressor = this.compression == Compression.gzip ? new GZIPOutputStream(compressed, 1 << 16) : new ZstdOutputStream(compressed, 6)) {
+			text.writeTo(compressor);
+		}
+		return compressed.toByteArray();
+	}
+
+	private interface BlockContent {
+		void write(BufferedWriter writer) throws IOException;
+	}
+}
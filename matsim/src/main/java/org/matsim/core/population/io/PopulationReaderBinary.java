@@ -0,0 +1,479 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PopulationReaderBinary.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.api.internal.MatsimReader;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteFactories;
+import org.matsim.core.scenario.ProjectionUtils;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Reads a population written by {@link PopulationWriterBinary} and adds the persons to the population of the scenario,
+ * which may also be a {@link StreamingPopulationReader.StreamingPopulation}. The plan elements and routes are created
+ * with the factories of the population, like by the xml reader, but coordinates are not transformed and distances of
+ * routes are not re-calculated.  If a target coordinate system is given, a population stored in a different coordinate
+ * system is rejected before any person is read.
+ */
+public final class PopulationReaderBinary implements MatsimReader {
+
+	private final static Logger log = LogManager.getLogger(PopulationReaderBinary.class);
+
+	private final String targetCRS;
+	private final Scenario scenario;
+	private final ObjectAttributesConverter attributesConverter = new ObjectAttributesConverter();
+
+	private final List<String> dictionary = new ArrayList<>();
+	private Id<Link>[] linkIds = newLinkIds(0);
+	private final Inflater inflater = new Inflater();
+	private byte[] compressed = new byte[64 * 1024];
+
+	public PopulationReaderBinary(final Scenario scenario) {
+		this(null, scenario);
+	}
+
+	public PopulationReaderBinary(final String targetCRS, final Scenario scenario) {
+		this.targetCRS = targetCRS;
+		this.scenario = scenario;
+	}
+
+	public void putAttributeConverters(final Map<Class<?>, AttributeConverter<?>> converters) {
+		this.attributesConverter.putAttributeConverters(converters);
+	}
+
+	public void putAttributeConverter(final Class<?> clazz, final AttributeConverter<?> converter) {
+		this.attributesConverter.putAttributeConverter(clazz, converter);
+	}
+
+	@Override
+	public void readFile(final String filename) throws UncheckedIOException {
+		readURL(IOUtils.resolveFileOrResource(filename));
+	}
+
+	@Override
+	public void readURL(final URL url) throws UncheckedIOException {
+		log.info("starting to read binary population from " + url + " ...");
+		try (InputStream in = IOUtils.getInputStream(url)) {
+			readStream(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void readStream(final InputStream in) throws UncheckedIOException {
+		try {
+			byte[] magic = readBytes(in, PopulationWriterBinary.MAGIC.length);
+			if (!Arrays.equals(magic, PopulationWriterBinary.MAGIC)) {
+				throw new IllegalArgumentException("The data does not contain a binary MATSim population.");
+			}
+			int version = (int) readVarint(in);
+			if (version != PopulationWriterBinary.VERSION) {
+				throw new IllegalArgumentException("Unsupported version of binary population: " + version);
+			}
+			this.dictionary.clear();
+			Population population = this.scenario.getPopulation();
+
+			Block block = readBlock(in);
+			population.setName(block.readName());
+			readAttributes(block, population.getAttributes());
+			if (this.targetCRS != null) {
+				String fileCRS = ProjectionUtils.getCRS(population);
+				if (fileCRS != null && !fileCRS.equals(this.targetCRS)) {
+					throw new RuntimeException("The binary population is in " + fileCRS + ", but the coordinate system "
+							+ this.targetCRS + " was requested. Binary populations are not transformed.");
+				}
+				ProjectionUtils.putCRS(population, this.targetCRS);
+			}
+
+			long count = 0;
+			while (readByte(in) != 0) {
+				block = readBlock(in);
+				int size = (int) block.readVarint();
+				for (int i = 0; i < size; i++) {
+					population.addPerson(readPerson(block));
+				}
+				count += size;
+			}
+			log.info("read " + count + " persons.");
+		} catch (IOException | DataFormatException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.inflater.reset();
+		}
+	}
+
+	private Person readPerson(Block block) {
+		PopulationFactory factory = this.scenario.getPopulation().getFactory();
+		Person person = factory.createPerson(Id.createPersonId(block.readString()));
+		readAttributes(block, person.getAttributes());
+		int plans = (int) block.readVarint();
+		for (int p = 0; p < plans; p++) {
+			Plan plan = factory.createPlan();
+			person.addPlan(plan);
+			int flags = (int) block.readVarint();
+			if ((flags & PopulationWriterBinary.PLAN_SELECTED) != 0) {
+				person.setSelectedPlan(plan);
+			}
+			if ((flags & PopulationWriterBinary.PLAN_SCORE) != 0) {
+				plan.setScore(block.readDouble());
+			}
+			if ((flags & PopulationWriterBinary.PLAN_TYPE) != 0) {
+				plan.setType(this.dictionary.get((int) block.readVarint()));
+			}
+			readAttributes(block, plan.getAttributes());
+			int elements = (int) block.readVarint();
+			for (int e = 0; e < elements; e++) {
+				int kind = (int) block.readVarint();
+				if (kind == PopulationWriterBinary.ACTIVITY) {
+					plan.addActivity(readActivity(block, factory));
+				} else if (kind == PopulationWriterBinary.LEG) {
+					plan.addLeg(readLeg(block, factory));
+				} else {
+					throw new IllegalArgumentException("Unknown kind of plan element: " + kind);
+				}
+			}
+		}
+		return person;
+	}
+
+	private Activity readActivity(Block block, PopulationFactory factory) {
+		String type = this.dictionary.get((int) block.readVarint());
+		Id<Link> linkId = readLinkId(block);
+		String facilityId = readDictionaryEntry(block);
+		Activity activity;
+		if (facilityId != null) {
+			activity = factory.createActivityFromActivityFacilityId(type, Id.create(facilityId, ActivityFacility.class));
+			activity.setLinkId(linkId);
+		} else {
+			activity = factory.createActivityFromLinkId(type, linkId);
+		}
+		int dimensions = (int) block.readVarint();
+		if (dimensions == 2) {
+			activity.setCoord(new Coord(block.readDouble(), block.readDouble()));
+		} else if (dimensions == 3) {
+			activity.setCoord(new Coord(block.readDouble(), block.readDouble(), block.readDouble()));
+		}
+		double time = readTime(block);
+		if (!Double.isNaN(time)) {
+			activity.setStartTime(time);
+		}
+		time = readTime(block);
+		if (!Double.isNaN(time)) {
+			activity.setEndTime(time);
+		}
+		time = readTime(block);
+		if (!Double.isNaN(time)) {
+			activity.setMaximumDuration(time);
+		}
+		readAttributes(block, activity.getAttributes());
+		return activity;
+	}
+
+	private Leg readLeg(Block block, PopulationFactory factory) {
+		Leg leg = factory.createLeg(this.dictionary.get((int) block.readVarint()));
+		double time = readTime(block);
+		if (!Double.isNaN(time)) {
+			leg.setDepartureTime(time);
+		}
+		time = readTime(block);
+		if (!Double.isNaN(time)) {
+			leg.setTravelTime(time);
+		}
+		// after the mode, as setting the mode resets the routing mode
+		readAttributes(block, leg.getAttributes());
+
+		int kind = (int) block.readVarint();
+		if (kind == PopulationWriterBinary.NO_ROUTE) {
+			return leg;
+		}
+		RouteFactories routeFactories = factory.getRouteFactories();
+		Class<? extends Route> routeClass = routeFactories.getRouteClassForType(this.dictionary.get((int) block.readVarint()));
+		Id<Link> startLinkId = readLinkId(block);
+		Id<Link> endLinkId = readLinkId(block);
+		Route route = routeFactories.createRoute(routeClass, startLinkId, endLinkId);
+		time = readTime(block);
+		if (!Double.isNaN(time)) {
+			route.setTravelTime(time);
+		}
+		route.setDistance(block.readDouble());
+		if (kind == PopulationWriterBinary.NETWORK_ROUTE) {
+			if (!(route instanceof NetworkRoute)) {
+				throw new IllegalArgumentException("Route type " + route.getRouteType() + " is not a network route.");
+			}
+			NetworkRoute networkRoute = (NetworkRoute) route;
+			String vehicleId = readDictionaryEntry(block);
+			int size = (int) block.readVarint();
+			List<Id<Link>> links = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				links.add(readLinkId(block));
+			}
+			networkRoute.setLinkIds(startLinkId, links, endLinkId);
+			if (vehicleId != null) {
+				networkRoute.setVehicleId(Id.create(vehicleId, Vehicle.class));
+			}
+		} else if (kind == PopulationWriterBinary.OTHER_ROUTE) {
+			String description = block.readName();
+			if (description != null) {
+				route.setRouteDescription(description);
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown kind of route: " + kind);
+		}
+		leg.setRoute(route);
+		return leg;
+	}
+
+	private void readAttributes(Block block, Attributes attributes) {
+		int size = (int) block.readVarint();
+		for (int i = 0; i < size; i++) {
+			String key = this.dictionary.get((int) block.readVarint());
+			int type = (int) block.readVarint();
+			Object value;
+			switch (type) {
+				case PopulationWriterBinary.VALUE_STRING:
+					value = this.dictionary.get((int) block.readVarint());
+					break;
+				case PopulationWriterBinary.VALUE_DOUBLE:
+					value = block.readDouble();
+					break;
+				case PopulationWriterBinary.VALUE_INTEGER:
+					value = (int) block.readZigzag();
+					break;
+				case PopulationWriterBinary.VALUE_LONG:
+					value = block.readZigzag();
+					break;
+				case PopulationWriterBinary.VALUE_BOOLEAN:
+					value = block.readVarint() != 0;
+					break;
+				case PopulationWriterBinary.VALUE_CONVERTED:
+					String className = this.dictionary.get((int) block.readVarint());
+					value = this.attributesConverter.convert(className, block.readString());
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown type of attribute value: " + type);
+			}
+			if (value != null) {
+				attributes.putAttribute(key, value);
+			}
+		}
+	}
+
+	/**
+	 * The ids of links are cached, as they are used by many activities and routes.
+	 */
+	private Id<Link> readLinkId(Block block) {
+		int index = (int) block.readVarint() - 1;
+		if (index < 0) {
+			return null;
+		}
+		Id<Link> id = this.linkIds[index];
+		if (id == null) {
+			id = Id.createLinkId(this.dictionary.get(index));
+			this.linkIds[index] = id;
+		}
+		return id;
+	}
+
+	private String readDictionaryEntry(Block block) {
+		int index = (int) block.readVarint() - 1;
+		return index < 0 ? null : this.dictionary.get(index);
+	}
+
+	/**
+	 * @return the time, or NaN if it is undefined.
+	 */
+	private static double readTime(Block block) {
+		long value = block.readVarint();
+		if (value == PopulationWriterBinary.TIME_UNDEFINED) {
+			return Double.NaN;
+		}
+		if (value == PopulationWriterBinary.TIME_RAW) {
+			return block.readDouble();
+		}
+		value >>>= 1;
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private Block readBlock(InputStream in) throws IOException, DataFormatException {
+		Block block = new Block(readPart(in), readPart(in));
+		int newEntries = (int) block.readVarint();
+		for (int i = 0; i < newEntries; i++) {
+			// types, modes and keys are interned anyway when created by the xml reader
+			this.dictionary.add(block.readString().intern());
+		}
+		if (this.linkIds.length < this.dictionary.size()) {
+			this.linkIds = Arrays.copyOf(this.linkIds, Math.max(this.dictionary.size(), this.linkIds.length * 2));
+		}
+		return block;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Id<Link>[] newLinkIds(int size) {
+		return (Id<Link>[]) new Id<?>[size];
+	}
+
+	private byte[] readPart(InputStream in) throws IOException, DataFormatException {
+		int rawLength = (int) readVarint(in);
+		int compressedLength = (int) readVarint(in);
+		if (this.compressed.length < compressedLength) {
+			this.compressed = new byte[compressedLength];
+		}
+		readFully(in, this.compressed, compressedLength);
+		byte[] raw = new byte[rawLength];
+		this.inflater.reset();
+		this.inflater.setInput(this.compressed, 0, compressedLength);
+		int length = 0;
+		while (length < rawLength) {
+			int n = this.inflater.inflate(raw, length, rawLength - length);
+			if (n == 0 && (this.inflater.finished() || this.inflater.needsInput())) {
+				throw new EOFException("Unexpected end of compressed population data.");
+			}
+			length += n;
+		}
+		return raw;
+	}
+
+	private static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException("Unexpected end of binary population data.");
+		}
+		return b;
+	}
+
+	private static byte[] readBytes(InputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		readFully(in, bytes, length);
+		return bytes;
+	}
+
+	private static void readFully(InputStream in, byte[] bytes, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			int n = in.read(bytes, offset, length - offset);
+			if (n < 0) {
+				throw new EOFException("Unexpected end of binary population data.");
+			}
+			offset += n;
+		}
+	}
+
+	private static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = readByte(in);
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * The decompressed structure and doubles of a block.
+	 */
+	private static final class Block {
+
+		private final byte[] data;
+		private int position = 0;
+		private final byte[] doubles;
+		private int doublesPosition = 0;
+
+		Block(byte[] data, byte[] doubles) {
+			this.data = data;
+			this.doubles = doubles;
+		}
+
+		long readVarint() {
+			long value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = this.data[this.position++] & 0xFF;
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		long readZigzag() {
+			long value = readVarint();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		double readDouble() {
+			long bits = 0;
+			for (int i = 0; i < 8; i++) {
+				bits = (bits << 8) | (this.doubles[this.doublesPosition++] & 0xFF);
+			}
+			return Double.longBitsToDouble(bits);
+		}
+
+		String readString() {
+			int length = (int) readVarint();
+			String value = new String(this.data, this.position, length, StandardCharsets.UTF_8);
+			this.position += length;
+			return value;
+		}
+
+		String readName() {
+			int length = (int) readVarint() - 1;
+			if (length < 0) {
+				return null;
+			}
+			String value = new String(this.data, this.position, length, StandardCharsets.UTF_8);
+			this.position += length;
+			return value;
+		}
+	}
+}
@@ -36,7 +36,6 @@ import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.api.core.v01.population.Route;
 import org.matsim.core.api.internal.MatsimReader;
-import org.matsim.core.population.PersonUtils;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.population.routes.RouteFactories;
@@ -135,6 +134,20 @@ import com.google.inject.Inject;
 	    }
 	}
 
+	/**
+	 * For reading persons only, with a coordinate transformation that is already known.  Does not change the
+	 * population's CRS.
+	 */
+	PopulationReaderMatsimV6(
+			final CoordinateTransformation coordinateTransformation,
+			final Scenario scenario) {
+		this.externalInputCRS = null;
+		this.targetCRS = null;
+		this.scenario = scenario;
+		this.plans = scenario.getPopulation();
+		this.coordinateTransformation = coordinateTransformation;
+	}
+
 	public void putAttributeConverter( final Class<?> clazz , AttributeConverter<?> converter ) {
 		attributesReader.putAttributeConverter( clazz , converter );
 	}
@@ -198,7 +211,7 @@ import com.google.inject.Inject;
 	public void endTag(final String name, final String content, final Stack<String> context) {
 		switch ( name ) {
 			case PERSON:
-				this.plans.addPerson(this.currperson);
+				addPerson(this.currperson);
 				this.currperson = null;
 				break;
 			case ATTRIBUTE:
@@ -234,6 +247,20 @@ import com.google.inject.Inject;
 		}
 	}
 
+	/**
+	 * Called for every person that was read completely.
+	 */
+	void addPerson(final Person person) {
+		this.plans.addPerson(person);
+	}
+
+	/**
+	 * @return the transformation applied to the coordinates read, which may change when the population's attributes are read.
+	 */
+	CoordinateTransformation getCoordinateTransformation() {
+		return this.coordinateTransformation;
+	}
+
 	private void startPopulation(final Attributes atts) {
 		this.plans.setName(atts.getValue(ATTR_POPULATION_DESC));
 	}
@@ -256,7 +283,13 @@ import com.google.inject.Inject;
 					"Attribute 'selected' of Element 'Plan' is neither 'yes' nor 'no'.");
 		}
 		this.routeDescription = null;
-		this.currplan = PersonUtils.createAndAddPlan(this.currperson, selected);
+		// create the plan elements with the population's factory, so they are stored the way the population is configured to
+		this.currplan = this.plans.getFactory().createPlan();
+		this.currplan.setPerson(this.currperson);
+		this.currperson.addPlan(this.currplan);
+		if (selected) {
+			this.currperson.setSelectedPlan(this.currplan);
+		}
 
 		String scoreString = atts.getValue(ATTR_PLAN_SCORE);
 		if (scoreString != null) {
@@ -273,7 +306,8 @@ import com.google.inject.Inject;
 	private void startAct(final Attributes atts) {
 		if (atts.getValue(ATTR_ACT_FACILITY) != null) {
 			final Id<ActivityFacility> facilityId = Id.create(atts.getValue(ATTR_ACT_FACILITY), ActivityFacility.class);
-			this.curract = PopulationUtils.createAndAddActivityFromFacilityId(this.currplan, atts.getValue(ATTR_ACT_TYPE), facilityId);
+			this.curract = this.plans.getFactory().createActivityFromActivityFacilityId(atts.getValue(ATTR_ACT_TYPE), facilityId);
+			this.currplan.addActivity(this.curract);
 			if (atts.getValue(ATTR_ACT_LINK) != null) {
 				final Id<Link> linkId = Id.create(atts.getValue(ATTR_ACT_LINK), Link.class);
 				this.curract.setLinkId(linkId);
@@ -285,14 +319,16 @@ import com.google.inject.Inject;
 		} else if (atts.getValue(ATTR_ACT_LINK) != null) {
 			Id<Link> linkId = Id.create(atts.getValue(ATTR_ACT_LINK), Link.class);
 			final Id<Link> linkId1 = linkId;
-			this.curract = PopulationUtils.createAndAddActivityFromLinkId(this.currplan, atts.getValue(ATTR_ACT_TYPE), linkId1);
+			this.curract = this.plans.getFactory().createActivityFromLinkId(atts.getValue(ATTR_ACT_TYPE), linkId1);
+			this.currplan.addActivity(this.curract);
 			if ((atts.getValue(ATTR_ACT_X) != null) && (atts.getValue(ATTR_ACT_Y) != null)) {
 				final Coord coord = parseCoord( atts );
 				this.curract.setCoord(coord);
 			}
 		} else if ((atts.getValue(ATTR_ACT_X) != null) && (atts.getValue(ATTR_ACT_Y) != null)) {
 			final Coord coord = parseCoord( atts );
-			this.curract = PopulationUtils.createAndAddActivityFromCoord(this.currplan, atts.getValue(ATTR_ACT_TYPE), coord);
+			this.curract = this.plans.getFactory().createActivityFromCoord(atts.getValue(ATTR_ACT_TYPE), coord);
+			this.currplan.addActivity(this.curract);
 		} else {
 			throw new IllegalArgumentException("In this version of MATSim either the facility, the link or the coords be specified for an Act.");
 		}
@@ -398,7 +434,11 @@ import com.google.inject.Inject;
 		if (VALUE_UNDEF.equals(mode)) {
 			mode = "undefined";
 		}
-		this.currleg = PopulationUtils.createAndAddLeg( this.currplan, mode.intern() );
+		if (this.currplan.getPlanElements().isEmpty()) {
+			throw new IllegalStateException("The order of 'acts'/'legs' is wrong in some way while trying to create a 'leg'.");
+		}
+		this.currleg = this.plans.getFactory().createLeg( mode.intern() );
+		this.currplan.addLeg( this.currleg );
 		Time.parseOptionalTime(atts.getValue(ATTR_LEG_DEPTIME))
 				.ifDefinedOrElse(currleg::setDepartureTime, currleg::setDepartureTimeUndefined);
 		Time.parseOptionalTime(atts.getValue(ATTR_LEG_TRAVTIME))
@@ -409,12 +449,29 @@ import com.google.inject.Inject;
 	}
 
 	private void startRoute(final Attributes atts) {
+		this.currRoute = createRoute(this.scenario.getPopulation().getFactory().getRouteFactories(), atts, this.currleg.getMode());
+		this.currleg.setRoute(this.currRoute);
+
+		if (atts.getValue("trav_time") != null) {
+			Time.parseOptionalTime(atts.getValue("trav_time"))
+					.ifDefinedOrElse(currRoute::setTravelTime, currRoute::setTravelTimeUndefined);
+		}
+
+		if (atts.getValue("distance") != null) {
+			this.currRoute.setDistance(Double.parseDouble(atts.getValue("distance")));
+		}
+		final String vehicleRefId = atts.getValue("vehicleRefId");
+		if (vehicleRefId != null && !vehicleRefId.equals("null") && this.currRoute instanceof NetworkRoute ) {
+			((NetworkRoute)this.currRoute).setVehicleId(Id.create(vehicleRefId, Vehicle.class));
+		}
+	}
+
+	private static Route createRoute(final RouteFactories factory, final Attributes atts, final String legMode) {
 		String startLinkId = atts.getValue(ATTR_ROUTE_STARTLINK);
 		String endLinkId = atts.getValue(ATTR_ROUTE_ENDLINK);
 		String routeType = atts.getValue("type");
 		
 		if (routeType == null) {
-			String legMode = this.currleg.getMode();
 			if ("pt".equals(legMode)) {
 				routeType = "experimentalPt1";
 			} else if ("car".equals(legMode)) {
@@ -424,24 +481,9 @@ import com.google.inject.Inject;
 			}
 		}
 		
-		RouteFactories factory = this.scenario.getPopulation().getFactory().getRouteFactories();
 		Class<? extends Route> routeClass = factory.getRouteClassForType(routeType);
 		
-		this.currRoute = this.scenario.getPopulation().getFactory().getRouteFactories().createRoute(routeClass, startLinkId == null ? null : Id.create(startLinkId, Link.class), endLinkId == null ? null : Id.create(endLinkId, Link.class));
-		this.currleg.setRoute(this.currRoute);
-
-		if (atts.getValue("trav_time") != null) {
-			Time.parseOptionalTime(atts.getValue("trav_time"))
-					.ifDefinedOrElse(currRoute::setTravelTime, currRoute::setTravelTimeUndefined);
-		}
-
-		if (atts.getValue("distance") != null) {
-			this.currRoute.setDistance(Double.parseDouble(atts.getValue("distance")));
-		}
-		final String vehicleRefId = atts.getValue("vehicleRefId");
-		if (vehicleRefId != null && !vehicleRefId.equals("null") && this.currRoute instanceof NetworkRoute ) {
-			((NetworkRoute)this.currRoute).setVehicleId(Id.create(vehicleRefId, Vehicle.class));
-		}
+		return factory.createRoute(routeClass, startLinkId == null ? null : Id.create(startLinkId, Link.class), endLinkId == null ? null : Id.create(endLinkId, Link.class));
 	}
 
 	private void endRoute(final String content) {
@@ -484,4 +526,51 @@ import com.google.inject.Inject;
 		}
 	}
 
+
+	/**
+	 * Creates the ids of the persons, activities and routes in the same order as the reader does, without creating
+	 * anything else.  Attribute values are not looked at.
+	 */
+	static final class IdCreator {
+		private final RouteFactories routeFactories;
+		private String legMode = null;
+		private Route route = null;
+
+		IdCreator(final Scenario scenario) {
+			this.routeFactories = scenario.getPopulation().getFactory().getRouteFactories();
+		}
+
+		void startTag(final String name, final Attributes atts) {
+			switch (name) {
+				case PERSON:
+					Id.create(atts.getValue(ATTR_PERSON_ID), Person.class);
+					break;
+				case ACT:
+					if (atts.getValue(ATTR_ACT_FACILITY) != null) {
+						Id.create(atts.getValue(ATTR_ACT_FACILITY), ActivityFacility.class);
+					}
+					if (atts.getValue(ATTR_ACT_LINK) != null) {
+						Id.create(atts.getValue(ATTR_ACT_LINK), Link.class);
+					}
+					break;
+				case LEG:
+					this.legMode = atts.getValue(ATTR_LEG_MODE);
+					break;
+				case ROUTE:
+					this.route = createRoute(this.routeFactories, atts, this.legMode);
+					final String vehicleRefId = atts.getValue("vehicleRefId");
+					if (vehicleRefId != null && !vehicleRefId.equals("null") && this.route instanceof NetworkRoute) {
+						Id.create(vehicleRefId, Vehicle.class);
+					}
+					break;
+			}
+		}
+
+		void endTag(final String name, final String content) {
+			if (ROUTE.equals(name)) {
+				this.route.setRouteDescription(content.trim());
+				this.route = null;
+			}
+		}
+	}
 }
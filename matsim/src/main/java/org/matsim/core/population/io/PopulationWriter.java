@@ -22,7 +22,9 @@ package org.matsim.core.population.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
@@ -52,6 +54,7 @@ public final class PopulationWriter extends AbstractMatsimWriter implements Mats
 
 	private final static Logger log = LogManager.getLogger(PopulationWriter.class);
 	private Map<Class<?>,AttributeConverter<?>> converters = new HashMap<>();
+	private int numberOfThreads = 1;
 
 
 	public PopulationWriter(final Population population) {
@@ -129,11 +132,26 @@ public final class PopulationWriter extends AbstractMatsimWriter implements Mats
 		this.converters.put( key, converter );
 	}
 
+	/**
+	 * Sets the number of threads used to write files in the v6 format.  With more than one thread, the persons are
+	 * formatted and compressed in parallel, in blocks which are concatenated in the file.  This works for uncompressed,
+	 * gzip- and zstd-compressed files; other files are written by a single thread.  The coordinate transformation and
+	 * the attribute converters must be thread-safe in this case.
+	 */
+	public void setNumberOfThreads( final int numberOfThreads ) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
 	/**
 	 * Writes all plans to the file.
 	 */
 	@Override
 	public final void write(final String filename) {
+		ParallelPopulationWriterV6.Compression compression = ParallelPopulationWriterV6.getCompression(filename);
+		if (this.numberOfThreads > 1 && this.handler instanceof PopulationWriterHandlerImplV6 && this.useCompression == null && compression != null) {
+			writeParallel(filename, compression);
+			return;
+		}
 		try {
 			this.handler.putAttributeConverters(converters);
 			this.openFile(filename);
@@ -175,6 +193,25 @@ public final class PopulationWriter extends AbstractMatsimWriter implements Mats
 	}
 
 
+	private void writeParallel(final String filename, final ParallelPopulationWriterV6.Compression compression) {
+		try {
+			List<Person> persons = new ArrayList<>();
+			for (Person p : PopulationUtils.getSortedPersons(this.population).values()) {
+				if ((this.write_person_fraction < 1.0) && (MatsimRandom.getRandom().nextDouble() >= this.write_person_fraction)) {
+					continue;
+				}
+				persons.add(p);
+				counter.incCounter();
+			}
+			new ParallelPopulationWriterV6(this.coordinateTransformation, this.converters, compression, this.numberOfThreads)
+					.write(this.population, persons, filename);
+			log.info("Population written to: " + filename);
+		} finally {
+			counter.printCounter();
+			counter.reset();
+		}
+	}
+
 	private  final void writePersons() {
 		for (Person p : PopulationUtils.getSortedPersons(this.population).values()) {
 			writePerson(p);
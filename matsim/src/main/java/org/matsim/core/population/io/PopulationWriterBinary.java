@@ -0,0 +1,427 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PopulationWriterBinary.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.api.internal.MatsimWriter;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+/**
+ * Writes a population in a binary format that can be read much faster than xml, see {@link PopulationReaderBinary}.
+ * It is meant for checkpoints, e.g. to restart a run from its output plans: coordinates are written as they are in
+ * memory, without transformation, and attribute values keep their type.
+ * <p></p>
+ * The persons are written in chunks of up to {@link #PERSONS_PER_CHUNK} persons, sorted by id like in the xml format.
+ * Ids, activity types, modes and route types are replaced by indices into a dictionary that grows over the whole file,
+ * so every id is only stored once. Numbers that are usually not integers (scores, coordinates, distances, double
+ * attributes) are stored in a separate part of the chunk, as they compress differently.
+ * <p></p>
+ * Layout of the file, all numbers are unsigned varints unless noted otherwise:
+ * <pre>
+ * file       := MAGIC VERSION block(population) (1 block(chunk))* 0
+ * block      := part(structure) part(doubles)
+ * part       := rawLength compressedLength deflatedBytes
+ * population := numberOfNewEntries string* name attributes
+ * chunk      := numberOfNewEntries string* numberOfPersons person*
+ * person     := string(id) attributes numberOfPlans plan*
+ * plan       := flags type? attributes numberOfElements (0 activity | 1 leg)*
+ * activity   := type id(link) id(facility) coordinates time(start) time(end) time(maxDuration) attributes
+ * leg        := mode time(departure) time(travel) attributes route
+ * route      := 0 | 1 type id(start) id(end) time(travel) id(vehicle) numberOfLinks id(link)* | 2 type id(start) id(end) time(travel) name(description)
+ * attributes := numberOfAttributes (key value)*
+ * string     := length utf8Bytes
+ * </pre>
+ * Types, modes and keys are dictionary indices, ids and names are <code>0</code> for <code>null</code> and the
+ * dictionary index or string length plus 1 otherwise. Plan flags are {@link #PLAN_SELECTED}, {@link #PLAN_SCORE} (the
+ * score being in the doubles) and {@link #PLAN_TYPE}. Coordinates are <code>0</code> (none), <code>2</code> or
+ * <code>3</code>, followed by as many doubles. Times are <code>0</code> if undefined, the zigzag-encoded whole
+ * seconds shifted left by one plus 1, or <code>2</code> with the time in the doubles. Distances of routes are always
+ * in the doubles. Attribute values start with the type ({@link #VALUE_STRING} etc.), values of other types are
+ * written with their {@link AttributeConverter}: the class name as dictionary index followed by the string.
+ */
+public final class PopulationWriterBinary implements MatsimWriter {
+
+	private static final Logger log = LogManager.getLogger(PopulationWriterBinary.class);
+
+	public static final byte[] MAGIC = "MATSIMPO".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 1;
+	public static final int PERSONS_PER_CHUNK = 1000;
+
+	public static final int PLAN_SELECTED = 1;
+	public static final int PLAN_SCORE = 2;
+	public static final int PLAN_TYPE = 4;
+
+	public static final int ACTIVITY = 0;
+	public static final int LEG = 1;
+
+	public static final int NO_ROUTE = 0;
+	public static final int NETWORK_ROUTE = 1;
+	public static final int OTHER_ROUTE = 2;
+
+	public static final int TIME_UNDEFINED = 0;
+	public static final int TIME_RAW = 2;
+
+	public static final int VALUE_STRING = 0;
+	public static final int VALUE_DOUBLE = 1;
+	public static final int VALUE_INTEGER = 2;
+	public static final int VALUE_LONG = 3;
+	public static final int VALUE_BOOLEAN = 4;
+	public static final int VALUE_CONVERTED = 5;
+
+	private final Population population;
+	private final ObjectAttributesConverter attributesConverter = new ObjectAttributesConverter();
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final byte[] deflateBuffer = new byte[64 * 1024];
+	private final Map<String, Integer> dictionary = new HashMap<>();
+	private final List<String> newEntries = new ArrayList<>();
+	private final ByteArrayOutputStream structure = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream doubles = new ByteArrayOutputStream();
+
+	public PopulationWriterBinary(final Population population) {
+		this.population = population;
+	}
+
+	public void putAttributeConverters(final Map<Class<?>, AttributeConverter<?>> converters) {
+		this.attributesConverter.putAttributeConverters(converters);
+	}
+
+	public void putAttributeConverter(final Class<?> clazz, final AttributeConverter<?> converter) {
+		this.attributesConverter.putAttributeConverter(clazz, converter);
+	}
+
+	@Override
+	public void write(final String filename) {
+		write(IOUtils.getOutputStream(IOUtils.getFileUrl(filename), false));
+		log.info("Population written to: " + filename);
+	}
+
+	/**
+	 * Writes the population to the stream and closes it.
+	 */
+	public void write(final OutputStream out) {
+		this.dictionary.clear();
+		this.newEntries.clear();
+		try (OutputStream stream = out) {
+			stream.write(MAGIC);
+			writeVarint(stream, VERSION);
+
+			writeName(this.population.getName());
+			writeAttributes(this.population.getAttributes());
+			writeBlock(stream);
+
+			List<Person> chunk = new ArrayList<>(PERSONS_PER_CHUNK);
+			for (Person person : PopulationUtils.getSortedPersons(this.population).values()) {
+				chunk.add(person);
+				if (chunk.size() == PERSONS_PER_CHUNK) {
+					writeChunk(chunk, stream);
+				}
+			}
+			if (!chunk.isEmpty()) {
+				writeChunk(chunk, stream);
+			}
+			stream.write(0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.deflater.reset();
+		}
+	}
+
+	private void writeChunk(final List<Person> chunk, final OutputStream out) throws IOException {
+		writeVarint(this.structure, chunk.size());
+		for (Person person : chunk) {
+			writePerson(person);
+		}
+		chunk.clear();
+		out.write(1);
+		writeBlock(out);
+	}
+
+	/**
+	 * Writes the dictionary entries that were added since the last block, followed by the structure and the doubles.
+	 */
+	private void writeBlock(final OutputStream out) throws IOException {
+		ByteArrayOutputStream entries = new ByteArrayOutputStream();
+		writeVarint(entries, this.newEntries.size());
+		for (String entry : this.newEntries) {
+			writeString(entries, entry);
+		}
+		this.newEntries.clear();
+		this.structure.writeTo(entries);
+		writePart(out, entries.toByteArray());
+		writePart(out, this.doubles.toByteArray());
+		this.structure.reset();
+		this.doubles.reset();
+	}
+
+	private void writePerson(final Person person) {
+		writeString(this.structure, person.getId().toString());
+		writeAttributes(person.getAttributes());
+		writeVarint(this.structure, person.getPlans().size());
+		for (Plan plan : person.getPlans()) {
+			int flags = (PersonUtils.isSelected(plan) ? PLAN_SELECTED : 0)
+					| (plan.getScore() != null ? PLAN_SCORE : 0)
+					| (plan.getType() != null ? PLAN_TYPE : 0);
+			writeVarint(this.structure, flags);
+			if (plan.getScore() != null) {
+				writeDouble(plan.getScore());
+			}
+			if (plan.getType() != null) {
+				writeVarint(this.structure, index(plan.getType()));
+			}
+			writeAttributes(plan.getAttributes());
+			writeVarint(this.structure, plan.getPlanElements().size());
+			for (PlanElement pe : plan.getPlanElements()) {
+				if (pe instanceof Activity) {
+					writeVarint(this.structure, ACTIVITY);
+					writeActivity((Activity) pe);
+				} else if (pe instanceof Leg) {
+					writeVarint(this.structure, LEG);
+					writeLeg((Leg) pe);
+				} else {
+					throw new IllegalArgumentException("unrecognized plan element type discovered");
+				}
+			}
+		}
+	}
+
+	private void writeActivity(final Activity activity) {
+		writeVarint(this.structure, index(activity.getType()));
+		writeId(activity.getLinkId());
+		writeId(activity.getFacilityId());
+		Coord coord = activity.getCoord();
+		if (coord == null) {
+			writeVarint(this.structure, 0);
+		} else {
+			writeVarint(this.structure, coord.hasZ() ? 3 : 2);
+			writeDouble(coord.getX());
+			writeDouble(coord.getY());
+			if (coord.hasZ()) {
+				writeDouble(coord.getZ());
+			}
+		}
+		writeTime(activity.getStartTime());
+		writeTime(activity.getEndTime());
+		writeTime(activity.getMaximumDuration());
+		writeAttributes(activity.getAttributes());
+	}
+
+	private void writeLeg(final Leg leg) {
+		writeVarint(this.structure, index(leg.getMode()));
+		writeTime(leg.getDepartureTime());
+		writeTime(leg.getTravelTime());
+		writeAttributes(leg.getAttributes());
+		Route route = leg.getRoute();
+		if (route == null) {
+			writeVarint(this.structure, NO_ROUTE);
+			return;
+		}
+		writeVarint(this.structure, route instanceof NetworkRoute ? NETWORK_ROUTE : OTHER_ROUTE);
+		writeVarint(this.structure, index(route.getRouteType()));
+		writeId(route.getStartLinkId());
+		writeId(route.getEndLinkId());
+		writeTime(route.getTravelTime());
+		writeDouble(route.getDistance());
+		if (route instanceof NetworkRoute) {
+			NetworkRoute networkRoute = (NetworkRoute) route;
+			writeId(networkRoute.getVehicleId());
+			List<? extends Id<?>> links = networkRoute.getLinkIds();
+			writeVarint(this.structure, links.size());
+			for (Id<?> link : links) {
+				writeId(link);
+			}
+		} else {
+			writeName(route.getRouteDescription());
+		}
+	}
+
+	private void writeAttributes(final Attributes attributes) {
+		if (attributes.isEmpty()) {
+			writeVarint(this.structure, 0);
+			return;
+		}
+		// values without converter are skipped, so the number of attributes is only known afterwards
+		List<Object> entries = new ArrayList<>(attributes.size() * 2);
+		for (Map.Entry<String, Object> e : attributes.getAsMap().entrySet()) {
+			Object value = e.getValue();
+			if (value == null) {
+				continue;
+			}
+			if (!(value instanceof String || value instanceof Double || value instanceof Integer || value instanceof Long || value instanceof Boolean)) {
+				value = this.attributesConverter.convertToString(value);
+				if (value == null) {
+					continue;
+				}
+				value = new ConvertedValue(e.getValue().getClass().getName(), (String) value);
+			}
+			entries.add(e.getKey());
+			entries.add(value);
+		}
+		writeVarint(this.structure, entries.size() / 2);
+		for (int i = 0; i < entries.size(); i += 2) {
+			writeVarint(this.structure, index((String) entries.get(i)));
+			Object value = entries.get(i + 1);
+			if (value instanceof String) {
+				writeVarint(this.structure, VALUE_STRING);
+				writeVarint(this.structure, index((String) value));
+			} else if (value instanceof Double) {
+				writeVarint(this.structure, VALUE_DOUBLE);
+				writeDouble((Double) value);
+			} else if (value instanceof Integer) {
+				writeVarint(this.structure, VALUE_INTEGER);
+				writeZigzag((Integer) value);
+			} else if (value instanceof Long) {
+				writeVarint(this.structure, VALUE_LONG);
+				writeZigzag((Long) value);
+			} else if (value instanceof Boolean) {
+				writeVarint(this.structure, VALUE_BOOLEAN);
+				writeVarint(this.structure, (Boolean) value ? 1 : 0);
+			} else {
+				ConvertedValue converted = (ConvertedValue) value;
+				writeVarint(this.structure, VALUE_CONVERTED);
+				writeVarint(this.structure, index(converted.className));
+				writeString(this.structure, converted.value);
+			}
+		}
+	}
+
+	private void writeId(final Id<?> id) {
+		writeVarint(this.structure, id == null ? 0 : index(id.toString()) + 1L);
+	}
+
+	private void writeName(final String name) {
+		if (name == null) {
+			writeVarint(this.structure, 0);
+		} else {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			writeVarint(this.structure, bytes.length + 1L);
+			this.structure.write(bytes, 0, bytes.length);
+		}
+	}
+
+	private void writeTime(final OptionalTime time) {
+		if (time.isUndefined()) {
+			writeVarint(this.structure, TIME_UNDEFINED);
+			return;
+		}
+		double seconds = time.seconds();
+		if (seconds == (long) seconds && Math.abs(seconds) < 1e15) {
+			long value = (long) seconds;
+			writeVarint(this.structure, (((value << 1) ^ (value >> 63)) << 1) | 1);
+		} else {
+			writeVarint(this.structure, TIME_RAW);
+			writeDouble(seconds);
+		}
+	}
+
+	private void writeZigzag(final long value) {
+		writeVarint(this.structure, (value << 1) ^ (value >> 63));
+	}
+
+	private void writeDouble(final double value) {
+		long bits = Double.doubleToLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			this.doubles.write((int) (bits >>> shift));
+		}
+	}
+
+	private void writePart(OutputStream out, byte[] raw) throws IOException {
+		this.deflater.reset();
+		this.deflater.setInput(raw);
+		this.deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 16);
+		while (!this.deflater.finished()) {
+			int length = this.deflater.deflate(this.deflateBuffer);
+			compressed.write(this.deflateBuffer, 0, length);
+		}
+		writeVarint(out, raw.length);
+		writeVarint(out, compressed.size());
+		compressed.writeTo(out);
+	}
+
+	private int index(String value) {
+		Integer index = this.dictionary.get(value);
+		if (index == null) {
+			index = this.dictionary.size();
+			this.dictionary.put(value, index);
+			this.newEntries.add(value);
+		}
+		return index;
+	}
+
+	private static void writeVarint(OutputStream out, long value) {
+		try {
+			while ((value & ~0x7FL) != 0) {
+				out.write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.write((int) value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	private static final class ConvertedValue {
+
+		private final String className;
+		private final String value;
+
+		ConvertedValue(String className, String value) {
+			this.className = className;
+			this.value = value;
+		}
+	}
+}
@@ -32,17 +32,24 @@ import org.matsim.core.config.Config;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.algorithms.PersonAlgorithm;
 import org.matsim.core.scenario.MutableScenario;
+import org.matsim.utils.objectattributes.AttributeConverter;
 import org.matsim.utils.objectattributes.attributable.Attributes;
 
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 public final class StreamingPopulationReader implements MatsimReader {
 	private static final Logger log = LogManager.getLogger(StreamingPopulationReader.class);
 	
 	private PopulationReader reader ;
+	private final String inputCRS ;
+	private final String targetCRS ;
+	private final Scenario scenario ;
+	private final Map<Class<?>, AttributeConverter<?>> attributeConverters = new HashMap<>() ;
 	private final StreamingPopulation pop ;
 	private int cnt;
 
@@ -56,6 +63,9 @@ public final class StreamingPopulationReader implements MatsimReader {
 
 	public StreamingPopulationReader(String inputCRS, String targetCRS, Scenario scenario ) {
 		if ( scenario instanceof MutableScenario ) {
+			this.inputCRS = inputCRS ;
+			this.targetCRS = targetCRS ;
+			this.scenario = scenario ;
 			pop = new StreamingPopulation( scenario.getConfig() ) ;
 			((MutableScenario) scenario).setPopulation(pop);
 			reader = new PopulationReader( inputCRS, targetCRS, scenario, true) ;
@@ -66,13 +76,41 @@ public final class StreamingPopulationReader implements MatsimReader {
 	Population getStreamingPopulation() {
 		return pop ;
 	}
+	public void putAttributeConverter( final Class<?> clazz , AttributeConverter<?> converter ) {
+		attributeConverters.put( clazz , converter );
+		reader.putAttributeConverter( clazz , converter );
+	}
+
+	public void putAttributeConverters( final Map<Class<?>, AttributeConverter<?>> converters ) {
+		attributeConverters.putAll( converters );
+		reader.putAttributeConverters( converters );
+	}
+
 	@Override public void readFile(String filename) {
-		reader.readFile(filename);
+		if ( filename.toLowerCase(Locale.ROOT).endsWith(".bin") ) {
+			createBinaryReader().readFile( filename );
+		} else {
+			reader.readFile(filename);
+		}
 	}
 
 	@Override
 	public void readURL( URL url ) {
-		reader.parse( url ) ;
+		if ( url.getPath().toLowerCase(Locale.ROOT).endsWith(".bin") ) {
+			createBinaryReader().readURL( url );
+		} else {
+			reader.parse( url ) ;
+		}
+	}
+
+	private PopulationReaderBinary createBinaryReader() {
+		// the binary format keeps the coordinates as they were written, so it cannot serve a requested transformation
+		if ( inputCRS != null && targetCRS != null && !inputCRS.equals( targetCRS ) ) {
+			throw new RuntimeException( "cannot transform a binary population from " + inputCRS + " to " + targetCRS ) ;
+		}
+		PopulationReaderBinary binaryReader = new PopulationReaderBinary( targetCRS != null ? targetCRS : inputCRS, scenario ) ;
+		binaryReader.putAttributeConverters( attributeConverters );
+		return binaryReader ;
 	}
 
 	public void parse(InputStream is) {
@@ -20,26 +20,42 @@
 
 package org.matsim.core.population.routes;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.core.network.NetworkUtils;
 import org.matsim.vehicles.Vehicle;
 
 /**
  * Implementation of {@link NetworkRoute} which internally stores the route as a series of {@link Link}s.
  *
+ * <p>The links are not stored as {@link Id} objects, but as their {@link Id#index() indices}: the difference of
+ * each index to the previous one is written as a variable-length number (zig-zag encoded, 7 bits per byte). As links
+ * along a route usually have similar indices, most links need one or two bytes instead of a reference to an Id
+ * object.</p>
+ *
+ * <p>{@link #getLinkIds()} returns a read-only view on the encoded links; no list of Ids is created. Iterating over
+ * the view decodes the links one after the other. The first access by position, like the mobsim does when an agent moves
+ * from one link to the next, decodes all link indices into an array that is kept until the links change, so that every
+ * further access by position takes constant time.</p>
+ *
  * @author mrieser
  */
 final class LinkNetworkRouteImpl extends AbstractRoute implements NetworkRoute {
 
 	/*package*/ final static String ROUTE_TYPE = "links";
-	
-	private ArrayList<Id<Link>> route = new ArrayList<>();
-	private List<Id<Link>> safeRoute = Collections.unmodifiableList(this.route);
+
+	private static final byte[] NO_LINKS = new byte[0];
+
+	private byte[] links = NO_LINKS;
+	private int linkCount = 0;
+	private Decoded decoded = null;
+	private List<Id<Link>> safeRoute = new LinkIds();
 	private double travelCost = Double.NaN;
 	private Id<Vehicle> vehicleId = null;
 
@@ -54,16 +70,18 @@ final class LinkNetworkRouteImpl extends AbstractRoute implements NetworkRoute {
 	
 	LinkNetworkRouteImpl(final Id<Link> startLinkId, final Id<Link>[] linkIds, final Id<Link> endLinkId) {
 		super(startLinkId, endLinkId);
-        Collections.addAll(this.route, linkIds);
-		this.route.trimToSize();
+		int[] indices = new int[linkIds.length];
+		for (int i = 0; i < linkIds.length; i++) {
+			indices[i] = linkIndex(linkIds[i]);
+		}
+		setLinks(indices, 0, indices.length);
 	}
 
 	@Override
 	public LinkNetworkRouteImpl clone() {
 		LinkNetworkRouteImpl cloned = (LinkNetworkRouteImpl) super.clone();
-		ArrayList<Id<Link>> tmp = cloned.route;
-		cloned.route = new ArrayList<>(tmp); // deep copy of route
-		cloned.safeRoute = Collections.unmodifiableList(cloned.route);
+		// the encoded links are never modified, only replaced, so they can be shared
+		cloned.safeRoute = cloned.new LinkIds();
 		return cloned;
 	}
 
@@ -74,6 +92,9 @@ final class LinkNetworkRouteImpl extends AbstractRoute implements NetworkRoute {
 
 	@Override
 	public NetworkRoute getSubRoute(Id<Link> fromLinkId, Id<Link> toLinkId) {
+		int[] route = decodeLinks();
+		int fromLinkIndex = linkIndex(fromLinkId);
+		int toLinkIndex = linkIndex(toLinkId);
 		/**
 		 * the index where the link after fromLinkId can be found in the route:
 		 * fromIndex==0 --> fromLinkId == startLinkId,
@@ -88,13 +109,13 @@ final class LinkNetworkRouteImpl extends AbstractRoute implements NetworkRoute {
 		if (fromLinkId.equals(this.getStartLinkId())) {
 			fromIndex = 0;
 		} else {
-			for (int i = 0, n = this.route.size(); (i < n) && (fromIndex < 0); i++) {
-				if (fromLinkId.equals(this.route.get(i))) {
+			for (int i = 0, n = route.length; (i < n) && (fromIndex < 0); i++) {
+				if (fromLinkIndex == route[i]) {
 					fromIndex = i+1;
 				}
 			}
 			if (fromIndex < 0 && fromLinkId.equals(this.getEndLinkId())) {
-				fromIndex = this.route.size();
+				fromIndex = route.length;
 			}
 			if (fromIndex < 0) {
 				throw new IllegalArgumentException("Cannot create subroute because fromLinkId is not part of the route.");
@@ -104,26 +125,24 @@ final class LinkNetworkRouteImpl extends AbstractRoute implements NetworkRoute {
 		if (fromLinkId.equals(toLinkId)) {
 			toIndex = fromIndex - 1;
 		} else {
-			for (int i = fromIndex, n = this.route.size(); (i < n) && (toIndex < 0); i++) {
-				if (fromLinkId.equals(this.route.get(i))) {
+			for (int i = fromIndex, n = route.length; (i < n) && (toIndex < 0); i++) {
+				if (fromLinkIndex == route[i]) {
 					fromIndex = i+1; // in case of a loop, cut it short
 				}
-				if (toLinkId.equals(this.route.get(i))) {
+				if (toLinkIndex == route[i]) {
 					toIndex = i;
 				}
 			}
 			if (toIndex < 0 && toLinkId.equals(this.getEndLinkId())) {
-				toIndex = this.route.size();
+				toIndex = route.length;
 			}
 			if (toIndex < 0) {
 				throw new IllegalArgumentException("Cannot create subroute because toLinkId is not part of the route.");
 			}
 		}
-		NetworkRoute ret = RouteUtils.createLinkNetworkRouteImpl(fromLinkId, toLinkId);
+		LinkNetworkRouteImpl ret = new LinkNetworkRouteImpl(fromLinkId, toLinkId);
 		if (toIndex > fromIndex) {
-			ret.setLinkIds(fromLinkId, this.route.subList(fromIndex, toIndex), toLinkId);
-		} else {
-			ret.setLinkIds(fromLinkId, null, toLinkId);
+			ret.setLinks(route, fromIndex, toIndex);
 		}
 		return ret;
 	}
@@ -140,13 +159,19 @@ final class LinkNetworkRouteImpl extends AbstractRoute implements NetworkRoute {
 
 	@Override
 	public void setLinkIds(final Id<Link> startLinkId, final List<Id<Link>> srcRoute, final Id<Link> endLinkId) {
-		this.route.clear();
 		setStartLinkId(startLinkId);
 		setEndLinkId(endLinkId);
-		if (srcRoute != null) {
-			this.route.addAll(srcRoute);
+		if (srcRoute == null) {
+			setLinks(null, 0, 0);
+			return;
 		}
-		this.route.trimToSize();
+		// read all links before replacing the current ones, srcRoute could be a view on this route
+		int[] indices = new int[srcRoute.size()];
+		int i = 0;
+		for (Id<Link> linkId : srcRoute) {
+			indices[i++] = linkIndex(linkId);
+		}
+		setLinks(indices, 0, indices.length);
 	}
 
 	@Override
@@ -168,7 +193,7 @@ final class LinkNetworkRouteImpl extends AbstractRoute implements NetworkRoute {
 			desc.append(linkId.toString());
 		}
 		// If the start links equals the end link additionally check if its is a round trip. 
-		if (!this.getEndLinkId().equals(this.getStartLinkId()) || this.getLinkIds().size() > 0) {
+		if (!this.getEndLinkId().equals(this.getStartLinkId()) || this.linkCount > 0) {
 			desc.append(" ");
 			desc.append(this.getEndLinkId().toString());
 		}
@@ -177,18 +202,20 @@ final class LinkNetworkRouteImpl extends AbstractRoute implements NetworkRoute {
 	
 	@Override
 	public void setRouteDescription(String routeDescription) {
-		List<Id<Link>> linkIds = NetworkUtils.getLinkIds(routeDescription);
-		Id<Link> startLinkId = getStartLinkId();
-		Id<Link> endLinkId = getEndLinkId();
-		if (linkIds.size() > 0) {
-			startLinkId = linkIds.remove(0);
-			setStartLinkId(startLinkId);
+		// parses the links directly into indices, without creating a list of ids first
+		String trimmed = routeDescription == null ? "" : routeDescription.trim();
+		String[] parts = trimmed.isEmpty() ? new String[0] : trimmed.split("[ \t\n]+");
+		if (parts.length > 0) {
+			setStartLinkId(Id.createLinkId(parts[0]));
+		}
+		if (parts.length > 1) {
+			setEndLinkId(Id.createLinkId(parts[parts.length - 1]));
 		}
-		if (linkIds.size() > 0) {
-			endLinkId = linkIds.remove(linkIds.size() - 1);
-			setEndLinkId(endLinkId);
+		int[] indices = new int[Math.max(0, parts.length - 2)];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = Id.createLinkId(parts[i + 1]).index();
 		}
-		this.setLinkIds(startLinkId, linkIds, endLinkId);
+		setLinks(indices, 0, indices.length);
 	}
 	
 	@Override
@@ -203,4 +230,164 @@ final class LinkNetworkRouteImpl extends AbstractRoute implements NetworkRoute {
 		str += " travelCost=" + this.getTravelCost() ;
 		return str ;
 	}
+
+	// ---------- encoding of the links ----------
+
+	/**
+	 * @return the index of the link id.  Tolerates ids of other types that were cast to link ids.
+	 */
+	private static int linkIndex(Id<Link> linkId) {
+		int index = linkId.index();
+		if (Id.get(index, Link.class) != linkId) {
+			index = Id.create(linkId, Link.class).index();
+		}
+		return index;
+	}
+
+	private void setLinks(int[] indices, int from, int to) {
+		this.decoded = null;
+		this.linkCount = to - from;
+		if (this.linkCount == 0) {
+			this.links = NO_LINKS;
+			return;
+		}
+		byte[] bytes = new byte[this.linkCount * 2];
+		int offset = 0;
+		int previous = 0;
+		for (int i = from; i < to; i++) {
+			int delta = indices[i] - previous;
+			int value = (delta << 1) ^ (delta >> 31); // zig-zag: small negative differences become small numbers
+			previous = indices[i];
+			if (offset + 5 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, offset + 5));
+			}
+			while ((value & ~0x7f) != 0) {
+				bytes[offset++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			bytes[offset++] = (byte) value;
+		}
+		this.links = Arrays.copyOf(bytes, offset);
+	}
+
+	private int[] decodeLinks() {
+		return decodeLinks(this.links, this.linkCount);
+	}
+
+	/**
+	 * @return the indices of the links, decoded once per change of the links.
+	 */
+	private int[] getDecodedLinks() {
+		byte[] bytes = this.links;
+		Decoded d = this.decoded;
+		if (d == null || d.links != bytes) {
+			d = new Decoded(bytes, decodeLinks(bytes, this.linkCount));
+			this.decoded = d;
+		}
+		return d.indices;
+	}
+
+	private static int[] decodeLinks(byte[] bytes, int linkCount) {
+		int[] indices = new int[linkCount];
+		int offset = 0;
+		int index = 0;
+		for (int i = 0; i < indices.length; i++) {
+			long next = readDelta(bytes, offset);
+			index += (int) next;
+			offset = (int) (next >>> 32);
+			indices[i] = index;
+		}
+		return indices;
+	}
+
+	/**
+	 * Reads the difference to the previous link index starting at the given offset.
+	 *
+	 * @return the difference in the lower 32 bits, the offset of the next link in the upper 32 bits.
+	 */
+	private static long readDelta(byte[] bytes, int offset) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[offset++];
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		int delta = (value >>> 1) ^ -(value & 1);
+		return ((long) offset << 32) | (delta & 0xffffffffL);
+	}
+
+	/**
+	 * The decoded indices of some encoded links.  Immutable, so the route can be read by several threads at the same
+	 * time, e.g. transit routes shared by several vehicles.
+	 */
+	private static final class Decoded {
+		final byte[] links;
+		final int[] indices;
+
+		Decoded(byte[] links, int[] indices) {
+			this.links = links;
+			this.indices = indices;
+		}
+	}
+
+	/**
+	 * Read-only view on the links of the route, always reflecting the current links.
+	 */
+	private final class LinkIds extends AbstractList<Id<Link>> implements RandomAccess {
+
+		@Override
+		public Id<Link> get(int index) {
+			if (index < 0 || index >= linkCount) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + linkCount);
+			}
+			return Id.get(getDecodedLinks()[index], Link.class);
+		}
+
+		@Override
+		public int size() {
+			return linkCount;
+		}
+
+		@Override
+		public int indexOf(Object o) {
+			int position = 0;
+			for (Id<Link> linkId : this) {
+				if (linkId.equals(o)) {
+					return position;
+				}
+				position++;
+			}
+			return -1;
+		}
+
+		@Override
+		public Iterator<Id<Link>> iterator() {
+			return new Iterator<>() {
+				private final byte[] bytes = links;
+				private final int count = linkCount;
+				private int position = 0;
+				private int offset = 0;
+				private int linkIndex = 0;
+
+				@Override
+				public boolean hasNext() {
+					return this.position < this.count;
+				}
+
+				@Override
+				public Id<Link> next() {
+					if (this.position >= this.count) {
+						throw new NoSuchElementException();
+					}
+					long next = readDelta(this.bytes, this.offset);
+					this.linkIndex += (int) next;
+					this.offset = (int) (next >>> 32);
+					this.position++;
+					return Id.get(this.linkIndex, Link.class);
+				}
+			};
+		}
+	}
 }
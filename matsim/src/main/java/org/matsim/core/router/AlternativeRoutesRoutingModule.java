@@ -0,0 +1,147 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * AlternativeRoutesRoutingModule.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.gbl.Gbl;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.speedy.AlternativeRoutesCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.facilities.Facility;
+
+/**
+ * Routes on the network like {@link NetworkRoutingModule}, but calculates a set of alternative routes with an
+ * {@link AlternativeRoutesCalculator} for each request. {@link #calcRoute(RoutingRequest)} returns one of these routes,
+ * chosen randomly with equal probability, so that re-routing strategies explore different routes without routing
+ * multiple times. All routes are available from {@link #calcAlternativeRoutes(RoutingRequest)}.
+ *
+ * Like the calculator, this module is not thread-safe, so every thread needs its own instance.
+ */
+public final class AlternativeRoutesRoutingModule implements RoutingModule {
+
+	private final String mode;
+	private final PopulationFactory populationFactory;
+	private final Network network;
+	private final AlternativeRoutesCalculator calculator;
+	private final int maxRoutes;
+	private final Random random;
+
+	public AlternativeRoutesRoutingModule(
+			final String mode,
+			final PopulationFactory populationFactory,
+			final Network network,
+			final AlternativeRoutesCalculator calculator,
+			final int maxRoutes,
+			final Random random) {
+		Gbl.assertNotNull(network);
+		this.mode = mode;
+		this.populationFactory = populationFactory;
+		this.network = network;
+		this.calculator = calculator;
+		this.maxRoutes = maxRoutes;
+		this.random = random;
+	}
+
+	@Override
+	public List<? extends PlanElement> calcRoute(RoutingRequest request) {
+		List<Leg> legs = calcAlternativeRoutes(request);
+		return Collections.singletonList(legs.get(this.random.nextInt(legs.size())));
+	}
+
+	/**
+	 * @return one leg per alternative route, ordered by increasing travel cost. The first leg contains the least cost
+	 * route.
+	 */
+	public List<Leg> calcAlternativeRoutes(RoutingRequest request) {
+		final Facility fromFacility = request.getFromFacility();
+		final Facility toFacility = request.getToFacility();
+		final double departureTime = request.getDepartureTime();
+		final Person person = request.getPerson();
+
+		Gbl.assertNotNull(fromFacility);
+		Gbl.assertNotNull(toFacility);
+
+		Link fromLink = getLink(fromFacility);
+		Link toLink = getLink(toFacility);
+
+		if (toLink == fromLink) {
+			// staying on the link, same as in NetworkRoutingModule
+			NetworkRoute route = this.populationFactory.getRouteFactories().createRoute(NetworkRoute.class, fromLink.getId(), toLink.getId());
+			route.setTravelTime(0);
+			route.setDistance(0.0);
+			return Collections.singletonList(createLeg(route, departureTime, 0));
+		}
+
+		Node startNode = fromLink.getToNode();
+		Node endNode = toLink.getFromNode();
+		List<Path> paths = this.calculator.calcAlternativeRoutes(startNode, endNode, departureTime, person, null, this.maxRoutes);
+		if (paths.isEmpty()) {
+			throw new RuntimeException("No route found from node " + startNode.getId() + " to node " + endNode.getId() + " by mode " + this.mode + ".");
+		}
+		List<Leg> legs = new ArrayList<>(paths.size());
+		for (Path path : paths) {
+			NetworkRoute route = this.populationFactory.getRouteFactories().createRoute(NetworkRoute.class, fromLink.getId(), toLink.getId());
+			route.setLinkIds(fromLink.getId(), NetworkUtils.getLinkIds(path.links), toLink.getId());
+			route.setTravelTime(path.travelTime);
+			route.setTravelCost(path.travelCost);
+			route.setDistance(RouteUtils.calcDistance(route, 1.0, 1.0, this.network));
+			legs.add(createLeg(route, departureTime, path.travelTime));
+		}
+		return legs;
+	}
+
+	private Link getLink(Facility facility) {
+		Link link = this.network.getLinks().get(facility.getLinkId());
+		if (link == null) {
+			Gbl.assertNotNull(facility.getCoord());
+			link = NetworkUtils.getNearestLink(this.network, facility.getCoord());
+		}
+		Gbl.assertNotNull(link);
+		return link;
+	}
+
+	private Leg createLeg(NetworkRoute route, double departureTime, double travelTime) {
+		Leg leg = this.populationFactory.createLeg(this.mode);
+		leg.setRoute(route);
+		leg.setTravelTime(travelTime);
+		leg.setDepartureTime(departureTime);
+		return leg;
+	}
+
+	@Override
+	public String toString() {
+		return "[AlternativeRoutesRoutingModule: mode=" + this.mode + "]";
+	}
+
+}
@@ -0,0 +1,116 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * AlternativeRoutesRoutingProvider.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.groups.NetworkConfigGroup;
+import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
+import org.matsim.core.router.speedy.AlternativeRoutesCalculator;
+import org.matsim.core.router.speedy.SpeedyGraph;
+import org.matsim.core.router.util.TravelTime;
+
+/**
+ * Provides {@link AlternativeRoutesRoutingModule}s for a network mode, e.g. with
+ * {@code addRoutingModuleBinding(TransportMode.car).toProvider(new AlternativeRoutesRoutingProvider(TransportMode.car, 5))}.
+ * The routes do not include access and egress legs.
+ */
+public class AlternativeRoutesRoutingProvider implements Provider<RoutingModule> {
+
+	private final String mode;
+	private final int maxRoutes;
+	private final double maxStretch;
+	private final double maxSharing;
+	private final double minPlateau;
+	private final Map<Network, SpeedyGraph> graphs = new ConcurrentHashMap<>();
+
+	@Inject Map<String, TravelTime> travelTimes;
+	@Inject Map<String, TravelDisutilityFactory> travelDisutilityFactories;
+	@Inject SingleModeNetworksCache singleModeNetworksCache;
+	@Inject Network network;
+	@Inject NetworkConfigGroup networkConfigGroup;
+	@Inject PopulationFactory populationFactory;
+
+	/**
+	 * Alternatives may be up to 25% more expensive than the least cost route and share up to 75% of their length with
+	 * other routes.
+	 */
+	public AlternativeRoutesRoutingProvider(String mode, int maxRoutes) {
+		this(mode, maxRoutes, 0.25, 0.75, 0.1);
+	}
+
+	/**
+	 * @see AlternativeRoutesCalculator#AlternativeRoutesCalculator
+	 */
+	public AlternativeRoutesRoutingProvider(String mode, int maxRoutes, double maxStretch, double maxSharing, double minPlateau) {
+		if (maxRoutes < 1 || maxRoutes > AlternativeRoutesCalculator.MAX_ROUTES) {
+			throw new IllegalArgumentException("maxRoutes must be between 1 and " + AlternativeRoutesCalculator.MAX_ROUTES + ", but is " + maxRoutes);
+		}
+		this.mode = mode;
+		this.maxRoutes = maxRoutes;
+		this.maxStretch = maxStretch;
+		this.maxSharing = maxSharing;
+		this.minPlateau = minPlateau;
+	}
+
+	@Override
+	public RoutingModule get() {
+		Network filteredNetwork;
+
+		// Ensure this is not performed concurrently by multiple threads!
+		synchronized (this.singleModeNetworksCache.getSingleModeNetworksCache()) {
+			filteredNetwork = this.singleModeNetworksCache.getSingleModeNetworksCache().get(this.mode);
+			if (filteredNetwork == null) {
+				TransportModeNetworkFilter filter = new TransportModeNetworkFilter(this.network);
+				Set<String> modes = new HashSet<>();
+				modes.add(this.mode);
+				filteredNetwork = NetworkUtils.createNetwork(this.networkConfigGroup);
+				filter.filter(filteredNetwork, modes);
+				this.singleModeNetworksCache.getSingleModeNetworksCache().put(this.mode, filteredNetwork);
+			}
+		}
+
+		TravelDisutilityFactory travelDisutilityFactory = this.travelDisutilityFactories.get(this.mode);
+		if (travelDisutilityFactory == null) {
+			throw new RuntimeException("No TravelDisutilityFactory bound for mode " + this.mode + ".");
+		}
+		TravelTime travelTime = this.travelTimes.get(this.mode);
+		if (travelTime == null) {
+			throw new RuntimeException("No TravelTime bound for mode " + this.mode + ".");
+		}
+		SpeedyGraph graph = this.graphs.computeIfAbsent(filteredNetwork, SpeedyGraph::new);
+		AlternativeRoutesCalculator calculator = new AlternativeRoutesCalculator(graph, travelTime,
+				travelDisutilityFactory.createTravelDisutility(travelTime), this.maxStretch, this.maxSharing, this.minPlateau);
+		return new AlternativeRoutesRoutingModule(this.mode, this.populationFactory, filteredNetwork, calculator,
+				this.maxRoutes, MatsimRandom.getLocalInstance());
+	}
+}
@@ -0,0 +1,274 @@
+package org.matsim.core.router.speedy;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Calculates a set of alternative routes between two nodes, using the plateau method.
+ *
+ * A forward {@link LeastCostPathTree} from the start node and a backward tree from the end node are calculated. A
+ * plateau is a chain of links which is part of both trees. Every plateau defines a route: the path from the start
+ * node to the begin of the plateau in the forward tree, the plateau itself, and the path from the end of the plateau
+ * to the end node in the backward tree. Routes over long plateaus are locally optimal for a long part of the route,
+ * so they are reasonable alternatives. The plateaus are evaluated by increasing cost of their route, and a route is
+ * accepted if it is not much more expensive than the least cost route, does not contain a loop, and does not share
+ * too much of its length with any of the already accepted routes. The least cost route is always the first route.
+ *
+ * Apart from the two trees, which stop as soon as no more routes within the allowed stretch can be found, only the
+ * links of the candidate routes must be visited, so calculating the alternatives is usually not much more expensive
+ * than two Dijkstra runs.
+ *
+ * The travel times and costs of the routes are calculated again for the actual departure time. The backward tree uses
+ * the arrival time of the least cost route, so for time dependent travel times, the alternatives are an approximation.
+ *
+ * The implementation is NOT thread-safe.
+ */
+public class AlternativeRoutesCalculator {
+
+    public static final int MAX_ROUTES = 32;
+
+    private final SpeedyGraph graph;
+    private final TravelTime tt;
+    private final TravelDisutility td;
+    private final double maxStretch;
+    private final double maxSharing;
+    private final double minPlateau;
+    private final LeastCostPathTree forwardTree;
+    private final LeastCostPathTree backwardTree;
+    private final int[] plateauMarks; // nodes on already evaluated plateaus
+    private final int[] routeMarks; // nodes on the route being built, to detect loops
+    private int mark = 0;
+    private int routeMark = 0;
+    private final int[] linkRoutes; // bit mask of the accepted routes using a link
+    private final double[] sharedLength = new double[MAX_ROUTES];
+
+    /**
+     * @param maxStretch the cost of an alternative route may be at most (1 + maxStretch) times the least cost.
+     * @param maxSharing an alternative route may share at most this fraction of its length with any other route.
+     * @param minPlateau the plateau of an alternative route must have at least this fraction of the least cost.
+     */
+    public AlternativeRoutesCalculator(SpeedyGraph graph, TravelTime tt, TravelDisutility td, double maxStretch, double maxSharing, double minPlateau) {
+        this.graph = graph;
+        this.tt = tt;
+        this.td = td;
+        this.maxStretch = maxStretch;
+        this.maxSharing = maxSharing;
+        this.minPlateau = minPlateau;
+        this.forwardTree = new LeastCostPathTree(graph, tt, td);
+        this.backwardTree = new LeastCostPathTree(graph, tt, td);
+        this.plateauMarks = new int[graph.nodeCount];
+        this.routeMarks = new int[graph.nodeCount];
+        this.linkRoutes = new int[graph.linkCount];
+    }
+
+    /**
+     * @param maxRoutes the maximum number of routes, at most {@link #MAX_ROUTES}.
+     * @return the routes ordered by increasing cost, starting with the least cost route. The list is empty if the end
+     * node cannot be reached.
+     */
+    public List<Path> calcAlternativeRoutes(Node fromNode, Node toNode, double departureTime, Person person, Vehicle vehicle, int maxRoutes) {
+        if (maxRoutes < 1 || maxRoutes > MAX_ROUTES) {
+            throw new IllegalArgumentException("maxRoutes must be between 1 and " + MAX_ROUTES + ", but is " + maxRoutes);
+        }
+        int startNode = fromNode.getId().index();
+        int endNode = toNode.getId().index();
+
+        this.forwardTree.calculate(startNode, departureTime, person, vehicle, new StretchStopCriterion(endNode));
+        double leastCost = this.forwardTree.getCost(endNode);
+        if (Double.isInfinite(leastCost)) {
+            return Collections.emptyList();
+        }
+        double maxCost = leastCost * (1 + this.maxStretch);
+        double arrivalTime = this.forwardTree.getTime(endNode).seconds();
+        this.backwardTree.calculateBackwards(endNode, arrivalTime, person, vehicle, (node, arrTime, cost, distance, depTime) -> cost > maxCost);
+
+        if (this.mark == Integer.MAX_VALUE) {
+            Arrays.fill(this.plateauMarks, 0);
+            this.mark = 0;
+        }
+        this.mark++;
+        List<int[]> routes = new ArrayList<>();
+        int[] leastCostRoute = buildRoute(startNode, endNode, endNode);
+        acceptRoute(leastCostRoute, routes);
+
+        if (maxRoutes > 1) {
+            // the candidates are the nodes reached over a plateau link within the allowed cost
+            List<Integer> candidates = new ArrayList<>();
+            for (int node = 0; node < this.graph.nodeCount; node++) {
+                double cost = this.forwardTree.getCost(node) + this.backwardTree.getCost(node);
+                if (cost <= maxCost && isPlateauLink(this.forwardTree.getComingFromLink(node))) {
+                    candidates.add(node);
+                }
+            }
+            candidates.sort(Comparator.comparingDouble(node -> this.forwardTree.getCost(node) + this.backwardTree.getCost(node)));
+
+            markPlateau(leastCostRoute);
+            for (int node : candidates) {
+                if (routes.size() >= maxRoutes) {
+                    break;
+                }
+                if (this.plateauMarks[node] == this.mark) {
+                    continue; // the plateau of this node was already evaluated
+                }
+                int plateauStart = node;
+                while (isPlateauLink(this.forwardTree.getComingFromLink(plateauStart))) {
+                    plateauStart = this.forwardTree.getComingFrom(plateauStart);
+                    this.plateauMarks[plateauStart] = this.mark;
+                }
+                int plateauEnd = node;
+                while (isPlateauLink(this.backwardTree.getComingFromLink(plateauEnd))) {
+                    plateauEnd = this.backwardTree.getComingFrom(plateauEnd);
+                    this.plateauMarks[plateauEnd] = this.mark;
+                }
+                this.plateauMarks[node] = this.mark;
+                double plateauCost = this.forwardTree.getCost(plateauEnd) - this.forwardTree.getCost(plateauStart);
+                if (plateauCost < this.minPlateau * leastCost) {
+                    continue;
+                }
+                int[] route = buildRoute(startNode, endNode, plateauStart);
+                if (route != null && isSharingAcceptable(route, routes.size())) {
+                    acceptRoute(route, routes);
+                }
+            }
+        }
+
+        List<Path> paths = new ArrayList<>(routes.size());
+        for (int[] route : routes) {
+            paths.add(createPath(route, fromNode, departureTime, person, vehicle));
+            for (int link : route) {
+                this.linkRoutes[link] = 0;
+            }
+        }
+        paths.sort(Comparator.comparingDouble(path -> path.travelCost));
+        return paths;
+    }
+
+    /**
+     * A link is part of a plateau if it is used both in the forward and the backward tree.
+     */
+    private boolean isPlateauLink(int linkIndex) {
+        if (linkIndex < 0) {
+            return false;
+        }
+        int fromNode = this.graph.getLink(linkIndex).getFromNode().getId().index();
+        int toNode = this.graph.getLink(linkIndex).getToNode().getId().index();
+        return this.forwardTree.getComingFromLink(toNode) == linkIndex && this.backwardTree.getComingFromLink(fromNode) == linkIndex;
+    }
+
+    /**
+     * @return the links of the route from the start node over the via node to the end node, or null if the route
+     * contains a loop.
+     */
+    private int[] buildRoute(int startNode, int endNode, int viaNode) {
+        List<Integer> links = new ArrayList<>();
+        if (this.routeMark == Integer.MAX_VALUE) {
+            Arrays.fill(this.routeMarks, 0);
+            this.routeMark = 0;
+        }
+        this.routeMark++;
+        this.routeMarks[viaNode] = this.routeMark;
+        for (int node = viaNode; node != startNode; node = this.forwardTree.getComingFrom(node)) {
+            links.add(this.forwardTree.getComingFromLink(node));
+            this.routeMarks[this.forwardTree.getComingFrom(node)] = this.routeMark;
+        }
+        Collections.reverse(links);
+        for (int node = viaNode; node != endNode; ) {
+            int linkIndex = this.backwardTree.getComingFromLink(node);
+            node = this.backwardTree.getComingFrom(node);
+            if (this.routeMarks[node] == this.routeMark) {
+                return null;
+            }
+            this.routeMarks[node] = this.routeMark;
+            links.add(linkIndex);
+        }
+        int[] route = new int[links.size()];
+        for (int i = 0; i < route.length; i++) {
+            route[i] = links.get(i);
+        }
+        return route;
+    }
+
+    private boolean isSharingAcceptable(int[] route, int routeCount) {
+        Arrays.fill(this.sharedLength, 0, routeCount, 0.0);
+        double length = 0;
+        for (int link : route) {
+            double linkLength = this.graph.getLink(link).getLength();
+            length += linkLength;
+            int mask = this.linkRoutes[link];
+            while (mask != 0) {
+                int r = Integer.numberOfTrailingZeros(mask);
+                this.sharedLength[r] += linkLength;
+                mask &= mask - 1;
+            }
+        }
+        for (int r = 0; r < routeCount; r++) {
+            if (this.sharedLength[r] > this.maxSharing * length) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void acceptRoute(int[] route, List<int[]> routes) {
+        int bit = 1 << routes.size();
+        for (int link : route) {
+            this.linkRoutes[link] |= bit;
+        }
+        routes.add(route);
+    }
+
+    private void markPlateau(int[] route) {
+        for (int link : route) {
+            this.plateauMarks[this.graph.getLink(link).getFromNode().getId().index()] = this.mark;
+            this.plateauMarks[this.graph.getLink(link).getToNode().getId().index()] = this.mark;
+        }
+    }
+
+    private Path createPath(int[] route, Node fromNode, double departureTime, Person person, Vehicle vehicle) {
+        List<Node> nodes = new ArrayList<>(route.length + 1);
+        List<Link> links = new ArrayList<>(route.length);
+        nodes.add(fromNode);
+        double time = departureTime;
+        double cost = 0;
+        for (int linkIndex : route) {
+            Link link = this.graph.getLink(linkIndex);
+            nodes.add(link.getToNode());
+            links.add(link);
+            cost += this.td.getLinkTravelDisutility(link, time, person, vehicle);
+            time += this.tt.getLinkTravelTime(link, time, person, vehicle);
+        }
+        return new Path(nodes, links, time - departureTime, cost);
+    }
+
+    /**
+     * Stops the forward tree once the end node is reached and all nodes within the allowed stretch are known.
+     */
+    private final class StretchStopCriterion implements LeastCostPathTree.StopCriterion {
+
+        private final int endNode;
+        private double maxCost = Double.POSITIVE_INFINITY;
+
+        StretchStopCriterion(int endNode) {
+            this.endNode = endNode;
+        }
+
+        @Override
+        public boolean stop(int nodeIndex, double arrivalTime, double travelCost, double distance, double departureTime) {
+            if (nodeIndex == this.endNode) {
+                this.maxCost = travelCost * (1 + AlternativeRoutesCalculator.this.maxStretch);
+            }
+            return travelCost > this.maxCost;
+        }
+    }
+}
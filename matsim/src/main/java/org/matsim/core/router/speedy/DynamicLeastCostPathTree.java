@@ -0,0 +1,243 @@
+package org.matsim.core.router.speedy;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A least cost path tree towards a single destination node, which can be repaired incrementally when the travel
+ * disutility of some links changes.
+ *
+ * The tree stores for every node the least cost to the destination and the first link of the least cost path. When
+ * links change, only the nodes whose paths are affected are updated: if the cost of a link in the tree increases,
+ * the nodes routing over this link are reset and re-attached to the rest of the tree; if the cost of a link decreases,
+ * the improvement is propagated to the nodes that can now reach the destination cheaper. In both cases, a Dijkstra
+ * search restricted to the affected nodes does the work, which is usually much cheaper than calculating the whole
+ * tree again.
+ *
+ * The link costs are taken from the {@link TravelDisutility} at the time of the last update, without person and
+ * vehicle, so the tree is only meaningful for travel disutilities that do not depend on the time of day, like the
+ * current travel times observed during the mobsim.
+ *
+ * The paths can be read by multiple threads, but {@link #update} must not be called concurrently with any other
+ * method.
+ */
+public class DynamicLeastCostPathTree {
+
+	private final SpeedyGraph graph;
+	private final TravelDisutility td;
+	private final int destinationNode;
+	private final double[] linkCosts;
+	private final double[] nodeCosts;
+	private final int[] nextLinks;
+	private final int[] heapMarks;
+	private int heapMark = 0;
+	private final DAryMinHeap pq;
+	private final SpeedyGraph.LinkIterator inLI;
+	private final SpeedyGraph.LinkIterator outLI;
+
+	public DynamicLeastCostPathTree(SpeedyGraph graph, TravelDisutility td, Node destination, double time) {
+		this.graph = graph;
+		this.td = td;
+		this.destinationNode = destination.getId().index();
+		this.linkCosts = new double[graph.linkCount];
+		this.nodeCosts = new double[graph.nodeCount];
+		this.nextLinks = new int[graph.nodeCount];
+		this.heapMarks = new int[graph.nodeCount];
+		this.pq = new DAryMinHeap(graph.nodeCount, 6);
+		this.inLI = graph.getInLinkIterator();
+		this.outLI = graph.getOutLinkIterator();
+		calculate(time);
+	}
+
+	/**
+	 * Calculates the whole tree again, with the link costs at the given time.
+	 */
+	public void calculate(double time) {
+		for (int linkIndex = 0; linkIndex < this.graph.linkCount; linkIndex++) {
+			Link link = this.graph.getLink(linkIndex);
+			this.linkCosts[linkIndex] = link == null ? Double.POSITIVE_INFINITY : this.td.getLinkTravelDisutility(link, time, null, null);
+		}
+		Arrays.fill(this.nodeCosts, Double.POSITIVE_INFINITY);
+		Arrays.fill(this.nextLinks, -1);
+		startSearch();
+		this.nodeCosts[this.destinationNode] = 0;
+		enqueue(this.destinationNode);
+		propagate();
+	}
+
+	/**
+	 * Updates the costs of the given links to the ones at the given time and repairs the affected parts of the tree.
+	 *
+	 * @return the number of node updates, as a measure of the work done.
+	 */
+	public int update(Iterable<? extends Link> changedLinks, double time) {
+		startSearch();
+		List<Integer> increased = new ArrayList<>();
+		List<Integer> decreased = new ArrayList<>();
+		for (Link changedLink : changedLinks) {
+			int linkIndex = changedLink.getId().index();
+			Link link = linkIndex < this.graph.linkCount ? this.graph.getLink(linkIndex) : null;
+			if (link == null) {
+				continue; // not part of this graph
+			}
+			double oldCost = this.linkCosts[linkIndex];
+			double newCost = this.td.getLinkTravelDisutility(link, time, null, null);
+			this.linkCosts[linkIndex] = newCost;
+			if (newCost > oldCost) {
+				if (this.nextLinks[link.getFromNode().getId().index()] == linkIndex) {
+					increased.add(linkIndex);
+				}
+			} else if (newCost < oldCost) {
+				decreased.add(linkIndex);
+			}
+		}
+
+		// reset all nodes routing over a link that got more expensive
+		List<Integer> affected = new ArrayList<>();
+		for (int linkIndex : increased) {
+			int node = this.graph.getLink(linkIndex).getFromNode().getId().index();
+			if (this.nextLinks[node] == linkIndex) { // not yet collected as part of another subtree
+				collectSubtree(node, affected);
+			}
+		}
+		for (int node : affected) {
+			this.nodeCosts[node] = Double.POSITIVE_INFINITY;
+			this.nextLinks[node] = -1;
+		}
+		// re-attach them to the unaffected part of the tree
+		for (int node : affected) {
+			this.outLI.reset(node);
+			while (this.outLI.next()) {
+				int linkIndex = this.outLI.getLinkIndex();
+				double cost = this.linkCosts[linkIndex] + this.nodeCosts[this.outLI.getToNodeIndex()];
+				if (cost < this.nodeCosts[node]) {
+					this.nodeCosts[node] = cost;
+					this.nextLinks[node] = linkIndex;
+				}
+			}
+			if (Double.isFinite(this.nodeCosts[node])) {
+				enqueue(node);
+			}
+		}
+		int changedNodes = affected.size();
+		// links that got cheaper may offer better paths
+		for (int linkIndex : decreased) {
+			Link link = this.graph.getLink(linkIndex);
+			int fromNode = link.getFromNode().getId().index();
+			double cost = this.linkCosts[linkIndex] + this.nodeCosts[link.getToNode().getId().index()];
+			if (cost < this.nodeCosts[fromNode]) {
+				this.nodeCosts[fromNode] = cost;
+				this.nextLinks[fromNode] = linkIndex;
+				enqueue(fromNode);
+				changedNodes++;
+			}
+		}
+		return changedNodes + propagate();
+	}
+
+	/**
+	 * @return the least cost from the node to the destination, or infinity if the destination cannot be reached.
+	 */
+	public double getCost(Node node) {
+		return this.nodeCosts[node.getId().index()];
+	}
+
+	/**
+	 * @return the least cost path from the given node to the destination, with the travel time and cost calculated
+	 * for the given departure time, or {@code null} if the destination cannot be reached.
+	 */
+	public Path getPath(Node fromNode, double departureTime, TravelTime tt, Person person, Vehicle vehicle) {
+		int node = fromNode.getId().index();
+		if (Double.isInfinite(this.nodeCosts[node])) {
+			return null;
+		}
+		List<Node> nodes = new ArrayList<>();
+		List<Link> links = new ArrayList<>();
+		nodes.add(fromNode);
+		double time = departureTime;
+		double cost = 0;
+		while (node != this.destinationNode) {
+			Link link = this.graph.getLink(this.nextLinks[node]);
+			links.add(link);
+			nodes.add(link.getToNode());
+			cost += this.td.getLinkTravelDisutility(link, time, person, vehicle);
+			time += tt.getLinkTravelTime(link, time, person, vehicle);
+			node = link.getToNode().getId().index();
+		}
+		return new Path(nodes, links, time - departureTime, cost);
+	}
+
+	public int getDestinationNodeIndex() {
+		return this.destinationNode;
+	}
+
+	private void collectSubtree(int root, List<Integer> nodes) {
+		int first = nodes.size();
+		this.nextLinks[root] = -2; // marks the node as collected
+		nodes.add(root);
+		for (int i = first; i < nodes.size(); i++) {
+			int node = nodes.get(i);
+			this.inLI.reset(node);
+			while (this.inLI.next()) {
+				int linkIndex = this.inLI.getLinkIndex();
+				int child = this.inLI.getFromNodeIndex();
+				if (this.nextLinks[child] == linkIndex) {
+					this.nextLinks[child] = -2; // marks the node as collected
+					nodes.add(child);
+				}
+			}
+		}
+	}
+
+	private void startSearch() {
+		this.pq.clear();
+		if (this.heapMark == Integer.MAX_VALUE) {
+			Arrays.fill(this.heapMarks, 0);
+			this.heapMark = 0;
+		}
+		this.heapMark++;
+	}
+
+	private void enqueue(int node) {
+		if (this.heapMarks[node] == this.heapMark) {
+			this.pq.decreaseKey(node, this.nodeCosts[node]);
+		} else {
+			this.heapMarks[node] = this.heapMark;
+			this.pq.insert(node, this.nodeCosts[node]);
+		}
+	}
+
+	/**
+	 * Relaxes the in-links of all nodes in the queue until no more costs can be improved.
+	 */
+	private int propagate() {
+		int changedNodes = 0;
+		while (!this.pq.isEmpty()) {
+			int node = this.pq.poll();
+			this.heapMarks[node] = 0;
+			double nodeCost = this.nodeCosts[node];
+			this.inLI.reset(node);
+			while (this.inLI.next()) {
+				int linkIndex = this.inLI.getLinkIndex();
+				int fromNode = this.inLI.getFromNodeIndex();
+				double cost = nodeCost + this.linkCosts[linkIndex];
+				if (cost < this.nodeCosts[fromNode]) {
+					this.nodeCosts[fromNode] = cost;
+					this.nextLinks[fromNode] = linkIndex;
+					enqueue(fromNode);
+					changedNodes++;
+				}
+			}
+		}
+		return changedNodes;
+	}
+}
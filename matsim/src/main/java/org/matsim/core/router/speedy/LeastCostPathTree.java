@@ -29,6 +29,7 @@ public class LeastCostPathTree {
     private final TravelDisutility td;
     private final double[] data; // 3 entries per node: time, cost, distance
     private final int[] comingFrom;
+    private final int[] comingFromLink;
     private final SpeedyGraph.LinkIterator outLI;
     private final SpeedyGraph.LinkIterator inLI;
     private final NodeMinHeap pq;
@@ -39,6 +40,7 @@ public class LeastCostPathTree {
         this.td = td;
         this.data = new double[graph.nodeCount * 3];
         this.comingFrom = new int[graph.nodeCount];
+        this.comingFromLink = new int[graph.nodeCount];
         this.pq = new NodeMinHeap(graph.nodeCount, this::getCost, this::setCost);
         this.outLI = graph.getOutLinkIterator();
         this.inLI = graph.getInLinkIterator();
@@ -51,6 +53,7 @@ public class LeastCostPathTree {
     public void calculate(int startNode, double startTime, Person person, Vehicle vehicle, StopCriterion stopCriterion) {
         Arrays.fill(this.data, Double.POSITIVE_INFINITY);
         Arrays.fill(this.comingFrom, -1);
+        Arrays.fill(this.comingFromLink, -1);
 
         setData(startNode, 0, startTime, 0);
 
@@ -84,11 +87,13 @@ public class LeastCostPathTree {
                         this.pq.decreaseKey(toNode, newCost);
                         setData(toNode, newCost, newTime, currDistance + link.getLength());
                         this.comingFrom[toNode] = nodeIdx;
+                        this.comingFromLink[toNode] = linkIdx;
                     }
                 } else {
                     setData(toNode, newCost, newTime, currDistance + link.getLength());
                     this.pq.insert(toNode);
                     this.comingFrom[toNode] = nodeIdx;
+                    this.comingFromLink[toNode] = linkIdx;
                 }
             }
         }
@@ -101,6 +106,7 @@ public class LeastCostPathTree {
     public void calculateBackwards(int arrivalNode, double arrivalTime, Person person, Vehicle vehicle, StopCriterion stopCriterion) {
         Arrays.fill(this.data, Double.POSITIVE_INFINITY);
         Arrays.fill(this.comingFrom, -1);
+        Arrays.fill(this.comingFromLink, -1);
 
         setData(arrivalNode, 0, arrivalTime, 0);
 
@@ -134,11 +140,13 @@ public class LeastCostPathTree {
                         this.pq.decreaseKey(fromNode, newCost);
                         setData(fromNode, newCost, newTime, currDistance + link.getLength());
                         this.comingFrom[fromNode] = nodeIdx;
+                        this.comingFromLink[fromNode] = linkIdx;
                     }
                 } else {
                     setData(fromNode, newCost, newTime, currDistance + link.getLength());
                     this.pq.insert(fromNode);
                     this.comingFrom[fromNode] = nodeIdx;
+                    this.comingFromLink[fromNode] = linkIdx;
                 }
             }
         }
@@ -179,6 +187,14 @@ public class LeastCostPathTree {
         return this.comingFrom[nodeIndex];
     }
 
+    /**
+     * @return the index of the link over which the node was reached, or -1 for the start node and unreached nodes.
+     * In a backwards search, this is the link leading from the node towards the arrival node.
+     */
+    public int getComingFromLink(int nodeIndex) {
+        return this.comingFromLink[nodeIndex];
+    }
+
     public interface StopCriterion {
 
         boolean stop(int nodeIndex, double arrivalTime, double travelCost, double distance, double departureTime);
@@ -0,0 +1,297 @@
+package org.matsim.core.router.speedy;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calculates the least cost paths for a batch of requests, e.g. all the trips of a replanning step or all the
+ * relations of a skim matrix.
+ *
+ * The requests are grouped by their start node, time bin, person and vehicle. For each group, a single
+ * {@link LeastCostPathTree} is calculated, starting at the earliest departure time of the group and stopping as soon
+ * as all end nodes of the group are reached. The groups are distributed among multiple threads.
+ *
+ * The route of a request is taken from the tree of its group. Travel times and costs of the routes are calculated
+ * again for the actual departure time of each request, while {@link #calcTravelTimesAndCosts} returns the values
+ * from the tree directly, which is cheaper if only the times and costs are required.
+ *
+ * The used {@link TravelTime} and {@link TravelDisutility} must be thread-safe if more than one thread is used.
+ * A single instance of this class can be used by multiple threads at the same time.
+ */
+public class ManyToManyPathCalculator {
+
+	private final SpeedyGraph graph;
+	private final TravelTime tt;
+	private final TravelDisutility td;
+	private final double timeBinSize;
+	private final int numberOfThreads;
+
+	/**
+	 * @param timeBinSize     requests departing within the same time bin share the same tree. Use
+	 *                        {@code Double.POSITIVE_INFINITY} to ignore the departure time when grouping the requests.
+	 * @param numberOfThreads the number of threads calculating trees in parallel.
+	 */
+	public ManyToManyPathCalculator(SpeedyGraph graph, TravelTime tt, TravelDisutility td, double timeBinSize, int numberOfThreads) {
+		if (!(timeBinSize > 0)) {
+			throw new IllegalArgumentException("timeBinSize must be positive, but is " + timeBinSize);
+		}
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("numberOfThreads must be at least 1, but is " + numberOfThreads);
+		}
+		this.graph = graph;
+		this.tt = tt;
+		this.td = td;
+		this.timeBinSize = timeBinSize;
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * @return for each request the least cost path, or {@code null} if the end node cannot be reached.
+	 */
+	public Path[] calcLeastCostPaths(List<Request> requests) {
+		Path[] paths = new Path[requests.size()];
+		calculate(requests, (tree, group, request) -> paths[request] = createPath(tree, requests.get(request)));
+		return paths;
+	}
+
+	/**
+	 * Calculates the travel times, costs and distances for all requests without creating paths. The values are the ones
+	 * found in the tree of the request's group, i.e. for the earliest departure time in this group.
+	 * Unreachable end nodes get infinite values.
+	 */
+	public void calcTravelTimesAndCosts(List<Request> requests, double[] travelTimes, double[] travelCosts, double[] distances) {
+		calculate(requests, (tree, group, request) -> {
+			int toNode = requests.get(request).toNode.getId().index();
+			travelTimes[request] = tree.getTime(toNode).orElse(Double.POSITIVE_INFINITY) - group.departureTime;
+			travelCosts[request] = tree.getCost(toNode);
+			distances[request] = tree.getDistance(toNode);
+		});
+	}
+
+	private void calculate(List<Request> requests, ResultHandler handler) {
+		List<Group> groups = groupRequests(requests);
+		AtomicInteger nextGroup = new AtomicInteger();
+		Runnable worker = () -> {
+			LeastCostPathTree tree = new LeastCostPathTree(this.graph, this.tt, this.td);
+			DestinationsStopCriterion stopCriterion = new DestinationsStopCriterion(this.graph.nodeCount);
+			int index;
+			while ((index = nextGroup.getAndIncrement()) < groups.size()) {
+				Group group = groups.get(index);
+				stopCriterion.reset(group, requests);
+				tree.calculate(group.fromNode, group.departureTime, group.person, group.vehicle, stopCriterion);
+				for (int request : group.requests) {
+					handler.handle(tree, group, request);
+				}
+			}
+		};
+
+		int threads = Math.min(this.numberOfThreads, groups.size());
+		if (threads <= 1) {
+			worker.run();
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>(threads);
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(worker));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private List<Group> groupRequests(List<Request> requests) {
+		Map<GroupKey, Group> groups = new LinkedHashMap<>();
+		for (int i = 0; i < requests.size(); i++) {
+			Request request = requests.get(i);
+			int fromNode = request.fromNode.getId().index();
+			int timeBin = Double.isInfinite(this.timeBinSize) ? 0 : (int) Math.floor(request.departureTime / this.timeBinSize);
+			GroupKey key = new GroupKey(fromNode, timeBin, request.person, request.vehicle);
+			Group group = groups.computeIfAbsent(key, k -> new Group(fromNode, request.person, request.vehicle));
+			group.departureTime = Math.min(group.departureTime, request.departureTime);
+			group.requests.add(i);
+		}
+		return new ArrayList<>(groups.values());
+	}
+
+	private Path createPath(LeastCostPathTree tree, Request request) {
+		int toNode = request.toNode.getId().index();
+		if (Double.isInfinite(tree.getCost(toNode))) {
+			return null;
+		}
+		List<Node> nodes = new ArrayList<>();
+		List<Link> links = new ArrayList<>();
+		nodes.add(request.toNode);
+		for (int linkIndex = tree.getComingFromLink(toNode); linkIndex >= 0; linkIndex = tree.getComingFromLink(toNode)) {
+			Link link = this.graph.getLink(linkIndex);
+			links.add(link);
+			nodes.add(link.getFromNode());
+			toNode = tree.getComingFrom(toNode);
+		}
+		Collections.reverse(nodes);
+		Collections.reverse(links);
+
+		double time = request.departureTime;
+		double cost = 0;
+		for (Link link : links) {
+			cost += this.td.getLinkTravelDisutility(link, time, request.person, request.vehicle);
+			time += this.tt.getLinkTravelTime(link, time, request.person, request.vehicle);
+		}
+		return new Path(nodes, links, time - request.departureTime, cost);
+	}
+
+	public static final class Request {
+
+		private final Node fromNode;
+		private final Node toNode;
+		private final double departureTime;
+		private final Person person;
+		private final Vehicle vehicle;
+
+		public Request(Node fromNode, Node toNode, double departureTime) {
+			this(fromNode, toNode, departureTime, null, null);
+		}
+
+		public Request(Node fromNode, Node toNode, double departureTime, Person person, Vehicle vehicle) {
+			this.fromNode = fromNode;
+			this.toNode = toNode;
+			this.departureTime = departureTime;
+			this.person = person;
+			this.vehicle = vehicle;
+		}
+
+		public Node getFromNode() {
+			return this.fromNode;
+		}
+
+		public Node getToNode() {
+			return this.toNode;
+		}
+
+		public double getDepartureTime() {
+			return this.departureTime;
+		}
+
+		public Person getPerson() {
+			return this.person;
+		}
+
+		public Vehicle getVehicle() {
+			return this.vehicle;
+		}
+	}
+
+	private interface ResultHandler {
+
+		void handle(LeastCostPathTree tree, Group group, int request);
+	}
+
+	private static final class GroupKey {
+
+		private final int fromNode;
+		private final int timeBin;
+		private final Person person;
+		private final Vehicle vehicle;
+
+		GroupKey(int fromNode, int timeBin, Person person, Vehicle vehicle) {
+			this.fromNode = fromNode;
+			this.timeBin = timeBin;
+			this.person = person;
+			this.vehicle = vehicle;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof GroupKey)) {
+				return false;
+			}
+			GroupKey other = (GroupKey) o;
+			return this.fromNode == other.fromNode && this.timeBin == other.timeBin && this.person == other.person && this.vehicle == other.vehicle;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.fromNode, this.timeBin, System.identityHashCode(this.person), System.identityHashCode(this.vehicle));
+		}
+	}
+
+	private static final class Group {
+
+		final int fromNode;
+		final Person person;
+		final Vehicle vehicle;
+		double departureTime = Double.POSITIVE_INFINITY;
+		final List<Integer> requests = new ArrayList<>();
+
+		Group(int fromNode, Person person, Vehicle vehicle) {
+			this.fromNode = fromNode;
+			this.person = person;
+			this.vehicle = vehicle;
+		}
+	}
+
+	/**
+	 * Stops the tree as soon as all end nodes of a group are reached.
+	 */
+	private static final class DestinationsStopCriterion implements LeastCostPathTree.StopCriterion {
+
+		private final int[] marks;
+		private int mark = 0;
+		private int remaining;
+
+		DestinationsStopCriterion(int nodeCount) {
+			this.marks = new int[nodeCount];
+		}
+
+		void reset(Group group, List<Request> requests) {
+			if (this.mark == Integer.MAX_VALUE) {
+				Arrays.fill(this.marks, 0);
+				this.mark = 0;
+			}
+			this.mark++;
+			this.remaining = 0;
+			for (int request : group.requests) {
+				int toNode = requests.get(request).toNode.getId().index();
+				if (this.marks[toNode] != this.mark) {
+					this.marks[toNode] = this.mark;
+					this.remaining++;
+				}
+			}
+		}
+
+		@Override
+		public boolean stop(int nodeIndex, double arrivalTime, double travelCost, double distance, double departureTime) {
+			if (this.marks[nodeIndex] == this.mark) {
+				this.marks[nodeIndex] = 0;
+				this.remaining--;
+			}
+			return this.remaining == 0;
+		}
+	}
+}
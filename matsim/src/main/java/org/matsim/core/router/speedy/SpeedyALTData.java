@@ -7,6 +7,16 @@ import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.router.speedy.SpeedyGraph.LinkIterator;
 import org.matsim.core.router.util.TravelDisutility;
 
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -18,6 +28,11 @@ import java.util.concurrent.Future;
 /**
  * Preprocessed data for the ALT algorithm, see {@link SpeedyALT}.
  *
+ * The data can be stored in a directory, see {@link #loadOrCalculate(Path, SpeedyGraph, int, TravelDisutility)}. The
+ * file is memory-mapped when it is loaded again, so multiple processes using the same file share the memory. As the data is
+ * stored by node index, it can only be re-used if the node and link ids are created in the same order, which is the
+ * case if the network is loaded first. Otherwise, the data is calculated again.
+ *
  * This class is thread-safe and can safely be used by multiple threads.
  *
  * @author mrieser / Simunto, sponsored by SBB Swiss Federal Railways
@@ -26,12 +41,16 @@ class SpeedyALTData {
 
 	private final static Logger LOG = LogManager.getLogger(SpeedyALTData.class);
 
+	private final static long FILE_MAGIC = 0x31544c4159445053L; // "SPDYALT1" in little endian
+	private final static int FILE_VERSION = 1;
+	private final static int HEADER_SIZE = 40;
+
 	final SpeedyGraph graph;
 	private final int landmarksCount;
 	private final TravelDisutility travelCosts;
 	private final int[] landmarksNodeIndices;
-	private final double[] nodesData; // for each node: 2 values per landmark
-	private final int[] deadendData;
+	private final DoubleBuffer nodesData; // for each node: 2 values per landmark
+	private final IntBuffer deadendData;
 	private final double minTravelCostPerLength;
 
 	public SpeedyALTData(SpeedyGraph graph, int landmarksCount, TravelDisutility travelCosts) {
@@ -39,34 +58,176 @@ class SpeedyALTData {
 		this.landmarksCount = landmarksCount;
 		this.travelCosts = travelCosts;
 		this.landmarksNodeIndices = new int[landmarksCount];
-		this.nodesData = new double[graph.nodeCount * (landmarksCount * 2)];
-		this.deadendData = new int[graph.nodeCount];
+		this.nodesData = DoubleBuffer.wrap(new double[graph.nodeCount * (landmarksCount * 2)]);
+		this.deadendData = IntBuffer.wrap(new int[graph.nodeCount]);
 
 		this.findDeadEnds();
 		this.calcLandmarks();
 		this.minTravelCostPerLength = this.calcMinTravelCostPerLength();
 	}
 
+	private SpeedyALTData(SpeedyGraph graph, int landmarksCount, TravelDisutility travelCosts, int[] landmarksNodeIndices,
+			DoubleBuffer nodesData, IntBuffer deadendData, double minTravelCostPerLength) {
+		this.graph = graph;
+		this.landmarksCount = landmarksCount;
+		this.travelCosts = travelCosts;
+		this.landmarksNodeIndices = landmarksNodeIndices;
+		this.nodesData = nodesData;
+		this.deadendData = deadendData;
+		this.minTravelCostPerLength = minTravelCostPerLength;
+	}
+
+	/**
+	 * Returns the data stored in the given directory, or calculates the data and stores it in the directory if there is
+	 * no file for this graph, number of landmarks and travel disutility yet.
+	 */
+	static SpeedyALTData loadOrCalculate(Path directory, SpeedyGraph graph, int landmarksCount, TravelDisutility travelCosts) {
+		long signature = calcSignature(graph, landmarksCount, travelCosts);
+		Path file = directory.resolve("speedyalt-" + Long.toHexString(signature) + ".bin");
+		if (Files.exists(file)) {
+			try {
+				SpeedyALTData data = read(file, graph, landmarksCount, travelCosts, signature);
+				if (data != null) {
+					LOG.info("loaded landmarks from " + file);
+					return data;
+				}
+				LOG.info("landmarks in " + file + " do not match the network or travel disutility, calculating them again.");
+			} catch (IOException e) {
+				LOG.warn("could not read landmarks from " + file + ", calculating them again.", e);
+			}
+		}
+		SpeedyALTData data = new SpeedyALTData(graph, landmarksCount, travelCosts);
+		try {
+			Files.createDirectories(directory);
+			data.write(file, signature);
+		} catch (IOException | IllegalStateException e) {
+			LOG.warn("could not write landmarks to " + file, e);
+		}
+		return data;
+	}
+
+	/**
+	 * A hash over everything the data depends on: the nodes and links with their indices, and the minimum travel
+	 * disutility of all links.
+	 */
+	static long calcSignature(SpeedyGraph graph, int landmarksCount, TravelDisutility travelCosts) {
+		long hash = mix(FILE_VERSION, landmarksCount);
+		hash = mix(hash, graph.nodeCount);
+		hash = mix(hash, graph.linkCount);
+		for (int nodeIdx = 0; nodeIdx < graph.nodeCount; nodeIdx++) {
+			Node node = graph.getNode(nodeIdx);
+			hash = mix(hash, node == null ? 0 : node.getId().toString().hashCode());
+		}
+		for (int linkIdx = 0; linkIdx < graph.linkCount; linkIdx++) {
+			Link link = graph.getLink(linkIdx);
+			if (link == null) {
+				hash = mix(hash, 0);
+			} else {
+				hash = mix(hash, link.getId().toString().hashCode());
+				hash = mix(hash, link.getFromNode().getId().index());
+				hash = mix(hash, link.getToNode().getId().index());
+				hash = mix(hash, Double.doubleToLongBits(travelCosts.getLinkMinimumTravelDisutility(link)));
+			}
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, long value) {
+		long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	private void write(Path file, long signature) throws IOException {
+		long size = HEADER_SIZE + 4L * this.landmarksCount + 4L * this.graph.nodeCount;
+		size += size % 8; // align the doubles
+		long nodesOffset = size;
+		size += 8L * this.nodesData.capacity();
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalStateException("landmarks are too large to be stored in a single file: " + size + " bytes.");
+		}
+		Path tmpFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putLong(FILE_MAGIC);
+				buffer.putInt(FILE_VERSION);
+				buffer.putInt(this.graph.nodeCount);
+				buffer.putInt(this.graph.linkCount);
+				buffer.putInt(this.landmarksCount);
+				buffer.putLong(signature);
+				buffer.putDouble(this.minTravelCostPerLength);
+				for (int landmark : this.landmarksNodeIndices) {
+					buffer.putInt(landmark);
+				}
+				for (int nodeIdx = 0; nodeIdx < this.graph.nodeCount; nodeIdx++) {
+					buffer.putInt(this.deadendData.get(nodeIdx));
+				}
+				buffer.position((int) nodesOffset);
+				buffer.asDoubleBuffer().put(this.nodesData.duplicate().clear());
+				buffer.force();
+			}
+			// move the complete file into place, so other processes never see a partially written file
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+	}
+
+	/**
+	 * @return the data from the file, or null if the file was written for a different graph, number of landmarks or
+	 * travel disutility.
+	 */
+	private static SpeedyALTData read(Path file, SpeedyGraph graph, int landmarksCount, TravelDisutility travelCosts, long signature) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE) {
+				return null;
+			}
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getLong() != FILE_MAGIC || buffer.getInt() != FILE_VERSION || buffer.getInt() != graph.nodeCount
+					|| buffer.getInt() != graph.linkCount || buffer.getInt() != landmarksCount || buffer.getLong() != signature) {
+				return null;
+			}
+			double minTravelCostPerLength = buffer.getDouble();
+			int[] landmarksNodeIndices = new int[landmarksCount];
+			for (int i = 0; i < landmarksCount; i++) {
+				landmarksNodeIndices[i] = buffer.getInt();
+			}
+			int nodesOffset = buffer.position() + 4 * graph.nodeCount;
+			nodesOffset += nodesOffset % 8;
+			long nodesCount = (long) graph.nodeCount * landmarksCount * 2;
+			if (channel.size() != nodesOffset + 8 * nodesCount) {
+				return null;
+			}
+			IntBuffer deadendData = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().limit(graph.nodeCount).slice();
+			DoubleBuffer nodesData = buffer.position(nodesOffset).slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			return new SpeedyALTData(graph, landmarksCount, travelCosts, landmarksNodeIndices, nodesData, deadendData, minTravelCostPerLength);
+		}
+	}
+
 	private void findDeadEnds() {
 		LOG.info("find dead ends...");
+		int[] deadendData = this.deadendData.array();
 
 		LinkIterator outLI = this.graph.getOutLinkIterator();
 		LinkIterator inLI = this.graph.getInLinkIterator();
-		Arrays.fill(this.deadendData, -1);
+		Arrays.fill(deadendData, -1);
 		Map<Integer, Integer> mergedDeadends = new HashMap<>();
 
 		for (int nodeIdx = 0; nodeIdx < this.graph.nodeCount; nodeIdx++) {
 			Node node = this.graph.getNode(nodeIdx);
 			if (node == null) continue; // not all indices might be in use
 
-			if (this.deadendData[nodeIdx] >= 0) continue; // already detected as part of dead-end
+			if (deadendData[nodeIdx] >= 0) continue; // already detected as part of dead-end
 
 			int nIdx = nodeIdx;
-			int otherNodeIndex = checkNodeForDeadend(this.deadendData, mergedDeadends, nIdx, nodeIdx, outLI, inLI);
+			int otherNodeIndex = checkNodeForDeadend(deadendData, mergedDeadends, nIdx, nodeIdx, outLI, inLI);
 			while (otherNodeIndex >= 0) {
-				this.deadendData[nIdx] = nodeIdx;
+				deadendData[nIdx] = nodeIdx;
 				nIdx = otherNodeIndex;
-				otherNodeIndex = checkNodeForDeadend(this.deadendData, mergedDeadends, nIdx, nodeIdx, outLI, inLI);
+				otherNodeIndex = checkNodeForDeadend(deadendData, mergedDeadends, nIdx, nodeIdx, outLI, inLI);
 			}
 		}
 		Map<Integer, Integer> mergers = new HashMap<>();
@@ -80,9 +241,9 @@ class SpeedyALTData {
 			mergers.put(fromIdx, finalToIdx);
 		});
 		for (int nodeIdx = 0; nodeIdx < this.graph.nodeCount; nodeIdx++) {
-			int deadend = this.deadendData[nodeIdx];
+			int deadend = deadendData[nodeIdx];
 			if (deadend >= 0) {
-				this.deadendData[nodeIdx] = mergers.getOrDefault(deadend, deadend);
+				deadendData[nodeIdx] = mergers.getOrDefault(deadend, deadend);
 			}
 		}
 	}
@@ -187,7 +348,7 @@ class SpeedyALTData {
 	private void setNodeData(double[] data, int offset) {
 		int multiplier = this.landmarksCount * 2;
 		for (int i = 0; i < this.graph.nodeCount; i++) {
-			this.nodesData[i * multiplier + offset] = data[i];
+			this.nodesData.put(i * multiplier + offset, data[i]);
 		}
 	}
 
@@ -300,7 +461,7 @@ class SpeedyALTData {
 	}
 
 	int getNodeDeadend(int nodeIndex) {
-		return this.deadendData[nodeIndex];
+		return this.deadendData.get(nodeIndex);
 	}
 
 	int getLandmarksCount() {
@@ -308,11 +469,11 @@ class SpeedyALTData {
 	}
 
 	double getTravelCostFromLandmark(int nodeIndex, int landmarkIndex) {
-		return this.nodesData[nodeIndex * (this.landmarksCount * 2) + 2 * landmarkIndex];
+		return this.nodesData.get(nodeIndex * (this.landmarksCount * 2) + 2 * landmarkIndex);
 	}
 
 	double getTravelCostToLandmark(int nodeIndex, int landmarkIndex) {
-		return this.nodesData[nodeIndex * (this.landmarksCount * 2) + 2 * landmarkIndex + 1];
+		return this.nodesData.get(nodeIndex * (this.landmarksCount * 2) + 2 * landmarkIndex + 1);
 	}
 
 	public double getMinTravelCostPerLength() {
@@ -1,11 +1,15 @@
 package org.matsim.core.router.speedy;
 
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
 import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
 
+import javax.inject.Inject;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -16,6 +20,32 @@ public class SpeedyALTFactory implements LeastCostPathCalculatorFactory {
 
 	private final Map<Network, SpeedyGraph> graphs = new ConcurrentHashMap<>();
 	private final Map<SpeedyGraph, SpeedyALTData> landmarksData = new ConcurrentHashMap<>();
+	private final Path cacheDirectory;
+
+	public SpeedyALTFactory() {
+		this((Path) null);
+	}
+
+	/**
+	 * @param cacheDirectory if not null, the landmarks are stored in this directory and loaded from there the next time
+	 *                       they are needed for the same network and travel disutility, also by other processes.
+	 */
+	public SpeedyALTFactory(Path cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * Uses the landmarks cache directory of the controler config group, if it is set.
+	 */
+	@Inject
+	public SpeedyALTFactory(Config config) {
+		this(getCacheDirectory(config));
+	}
+
+	private static Path getCacheDirectory(Config config) {
+		String cacheDirectory = config.controler().getLandmarksCacheDirectory();
+		return cacheDirectory == null ? null : Paths.get(cacheDirectory);
+	}
 
 	@Override
 	public LeastCostPathCalculator createPathCalculator(Network network, TravelDisutility travelCosts, TravelTime travelTimes) {
@@ -26,7 +56,9 @@ public class SpeedyALTFactory implements LeastCostPathCalculatorFactory {
 		}
 		SpeedyALTData landmarks = this.landmarksData.get(graph);
 		if (landmarks == null) {
-			landmarks = new SpeedyALTData(graph, 16, travelCosts);
+			landmarks = this.cacheDirectory == null
+					? new SpeedyALTData(graph, 16, travelCosts)
+					: SpeedyALTData.loadOrCalculate(this.cacheDirectory, graph, 16, travelCosts);
 			this.landmarksData.put(graph, landmarks);
 		}
 		return new SpeedyALT(landmarks, travelTimes, travelCosts);
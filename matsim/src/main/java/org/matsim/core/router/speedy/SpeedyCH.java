@@ -0,0 +1,237 @@
+package org.matsim.core.router.speedy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A least cost path calculator using a customizable contraction hierarchy, see {@link SpeedyCHGraph} and
+ * {@link SpeedyCHMetric}.
+ *
+ * A query runs a Dijkstra search upwards in the hierarchy from both the start and the end node, using the costs of the
+ * time bin in which the route starts. The resulting path of shortcuts is then unpacked into links, and its travel time
+ * and costs are calculated with the actual travel time and travel disutility, for the given person and vehicle.
+ *
+ * As the route is searched with the costs at the departure time and without person or vehicle, it can differ from the
+ * route found by {@link SpeedyALT} when travel times change a lot during a trip or the travel disutility depends on
+ * the person.
+ *
+ * This implementation is not thread-safe. In the case of multi-threading, every thread should use
+ * a separate instance. (But the used {@link SpeedyCHMetric} is thread-safe and can be shared by multiple
+ * instances).
+ */
+public class SpeedyCH implements LeastCostPathCalculator {
+
+	private final static Logger LOG = LogManager.getLogger(SpeedyCH.class);
+
+	private final SpeedyGraph graph;
+	private final SpeedyCHGraph ch;
+	private final SpeedyCHMetric metric;
+	private final TravelTime tt;
+	private final TravelDisutility td;
+	private final double[] forwardCosts;
+	private final double[] backwardCosts;
+	private final int[] forwardIterationIds;
+	private final int[] backwardIterationIds;
+	private final int[] forwardComingFrom;
+	private final int[] backwardGoingTo;
+	private int currentIteration = Integer.MIN_VALUE;
+	private final DAryMinHeap forwardPQ;
+	private final DAryMinHeap backwardPQ;
+	private final SpeedyGraph.LinkIterator outLI;
+
+	SpeedyCH(SpeedyCHMetric metric, TravelTime tt, TravelDisutility td) {
+		this.ch = metric.ch;
+		this.graph = this.ch.graph;
+		this.metric = metric;
+		this.tt = tt;
+		this.td = td;
+		int nodeCount = this.ch.nodeCount;
+		this.forwardCosts = new double[nodeCount];
+		this.backwardCosts = new double[nodeCount];
+		this.forwardIterationIds = new int[nodeCount];
+		this.backwardIterationIds = new int[nodeCount];
+		this.forwardComingFrom = new int[nodeCount];
+		this.backwardGoingTo = new int[nodeCount];
+		this.forwardPQ = new DAryMinHeap(nodeCount, 6);
+		this.backwardPQ = new DAryMinHeap(nodeCount, 6);
+		this.outLI = this.graph.getOutLinkIterator();
+		Arrays.fill(this.forwardIterationIds, this.currentIteration);
+		Arrays.fill(this.backwardIterationIds, this.currentIteration);
+	}
+
+	@Override
+	public Path calcLeastCostPath(Node startNode, Node endNode, double startTime, Person person, Vehicle vehicle) {
+		this.currentIteration++;
+		if (this.currentIteration == Integer.MAX_VALUE) {
+			// reset iteration as we overflow
+			Arrays.fill(this.forwardIterationIds, this.currentIteration);
+			Arrays.fill(this.backwardIterationIds, this.currentIteration);
+			this.currentIteration = Integer.MIN_VALUE;
+		}
+		int timeBin = this.metric.getTimeBin(startTime);
+		int startRank = this.ch.getRank(startNode.getId().index());
+		int endRank = this.ch.getRank(endNode.getId().index());
+
+		this.forwardPQ.clear();
+		this.backwardPQ.clear();
+		visit(true, startRank, 0, -1);
+		visit(false, endRank, 0, -1);
+
+		double bestCost = Double.POSITIVE_INFINITY;
+		int meetingRank = -1;
+		while (true) {
+			boolean forwardDone = this.forwardPQ.isEmpty() || this.forwardCosts[this.forwardPQ.peek()] >= bestCost;
+			boolean backwardDone = this.backwardPQ.isEmpty() || this.backwardCosts[this.backwardPQ.peek()] >= bestCost;
+			if (forwardDone && backwardDone) {
+				break;
+			}
+			boolean forward = backwardDone || (!forwardDone && this.forwardCosts[this.forwardPQ.peek()] <= this.backwardCosts[this.backwardPQ.peek()]);
+			int rank = forward ? this.forwardPQ.poll() : this.backwardPQ.poll();
+			double cost = forward ? this.forwardCosts[rank] : this.backwardCosts[rank];
+
+			int[] otherIterationIds = forward ? this.backwardIterationIds : this.forwardIterationIds;
+			if (otherIterationIds[rank] == this.currentIteration) {
+				double totalCost = cost + (forward ? this.backwardCosts[rank] : this.forwardCosts[rank]);
+				if (totalCost < bestCost) {
+					bestCost = totalCost;
+					meetingRank = rank;
+				}
+			}
+
+			for (int edge = this.ch.upStart[rank], end = this.ch.upStart[rank + 1]; edge < end; edge++) {
+				float edgeCost = forward ? this.metric.getUpCost(edge, timeBin) : this.metric.getDownCost(edge, timeBin);
+				if (edgeCost != Float.POSITIVE_INFINITY) {
+					visit(forward, this.ch.upTarget[edge], cost + edgeCost, rank);
+				}
+			}
+		}
+
+		if (meetingRank >= 0) {
+			return constructPath(startRank, meetingRank, timeBin, startTime, person, vehicle);
+		}
+		LOG.warn("No route was found from node " + startNode.getId() + " to node " + endNode.getId() + ". Some possible reasons:");
+		LOG.warn("  * Network is not connected.  Run NetworkCleaner().") ;
+		LOG.warn("  * Network for considered mode does not even exist.  Modes need to be entered for each link in network.xml.");
+		LOG.warn("  * Network for considered mode is not connected to starting or ending point of route.  Setting insertingAccessEgressWalk to true may help.");
+		LOG.warn("This will now return null, but it may fail later with a NullPointerException.");
+		return null;
+	}
+
+	private void visit(boolean forward, int rank, double cost, int previousRank) {
+		int[] iterationIds = forward ? this.forwardIterationIds : this.backwardIterationIds;
+		double[] costs = forward ? this.forwardCosts : this.backwardCosts;
+		DAryMinHeap pq = forward ? this.forwardPQ : this.backwardPQ;
+		if (iterationIds[rank] == this.currentIteration) {
+			if (cost >= costs[rank]) {
+				return;
+			}
+			pq.decreaseKey(rank, cost);
+		} else {
+			iterationIds[rank] = this.currentIteration;
+			pq.insert(rank, cost);
+		}
+		costs[rank] = cost;
+		(forward ? this.forwardComingFrom : this.backwardGoingTo)[rank] = previousRank;
+	}
+
+	private Path constructPath(int startRank, int meetingRank, int timeBin, double startTime, Person person, Vehicle vehicle) {
+		List<Integer> ranks = new ArrayList<>();
+		for (int rank = meetingRank; rank >= 0; rank = this.forwardComingFrom[rank]) {
+			ranks.add(0, rank);
+		}
+		for (int rank = this.backwardGoingTo[meetingRank]; rank >= 0; rank = this.backwardGoingTo[rank]) {
+			ranks.add(rank);
+		}
+
+		List<Link> links = new ArrayList<>();
+		for (int i = 1; i < ranks.size(); i++) {
+			unpack(ranks.get(i - 1), ranks.get(i), timeBin, links);
+		}
+
+		List<Node> nodes = new ArrayList<>(links.size() + 1);
+		nodes.add(this.graph.getNode(this.ch.getNodeIndex(startRank)));
+		double time = startTime;
+		double cost = 0;
+		for (Link link : links) {
+			nodes.add(link.getToNode());
+			cost += this.td.getLinkTravelDisutility(link, time, person, vehicle);
+			time += this.tt.getLinkTravelTime(link, time, person, vehicle);
+		}
+		return new Path(nodes, links, time - startTime, cost);
+	}
+
+	/**
+	 * Replaces the edge between the two nodes by the links it represents. An edge either stands for a link, or for the
+	 * two edges to and from a lower-ranked node, whichever is the cheapest.
+	 */
+	private void unpack(int fromRank, int toRank, int timeBin, List<Link> links) {
+		int[] stack = new int[64];
+		int size = 0;
+		stack[size++] = fromRank;
+		stack[size++] = toRank;
+		while (size > 0) {
+			int to = stack[--size];
+			int from = stack[--size];
+
+			int lower = Math.min(from, to);
+			int higher = Math.max(from, to);
+			double bestCost = Double.POSITIVE_INFINITY;
+			Link bestLink = null;
+			int toNodeIndex = this.ch.getNodeIndex(to);
+			this.outLI.reset(this.ch.getNodeIndex(from));
+			while (this.outLI.next()) {
+				if (this.outLI.getToNodeIndex() == toNodeIndex) {
+					Link link = this.graph.getLink(this.outLI.getLinkIndex());
+					double cost = (float) this.td.getLinkTravelDisutility(link, this.metric.getTimeBinStart(timeBin), null, null);
+					if (cost < bestCost) {
+						bestCost = cost;
+						bestLink = link;
+					}
+				}
+			}
+			int bestVia = -1;
+			for (int i = this.ch.downStart[lower], end = this.ch.downStart[lower + 1]; i < end; i++) {
+				int via = this.ch.downSource[i];
+				int viaEdge = this.ch.findEdge(via, higher);
+				if (viaEdge < 0) {
+					continue;
+				}
+				int lowerEdge = this.ch.downEdge[i];
+				int fromEdge = from == lower ? lowerEdge : viaEdge;
+				int toEdge = to == lower ? lowerEdge : viaEdge;
+				double cost = this.metric.getDownCost(fromEdge, timeBin) + this.metric.getUpCost(toEdge, timeBin);
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestVia = via;
+				}
+			}
+
+			if (bestVia >= 0) {
+				if (size + 4 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				// push the second part first, so that the first part is unpacked first
+				stack[size++] = bestVia;
+				stack[size++] = to;
+				stack[size++] = from;
+				stack[size++] = bestVia;
+			} else if (bestLink != null) {
+				links.add(bestLink);
+			} else {
+				throw new IllegalStateException("Cannot unpack the edge from node " + this.graph.getNode(this.ch.getNodeIndex(from)).getId()
+						+ " to node " + this.graph.getNode(toNodeIndex).getId());
+			}
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.matsim.core.router.speedy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates {@link SpeedyCH} instances. The contraction hierarchy is built once per network, the metric is customized
+ * once per iteration and travel disutility.
+ *
+ * As the travel disutility is usually created anew for every router, metrics are re-used if the travel disutility is
+ * of the same class, uses the same travel time and returns the same costs for a sample of links. If the travel
+ * disutility cannot be calculated without a person, {@link SpeedyALT} is used instead. Routing randomness is therefore
+ * rejected by the config consistency check when SpeedyCH is configured.
+ */
+@Singleton
+public class SpeedyCHFactory implements LeastCostPathCalculatorFactory, IterationStartsListener {
+
+	private final static Logger LOG = LogManager.getLogger(SpeedyCHFactory.class);
+
+	private final static int SAMPLE_LINKS = 256;
+
+	private final double timeBinSize;
+	private final int timeBinCount;
+	private final int numberOfThreads;
+	private final Map<Network, SpeedyGraph> graphs = new ConcurrentHashMap<>();
+	private final Map<SpeedyGraph, SpeedyCHGraph> hierarchies = new ConcurrentHashMap<>();
+	private final List<MetricEntry> metrics = new ArrayList<>();
+	private final SpeedyALTFactory fallback;
+	private boolean warnedFallback = false;
+
+	public SpeedyCHFactory() {
+		this(3600, 30 * 3600);
+	}
+
+	@Inject
+	public SpeedyCHFactory(Config config) {
+		this(3600, 30 * 3600, config.global().getNumberOfThreads(), new SpeedyALTFactory(config));
+	}
+
+	/**
+	 * @param timeBinSize the travel costs are customized for time bins of this size, in seconds.
+	 * @param maxTime     routes starting later than this use the costs of the last time bin.
+	 */
+	public SpeedyCHFactory(double timeBinSize, double maxTime) {
+		this(timeBinSize, maxTime, 1);
+	}
+
+	/**
+	 * @param timeBinSize     the travel costs are customized for time bins of this size, in seconds.
+	 * @param maxTime         routes starting later than this use the costs of the last time bin.
+	 * @param numberOfThreads the number of threads customizing the time bins.
+	 */
+	public SpeedyCHFactory(double timeBinSize, double maxTime, int numberOfThreads) {
+		this(timeBinSize, maxTime, numberOfThreads, new SpeedyALTFactory());
+	}
+
+	private SpeedyCHFactory(double timeBinSize, double maxTime, int numberOfThreads, SpeedyALTFactory fallback) {
+		this.timeBinSize = timeBinSize;
+		this.timeBinCount = Math.max(1, (int) Math.ceil(maxTime / timeBinSize));
+		this.numberOfThreads = numberOfThreads;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public LeastCostPathCalculator createPathCalculator(Network network, TravelDisutility travelCosts, TravelTime travelTimes) {
+		SpeedyGraph graph = this.graphs.computeIfAbsent(network, SpeedyGraph::new);
+		SpeedyCHGraph ch = this.hierarchies.computeIfAbsent(graph, SpeedyCHGraph::new);
+		SpeedyCHMetric metric = getMetric(ch, travelCosts, travelTimes);
+		if (metric == null) {
+			return this.fallback.createPathCalculator(network, travelCosts, travelTimes);
+		}
+		return new SpeedyCH(metric, travelTimes, travelCosts);
+	}
+
+	private synchronized SpeedyCHMetric getMetric(SpeedyCHGraph ch, TravelDisutility travelCosts, TravelTime travelTimes) {
+		long fingerprint;
+		try {
+			fingerprint = fingerprint(ch.graph, travelCosts);
+		} catch (RuntimeException e) {
+			if (!this.warnedFallback) {
+				LOG.warn("The travel disutility cannot be calculated without a person, using SpeedyALT instead of SpeedyCH.", e);
+				this.warnedFallback = true;
+			}
+			return null;
+		}
+		for (MetricEntry entry : this.metrics) {
+			if (entry.metric.ch == ch && entry.travelTimes == travelTimes && entry.travelCostsClass == travelCosts.getClass() && entry.fingerprint == fingerprint) {
+				return entry.metric;
+			}
+		}
+		SpeedyCHMetric metric = new SpeedyCHMetric(ch, travelCosts, this.timeBinSize, this.timeBinCount, this.numberOfThreads);
+		this.metrics.add(new MetricEntry(metric, travelTimes, travelCosts.getClass(), fingerprint));
+		return metric;
+	}
+
+	private long fingerprint(SpeedyGraph graph, TravelDisutility travelCosts) {
+		long fingerprint = 0;
+		int step = Math.max(1, graph.linkCount / SAMPLE_LINKS);
+		for (int linkIdx = 0; linkIdx < graph.linkCount; linkIdx += step) {
+			Link link = graph.getLink(linkIdx);
+			if (link != null) {
+				for (int bin = 0; bin < this.timeBinCount; bin++) {
+					double cost = travelCosts.getLinkTravelDisutility(link, bin * this.timeBinSize, null, null);
+					fingerprint = 31 * fingerprint + Double.doubleToLongBits(cost);
+				}
+			}
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * The travel times of the last iteration are known now, so the metrics need to be customized again.
+	 */
+	@Override
+	public synchronized void notifyIterationStarts(IterationStartsEvent event) {
+		this.metrics.clear();
+	}
+
+	private static final class MetricEntry {
+
+		final SpeedyCHMetric metric;
+		final TravelTime travelTimes;
+		final Class<?> travelCostsClass;
+		final long fingerprint;
+
+		MetricEntry(SpeedyCHMetric metric, TravelTime travelTimes, Class<?> travelCostsClass, long fingerprint) {
+			this.metric = metric;
+			this.travelTimes = travelTimes;
+			this.travelCostsClass = travelCostsClass;
+			this.fingerprint = fingerprint;
+		}
+	}
+}
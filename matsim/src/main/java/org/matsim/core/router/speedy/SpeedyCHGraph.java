@@ -0,0 +1,353 @@
+package org.matsim.core.router.speedy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Node;
+
+import java.util.Arrays;
+
+/**
+ * The metric-independent part of a customizable contraction hierarchy (CCH) on top of a {@link SpeedyGraph}.
+ *
+ * The nodes are ordered by a nested dissection using the node coordinates: the nodes are recursively split into two
+ * halves along the direction that cuts the fewest links, and the nodes at the cut (the separator) are ranked above
+ * both halves. Contracting the nodes in this order adds a shortcut between every pair of higher-ranked neighbours of a
+ * contracted node. The result does not depend on travel times or costs, so it can be calculated once per network and
+ * re-used with every metric, see {@link SpeedyCHMetric}.
+ *
+ * All nodes are identified by their rank in this class. Every edge connects a lower-ranked node to a higher-ranked node
+ * and is stored with the lower-ranked one, sorted by the rank of the higher-ranked node.
+ *
+ * Based on "Customizable Contraction Hierarchies" by Julian Dibbelt, Ben Strasser and Dorothea Wagner, 2014.
+ *
+ * This class is thread-safe and can safely be used by multiple threads.
+ */
+class SpeedyCHGraph {
+
+	private final static Logger LOG = LogManager.getLogger(SpeedyCHGraph.class);
+
+	private final static int LEAF_SIZE = 16;
+
+	final SpeedyGraph graph;
+	final int nodeCount;
+	final int edgeCount;
+	private final int[] rankOfNode;
+	private final int[] nodeOfRank;
+	// edges from the lower-ranked node up to the higher-ranked node
+	final int[] upStart;
+	final int[] upTarget;
+	// the same edges, stored with the higher-ranked node
+	final int[] downStart;
+	final int[] downSource;
+	final int[] downEdge;
+
+	SpeedyCHGraph(SpeedyGraph graph) {
+		this.graph = graph;
+		this.nodeCount = graph.nodeCount;
+
+		LOG.info("order nodes for contraction hierarchy...");
+		int[][] neighbours = collectNeighbours(graph);
+		this.nodeOfRank = orderNodes(graph, neighbours);
+		this.rankOfNode = new int[this.nodeCount];
+		for (int rank = 0; rank < this.nodeCount; rank++) {
+			this.rankOfNode[this.nodeOfRank[rank]] = rank;
+		}
+
+		LOG.info("contract nodes...");
+		int[][] up = new int[this.nodeCount][];
+		int[] upSize = new int[this.nodeCount];
+		for (int node = 0; node < this.nodeCount; node++) {
+			int rank = this.rankOfNode[node];
+			for (int neighbour : neighbours[node]) {
+				int neighbourRank = this.rankOfNode[neighbour];
+				if (neighbourRank > rank) {
+					add(up, upSize, rank, neighbourRank);
+				}
+			}
+		}
+		long edges = 0;
+		for (int rank = 0; rank < this.nodeCount; rank++) {
+			int[] targets = up[rank];
+			if (targets == null) {
+				up[rank] = new int[0];
+				continue;
+			}
+			Arrays.sort(targets, 0, upSize[rank]);
+			int size = 0;
+			for (int i = 0; i < upSize[rank]; i++) {
+				if (size == 0 || targets[size - 1] != targets[i]) {
+					targets[size++] = targets[i];
+				}
+			}
+			targets = Arrays.copyOf(targets, size);
+			up[rank] = targets;
+			upSize[rank] = size;
+			edges += size;
+			// contracting this node connects all its higher-ranked neighbours. It is enough to connect the lowest one to
+			// the others, the remaining shortcuts follow when the lowest one is contracted.
+			for (int i = 1; i < size; i++) {
+				add(up, upSize, targets[0], targets[i]);
+			}
+		}
+		if (edges > Integer.MAX_VALUE) {
+			throw new IllegalStateException("The contraction hierarchy has too many edges: " + edges);
+		}
+		this.edgeCount = (int) edges;
+
+		this.upStart = new int[this.nodeCount + 1];
+		this.upTarget = new int[this.edgeCount];
+		int[] downCount = new int[this.nodeCount + 1];
+		int edge = 0;
+		for (int rank = 0; rank < this.nodeCount; rank++) {
+			this.upStart[rank] = edge;
+			for (int target : up[rank]) {
+				this.upTarget[edge++] = target;
+				downCount[target]++;
+			}
+			up[rank] = null;
+		}
+		this.upStart[this.nodeCount] = edge;
+
+		this.downStart = new int[this.nodeCount + 1];
+		for (int rank = 0; rank < this.nodeCount; rank++) {
+			this.downStart[rank + 1] = this.downStart[rank] + downCount[rank];
+		}
+		this.downSource = new int[this.edgeCount];
+		this.downEdge = new int[this.edgeCount];
+		int[] downPos = Arrays.copyOf(this.downStart, this.nodeCount);
+		for (int rank = 0; rank < this.nodeCount; rank++) {
+			for (int e = this.upStart[rank]; e < this.upStart[rank + 1]; e++) {
+				int pos = downPos[this.upTarget[e]]++;
+				this.downSource[pos] = rank;
+				this.downEdge[pos] = e;
+			}
+		}
+		LOG.info("contraction hierarchy has " + this.edgeCount + " edges for " + graph.linkCount + " links.");
+	}
+
+	int getRank(int nodeIndex) {
+		return this.rankOfNode[nodeIndex];
+	}
+
+	int getNodeIndex(int rank) {
+		return this.nodeOfRank[rank];
+	}
+
+	/**
+	 * @return the index of the edge between the two nodes, or -1 if there is no such edge.
+	 */
+	int findEdge(int lowerRank, int higherRank) {
+		int index = Arrays.binarySearch(this.upTarget, this.upStart[lowerRank], this.upStart[lowerRank + 1], higherRank);
+		return index < 0 ? -1 : index;
+	}
+
+	private static void add(int[][] lists, int[] sizes, int index, int value) {
+		int[] list = lists[index];
+		if (list == null) {
+			list = new int[4];
+			lists[index] = list;
+		} else if (sizes[index] == list.length) {
+			list = Arrays.copyOf(list, list.length * 2);
+			lists[index] = list;
+		}
+		list[sizes[index]++] = value;
+	}
+
+	private static int[][] collectNeighbours(SpeedyGraph graph) {
+		int[][] neighbours = new int[graph.nodeCount][];
+		SpeedyGraph.LinkIterator outLI = graph.getOutLinkIterator();
+		SpeedyGraph.LinkIterator inLI = graph.getInLinkIterator();
+		int[] buffer = new int[16];
+		for (int node = 0; node < graph.nodeCount; node++) {
+			int size = 0;
+			outLI.reset(node);
+			while (outLI.next()) {
+				if (size == buffer.length) {
+					buffer = Arrays.copyOf(buffer, size * 2);
+				}
+				buffer[size++] = outLI.getToNodeIndex();
+			}
+			inLI.reset(node);
+			while (inLI.next()) {
+				if (size == buffer.length) {
+					buffer = Arrays.copyOf(buffer, size * 2);
+				}
+				buffer[size++] = inLI.getFromNodeIndex();
+			}
+			Arrays.sort(buffer, 0, size);
+			int unique = 0;
+			for (int i = 0; i < size; i++) {
+				if (buffer[i] != node && (unique == 0 || buffer[unique - 1] != buffer[i])) {
+					buffer[unique++] = buffer[i];
+				}
+			}
+			neighbours[node] = Arrays.copyOf(buffer, unique);
+		}
+		return neighbours;
+	}
+
+	/**
+	 * @return all node indices, in the order of their rank.
+	 */
+	private static int[] orderNodes(SpeedyGraph graph, int[][] neighbours) {
+		int[] order = new int[graph.nodeCount];
+		int count = 0;
+		int located = 0;
+		for (int node = 0; node < graph.nodeCount; node++) {
+			if (graph.getNode(node) == null || neighbours[node].length == 0) {
+				order[count++] = node; // unused indices and isolated nodes do not matter
+			} else {
+				located++;
+			}
+		}
+		int[] nodes = new int[located];
+		double[] x = new double[graph.nodeCount];
+		double[] y = new double[graph.nodeCount];
+		located = 0;
+		for (int node = 0; node < graph.nodeCount; node++) {
+			Node n = graph.getNode(node);
+			if (n != null && neighbours[node].length > 0) {
+				nodes[located++] = node;
+				Coord coord = n.getCoord();
+				x[node] = coord == null ? 0 : coord.getX();
+				y[node] = coord == null ? 0 : coord.getY();
+			}
+		}
+		new Dissection(neighbours, x, y, order, count).dissect(nodes);
+		return order;
+	}
+
+	private static final class Dissection {
+
+		private final int[][] neighbours;
+		private final double[] x;
+		private final double[] y;
+		private final int[] order;
+		private int count;
+		private final int[] mark;
+		private int stamp = 0;
+
+		Dissection(int[][] neighbours, double[] x, double[] y, int[] order, int count) {
+			this.neighbours = neighbours;
+			this.x = x;
+			this.y = y;
+			this.order = order;
+			this.count = count;
+			this.mark = new int[neighbours.length];
+		}
+
+		void dissect(int[] nodes) {
+			if (nodes.length <= LEAF_SIZE) {
+				for (int node : nodes) {
+					this.order[this.count++] = node;
+				}
+				return;
+			}
+			int half = nodes.length / 2;
+			int[] best = null;
+			int bestCut = Integer.MAX_VALUE;
+			for (int direction = 0; direction < 4; direction++) {
+				int[] sorted = sortAlong(nodes, direction);
+				int cut = countCut(sorted, half);
+				if (cut < bestCut) {
+					bestCut = cut;
+					best = sorted;
+				}
+			}
+
+			// the separator consists of the nodes at one side of the cut, whichever side needs fewer nodes
+			int sideA = ++this.stamp;
+			int sideB = ++this.stamp;
+			markSides(best, half, sideA, sideB);
+			int separatorA = ++this.stamp;
+			int separatorB = ++this.stamp;
+			int countA = 0;
+			int countB = 0;
+			for (int i = 0; i < half; i++) {
+				int node = best[i];
+				for (int neighbour : this.neighbours[node]) {
+					if (this.mark[neighbour] == sideB) {
+						this.mark[neighbour] = separatorB;
+						countB++;
+					}
+				}
+			}
+			for (int i = half; i < best.length; i++) {
+				int node = best[i];
+				for (int neighbour : this.neighbours[node]) {
+					if (this.mark[neighbour] == sideA) {
+						this.mark[neighbour] = separatorA;
+						countA++;
+					}
+				}
+			}
+			int separator = countA <= countB ? separatorA : separatorB;
+			int[] partA = new int[half];
+			int[] partB = new int[best.length - half];
+			int[] separatorNodes = new int[Math.min(countA, countB)];
+			int a = 0;
+			int b = 0;
+			int s = 0;
+			for (int i = 0; i < best.length; i++) {
+				int node = best[i];
+				if (this.mark[node] == separator) {
+					separatorNodes[s++] = node;
+				} else if (i < half) {
+					partA[a++] = node;
+				} else {
+					partB[b++] = node;
+				}
+			}
+			dissect(Arrays.copyOf(partA, a));
+			dissect(Arrays.copyOf(partB, b));
+			for (int node : separatorNodes) {
+				this.order[this.count++] = node;
+			}
+		}
+
+		private int[] sortAlong(int[] nodes, int direction) {
+			long[] keys = new long[nodes.length];
+			for (int i = 0; i < nodes.length; i++) {
+				int node = nodes[i];
+				double value;
+				switch (direction) {
+					case 0: value = this.x[node]; break;
+					case 1: value = this.y[node]; break;
+					case 2: value = this.x[node] + this.y[node]; break;
+					default: value = this.x[node] - this.y[node]; break;
+				}
+				int bits = Float.floatToIntBits((float) value);
+				bits ^= (bits >> 31) & 0x7fffffff; // makes negative floats sort correctly as ints
+				keys[i] = ((long) bits << 32) | i;
+			}
+			Arrays.sort(keys);
+			int[] sorted = new int[nodes.length];
+			for (int i = 0; i < nodes.length; i++) {
+				sorted[i] = nodes[(int) keys[i]];
+			}
+			return sorted;
+		}
+
+		private int countCut(int[] sorted, int half) {
+			int sideA = ++this.stamp;
+			int sideB = ++this.stamp;
+			markSides(sorted, half, sideA, sideB);
+			int cut = 0;
+			for (int i = 0; i < half; i++) {
+				for (int neighbour : this.neighbours[sorted[i]]) {
+					if (this.mark[neighbour] == sideB) {
+						cut++;
+					}
+				}
+			}
+			return cut;
+		}
+
+		private void markSides(int[] sorted, int half, int sideA, int sideB) {
+			for (int i = 0; i < sorted.length; i++) {
+				this.mark[sorted[i]] = i < half ? sideA : sideB;
+			}
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package org.matsim.core.router.speedy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.router.util.TravelDisutility;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The travel costs on the edges of a {@link SpeedyCHGraph}, for a number of time bins.
+ *
+ * The costs of the links are taken from a {@link TravelDisutility} at the start of every time bin, without a person
+ * or vehicle. Then the costs of the shortcuts are calculated by looking at all triangles in the contraction hierarchy,
+ * from the lowest-ranked node upwards. This "customization" is much cheaper than building a contraction hierarchy,
+ * so it can be repeated whenever the travel times change.
+ *
+ * The costs are stored as floats, to save memory.
+ *
+ * This class is thread-safe and can safely be used by multiple threads.
+ */
+class SpeedyCHMetric {
+
+	private final static Logger LOG = LogManager.getLogger(SpeedyCHMetric.class);
+
+	final SpeedyCHGraph ch;
+	private final TravelDisutility travelCosts;
+	private final double timeBinSize;
+	final int timeBinCount;
+	private final int numberOfThreads;
+	// for each time bin and edge: costs from the lower-ranked to the higher-ranked node
+	private final float[] upCosts;
+	// for each time bin and edge: costs from the higher-ranked to the lower-ranked node
+	private final float[] downCosts;
+
+	SpeedyCHMetric(SpeedyCHGraph ch, TravelDisutility travelCosts, double timeBinSize, int timeBinCount) {
+		this(ch, travelCosts, timeBinSize, timeBinCount, 1);
+	}
+
+	/**
+	 * @param numberOfThreads the number of threads customizing the time bins.
+	 */
+	SpeedyCHMetric(SpeedyCHGraph ch, TravelDisutility travelCosts, double timeBinSize, int timeBinCount, int numberOfThreads) {
+		this.ch = ch;
+		this.travelCosts = travelCosts;
+		this.timeBinSize = timeBinSize;
+		this.timeBinCount = timeBinCount;
+		this.numberOfThreads = Math.max(1, Math.min(numberOfThreads, timeBinCount));
+		if ((long) ch.edgeCount * timeBinCount > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many time bins for a contraction hierarchy with " + ch.edgeCount + " edges: " + timeBinCount);
+		}
+		this.upCosts = new float[ch.edgeCount * timeBinCount];
+		this.downCosts = new float[ch.edgeCount * timeBinCount];
+		customize();
+	}
+
+	private void customize() {
+		LOG.info("customize contraction hierarchy for " + this.timeBinCount + " time bins...");
+		Arrays.fill(this.upCosts, Float.POSITIVE_INFINITY);
+		Arrays.fill(this.downCosts, Float.POSITIVE_INFINITY);
+		int bins = this.timeBinCount;
+
+		SpeedyGraph graph = this.ch.graph;
+		for (int linkIdx = 0; linkIdx < graph.linkCount; linkIdx++) {
+			Link link = graph.getLink(linkIdx);
+			if (link == null) {
+				continue;
+			}
+			int fromRank = this.ch.getRank(link.getFromNode().getId().index());
+			int toRank = this.ch.getRank(link.getToNode().getId().index());
+			if (fromRank == toRank) {
+				continue;
+			}
+			float[] costs = fromRank < toRank ? this.upCosts : this.downCosts;
+			int edge = this.ch.findEdge(Math.min(fromRank, toRank), Math.max(fromRank, toRank));
+			for (int bin = 0; bin < bins; bin++) {
+				float cost = getLinkCost(link, bin);
+				int index = bin * this.ch.edgeCount + edge;
+				if (cost < costs[index]) {
+					costs[index] = cost;
+				}
+			}
+		}
+
+		if (this.numberOfThreads == 1) {
+			for (int bin = 0; bin < bins; bin++) {
+				customizeShortcuts(bin * this.ch.edgeCount);
+			}
+			return;
+		}
+		// the time bins are independent of each other and can be customized in parallel
+		ExecutorService executor = Executors.newFixedThreadPool(this.numberOfThreads);
+		Future<?>[] futures = new Future<?>[bins];
+		for (int bin = 0; bin < bins; bin++) {
+			int offset = bin * this.ch.edgeCount;
+			futures[bin] = executor.submit(() -> customizeShortcuts(offset));
+		}
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * The edges of a node only get cheaper through lower-ranked nodes, so handling the nodes from the lowest rank upwards
+	 * results in the final costs of all edges.
+	 */
+	private void customizeShortcuts(int offset) {
+		int[] upStart = this.ch.upStart;
+		int[] upTarget = this.ch.upTarget;
+		float[] upCosts = this.upCosts;
+		float[] downCosts = this.downCosts;
+		for (int rank = 0; rank < this.ch.nodeCount; rank++) {
+			int end = upStart[rank + 1];
+			for (int e1 = upStart[rank]; e1 < end; e1++) {
+				int lower = upTarget[e1];
+				float up1 = upCosts[offset + e1];
+				float down1 = downCosts[offset + e1];
+				// the targets are sorted by rank, so the edges from the lower node can be searched in one pass
+				int edge = upStart[lower];
+				for (int e2 = e1 + 1; e2 < end; e2++) {
+					int higher = upTarget[e2];
+					while (upTarget[edge] != higher) {
+						edge++;
+					}
+					float up = down1 + upCosts[offset + e2];
+					if (up < upCosts[offset + edge]) {
+						upCosts[offset + edge] = up;
+					}
+					float down = downCosts[offset + e2] + up1;
+					if (down < downCosts[offset + edge]) {
+						downCosts[offset + edge] = down;
+					}
+				}
+			}
+		}
+	}
+
+	private float getLinkCost(Link link, int timeBin) {
+		return (float) this.travelCosts.getLinkTravelDisutility(link, getTimeBinStart(timeBin), null, null);
+	}
+
+	double getTimeBinStart(int timeBin) {
+		return timeBin * this.timeBinSize;
+	}
+
+	int getTimeBin(double time) {
+		if (!(time > 0)) {
+			return 0;
+		}
+		return (int) Math.min(time / this.timeBinSize, this.timeBinCount - 1);
+	}
+
+	float getUpCost(int edge, int timeBin) {
+		return this.upCosts[timeBin * this.ch.edgeCount + edge];
+	}
+
+	float getDownCost(int edge, int timeBin) {
+		return this.downCosts[timeBin * this.ch.edgeCount + edge];
+	}
+}
@@ -35,6 +35,7 @@ import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.network.io.NetworkChangeEventsParser;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.population.io.PopulationReaderBinary;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.io.UncheckedIOException;
 import org.matsim.facilities.MatsimFacilitiesReader;
@@ -198,9 +199,16 @@ class ScenarioLoaderImpl {
             final String targetCRS = config.global().getCoordinateSystem();
 			final String internalCRS = config.global().getCoordinateSystem();
 
-            final PopulationReader reader = new PopulationReader(targetCRS, internalCRS, this.scenario);
-            reader.putAttributeConverters( attributeConverters );
-            reader.parse( populationFileName );
+			if ( populationFileName.getPath().toLowerCase(Locale.ROOT).endsWith(".bin") ) {
+				// the binary format stores the coordinates as they were in memory, i.e. in the internal CRS
+				final PopulationReaderBinary reader = new PopulationReaderBinary(internalCRS, this.scenario);
+				reader.putAttributeConverters( attributeConverters );
+				reader.readURL( populationFileName );
+			} else {
+				final PopulationReader reader = new PopulationReader(targetCRS, internalCRS, this.scenario);
+				reader.putAttributeConverters( attributeConverters );
+				reader.parse( populationFileName );
+			}
 
 			PopulationUtils.printPlansCount(this.scenario.getPopulation()) ;
 		}
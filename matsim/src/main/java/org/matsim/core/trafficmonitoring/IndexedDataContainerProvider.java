@@ -0,0 +1,87 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * IndexedDataContainerProvider.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2026 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.trafficmonitoring;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Stores the DataContainer objects of the TravelTimeCalculator in an array indexed by {@link Id#index()}, so looking
+ * them up needs no hashing. The objects may be looked up by several threads at the same time. A missing object is
+ * created while holding the lock of this provider, which also guards growing the array for links created later.
+ */
+class IndexedDataContainerProvider implements DataContainerProvider {
+
+	private final TravelTimeDataFactory ttDataFactory;
+	private volatile AtomicReferenceArray<TravelTimeData> linkData;
+
+	IndexedDataContainerProvider(TravelTimeDataFactory ttDataFactory) {
+		this.ttDataFactory = ttDataFactory;
+		this.linkData = new AtomicReferenceArray<>(Id.getNumberOfIds(Link.class));
+	}
+
+	@Override
+	public TravelTimeData getTravelTimeData(final Id<Link> linkId, final boolean createIfMissing) {
+		int index = linkId.index();
+		AtomicReferenceArray<TravelTimeData> linkData = this.linkData;
+		TravelTimeData data = index < linkData.length() ? linkData.get(index) : null;
+		if (data == null && createIfMissing) {
+			data = createTravelTimeData(linkId);
+		}
+		return data;
+	}
+
+	@Override
+	public TravelTimeData getTravelTimeData(final Link link, final boolean createIfMissing) {
+		return this.getTravelTimeData(link.getId(), createIfMissing);
+	}
+
+	private synchronized TravelTimeData createTravelTimeData(final Id<Link> linkId) {
+		int index = linkId.index();
+		AtomicReferenceArray<TravelTimeData> linkData = this.linkData;
+		if (index >= linkData.length()) {
+			AtomicReferenceArray<TravelTimeData> grown = new AtomicReferenceArray<>(Math.max(index + 1, linkData.length() * 2));
+			for (int i = 0; i < linkData.length(); i++) {
+				grown.set(i, linkData.get(i));
+			}
+			this.linkData = linkData = grown;
+		}
+		TravelTimeData data = linkData.get(index);
+		if (data == null) {
+			data = this.ttDataFactory.createTravelTimeData(linkId);
+			linkData.set(index, data);
+		}
+		return data;
+	}
+
+	/*package*/ void forEach(Consumer<TravelTimeData> action) {
+		AtomicReferenceArray<TravelTimeData> linkData = this.linkData;
+		for (int i = 0; i < linkData.length(); i++) {
+			TravelTimeData data = linkData.get(i);
+			if (data != null) {
+				action.accept(data);
+			}
+		}
+	}
+}
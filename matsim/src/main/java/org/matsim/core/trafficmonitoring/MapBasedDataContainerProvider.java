@@ -39,8 +39,8 @@ class MapBasedDataContainerProvider implements DataContainerProvider {
 	public TravelTimeData getTravelTimeData(final Id<Link> linkId, final boolean createIfMissing) {
 		TravelTimeData data = this.linkData.get(linkId);
 		if ((null == data) && createIfMissing) {
-			data = this.ttDataFactory.createTravelTimeData(linkId) ;
-			this.linkData.put(linkId, data);
+			// atomic if the map is a concurrent one, so concurrent callers get the same data
+			data = this.linkData.computeIfAbsent(linkId, this.ttDataFactory::createTravelTimeData);
 		}
 		return data;
 	}
@@ -23,7 +23,6 @@ import com.google.inject.Inject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
 import org.matsim.api.core.v01.events.VehicleAbortsEvent;
@@ -46,14 +45,15 @@ import org.matsim.core.gbl.Gbl;
 import org.matsim.core.router.util.LinkToLinkTravelTime;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.utils.collections.CollectionUtils;
-import org.matsim.core.utils.collections.Tuple;
 import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.VehicleType;
 
-import java.util.HashSet;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Calculates actual travel times on link from events and optionally also the link-to-link 
@@ -66,6 +66,11 @@ import java.util.concurrent.ConcurrentHashMap;
  * use {@link TravelTimeDataHashMap},}
  * as that one does not use any memory to time bins where no traffic occurred. By default,
  * {@link TravelTimeDataArray} is used.
+ * <br>
+ * The events may be handled by multiple threads at the same time, as long as the events of a single vehicle are
+ * handled in the correct order. The link enter times are stored per vehicle index in primitive arrays, protected by a
+ * few locks, each responsible for a stripe of vehicles. The travel time data of a link is created atomically when it is
+ * first needed, and updated while holding its monitor, the same one that is used when consolidating the data.
  *
  * @author dgrether
  * @author mrieser
@@ -83,15 +88,25 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 	TimeSlotComputation aggregator;
 
 
-	private IdMap<Link, TravelTimeData> linkData;
+	private IndexedDataContainerProvider linkData;
 
-	private Map<Tuple<Id<Link>, Id<Link>>, TravelTimeData> linkToLinkData;
+	private Map<Id<Link>, Map<Id<Link>, TravelTimeData>> linkToLinkData;
 
 	private final DataContainerProvider dataContainerProvider;
 
-	private final Map<Id<Vehicle>, LinkEnterEvent> linkEnterEvents;
+	private static final int VEHICLE_STRIPES = 64; // must be a power of 2
+	private final ReentrantLock[] vehicleLocks = new ReentrantLock[VEHICLE_STRIPES];
+
+	/* The link enter time and link index of each vehicle, indexed by the vehicle id's index. The enter time is NaN
+	 * if the vehicle is not on a link, or if it should not be considered any more (e.g. because it stops at a facility).
+	 */
+	private volatile double[] vehicleEnterTimes = new double[0];
+	private volatile int[] vehicleEnterLinks = new int[0];
+
+	// if we just look at one mode, we need to ignore all vehicles with a different mode. However, the info re the mode is only in
+	// the vehicleEntersTraffic event.  So we need to memorize the ignored vehicles from there ...
+	private volatile boolean[] vehiclesToIgnore = new boolean[0];
 
-	private final Set<Id<Vehicle>> vehiclesToIgnore;
 	private final Set<String> analyzedModes;
 
 	private final boolean filterAnalyzedModes;
@@ -238,8 +253,6 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		this.travelTimeGetter = new AveragingTravelTimeGetter( this.aggregator ) ;
 		this.ttDataFactory = new TravelTimeDataArrayFactory(network, this.numSlots);
 		if (this.calculateLinkTravelTimes){
-			this.linkData = new IdMap<>(Link.class);
-
 			/*
 			 * So far, link data objects were stored in a HashMap. This lookup strategy is used
 			 * by a MapBasedDataContainerProvider.
@@ -249,90 +262,135 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 			 * Using a ArrayBasedDataContainerProvider instead of a MapBasedDataContainerProvider
 			 * increases the routing performance by 20-30%.
 			 * cdobler, oct'13
+			 *
+			 * Now that all ids have an index, the IndexedDataContainerProvider uses it for all lookups. As the
+			 * data of a link may be created by several threads handling events or routing at the same time, it
+			 * creates missing data atomically.
 			 */
-			//		this.dataContainerProvider = new MapBasedDataContainerProvider(linkData, ttDataFactory);
-			this.dataContainerProvider = new ArrayBasedDataContainerProvider(linkData, ttDataFactory, network);
+			this.linkData = new IndexedDataContainerProvider(ttDataFactory);
+			this.dataContainerProvider = this.linkData;
 		} else this.dataContainerProvider = null;
 		if (this.calculateLinkToLinkTravelTimes){
-			// assume that every link has 2 outgoing links as default
-			this.linkToLinkData = new ConcurrentHashMap<>((int) (network.getLinks().size() * 1.4 * 2));
+			this.linkToLinkData = new ConcurrentHashMap<>((int) (network.getLinks().size() * 1.4));
+		}
+		for (int i = 0; i < VEHICLE_STRIPES; i++) {
+			this.vehicleLocks[i] = new ReentrantLock();
 		}
-		this.linkEnterEvents = new ConcurrentHashMap<>();
-
-		// if we just look at one mode, we need to ignore all vehicles with a different mode. However, the info re the mode is only in
-		// the vehicleEntersTraffic event.  So we need to memorize the ignored vehicles from there ...
-		this.vehiclesToIgnore = new HashSet<>();
 
 		this.reset(0);
 	}
 
 	@Override
 	public void handleEvent(final LinkEnterEvent e) {
-		/* if only some modes are analyzed, we check whether the vehicles
-		 * performs a trip with one of those modes. if not, we skip the event. */
-		if (filterAnalyzedModes && vehiclesToIgnore.contains(e.getVehicleId())) return;
-
-		LinkEnterEvent oldEvent = this.linkEnterEvents.put(e.getVehicleId(), e);
-		if ((oldEvent != null) && this.calculateLinkToLinkTravelTimes) {
-			Tuple<Id<Link>, Id<Link>> fromToLink = new Tuple<>(oldEvent.getLinkId(), e.getLinkId());
-			TravelTimeData data = getLinkToLinkTravelTimeData(fromToLink );
-			double enterTime = oldEvent.getTime();
-
-			final int timeSlot = this.aggregator.getTimeSlotIndex(enterTime );
-			data.addTravelTime(timeSlot, e.getTime() - enterTime );
-			data.setNeedsConsolidation( true );
+		int vehicleIndex = e.getVehicleId().index();
+		ReentrantLock lock = lockVehicle(vehicleIndex);
+		try {
+			/* if only some modes are analyzed, we check whether the vehicles
+			 * performs a trip with one of those modes. if not, we skip the event. */
+			if (filterAnalyzedModes && this.vehiclesToIgnore[vehicleIndex]) return;
+
+			double oldEnterTime = this.vehicleEnterTimes[vehicleIndex];
+			int oldLinkIndex = this.vehicleEnterLinks[vehicleIndex];
+			this.vehicleEnterTimes[vehicleIndex] = e.getTime();
+			this.vehicleEnterLinks[vehicleIndex] = e.getLinkId().index();
+			if (!Double.isNaN(oldEnterTime) && this.calculateLinkToLinkTravelTimes) {
+				TravelTimeData data = getLinkToLinkTravelTimeData(Id.get(oldLinkIndex, Link.class), e.getLinkId());
+				addTravelTime(data, oldEnterTime, e.getTime());
+			}
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	@Override
 	public void handleEvent(final LinkLeaveEvent e) {
 		if (this.calculateLinkTravelTimes) {
-			LinkEnterEvent oldEvent = this.linkEnterEvents.get(e.getVehicleId());
-			if (oldEvent != null) {
-				TravelTimeData data = this.dataContainerProvider.getTravelTimeData(e.getLinkId(), true);
-				double enterTime = oldEvent.getTime();
-
-				final int timeSlot = this.aggregator.getTimeSlotIndex(enterTime );
-				data.addTravelTime(timeSlot, e.getTime() - enterTime );
-				data.setNeedsConsolidation( true );
+			int vehicleIndex = e.getVehicleId().index();
+			ReentrantLock lock = lockVehicle(vehicleIndex);
+			try {
+				double enterTime = this.vehicleEnterTimes[vehicleIndex];
+				if (!Double.isNaN(enterTime)) {
+					TravelTimeData data = this.dataContainerProvider.getTravelTimeData(e.getLinkId(), true);
+					addTravelTime(data, enterTime, e.getTime());
+				}
+			} finally {
+				lock.unlock();
 			}
 		}
 	}
 
+	private void addTravelTime(TravelTimeData data, double enterTime, double leaveTime) {
+		final int timeSlot = this.aggregator.getTimeSlotIndex(enterTime );
+		synchronized (data) {
+			data.addTravelTime(timeSlot, leaveTime - enterTime );
+			data.setNeedsConsolidation( true );
+		}
+	}
+
 	@Override
 	public void handleEvent(VehicleEntersTrafficEvent event) {
 		/* if filtering transport modes is enabled and the vehicles
 		 * starts a leg on a non analyzed transport mode, add the vehicle
 		 * to the filtered vehicles set. */
 		if (filterAnalyzedModes && !analyzedModes.contains(event.getNetworkMode())) {
-			this.vehiclesToIgnore.add(event.getVehicleId());
+			int vehicleIndex = event.getVehicleId().index();
+			ReentrantLock lock = lockVehicle(vehicleIndex);
+			try {
+				this.vehiclesToIgnore[vehicleIndex] = true;
+			} finally {
+				lock.unlock();
+			}
 		}
 	}
 
 	@Override
 	public void handleEvent(final VehicleLeavesTrafficEvent event) {
-		/* remove EnterEvents from list when a vehicle arrives.
-		 * otherwise, the activity duration would counted as travel time, when the
-		 * vehicle departs again and leaves the link! */
-		this.linkEnterEvents.remove(event.getVehicleId());
-
-		// try to remove vehicles from set with filtered vehicles
-		if (filterAnalyzedModes) this.vehiclesToIgnore.remove(event.getVehicleId());
+		int vehicleIndex = event.getVehicleId().index();
+		ReentrantLock lock = lockVehicle(vehicleIndex);
+		try {
+			/* remove EnterEvents from list when a vehicle arrives.
+			 * otherwise, the activity duration would counted as travel time, when the
+			 * vehicle departs again and leaves the link! */
+			this.vehicleEnterTimes[vehicleIndex] = Double.NaN;
+
+			// try to remove vehicles from set with filtered vehicles
+			if (filterAnalyzedModes) this.vehiclesToIgnore[vehicleIndex] = false;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
 	public void handleEvent(VehicleArrivesAtFacilityEvent event) {
-		/* remove EnterEvents from list when a bus stops on a link.
-		 * otherwise, the stop time would counted as travel time, when the
-		 * bus departs again and leaves the link! */
-		this.linkEnterEvents.remove(event.getVehicleId());
+		int vehicleIndex = event.getVehicleId().index();
+		ReentrantLock lock = lockVehicle(vehicleIndex);
+		try {
+			/* remove EnterEvents from list when a bus stops on a link.
+			 * otherwise, the stop time would counted as travel time, when the
+			 * bus departs again and leaves the link! */
+			this.vehicleEnterTimes[vehicleIndex] = Double.NaN;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
 	public void handleEvent(VehicleAbortsEvent event) {
-		LinkEnterEvent e = this.linkEnterEvents.remove(event.getVehicleId());
-		if (e != null) {
-			TravelTimeData data = this.dataContainerProvider.getTravelTimeData(e.getLinkId(), true);
+		int vehicleIndex = event.getVehicleId().index();
+		double enterTime;
+		int linkIndex;
+		ReentrantLock lock = lockVehicle(vehicleIndex);
+		try {
+			enterTime = this.vehicleEnterTimes[vehicleIndex];
+			linkIndex = this.vehicleEnterLinks[vehicleIndex];
+			this.vehicleEnterTimes[vehicleIndex] = Double.NaN;
+			// try to remove vehicle from set with filtered vehicles
+			if (filterAnalyzedModes) this.vehiclesToIgnore[vehicleIndex] = false;
+		} finally {
+			lock.unlock();
+		}
+		if (!Double.isNaN(enterTime)) {
+			TravelTimeData data = this.dataContainerProvider.getTravelTimeData(Id.get(linkIndex, Link.class), true);
 			data.setNeedsConsolidation( true );
 
 			//			this.aggregator.addStuckEventTravelTime(data, e.getTime(), event.getTime());
@@ -346,16 +404,62 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 				throw new IllegalStateException(ERROR_STUCK_AND_LINKTOLINK);
 			}
 		}
+	}
+
+	/**
+	 * Locks the stripe of the vehicle, making sure the per-vehicle arrays are large enough for it.
+	 */
+	private ReentrantLock lockVehicle(int vehicleIndex) {
+		ReentrantLock lock = this.vehicleLocks[vehicleIndex & (VEHICLE_STRIPES - 1)];
+		lock.lock();
+		if (vehicleIndex >= this.vehicleEnterTimes.length) {
+			lock.unlock();
+			growVehicleArrays(vehicleIndex + 1);
+			lock.lock();
+		}
+		return lock;
+	}
 
-		// try to remove vehicle from set with filtered vehicles
-		if (filterAnalyzedModes) this.vehiclesToIgnore.remove(event.getVehicleId());
+	/**
+	 * Grows the per-vehicle arrays while holding all locks, so no update gets lost.
+	 */
+	private void growVehicleArrays(int minSize) {
+		for (ReentrantLock lock : this.vehicleLocks) {
+			lock.lock();
+		}
+		try {
+			int oldSize = this.vehicleEnterTimes.length;
+			if (minSize > oldSize) {
+				int newSize = Math.max(minSize, Math.max(Id.getNumberOfIds(Vehicle.class), oldSize + oldSize / 2));
+				double[] enterTimes = Arrays.copyOf(this.vehicleEnterTimes, newSize);
+				Arrays.fill(enterTimes, oldSize, newSize, Double.NaN);
+				this.vehicleEnterLinks = Arrays.copyOf(this.vehicleEnterLinks, newSize);
+				this.vehiclesToIgnore = Arrays.copyOf(this.vehiclesToIgnore, newSize);
+				this.vehicleEnterTimes = enterTimes; // last, as its length is checked without holding all locks
+			}
+		} finally {
+			for (ReentrantLock lock : this.vehicleLocks) {
+				lock.unlock();
+			}
+		}
 	}
 
-	private TravelTimeData getLinkToLinkTravelTimeData( Tuple<Id<Link>, Id<Link>> fromLinkToLink ) {
-		TravelTimeData data = this.linkToLinkData.get(fromLinkToLink);
+	private TravelTimeData getLinkToLinkTravelTimeData( Id<Link> fromLinkId, Id<Link> toLinkId ) {
+		Map<Id<Link>, TravelTimeData> toLinkData = this.linkToLinkData.get(fromLinkId);
+		if ( null == toLinkData ) {
+			toLinkData = new ConcurrentHashMap<>(4);
+			Map<Id<Link>, TravelTimeData> existing = this.linkToLinkData.putIfAbsent(fromLinkId, toLinkData);
+			if ( existing != null ) {
+				toLinkData = existing;
+			}
+		}
+		TravelTimeData data = toLinkData.get(toLinkId);
 		if ( null == data ) {
-			data = this.ttDataFactory.createTravelTimeData(fromLinkToLink.getFirst()) ;
-			this.linkToLinkData.put(fromLinkToLink, data);
+			data = this.ttDataFactory.createTravelTimeData(fromLinkId) ;
+			TravelTimeData existing = toLinkData.putIfAbsent(toLinkId, data);
+			if ( existing != null ) {
+				data = existing;
+			}
 		}
 		return data;
 	}
@@ -407,12 +511,44 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 								    "if calculation is switched off by config option!");
 	}
 
+	/**
+	 * Writes the observed travel times of all time bins of the link into the buffer, starting at the given index.
+	 * Used to create a {@link TravelTimeSnapshot}.
+	 */
+	void writeLinkTravelTimes(final Link link, final FloatBuffer buffer, final int index) {
+		if (!this.calculateLinkTravelTimes) {
+			throw new IllegalStateException("No link travel time is available " +
+									    "if calculation is switched off by config option!");
+		}
+		TravelTimeData data = this.dataContainerProvider.getTravelTimeData(link, false);
+		if (data != null && data.isNeedingConsolidation()) {
+			consolidateData(data);
+		}
+		for (int i = 0; i < this.numSlots; i++) {
+			double time = i * this.timeSlice;
+			double travelTime = data == null ? link.getLength() / link.getFreespeed(time) : data.getTravelTime(i, time);
+			buffer.put(index + i, (float) travelTime);
+		}
+	}
+
+	int getTimeSlice() {
+		return this.timeSlice;
+	}
+
+	int getNumSlots() {
+		return this.numSlots;
+	}
+
+	boolean isInterpolatingTravelTimes() {
+		return this.travelTimeGetter instanceof LinearInterpolatingTravelTimeGetter;
+	}
+
 	private double getLinkToLinkTravelTime(final Id<Link> fromLinkId, final Id<Link> toLinkId, double time) {
 		if (!this.calculateLinkToLinkTravelTimes) {
 			throw new IllegalStateException("No link to link travel time is available " +
 									    "if calculation is switched off by config option!");
 		}
-		TravelTimeData data = this.getLinkToLinkTravelTimeData(new Tuple<>(fromLinkId, toLinkId) );
+		TravelTimeData data = this.getLinkToLinkTravelTimeData(fromLinkId, toLinkId);
 		if ( data.isNeedingConsolidation() ) {
 			consolidateData(data);
 		}
@@ -422,19 +558,34 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 	@Override
 	public void reset(int iteration) {
 		if (this.calculateLinkTravelTimes) {
-			for (TravelTimeData data : this.linkData.values()){
+			this.linkData.forEach(data -> {
 				data.resetTravelTimes();
 				data.setNeedsConsolidation( false );
-			}
+			});
 		}
 		if (this.calculateLinkToLinkTravelTimes){
-			for (TravelTimeData data : this.linkToLinkData.values()){
-				data.resetTravelTimes();
-				data.setNeedsConsolidation( false );
+			for (Map<Id<Link>, TravelTimeData> toLinkData : this.linkToLinkData.values()){
+				for (TravelTimeData data : toLinkData.values()){
+					data.resetTravelTimes();
+					data.setNeedsConsolidation( false );
+				}
+			}
+		}
+		for (ReentrantLock lock : this.vehicleLocks) {
+			lock.lock();
+		}
+		try {
+			int size = Math.max(this.vehicleEnterTimes.length, Id.getNumberOfIds(Vehicle.class));
+			double[] enterTimes = new double[size];
+			Arrays.fill(enterTimes, Double.NaN);
+			this.vehicleEnterLinks = new int[size];
+			this.vehiclesToIgnore = new boolean[size];
+			this.vehicleEnterTimes = enterTimes;
+		} finally {
+			for (ReentrantLock lock : this.vehicleLocks) {
+				lock.unlock();
 			}
 		}
-		this.linkEnterEvents.clear();
-		this.vehiclesToIgnore.clear();
 	}
 
 	/**
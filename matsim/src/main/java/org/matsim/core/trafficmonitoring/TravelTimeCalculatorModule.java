@@ -51,6 +51,12 @@ public class TravelTimeCalculatorModule extends AbstractModule {
 
 	@Override
 	public void install() {
+		boolean useSnapshots = getConfig().travelTimeCalculator().isCalculateLinkTravelTimes()
+				&& getConfig().travelTimeCalculator().getTravelTimeSnapshot() != TravelTimeCalculatorConfigGroup.TravelTimeSnapshotType.none;
+		if (useSnapshots) {
+			bind(TravelTimeSnapshotUpdater.class).in(Singleton.class);
+			addControlerListenerBinding().to(TravelTimeSnapshotUpdater.class);
+		}
 		if (getConfig().travelTimeCalculator().getSeparateModes()) {
 			// (this is the default)
 
@@ -69,7 +75,11 @@ public class TravelTimeCalculatorModule extends AbstractModule {
 				addTravelTimeBinding(mode).toProvider(new Provider<TravelTime>() {
 					@Inject Injector injector;
 					@Override public TravelTime get() {
-						return injector.getInstance( Key.get( TravelTimeCalculator.class, Names.named( mode ) ) ).getLinkTravelTimes();
+						TravelTimeCalculator calculator = injector.getInstance( Key.get( TravelTimeCalculator.class, Names.named( mode ) ) );
+						if ( useSnapshots ) {
+							return createSnapshot( calculator, injector );
+						}
+						return calculator.getLinkTravelTimes();
 					}
 
 					// the following is not there yet (leads to NPE).  Presumably, the collection into the underlying multi-binder is
@@ -88,9 +98,17 @@ public class TravelTimeCalculatorModule extends AbstractModule {
 			
 			// bind the TravelTime objects.  In this case, this just passes on the same information from TravelTimeCalculator to each individual mode:
 			if (getConfig().travelTimeCalculator().isCalculateLinkTravelTimes()) {
+				if (useSnapshots) {
+					// all modes share the same snapshot
+					bind(TravelTimeSnapshot.class).toProvider(ObservedLinkTravelTimesSnapshot.class).in(Singleton.class);
+				}
 //				for (String mode : CollectionUtils.stringToSet(getConfig().travelTimeCalculator().getAnalyzedModesAsString() )) {
 				for ( String mode : getConfig().plansCalcRoute().getNetworkModes() ) {
-					addTravelTimeBinding(mode).toProvider(ObservedLinkTravelTimes.class);
+					if (useSnapshots) {
+						addTravelTimeBinding(mode).to(TravelTimeSnapshot.class);
+					} else {
+						addTravelTimeBinding(mode).toProvider(ObservedLinkTravelTimes.class);
+					}
 				}
 			}
 			if (getConfig().travelTimeCalculator().isCalculateLinkToLinkTravelTimes()) {
@@ -132,6 +150,14 @@ public class TravelTimeCalculatorModule extends AbstractModule {
 		}
 	}
 
+	private static TravelTimeSnapshot createSnapshot(TravelTimeCalculator calculator, Injector injector) {
+		TravelTimeCalculatorConfigGroup config = injector.getInstance(TravelTimeCalculatorConfigGroup.class);
+		boolean offHeap = config.getTravelTimeSnapshot() == TravelTimeCalculatorConfigGroup.TravelTimeSnapshotType.offHeap;
+		TravelTimeSnapshot snapshot = new TravelTimeSnapshot(calculator, injector.getInstance(Network.class), offHeap);
+		injector.getInstance(TravelTimeSnapshotUpdater.class).add(snapshot);
+		return snapshot;
+	}
+
 	private static class ObservedLinkTravelTimes implements Provider<TravelTime> {
 
 		@Inject
@@ -144,6 +170,21 @@ public class TravelTimeCalculatorModule extends AbstractModule {
 
 	}
 
+	private static class ObservedLinkTravelTimesSnapshot implements Provider<TravelTimeSnapshot> {
+
+		@Inject
+		TravelTimeCalculator travelTimeCalculator;
+
+		@Inject
+		Injector injector;
+
+		@Override
+		public TravelTimeSnapshot get() {
+			return createSnapshot(travelTimeCalculator, injector);
+		}
+
+	}
+
 	private static class ObservedLinkToLinkTravelTimes implements Provider<LinkToLinkTravelTime> {
 
 		@Inject
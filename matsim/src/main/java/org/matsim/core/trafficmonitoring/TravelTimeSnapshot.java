@@ -0,0 +1,129 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TravelTimeSnapshot.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.trafficmonitoring;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * A read-only copy of the link travel times observed by a {@link TravelTimeCalculator}.
+ *
+ * The travel times of all links and time bins are stored in a single float array (or an off-heap buffer), indexed by
+ * the index of the link id and the time bin. Looking up a travel time is thus just some index arithmetic, without
+ * any map lookups, consolidation checks or allocations, which makes routing faster. The travel times are taken from
+ * the calculator when calling {@link #update()}, usually after the mobsim, and do not change until the next update.
+ * Like the calculator, the travel time is never shorter than the one given by the maximum velocity of the vehicle.
+ *
+ * The snapshot uses 4 bytes per link id and time bin. Links that were not part of the network when updating the
+ * snapshot are looked up in the calculator directly.
+ */
+public final class TravelTimeSnapshot implements TravelTime {
+
+	private final TravelTimeCalculator calculator;
+	private final TravelTime fallback;
+	private final Network network;
+	private final boolean offHeap;
+	private final int timeBinSize;
+	private final int numSlots;
+	private final double halfBinSize;
+	private final boolean interpolate;
+	private volatile FloatBuffer travelTimes;
+
+	/**
+	 * @param offHeap if true, the travel times are stored outside the java heap.
+	 */
+	public TravelTimeSnapshot(TravelTimeCalculator calculator, Network network, boolean offHeap) {
+		this.calculator = calculator;
+		this.fallback = calculator.getLinkTravelTimes();
+		this.network = network;
+		this.offHeap = offHeap;
+		this.timeBinSize = calculator.getTimeSlice();
+		this.numSlots = calculator.getNumSlots();
+		this.halfBinSize = this.timeBinSize / 2.0;
+		this.interpolate = calculator.isInterpolatingTravelTimes();
+		update();
+	}
+
+	/**
+	 * Copies the current travel times from the calculator. Concurrent lookups see either the old or the new travel
+	 * times.
+	 */
+	public void update() {
+		long size = (long) Id.getNumberOfIds(Link.class) * this.numSlots;
+		if (size * (this.offHeap ? Float.BYTES : 1) > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Too many links or time bins for a travel time snapshot: " + Id.getNumberOfIds(Link.class) + " link ids, " + this.numSlots + " time bins.");
+		}
+		FloatBuffer buffer;
+		if (this.offHeap) {
+			buffer = ByteBuffer.allocateDirect((int) size * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		} else {
+			buffer = FloatBuffer.wrap(new float[(int) size]);
+		}
+		for (int i = 0; i < size; i += this.numSlots) {
+			buffer.put(i, Float.NaN); // marks link ids without travel times
+		}
+		for (Link link : this.network.getLinks().values()) {
+			this.calculator.writeLinkTravelTimes(link, buffer, link.getId().index() * this.numSlots);
+		}
+		this.travelTimes = buffer;
+	}
+
+	@Override
+	public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
+		FloatBuffer travelTimes = this.travelTimes;
+		int index = link.getId().index() * this.numSlots;
+		if (index >= travelTimes.capacity() || Float.isNaN(travelTimes.get(index))) {
+			return this.fallback.getLinkTravelTime(link, time, person, vehicle);
+		}
+		double travelTime = this.interpolate ? getInterpolatedTravelTime(travelTimes, index, time) : travelTimes.get(index + TimeBinUtils.getTimeBinIndex(time, this.timeBinSize, this.numSlots));
+		if (vehicle != null) {
+			VehicleType vehicleType = vehicle.getType();
+			if (vehicleType != null) {
+				travelTime = Math.max(travelTime, link.getLength() / vehicleType.getMaximumVelocity());
+			}
+		}
+		return travelTime;
+	}
+
+	/**
+	 * Same as {@link LinearInterpolatingTravelTimeGetter}.
+	 */
+	private double getInterpolatedTravelTime(FloatBuffer travelTimes, int index, double time) {
+		int timeSlot = TimeBinUtils.getTimeBinIndex(time, this.timeBinSize, this.numSlots);
+		if (time <= this.halfBinSize || time >= this.numSlots * this.timeBinSize - this.halfBinSize) {
+			return travelTimes.get(index + timeSlot);
+		}
+		int firstSlot = (timeSlot * this.timeBinSize + this.halfBinSize > time) ? timeSlot - 1 : timeSlot;
+		double firstTravelTime = travelTimes.get(index + firstSlot);
+		double secondTravelTime = travelTimes.get(index + firstSlot + 1);
+		double dx = time - (firstSlot * this.timeBinSize + this.halfBinSize);
+		return firstTravelTime + (secondTravelTime - firstTravelTime) * dx / this.timeBinSize;
+	}
+}
@@ -0,0 +1,47 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TravelTimeSnapshotUpdater.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.trafficmonitoring;
+
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Updates the {@link TravelTimeSnapshot}s created by the {@link TravelTimeCalculatorModule} once the travel times of
+ * an iteration are known.
+ */
+class TravelTimeSnapshotUpdater implements AfterMobsimListener {
+
+	private final List<TravelTimeSnapshot> snapshots = new ArrayList<>();
+
+	synchronized void add(TravelTimeSnapshot snapshot) {
+		this.snapshots.add(snapshot);
+	}
+
+	@Override
+	public synchronized void notifyAfterMobsim(AfterMobsimEvent event) {
+		for (TravelTimeSnapshot snapshot : this.snapshots) {
+			snapshot.update();
+		}
+	}
+}
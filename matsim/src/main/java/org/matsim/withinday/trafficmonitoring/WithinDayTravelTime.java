@@ -122,6 +122,8 @@ public class WithinDayTravelTime implements TravelTime,
 	private int resetCnt = 0;
 	
 	private double now = Double.NEGATIVE_INFINITY ;
+
+	private final List<TravelTimeChangeListener> changeListeners = new ArrayList<>();
 	
 	@Inject
 	WithinDayTravelTime(Scenario scenario) {
@@ -157,7 +159,7 @@ public class WithinDayTravelTime implements TravelTime,
 		
 		// one TravelTimeInfo per link:
 		for (Link link : this.network.getLinks().values()) {
-			TravelTimeInfo travelTimeInfo = new TravelTimeInfo();
+			TravelTimeInfo travelTimeInfo = new TravelTimeInfo(link);
 			this.travelTimeInfos.put(link.getId(), travelTimeInfo);
 		}
 		
@@ -228,6 +230,16 @@ public class WithinDayTravelTime implements TravelTime,
 		this.addNetworkChangeEventToLocalDataStructure(networkChangeEvent);
 	}
 
+	/**
+	 * Registers a listener which is informed about the links whose expected travel time changed, after the travel
+	 * times were updated at the beginning of a time step.  This allows e.g. routers to update only what is affected
+	 * by the changes instead of starting from scratch.  Listeners have to be registered before the mobsim is
+	 * initialized.
+	 */
+	public final void addTravelTimeChangeListener(TravelTimeChangeListener listener) {
+		this.changeListeners.add(listener);
+	}
+
 	@Override
 	public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
 		final double travelTime = this.travelTimeInfoProvider.getTravelTimeInfo(link).travelTime;
@@ -404,6 +416,19 @@ public class WithinDayTravelTime implements TravelTime,
 		// parallel Execution
 		this.run(e.getSimulationTime());
 
+		if (!this.changeListeners.isEmpty()) {
+			List<Link> changedLinks = new ArrayList<>();
+			for (UpdateMeanTravelTimesRunnable runnable : this.updateMeanTravelTimesRunnables) {
+				changedLinks.addAll(runnable.changedLinks);
+				runnable.changedLinks.clear();
+			}
+			if (!changedLinks.isEmpty()) {
+				for (TravelTimeChangeListener listener : this.changeListeners) {
+					listener.notifyTravelTimesChanged(changedLinks, e.getSimulationTime());
+				}
+			}
+		}
+
 		printInfo(e.getSimulationTime());
 	}
 
@@ -445,6 +470,13 @@ public class WithinDayTravelTime implements TravelTime,
 		}
 	}
 
+	/**
+	 * Is informed about links whose expected travel time changed.
+	 */
+	public interface TravelTimeChangeListener {
+		void notifyTravelTimesChanged(Collection<Link> changedLinks, double time);
+	}
+
 	private static class TripBin {
 		double enterTime;
 		double leaveTime;
@@ -452,6 +484,7 @@ public class WithinDayTravelTime implements TravelTime,
 
 	/*package*/ static class TravelTimeInfo {
 
+		final Link link;
 		UpdateMeanTravelTimesRunnable runnable;
 		List<TripBin> tripBins = new ArrayList<>();
 
@@ -469,6 +502,10 @@ public class WithinDayTravelTime implements TravelTime,
 		static Counter enlarge = new Counter("WithinDayTravelTime: enlarged time bin size: ");
 		static Counter shrink = new Counter("WithinDayTravelTime: shrunk time bin size: ");
 
+		TravelTimeInfo(Link link) {
+			this.link = link;
+		}
+
 		/*package*/ void init(double freeSpeedTravelTime) {
 			this.freeSpeedTravelTime = freeSpeedTravelTime;
 			this.dynamicBinSize = freeSpeedTravelTime * 2.5;
@@ -532,7 +569,7 @@ public class WithinDayTravelTime implements TravelTime,
 
 		// setup threads
 		for (int i = 0; i < numOfThreads; i++) {
-			UpdateMeanTravelTimesRunnable updateMeanTravelTimesRunnable = new UpdateMeanTravelTimesRunnable();
+			UpdateMeanTravelTimesRunnable updateMeanTravelTimesRunnable = new UpdateMeanTravelTimesRunnable(!this.changeListeners.isEmpty());
 			updateMeanTravelTimesRunnable.setStartBarrier(this.startBarrier);
 			updateMeanTravelTimesRunnable.setEndBarrier(this.endBarrier);
 			updateMeanTravelTimesRunnables[i] = updateMeanTravelTimesRunnable;
@@ -579,8 +616,12 @@ public class WithinDayTravelTime implements TravelTime,
 		private OptionalTime time = OptionalTime.undefined();
 		private Collection<TravelTimeInfo> activeTravelTimeInfos;
 
-		public UpdateMeanTravelTimesRunnable() {
+		private final boolean collectChangedLinks;
+		private final List<Link> changedLinks = new ArrayList<>();
+
+		public UpdateMeanTravelTimesRunnable(boolean collectChangedLinks) {
 			activeTravelTimeInfos = new ArrayList<>();
+			this.collectChangedLinks = collectChangedLinks;
 		}
 
 		public void setStartBarrier(CyclicBarrier cyclicBarrier) {
@@ -637,6 +678,7 @@ public class WithinDayTravelTime implements TravelTime,
 					Iterator<TravelTimeInfo> iter = activeTravelTimeInfos.iterator();
 					while (iter.hasNext()) {
 						TravelTimeInfo travelTimeInfo = iter.next();
+						double oldTravelTime = travelTimeInfo.travelTime;
 						calcBinTravelTime(this.time.seconds(), travelTimeInfo);
 
 						/*
@@ -649,6 +691,9 @@ public class WithinDayTravelTime implements TravelTime,
 							travelTimeInfo.travelTime = travelTimeInfo.freeSpeedTravelTime;
 							iter.remove();
 						}
+						if (this.collectChangedLinks && travelTimeInfo.travelTime != oldTravelTime) {
+							this.changedLinks.add(travelTimeInfo.link);
+						}
 					}
 
 				} catch (InterruptedException | BrokenBarrierException e) {
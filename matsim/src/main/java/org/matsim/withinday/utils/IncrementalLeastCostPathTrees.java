@@ -0,0 +1,153 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * IncrementalLeastCostPathTrees.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.withinday.utils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
+import org.matsim.core.router.speedy.DynamicLeastCostPathTree;
+import org.matsim.core.router.speedy.SpeedyGraph;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.withinday.trafficmonitoring.WithinDayTravelTime;
+
+/**
+ * Keeps least cost path trees towards popular destinations up to date while the mobsim is running, so that within-day
+ * replanning does not have to route from scratch.
+ *
+ * As soon as a destination node was requested a given number of times, a {@link DynamicLeastCostPathTree} towards it
+ * is calculated, up to a maximum number of trees. When the {@link WithinDayTravelTime} reports changed link travel
+ * times, only the affected parts of the trees are repaired. Requests towards other destinations are passed to a
+ * fallback router.
+ *
+ * Usage: register an instance with {@link WithinDayTravelTime#addTravelTimeChangeListener} and as a mobsim listener,
+ * and create a path calculator per replanning thread with {@link #createPathCalculator}, e.g. for {@link EditRoutes}.
+ * The trees use the travel disutility without person and vehicle and ignore the departure time, like the
+ * {@link WithinDayTravelTime} does. The trees are repaired at the beginning of a time step, before the replanning
+ * takes place, so the path calculators can be used concurrently during replanning.
+ */
+public final class IncrementalLeastCostPathTrees implements WithinDayTravelTime.TravelTimeChangeListener, MobsimInitializedListener {
+
+	private static final Logger log = LogManager.getLogger(IncrementalLeastCostPathTrees.class);
+
+	private final SpeedyGraph graph;
+	private final TravelTime travelTime;
+	private final TravelDisutility travelDisutility;
+	private final int maxTrees;
+	private final int minRequests;
+	private final Map<Integer, DynamicLeastCostPathTree> trees = new ConcurrentHashMap<>();
+	private final AtomicIntegerArray requestCounts;
+
+	/**
+	 * @param maxTrees    the maximum number of destinations with a tree.
+	 * @param minRequests the number of requests to a destination after which a tree is calculated for it.
+	 */
+	public IncrementalLeastCostPathTrees(Network network, TravelTime travelTime, TravelDisutility travelDisutility, int maxTrees, int minRequests) {
+		this.graph = new SpeedyGraph(network);
+		this.travelTime = travelTime;
+		this.travelDisutility = travelDisutility;
+		this.maxTrees = maxTrees;
+		this.minRequests = minRequests;
+		this.requestCounts = new AtomicIntegerArray(Id.getNumberOfIds(Node.class));
+	}
+
+	/**
+	 * @param fallback routes requests towards destinations without a tree. As every replanning thread has its own path
+	 *                 calculator, the fallback does not need to be thread-safe.
+	 */
+	public LeastCostPathCalculator createPathCalculator(LeastCostPathCalculator fallback) {
+		return new PathCalculator(fallback);
+	}
+
+	/**
+	 * Repairs all trees.
+	 */
+	@Override
+	public void notifyTravelTimesChanged(Collection<Link> changedLinks, double time) {
+		for (DynamicLeastCostPathTree tree : this.trees.values()) {
+			tree.update(changedLinks, time);
+		}
+	}
+
+	/**
+	 * The travel times of the previous iteration are no longer valid, so the trees are calculated again when needed.
+	 */
+	@Override
+	public void notifyMobsimInitialized(MobsimInitializedEvent e) {
+		this.trees.clear();
+		for (int i = 0; i < this.requestCounts.length(); i++) {
+			this.requestCounts.set(i, 0);
+		}
+	}
+
+	private DynamicLeastCostPathTree getTree(Node toNode, double time) {
+		int nodeIndex = toNode.getId().index();
+		DynamicLeastCostPathTree tree = this.trees.get(nodeIndex);
+		if (tree != null) {
+			return tree;
+		}
+		if (this.requestCounts.incrementAndGet(nodeIndex) < this.minRequests) {
+			return null;
+		}
+		synchronized (this.trees) {
+			tree = this.trees.get(nodeIndex);
+			if (tree == null && this.trees.size() < this.maxTrees) {
+				tree = new DynamicLeastCostPathTree(this.graph, this.travelDisutility, toNode, time);
+				this.trees.put(nodeIndex, tree);
+				if (this.trees.size() == this.maxTrees) {
+					log.info("Maximum number of " + this.maxTrees + " least cost path trees reached.");
+				}
+			}
+		}
+		return tree;
+	}
+
+	private final class PathCalculator implements LeastCostPathCalculator {
+
+		private final LeastCostPathCalculator fallback;
+
+		PathCalculator(LeastCostPathCalculator fallback) {
+			this.fallback = fallback;
+		}
+
+		@Override
+		public Path calcLeastCostPath(Node fromNode, Node toNode, double starttime, Person person, Vehicle vehicle) {
+			DynamicLeastCostPathTree tree = getTree(toNode, starttime);
+			if (tree == null) {
+				return this.fallback.calcLeastCostPath(fromNode, toNode, starttime, person, vehicle);
+			}
+			return tree.getPath(fromNode, starttime, travelTime, person, vehicle);
+		}
+	}
+}
@@ -5,15 +5,24 @@
 package ch.sbb.matsim.routing.pt.raptor;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
 import org.matsim.api.core.v01.Id;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * @author mrieser / SBB
  */
 public class SwissRailRaptorDataTest {
 
+    @Rule
+    public MatsimTestUtils utils = new MatsimTestUtils();
+
     @Test
     public void testTransfersFromSchedule() {
         Fixture f = new Fixture();
@@ -28,7 +37,8 @@ public class SwissRailRaptorDataTest {
         Id<TransitStopFacility> stopId9 = Id.create(9, TransitStopFacility.class);
         Id<TransitStopFacility> stopId18 = Id.create(18, TransitStopFacility.class);
         Id<TransitStopFacility> stopId19 = Id.create(19, TransitStopFacility.class);
-        for (SwissRailRaptorData.RTransfer t : data.transfers) {
+        for (int i = 0; i < data.countTransfers; i++) {
+            SwissRailRaptorData.RTransfer t = data.getTransfer(i);
             TransitStopFacility fromStop = data.routeStops[t.fromRouteStop].routeStop.getStopFacility();
             TransitStopFacility toStop = data.routeStops[t.toRouteStop].routeStop.getStopFacility();
             if (fromStop.getId().equals(stopId19) && toStop.getId().equals(stopId9)) {
@@ -41,7 +51,8 @@ public class SwissRailRaptorDataTest {
         f.schedule.getMinimalTransferTimes().set(stopId19, stopId9, 345);
         SwissRailRaptorData data2 = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
         int foundTransferCount = 0;
-        for (SwissRailRaptorData.RTransfer t : data2.transfers) {
+        for (int i = 0; i < data2.countTransfers; i++) {
+            SwissRailRaptorData.RTransfer t = data2.getTransfer(i);
             TransitStopFacility fromStop = data2.routeStops[t.fromRouteStop].routeStop.getStopFacility();
             TransitStopFacility toStop = data2.routeStops[t.toRouteStop].routeStop.getStopFacility();
             if (fromStop.getId().equals(stopId19) && toStop.getId().equals(stopId9)) {
@@ -49,13 +60,14 @@ public class SwissRailRaptorDataTest {
             }
         }
         Assert.assertEquals("wrong number of transfers between stop facilities 19 and 9.", 1, foundTransferCount);
-        Assert.assertEquals("number of transfers should have incrased.", data.transfers.length + 1, data2.transfers.length);
+        Assert.assertEquals("number of transfers should have incrased.", data.countTransfers + 1, data2.countTransfers);
 
         // assign a high transfer time to a "default" transfer
         f.schedule.getMinimalTransferTimes().set(stopId5, stopId18, 456);
         SwissRailRaptorData data3 = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
         boolean foundCorrectTransfer = false;
-        for (SwissRailRaptorData.RTransfer t : data3.transfers) {
+        for (int i = 0; i < data3.countTransfers; i++) {
+            SwissRailRaptorData.RTransfer t = data3.getTransfer(i);
             TransitStopFacility fromStop = data3.routeStops[t.fromRouteStop].routeStop.getStopFacility();
             TransitStopFacility toStop = data3.routeStops[t.toRouteStop].routeStop.getStopFacility();
             if (fromStop.getId().equals(stopId5) && toStop.getId().equals(stopId18)) {
@@ -64,13 +76,14 @@ public class SwissRailRaptorDataTest {
             }
         }
         Assert.assertTrue("did not find overwritten transfer", foundCorrectTransfer);
-        Assert.assertEquals("number of transfers should have stayed the same.", data2.transfers.length, data3.transfers.length);
+        Assert.assertEquals("number of transfers should have stayed the same.", data2.countTransfers, data3.countTransfers);
 
         // assign a low transfer time to a "default" transfer
         f.schedule.getMinimalTransferTimes().set(stopId5, stopId18, 0.2);
         SwissRailRaptorData data4 = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
         foundCorrectTransfer = false;
-        for (SwissRailRaptorData.RTransfer t : data4.transfers) {
+        for (int i = 0; i < data4.countTransfers; i++) {
+            SwissRailRaptorData.RTransfer t = data4.getTransfer(i);
             TransitStopFacility fromStop = data4.routeStops[t.fromRouteStop].routeStop.getStopFacility();
             TransitStopFacility toStop = data4.routeStops[t.toRouteStop].routeStop.getStopFacility();
             if (fromStop.getId().equals(stopId5) && toStop.getId().equals(stopId18)) {
@@ -79,7 +92,43 @@ public class SwissRailRaptorDataTest {
             }
         }
         Assert.assertTrue("did not find overwritten transfer", foundCorrectTransfer);
-        Assert.assertEquals("number of transfers should have stayed the same.", data2.transfers.length, data4.transfers.length);
+        Assert.assertEquals("number of transfers should have stayed the same.", data2.countTransfers, data4.countTransfers);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testTransfersFromCache() {
+        Fixture f = new Fixture();
+        f.init();
+
+        RaptorStaticConfig raptorConfig = RaptorUtils.createStaticConfig(f.config);
+        Path directory = Paths.get(this.utils.getOutputDirectory(), "transfers");
+        SwissRailRaptorData calculated = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null, directory);
+        File[] files = directory.toFile().listFiles();
+        Assert.assertEquals(1, files.length);
+        long lastModified = files[0].lastModified();
+
+        SwissRailRaptorData loaded = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null, directory);
+        Assert.assertEquals(1, directory.toFile().listFiles().length);
+        Assert.assertEquals(lastModified, files[0].lastModified());
+        Assert.assertTrue(calculated.countTransfers > 0);
+        Assert.assertEquals(calculated.countTransfers, loaded.countTransfers);
+        for (int i = 0; i < calculated.countTransfers; i++) {
+            SwissRailRaptorData.RTransfer expected = calculated.getTransfer(i);
+            SwissRailRaptorData.RTransfer actual = loaded.getTransfer(i);
+            Assert.assertEquals(expected.fromRouteStop, actual.fromRouteStop);
+            Assert.assertEquals(expected.toRouteStop, actual.toRouteStop);
+            Assert.assertEquals(expected.transferTime, actual.transferTime);
+            Assert.assertEquals(expected.transferDistance, actual.transferDistance);
+        }
+        for (int i = 0; i < calculated.countRouteStops; i++) {
+            Assert.assertEquals(calculated.routeStops[i].indexFirstTransfer, loaded.routeStops[i].indexFirstTransfer);
+            Assert.assertEquals(calculated.routeStops[i].countTransfers, loaded.routeStops[i].countTransfers);
+        }
+
+        // other transfers need another file
+        f.schedule.getMinimalTransferTimes().set(Id.create(19, TransitStopFacility.class), Id.create(9, TransitStopFacility.class), 345);
+        SwissRailRaptorData changed = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null, directory);
+        Assert.assertEquals(2, directory.toFile().listFiles().length);
+        Assert.assertEquals(calculated.countTransfers + 1, changed.countTransfers);
+    }
+}
@@ -7,9 +7,22 @@ package ch.sbb.matsim.routing.pt.raptor;
 import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.TravelInfo;
 import org.junit.Assert;
 import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.routes.RouteUtils;
 import org.matsim.core.utils.misc.Time;
+import org.matsim.pt.transitSchedule.TransitScheduleFactoryImpl;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitScheduleFactory;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
 import java.util.ArrayList;
@@ -23,6 +36,8 @@ import java.util.Map;
  */
 public class SwissRailRaptorTreeTest {
 
+    private static final Id<Link> LINK_ID = Id.createLinkId("grid");
+
     @Test
     public void testSingleStop_dep0740atN_optimized() {
         Fixture f = new Fixture();
@@ -385,6 +400,68 @@ public class SwissRailRaptorTreeTest {
         Assert.assertNull(stage5.line); // egress_walk
     }
 
+    @Test
+    public void testProfile_sameAsTrees() {
+        Fixture f = new Fixture();
+        f.init();
+
+        RaptorStaticConfig config = RaptorUtils.createStaticConfig(f.config);
+        config.setOptimization(RaptorStaticConfig.RaptorOptimization.OneToAllRouting);
+        SwissRailRaptorData data = SwissRailRaptorData.create(f.scenario.getTransitSchedule(), null, config, f.scenario.getNetwork(), null);
+        SwissRailRaptor raptor = new SwissRailRaptor.Builder(data, f.scenario.getConfig()).build();
+
+        RaptorParameters raptorParams = RaptorUtils.createParameters(f.config);
+        double waitingCostPerSecond = -raptorParams.getMarginalUtilityOfWaitingPt_utl_s();
+
+        List<TransitStopFacility> fromStops = new ArrayList<>();
+        fromStops.add(f.schedule.getFacilities().get(Id.create(23, TransitStopFacility.class)));
+        fromStops.add(f.schedule.getFacilities().get(Id.create(0, TransitStopFacility.class)));
+        double earliestDepTime = 7*3600;
+        double latestDepTime = 8*3600;
+        Map<Id<TransitStopFacility>, List<TravelInfo>> profile = raptor.calcTreeProfile(fromStops, earliestDepTime, latestDepTime, raptorParams, null);
+
+        // for every tree, the profile must contain a connection which is at least as good as the one of the tree.
+        // It can be better, as the tree does not consider all routes from later departures.
+        int treeConnections = 0;
+        for (double time = earliestDepTime; time <= latestDepTime; time += 60) {
+            Map<Id<TransitStopFacility>, TravelInfo> tree = raptor.calcTree(fromStops, time, raptorParams, null);
+            for (Map.Entry<Id<TransitStopFacility>, TravelInfo> e : tree.entrySet()) {
+                TravelInfo expected = e.getValue();
+                if (expected.isWalkOnly() || expected.ptDepartureTime > latestDepTime) {
+                    continue;
+                }
+                treeConnections++;
+                List<TravelInfo> infos = profile.get(e.getKey());
+                Assert.assertNotNull("Stop " + e.getKey() + " is not reachable.", infos);
+                double expectedCost = expected.travelCost + expected.waitingCost;
+                double bestCost = Double.POSITIVE_INFINITY;
+                for (TravelInfo info : infos) {
+                    if (info.ptDepartureTime >= time) {
+                        bestCost = Math.min(bestCost, info.travelCost + (info.ptDepartureTime - time) * waitingCostPerSecond);
+                    }
+                }
+                Assert.assertTrue("missing connection to stop " + e.getKey() + " at " + Time.writeTime(time), bestCost <= expectedCost + 1e-6);
+            }
+        }
+        Assert.assertTrue(treeConnections > 0);
+
+        // and every connection of the profile must be at least as good as the tree at its departure time
+        for (Map.Entry<Id<TransitStopFacility>, List<TravelInfo>> e : profile.entrySet()) {
+            double lastDepartureTime = Double.POSITIVE_INFINITY;
+            for (TravelInfo info : e.getValue()) {
+                Assert.assertFalse("walk only connection to stop " + e.getKey(), info.isWalkOnly());
+                Assert.assertTrue("connections must be ordered by decreasing departure time", info.ptDepartureTime <= lastDepartureTime);
+                lastDepartureTime = info.ptDepartureTime;
+                TravelInfo expected = raptor.calcTree(fromStops, info.ptDepartureTime, raptorParams, null).get(e.getKey());
+                if (expected.isWalkOnly()) {
+                    continue; // a start stop
+                }
+                Assert.assertTrue("worse connection to stop " + e.getKey() + " at " + Time.writeTime(info.ptDepartureTime) + ": " + info.travelCost + " > " + (expected.travelCost + expected.waitingCost),
+                        info.travelCost <= expected.travelCost + expected.waitingCost + 1e-6);
+            }
+        }
+    }
+
     private void assertTravelInfo(Map<Id<TransitStopFacility>, TravelInfo> map, int stopId, String expectedDepartureStop, int expectedTransfers, String expectedDepartureTime, String expectedArrivalTime) {
         TravelInfo info = map.get(Id.create(stopId, TransitStopFacility.class));
         Assert.assertNotNull("Stop " + stopId + " is not reachable.", info);
@@ -394,4 +471,98 @@ public class SwissRailRaptorTreeTest {
         Assert.assertEquals("unexpected departure time: " + Time.writeTime(info.ptDepartureTime), Time.parseTime(expectedDepartureTime), Math.floor(info.ptDepartureTime), 0.0);
     }
 
+    /**
+     * Uses a grid of lines, so that enough routes are explored in each round to use multiple threads.
+     */
+    @Test
+    public void testMultipleThreads_sameAsSingleThread() {
+        Config config = ConfigUtils.createConfig();
+        TransitSchedule schedule = createGridSchedule(16);
+        RaptorStaticConfig staticConfig = RaptorUtils.createStaticConfig(config);
+        staticConfig.setOptimization(RaptorStaticConfig.RaptorOptimization.OneToAllRouting);
+        SwissRailRaptorData data = SwissRailRaptorData.create(schedule, null, staticConfig, NetworkUtils.createNetwork(), null);
+        SwissRailRaptor singleThreaded = new SwissRailRaptor.Builder(data, config).build();
+        SwissRailRaptor multiThreaded = new SwissRailRaptor.Builder(data, config).withNumberOfThreads(3).build();
+        RaptorParameters raptorParams = RaptorUtils.createParameters(config);
+
+        for (String stopId : new String[] {"0_0", "5_7", "15_3"}) {
+            TransitStopFacility fromStop = schedule.getFacilities().get(Id.create(stopId, TransitStopFacility.class));
+            for (double depTime = 7*3600; depTime < 8*3600; depTime += 1234) {
+                Map<Id<TransitStopFacility>, TravelInfo> expected = singleThreaded.calcTree(fromStop, depTime, raptorParams, null);
+                Map<Id<TransitStopFacility>, TravelInfo> actual = multiThreaded.calcTree(fromStop, depTime, raptorParams, null);
+                Assert.assertEquals(schedule.getFacilities().size(), expected.size());
+                Assert.assertEquals(expected.keySet(), actual.keySet());
+                for (Map.Entry<Id<TransitStopFacility>, TravelInfo> e : expected.entrySet()) {
+                    TravelInfo expectedInfo = e.getValue();
+                    TravelInfo actualInfo = actual.get(e.getKey());
+                    Assert.assertEquals(expectedInfo.departureStop, actualInfo.departureStop);
+                    Assert.assertEquals(expectedInfo.ptDepartureTime, actualInfo.ptDepartureTime, 0.0);
+                    Assert.assertEquals(expectedInfo.ptArrivalTime, actualInfo.ptArrivalTime, 0.0);
+                    Assert.assertEquals(expectedInfo.travelCost, actualInfo.travelCost, 0.0);
+                    Assert.assertEquals(expectedInfo.transferCount, actualInfo.transferCount);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMultipleThreads_noThreadsPerRouter() {
+        Config config = ConfigUtils.createConfig();
+        TransitSchedule schedule = createGridSchedule(16);
+        RaptorStaticConfig staticConfig = RaptorUtils.createStaticConfig(config);
+        staticConfig.setOptimization(RaptorStaticConfig.RaptorOptimization.OneToAllRouting);
+        SwissRailRaptorData data = SwissRailRaptorData.create(schedule, null, staticConfig, NetworkUtils.createNetwork(), null);
+        RaptorParameters raptorParams = RaptorUtils.createParameters(config);
+        TransitStopFacility fromStop = schedule.getFacilities().get(Id.create("5_7", TransitStopFacility.class));
+
+        for (int i = 0; i < 50; i++) {
+            SwissRailRaptor raptor = new SwissRailRaptor.Builder(data, config).withNumberOfThreads(3).build();
+            Assert.assertEquals(schedule.getFacilities().size(), raptor.calcTree(fromStop, 7*3600, raptorParams, null).size());
+        }
+        // the routers share their helper threads
+        long threads = Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().startsWith("SwissRailRaptorCore")).count();
+        Assert.assertTrue("too many threads: " + threads, threads <= Runtime.getRuntime().availableProcessors());
+    }
+
+    private static TransitSchedule createGridSchedule(int size) {
+        TransitSchedule schedule = new TransitScheduleFactoryImpl().createTransitSchedule();
+        TransitScheduleFactory sf = schedule.getFactory();
+        TransitStopFacility[][] stops = new TransitStopFacility[size][size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                stops[x][y] = sf.createTransitStopFacility(Id.create(x + "_" + y, TransitStopFacility.class), new Coord(x * 1000, y * 1000), false);
+                stops[x][y].setLinkId(LINK_ID);
+                schedule.addStopFacility(stops[x][y]);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            List<TransitStopFacility> horizontal = new ArrayList<>();
+            List<TransitStopFacility> vertical = new ArrayList<>();
+            for (int j = 0; j < size; j++) {
+                horizontal.add(stops[j][i]);
+                vertical.add(stops[i][j]);
+            }
+            addLine(schedule, "h" + i, horizontal, 60 + 30 * (i % 3), 120 + 60 * (i % 4));
+            addLine(schedule, "v" + i, vertical, 90 + 30 * (i % 2), 300 + 120 * (i % 3));
+        }
+        return schedule;
+    }
+
+    private static void addLine(TransitSchedule schedule, String lineId, List<TransitStopFacility> stops, int travelTime, int headway) {
+        TransitScheduleFactory sf = schedule.getFactory();
+        TransitLine line = sf.createTransitLine(Id.create(lineId, TransitLine.class));
+        for (int direction = 0; direction < 2; direction++) {
+            List<TransitRouteStop> routeStops = new ArrayList<>();
+            for (int i = 0; i < stops.size(); i++) {
+                TransitStopFacility stop = stops.get(direction == 0 ? i : stops.size() - 1 - i);
+                routeStops.add(sf.createTransitRouteStopBuilder(stop).arrivalOffset(i * travelTime).departureOffset(i * travelTime + 30).build());
+            }
+            TransitRoute route = sf.createTransitRoute(Id.create(lineId + "_" + direction, TransitRoute.class), RouteUtils.createLinkNetworkRouteImpl(LINK_ID, LINK_ID), routeStops, "bus");
+            for (int time = 6*3600 + direction * 60; time < 10*3600; time += headway) {
+                route.addDeparture(sf.createDeparture(Id.create(time, Departure.class), time));
+            }
+            line.addRoute(route);
+        }
+        schedule.addTransitLine(line);
+    }
 }
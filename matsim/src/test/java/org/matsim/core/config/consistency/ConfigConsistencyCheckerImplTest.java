@@ -25,6 +25,7 @@ import org.junit.Test;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.ControlerConfigGroup;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ActivityParams;
 import org.matsim.pt.PtConstants;
 import org.matsim.testcases.utils.LogCounter;
@@ -153,6 +154,19 @@ public class ConfigConsistencyCheckerImplTest {
 	}
 
 
+	@Test
+	public void testCheckRoutingAlgorithm_SpeedyCHWithRandomness() {
+		Config config = ConfigUtils.createConfig();
+		config.controler().setRoutingAlgorithmType( ControlerConfigGroup.RoutingAlgorithmType.SpeedyCH );
+		try {
+			ConfigConsistencyCheckerImpl.checkRoutingAlgorithm( config );
+			Assert.fail( "expected exception, as routing randomness is switched on by default" );
+		} catch ( RuntimeException expected ) {
+		}
+		config.plansCalcRoute().setRoutingRandomness( 0. );
+		ConfigConsistencyCheckerImpl.checkRoutingAlgorithm( config );
+	}
+
 	@Test
 	public void checkConsistencyBetweenRouterAndTravelTimeCalculatorTest(){
 		{
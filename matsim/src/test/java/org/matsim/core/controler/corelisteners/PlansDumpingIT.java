@@ -21,12 +21,21 @@ package org.matsim.core.controler.corelisteners;
 
 import org.junit.Rule;
 import org.junit.Test;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Population;
 import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.ControlerConfigGroup;
 import org.matsim.core.controler.Controler;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.testcases.MatsimTestUtils;
 
 import java.io.File;
+import java.util.EnumSet;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -108,4 +117,44 @@ public class PlansDumpingIT {
 		assertTrue(new File(c.getControlerIO().getIterationFilename(9, "plans.xml.gz")).exists());
 		assertTrue(new File(c.getControlerIO().getIterationFilename(10, "plans.xml.gz")).exists());
 	}
+
+	@Test
+	public void testPlansDump_Asynchronously() {
+		Config config = this.util.loadConfig("test/scenarios/equil/config_plans1.xml");
+		config.controler().setLastIteration(3);
+		config.controler().setWritePlansInterval(1);
+		config.controler().setWritePlansAsynchronously(true);
+		config.plans().setParallelWriting(true);
+		config.global().setNumberOfThreads(2);
+		Controler c = new Controler(config);
+		c.getConfig().controler().setWriteEventsInterval(0);
+		c.getConfig().controler().setCreateGraphs(false);
+
+		c.run();
+
+		for (int iteration = 0; iteration <= 3; iteration++) {
+			Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+			new PopulationReader(scenario).readFile(c.getControlerIO().getIterationFilename(iteration, "plans.xml.gz"));
+			assertEquals(c.getScenario().getPopulation().getPersons().size(), scenario.getPopulation().getPersons().size());
+		}
+	}
+
+	@Test
+	public void testPlansDump_Binary() {
+		Config config = this.util.loadConfig("test/scenarios/equil/config_plans1.xml");
+		config.controler().setLastIteration(1);
+		config.controler().setWritePlansInterval(1);
+		config.controler().setPlansFileFormats(EnumSet.of(ControlerConfigGroup.PlansFileFormat.xml, ControlerConfigGroup.PlansFileFormat.binary));
+		Controler c = new Controler(config);
+		c.getConfig().controler().setWriteEventsInterval(0);
+		c.getConfig().controler().setCreateGraphs(false);
+
+		c.run();
+
+		assertTrue(new File(c.getControlerIO().getIterationFilename(0, "plans.xml.gz")).exists());
+		for (String filename : new String[] { c.getControlerIO().getIterationFilename(1, "plans.bin"), c.getControlerIO().getOutputFilename("output_plans.bin") }) {
+			Population population = PopulationUtils.readPopulation(filename);
+			assertEquals(c.getScenario().getPopulation().getPersons().size(), population.getPersons().size());
+		}
+	}
 }
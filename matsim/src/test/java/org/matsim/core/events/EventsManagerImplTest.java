@@ -25,6 +25,7 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.handler.BasicEventHandler;
 import org.matsim.core.events.handler.EventHandler;
 
 /**
@@ -69,6 +70,78 @@ public class EventsManagerImplTest {
 		}
 	}
 
+	@Test
+	public void testProcessEvent_ConcurrentThreads() throws InterruptedException {
+		EventsManager manager = EventsUtils.createEventsManager();
+		CountingMyEventHandler handler = new CountingMyEventHandler();
+		manager.addHandler(handler);
+		EventsManager parallelManager = EventsUtils.getParallelFeedableInstance(manager);
+		processConcurrently(parallelManager, parallelManager, parallelManager, parallelManager);
+		Assert.assertEquals(4 * 10000, handler.counter);
+	}
+
+	@Test
+	public void testProcessEvent_HandlerSharedByManagers() throws InterruptedException {
+		HandlerRegistrations registrations = new HandlerRegistrations();
+		EventsManager manager1 = new EventsManagerImpl(registrations);
+		EventsManager manager2 = new EventsManagerImpl(registrations);
+		CountingMyEventHandler handler = new CountingMyEventHandler();
+		manager1.addHandler(handler);
+		manager1.processEvent(new MyEvent(1.0));
+		manager2.addHandler(handler);
+		processConcurrently(manager1, manager2);
+		Assert.assertEquals(1 + 2 * 10000, handler.counter);
+	}
+
+	@Test
+	public void testProcessEvent_ErrorInEventHandler() {
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler((MyEventHandler) event -> {
+			throw new AssertionError("expected");
+		});
+		manager.initProcessing();
+		try {
+			manager.processEvent(new MyEvent(123.45));
+			Assert.fail("expected exception, but got none.");
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getCause() instanceof AssertionError);
+		}
+	}
+
+	@Test
+	public void testProcessEvent_ExceptionInCoreEventHandler() {
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler((BasicEventHandler) event -> {
+			throw new IllegalStateException("expected");
+		});
+		manager.initProcessing();
+		try {
+			manager.processEvent(new MyEvent(123.45));
+			Assert.fail("expected exception, but got none.");
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("expected", e.getMessage());
+		}
+	}
+
+	/**
+	 * Feeds 10000 events into each of the managers, each in its own thread.
+	 */
+	private static void processConcurrently(EventsManager... managers) throws InterruptedException {
+		Thread[] threads = new Thread[managers.length];
+		for (int i = 0; i < threads.length; i++) {
+			EventsManager manager = managers[i];
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 10000; j++) {
+					manager.processEvent(new MyEvent(j));
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+
 	/*package*/ static class MyEvent extends Event {
 		public MyEvent(final double time) {
 			super(time);
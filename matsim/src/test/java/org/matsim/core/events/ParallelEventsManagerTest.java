@@ -49,4 +49,50 @@ public class ParallelEventsManagerTest {
         assertEquals(0, handler.counter);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void manyEventsWithSeveralHandlers() {
+        // more events than fit into the ring buffer, so that the slots are reused
+        EventsManager m = new ParallelEventsManager(true, 2, 65536);
+        OrderCheckingHandler[] handlers = new OrderCheckingHandler[3];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = new OrderCheckingHandler();
+            m.addHandler(handlers[i]);
+        }
+        m.initProcessing();
+        for (int i = 0; i < 100000; i++) {
+            m.processEvent(new EventsManagerImplTest.MyEvent(i));
+            if (i % 1000 == 999) {
+                m.afterSimStep(i);
+                for (OrderCheckingHandler handler : handlers) {
+                    assertEquals(i + 1, handler.counter);
+                }
+            }
+        }
+        m.finishProcessing();
+
+        for (OrderCheckingHandler handler : handlers) {
+            assertEquals(100000, handler.counter);
+            assertEquals(0, handler.outOfOrder);
+        }
+    }
+
+    private static class OrderCheckingHandler implements EventsManagerImplTest.MyEventHandler {
+        private int counter = 0;
+        private int outOfOrder = 0;
+
+        @Override
+        public void handleEvent(EventsManagerImplTest.MyEvent e) {
+            if (e.getTime() != this.counter) {
+                this.outOfOrder++;
+            }
+            this.counter++;
+        }
+
+        @Override
+        public void reset(int iteration) {
+            this.counter = 0;
+            this.outOfOrder = 0;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelEventsReaderXMLTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.GenericEvent;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonMoneyEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.algorithms.EventWriterXML;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.testcases.utils.EventsCollector;
+import org.matsim.vehicles.Vehicle;
+
+public class ParallelEventsReaderXMLTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	/**
+	 * Reads a file that needs to be cut into several chunks and compares the events to the sequential reader.
+	 */
+	@Test
+	public void testSameEventsAsSequentialReader() {
+		String filename = this.utils.getOutputDirectory() + "events.xml.gz";
+		EventWriterXML writer = new EventWriterXML(filename);
+		for (int i = 0; i < 40000; i++) {
+			Id<Person> person = Id.createPersonId("p" + (i % 1000));
+			Id<Link> link = Id.createLinkId(i % 300);
+			double time = 0.5 * i;
+			writer.handleEvent(new ActivityEndEvent(time, person, link, null, "home", new Coord(i, -i)));
+			writer.handleEvent(new PersonDepartureEvent(time, person, link, "car", "car"));
+			writer.handleEvent(new LinkEnterEvent(time, Id.create("v<" + (i % 1000) + "&\"", Vehicle.class), link));
+			writer.handleEvent(new PersonMoneyEvent(time, person, 1.5, "toll", "äöü"));
+			GenericEvent generic = new GenericEvent("custom", time);
+			generic.getAttributes().put("value", Integer.toString(i));
+			writer.handleEvent(generic);
+		}
+		writer.closeFile();
+
+		EventsCollector expected = read(filename, 0);
+		EventsCollector actual = read(filename, 3);
+		Assert.assertEquals(200000, expected.getEvents().size());
+		Assert.assertEquals(expected.getEvents().size(), actual.getEvents().size());
+		for (int i = 0; i < expected.getEvents().size(); i++) {
+			Event expectedEvent = expected.getEvents().get(i);
+			Event actualEvent = actual.getEvents().get(i);
+			Assert.assertEquals(expectedEvent.getClass(), actualEvent.getClass());
+			Assert.assertEquals(expectedEvent.getAttributes(), actualEvent.getAttributes());
+		}
+		Assert.assertTrue(actual.getEvents().get(3) instanceof PersonMoneyEvent);
+	}
+
+	@Test
+	public void testMalformedFile() {
+		String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n"
+				+ "\t<event time=\"10.0\" type=\"left link\" link=\"1\" vehicle=\"2\" />\n"
+				+ "\t<event type=\"left link\" link=\"1\" vehicle=\"2\" />\n"
+				+ "</events>";
+		EventsManager events = EventsUtils.createEventsManager();
+		events.initProcessing();
+		try {
+			new ParallelEventsReaderXML(events, 2).readStream(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+			Assert.fail("expected exception for an event without time.");
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	private static EventsCollector read(String filename, int numberOfThreads) {
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		events.initProcessing();
+		if (numberOfThreads == 0) {
+			MatsimEventsReader reader = new MatsimEventsReader(events);
+			reader.addCustomEventMapper("custom", ParallelEventsReaderXMLTest::mapCustomEvent);
+			reader.readFile(filename);
+		} else {
+			ParallelEventsReaderXML reader = new ParallelEventsReaderXML(events, numberOfThreads);
+			reader.addCustomEventMapper("custom", ParallelEventsReaderXMLTest::mapCustomEvent);
+			reader.readFile(filename);
+		}
+		events.finishProcessing();
+		return collector;
+	}
+
+	private static Event mapCustomEvent(GenericEvent event) {
+		return new LinkEnterEvent(event.getTime(), Id.createVehicleId("custom"), Id.createLinkId(event.getAttributes().get("value")));
+	}
+}
@@ -21,13 +21,20 @@
 
  package org.matsim.core.events;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.assertj.core.api.Assertions;
+import org.junit.Assert;
 import org.junit.Test;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
 import org.matsim.api.core.v01.events.PersonStuckEvent;
 import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.PersonStuckEventHandler;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.events.handler.PartitionableEventHandler;
 import org.matsim.testcases.utils.EventsCollector;
 
 public class SimStepParallelEventsManagerImplTest {
@@ -69,4 +76,125 @@ public class SimStepParallelEventsManagerImplTest {
 					new PersonStuckEvent(1.0, Id.createPersonId(0), Id.createLinkId(0), "car"));
 	}
 
+	@Test
+	public void testExpensiveHandlersAreMovedToDifferentThreads() {
+		SimStepParallelEventsManagerImpl events = new SimStepParallelEventsManagerImpl(2);
+		// round robin puts both expensive handlers onto the first thread
+		ThreadRecordingHandler expensive1 = new ThreadRecordingHandler(20000);
+		ThreadRecordingHandler cheap1 = new ThreadRecordingHandler(0);
+		ThreadRecordingHandler expensive2 = new ThreadRecordingHandler(20000);
+		ThreadRecordingHandler cheap2 = new ThreadRecordingHandler(0);
+		events.addHandler(expensive1);
+		events.addHandler(cheap1);
+		events.addHandler(expensive2);
+		events.addHandler(cheap2);
+
+		runIteration(events, 0);
+		Assert.assertEquals(expensive1.threads, expensive2.threads);
+
+		// the handler times are sampled, so a pause of the machine during a sample may hide the imbalance for an iteration
+		int iteration = 1;
+		do {
+			runIteration(events, iteration++);
+		} while (expensive1.threads.equals(expensive2.threads) && iteration < 5);
+		Assert.assertEquals(1, expensive1.threads.size());
+		Assert.assertEquals(1, expensive2.threads.size());
+		Assert.assertNotEquals(expensive1.threads, expensive2.threads);
+		Assert.assertEquals(1000, expensive1.counter);
+		Assert.assertEquals(1000, cheap2.counter);
+	}
+
+	@Test
+	public void testPartitionableHandler() {
+		SimStepParallelEventsManagerImpl events = new SimStepParallelEventsManagerImpl(3);
+		PersonPartitionedHandler handler = new PersonPartitionedHandler();
+		events.addHandler(handler);
+
+		runIteration(events, 0);
+		Assert.assertEquals(0, handler.counter);
+		int total = 0;
+		for (int partition = 0; partition < 3; partition++) {
+			PersonPartitionedHandler partitionHandler = handler.partitions[partition];
+			for (Id<?> personId : partitionHandler.persons) {
+				Assert.assertEquals(partition, personId.index() % 3);
+			}
+			Assert.assertEquals(1, partitionHandler.threads.size());
+			total += partitionHandler.counter;
+		}
+		Assert.assertEquals(1000, total);
+
+		// outside of the mobsim, the handler itself is called
+		events.processEvent(new PersonStuckEvent(0.0, Id.createPersonId(0), Id.createLinkId(0), "car"));
+		Assert.assertEquals(1, handler.counter);
+	}
+
+	private static void runIteration(SimStepParallelEventsManagerImpl events, int iteration) {
+		events.resetHandlers(iteration);
+		events.initProcessing();
+		for (int second = 0; second < 10; second++) {
+			for (int i = 0; i < 100; i++) {
+				events.processEvent(new PersonStuckEvent(second, Id.createPersonId(i), Id.createLinkId(0), "car"));
+			}
+			events.afterSimStep(second);
+		}
+		events.finishProcessing();
+	}
+
+	private static class ThreadRecordingHandler implements PersonStuckEventHandler {
+		private final long nanosPerEvent;
+		final Set<Thread> threads = new HashSet<>();
+		int counter = 0;
+
+		ThreadRecordingHandler(long nanosPerEvent) {
+			this.nanosPerEvent = nanosPerEvent;
+		}
+
+		@Override
+		public void handleEvent(PersonStuckEvent event) {
+			long end = System.nanoTime() + this.nanosPerEvent;
+			while (System.nanoTime() < end) {
+				// simulate an expensive handler
+			}
+			this.threads.add(Thread.currentThread());
+			this.counter++;
+		}
+
+		@Override
+		public void reset(int iteration) {
+			this.threads.clear();
+			this.counter = 0;
+		}
+	}
+
+	private static class PersonPartitionedHandler implements PersonStuckEventHandler, PartitionableEventHandler {
+		final PersonPartitionedHandler[] partitions = new PersonPartitionedHandler[3];
+		final Set<Id<?>> persons = new HashSet<>();
+		final Set<Thread> threads = new HashSet<>();
+		int counter = 0;
+
+		@Override
+		public void handleEvent(PersonStuckEvent event) {
+			this.persons.add(event.getPersonId());
+			this.threads.add(Thread.currentThread());
+			this.counter++;
+		}
+
+		@Override
+		public void reset(int iteration) {
+			this.persons.clear();
+			this.threads.clear();
+			this.counter = 0;
+		}
+
+		@Override
+		public Partitioning getPartitioning() {
+			return Partitioning.byPerson;
+		}
+
+		@Override
+		public EventHandler getPartitionHandler(int partition, int numberOfPartitions) {
+			this.partitions[partition] = new PersonPartitionedHandler();
+			return this.partitions[partition];
+		}
+	}
 }
@@ -0,0 +1,162 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventWriterBinaryTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.algorithms;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.GenericEvent;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.groups.ControlerConfigGroup;
+import org.matsim.core.events.EventsReaderBinary;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.testcases.utils.EventsCollector;
+import org.matsim.vehicles.Vehicle;
+
+public class EventWriterBinaryTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testSpecialCharactersAndNullAttributes() {
+		List<Event> original = new ArrayList<>();
+		original.add(new LinkLeaveEvent(3600.0, Id.create("vehicle>3", Vehicle.class), Id.create("link<2", Link.class)));
+		original.add(new LinkLeaveEvent(3601.0, Id.create("vehicle\"4", Vehicle.class), Id.create("link'3 äöü", Link.class)));
+		GenericEvent generic = new GenericEvent("TEST", 3602.0);
+		generic.getAttributes().put("dummy", null);
+		original.add(generic);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		EventWriterBinary writer = new EventWriterBinary(baos);
+		original.forEach(writer::handleEvent);
+		writer.closeFile();
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		events.initProcessing();
+		new MatsimEventsReader(events).readStream(new ByteArrayInputStream(baos.toByteArray()), ControlerConfigGroup.EventsFileFormat.binary);
+		events.finishProcessing();
+
+		Assert.assertEquals(original, collector.getEvents());
+		GenericEvent event3 = (GenericEvent) collector.getEvents().get(2);
+		Assert.assertTrue(event3.getAttributes().containsKey("dummy"));
+		Assert.assertNull(event3.getAttributes().get("dummy"));
+	}
+
+	/**
+	 * Writes more events than fit into one chunk, with fractional times, optional attributes and a column with only
+	 * unique values, and makes sure the events are read back in the same order.
+	 */
+	@Test
+	public void testSeveralChunks() {
+		List<Event> original = createEvents(2 * EventWriterBinary.CHUNK_SIZE + 100);
+		String filename = this.utils.getOutputDirectory() + "events.bin";
+		EventWriterBinary writer = new EventWriterBinary(filename);
+		original.forEach(writer::handleEvent);
+		writer.closeFile();
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		events.initProcessing();
+		new MatsimEventsReader(events).readFile(filename);
+		events.finishProcessing();
+
+		Assert.assertEquals(original.size(), collector.getEvents().size());
+		for (int i = 0; i < original.size(); i++) {
+			Assert.assertEquals(original.get(i).getClass(), collector.getEvents().get(i).getClass());
+			Assert.assertEquals(original.get(i).getAttributes(), collector.getEvents().get(i).getAttributes());
+		}
+	}
+
+	@Test
+	public void testSelectedEventTypes() {
+		List<Event> original = createEvents(EventWriterBinary.CHUNK_SIZE + 100);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		EventWriterBinary writer = new EventWriterBinary(baos);
+		original.forEach(writer::handleEvent);
+		writer.closeFile();
+
+		List<String> types = List.of(PersonDepartureEvent.EVENT_TYPE, "money");
+		List<Event> expected = new ArrayList<>();
+		for (Event event : original) {
+			if (types.contains(event.getEventType())) {
+				expected.add(event);
+			}
+		}
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		events.initProcessing();
+		EventsReaderBinary reader = new EventsReaderBinary(events);
+		reader.setEventTypes(types);
+		reader.readStream(new ByteArrayInputStream(baos.toByteArray()));
+		events.finishProcessing();
+
+		Assert.assertEquals(expected.size(), collector.getEvents().size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getAttributes(), collector.getEvents().get(i).getAttributes());
+		}
+	}
+
+	private static List<Event> createEvents(int count) {
+		List<Event> events = new ArrayList<>();
+		for (int i = 0; events.size() < count; i++) {
+			Id<Person> person = Id.createPersonId(i % 5000);
+			Id<Vehicle> vehicle = Id.createVehicleId(i % 5000);
+			Id<Link> link = Id.createLinkId(i % 700);
+			double time = i / 4;
+			if (i % 3 == 0) {
+				events.add(new ActivityEndEvent(time, person, link, null, "home", new Coord(i % 100, 0.5 * i)));
+			} else if (i % 3 == 1) {
+				events.add(new PersonDepartureEvent(time, person, link, "car", i % 2 == 0 ? null : "car"));
+			} else {
+				events.add(new LinkEnterEvent(time, vehicle, link));
+			}
+			if (i % 11 == 0) {
+				GenericEvent money = new GenericEvent("money", i == 12345 ? time + 0.25 : time);
+				money.getAttributes().put("person", person.toString());
+				money.getAttributes().put("amount", Integer.toString(i));
+				events.add(money);
+			}
+		}
+		return events.subList(0, count);
+	}
+}
@@ -0,0 +1,98 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.mobsim.hermes;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.vehicles.Vehicle;
+
+public class EventTemplateArrayTest {
+
+	@Test
+	public void testEventsAreBuiltInOrder() {
+		Id<Person> person = Id.createPersonId("p");
+		Id<Link> link = Id.createLinkId("l");
+		Id<Vehicle> vehicle = Id.createVehicleId("v");
+		// make sure that some indices need more than one byte
+		for (int i = 0; i < 1000; i++) {
+			Id.createLinkId("filler" + i);
+		}
+		Id<Link> farLink = Id.createLinkId("far");
+		Activity activity = PopulationUtils.createActivityFromCoordAndLinkId("home", new Coord(1.5, 2.5), link);
+
+		EventTemplateArray templates = new EventTemplateArray();
+		templates.addActivityEnd(person, link, activity);
+		templates.addDeparture(person, link, TransportMode.car, null);
+		templates.addLinkEnter(vehicle, farLink);
+		Assert.assertEquals(3, templates.size());
+
+		Event event = templates.next(10, -1);
+		Assert.assertTrue(event instanceof ActivityEndEvent);
+		Assert.assertEquals(10, event.getTime(), 0);
+		Assert.assertEquals(person, ((ActivityEndEvent) event).getPersonId());
+		Assert.assertEquals("home", ((ActivityEndEvent) event).getActType());
+		Assert.assertEquals(new Coord(1.5, 2.5), ((ActivityEndEvent) event).getCoord());
+
+		event = templates.next(10, -1);
+		Assert.assertTrue(event instanceof PersonDepartureEvent);
+		Assert.assertEquals(TransportMode.car, ((PersonDepartureEvent) event).getLegMode());
+		Assert.assertNull(((PersonDepartureEvent) event).getRoutingMode());
+
+		Assert.assertEquals(2, templates.nextIndex());
+		event = templates.next(20, -1);
+		Assert.assertEquals(farLink, ((LinkEnterEvent) event).getLinkId());
+		Assert.assertEquals(vehicle, ((LinkEnterEvent) event).getVehicleId());
+		Assert.assertEquals(20, event.getTime(), 0);
+	}
+
+	@Test
+	public void testRuntimeValues() {
+		Id<Person> person = Id.createPersonId("p");
+		Id<Vehicle> bus = Id.createVehicleId("bus");
+		Id<TransitStopFacility> stop = Id.create("stop", TransitStopFacility.class);
+
+		EventTemplateArray templates = new EventTemplateArray();
+		templates.addPersonEntersVehicle(person, null);
+		templates.addVehicleArrivesAtFacility(bus, stop, 100.25);
+
+		PersonEntersVehicleEvent enter = (PersonEntersVehicleEvent) templates.next(90, bus.index());
+		Assert.assertEquals(bus, enter.getVehicleId());
+		VehicleArrivesAtFacilityEvent arrival = (VehicleArrivesAtFacilityEvent) templates.next(130, -1);
+		Assert.assertEquals(stop, arrival.getFacilityId());
+		Assert.assertEquals(29.75, arrival.getDelay(), 0);
+
+		templates.clear();
+		Assert.assertEquals(0, templates.size());
+		Assert.assertEquals(0, templates.nextIndex());
+	}
+}
@@ -0,0 +1,318 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.mobsim.hermes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonStuckEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.PrepareForSimUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.testcases.utils.EventsCollector;
+
+public class HermesRealmsTest {
+
+	private static final int GRID_SIZE = 8;
+
+	@Before
+	public void prepareTest() {
+		Id.resetCaches();
+		ScenarioImporter.flush();
+		HermesConfigGroup.SIM_STEPS = 30 * 60 * 60;
+	}
+
+	/**
+	 * Without congestion, the order in which agents cross realm borders does not matter, so all events
+	 * (including their times) must be the same as with a single realm.
+	 */
+	@Test
+	public void testFreeFlowSameAsSingleRealm() {
+		List<String> singleRealm = runAndCollect(1, 36000);
+		List<String> threeRealms = runAndCollect(3, 36000);
+		Collections.sort(singleRealm);
+		Collections.sort(threeRealms);
+		Assert.assertEquals(singleRealm, threeRealms);
+	}
+
+	/**
+	 * The realms only change the order of events of different agents within the same second, see {@link ParallelRealms}.
+	 * The unsorted event stream must still be ordered by time, and the events of every agent must come in the same
+	 * order as with a single realm.
+	 */
+	@Test
+	public void testFreeFlowSameOrderPerAgentAsSingleRealm() {
+		List<String> singleRealm = runAndCollect(1, 36000);
+		List<String> threeRealms = runAndCollect(3, 36000);
+		Assert.assertEquals(singleRealm.size(), threeRealms.size());
+		assertTimeOrdered(threeRealms);
+		Assert.assertEquals(groupByAgent(singleRealm), groupByAgent(threeRealms));
+	}
+
+	@Test
+	public void testCongestedIsDeterministic() {
+		List<String> run1 = runAndCollect(4, 300, false);
+		List<String> run2 = runAndCollect(4, 300, false);
+		Assert.assertEquals(run1, run2);
+		Assert.assertEquals(200, count(run1, PersonArrivalEvent.EVENT_TYPE));
+		Assert.assertEquals(0, count(run1, PersonStuckEvent.EVENT_TYPE));
+	}
+
+	/**
+	 * With congestion, agents that merge into a link from different realms may pass it in a different order than with
+	 * a single realm, as the agents entering from another realm are moved after the parallel phase of the second. Every
+	 * agent must still pass the same links, and the total travel time must stay about the same.
+	 */
+	@Test
+	public void testCongestedMergingSimilarToSingleRealm() {
+		List<String> singleRealm = runAndCollect(1, 300, true);
+		List<String> fourRealms = runAndCollect(4, 300, true);
+		Assert.assertEquals(singleRealm.size(), fourRealms.size());
+		assertTimeOrdered(fourRealms);
+		Assert.assertEquals(withoutTimes(groupByAgent(singleRealm)), withoutTimes(groupByAgent(fourRealms)));
+		Assert.assertEquals(400, count(fourRealms, PersonArrivalEvent.EVENT_TYPE));
+		Assert.assertEquals(0, count(fourRealms, PersonStuckEvent.EVENT_TYPE));
+		double singleRealmTravelTime = getTotalTravelTime(singleRealm);
+		Assert.assertEquals(singleRealmTravelTime, getTotalTravelTime(fourRealms), 0.01 * singleRealmTravelTime);
+	}
+
+	/**
+	 * A failing realm must stop the other realms, also those that are still stepping when it fails, and its exception
+	 * must be passed on.
+	 */
+	@Test(timeout = 60000)
+	public void testFailingRealmStopsOthers() throws Exception {
+		HermesConfigGroup.SIM_STEPS = 3600;
+		Scenario scenario = createScenario(36000);
+		scenario.getConfig().hermes().setNumberOfRealms(3);
+		PrepareForSimUtils.createDefaultPrepareForSim(scenario).run();
+		EventsManager events = EventsUtils.createEventsManager();
+		ScenarioImporter si = ScenarioImporter.instance(scenario, events);
+		si.generate();
+
+		Realm[] realms = new Realm[3];
+		realms[0] = new Realm(si, events, 0, 3);
+		realms[1] = new Realm(si, events, 1, 3) {
+			@Override
+			void step() {
+				if (getTime() == 100) {
+					throw new IllegalStateException("realm failed");
+				}
+				super.step();
+			}
+		};
+		realms[2] = new Realm(si, events, 2, 3) {
+			@Override
+			void step() {
+				if (getTime() == 100) {
+					try {
+						// still stepping when the other realm fails
+						Thread.sleep(200);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				super.step();
+			}
+		};
+		try {
+			new ParallelRealms(realms, events).run();
+			Assert.fail("expected exception, but got none.");
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("realm failed", e.getMessage());
+		}
+	}
+
+	private static void assertTimeOrdered(List<String> events) {
+		double lastTime = Double.NEGATIVE_INFINITY;
+		for (String event : events) {
+			double time = Double.parseDouble(getAttribute(event, "time"));
+			Assert.assertTrue("event out of order: " + event, time >= lastTime);
+			lastTime = time;
+		}
+	}
+
+	private static Map<String, List<String>> groupByAgent(List<String> events) {
+		Map<String, List<String>> eventsByAgent = new HashMap<>();
+		for (String event : events) {
+			String agent = getAttribute(event, "vehicle");
+			if (agent == null) {
+				agent = getAttribute(event, "person");
+			}
+			eventsByAgent.computeIfAbsent(agent, k -> new ArrayList<>()).add(event);
+		}
+		return eventsByAgent;
+	}
+
+	private static Map<String, List<String>> withoutTimes(Map<String, List<String>> eventsByAgent) {
+		Map<String, List<String>> result = new HashMap<>();
+		for (Map.Entry<String, List<String>> e : eventsByAgent.entrySet()) {
+			List<String> events = new ArrayList<>();
+			for (String event : e.getValue()) {
+				events.add(event.replaceFirst("time=[^,]*, ", ""));
+			}
+			result.put(e.getKey(), events);
+		}
+		return result;
+	}
+
+	private static long count(List<String> events, String eventType) {
+		return events.stream().filter(e -> e.contains("type=" + eventType + ",")).count();
+	}
+
+	private static double getTotalTravelTime(List<String> events) {
+		double travelTime = 0;
+		for (String event : events) {
+			if (event.contains("type=" + PersonDepartureEvent.EVENT_TYPE + ",")) {
+				travelTime -= Double.parseDouble(getAttribute(event, "time"));
+			} else if (event.contains("type=" + PersonArrivalEvent.EVENT_TYPE + ",")) {
+				travelTime += Double.parseDouble(getAttribute(event, "time"));
+			}
+		}
+		return travelTime;
+	}
+
+	private static String getAttribute(String event, String attribute) {
+		for (String entry : event.substring(1, event.length() - 1).split(", ")) {
+			if (entry.startsWith(attribute + "=")) {
+				return entry.substring(attribute.length() + 1);
+			}
+		}
+		return null;
+	}
+
+	private static List<String> runAndCollect(int numberOfRealms, double capacity) {
+		return runAndCollect(numberOfRealms, capacity, false);
+	}
+
+	private static List<String> runAndCollect(int numberOfRealms, double capacity, boolean merging) {
+		Scenario scenario = createScenario(capacity, merging);
+		scenario.getConfig().hermes().setNumberOfRealms(numberOfRealms);
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		HermesTest.createHermes(scenario, events).run();
+
+		List<String> result = new ArrayList<>();
+		for (Event event : collector.getEvents()) {
+			result.add(event.getAttributes().toString());
+		}
+		return result;
+	}
+
+	private static Scenario createScenario(double capacity) {
+		return createScenario(capacity, false);
+	}
+
+	/**
+	 * A grid with 100 agents driving from west to east and 100 agents driving from south to north, so that
+	 * every realm border is crossed many times. If merging, 400 agents drive east first and turn north at a random
+	 * column, so that they merge with the agents coming from the south.
+	 */
+	private static Scenario createScenario(double capacity, boolean merging) {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		Node[][] nodes = new Node[GRID_SIZE][GRID_SIZE];
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int y = 0; y < GRID_SIZE; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 200, y * 200));
+			}
+		}
+		Link[][] eastbound = new Link[GRID_SIZE - 1][GRID_SIZE];
+		Link[][] northbound = new Link[GRID_SIZE][GRID_SIZE - 1];
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int y = 0; y < GRID_SIZE; y++) {
+				if (x + 1 < GRID_SIZE) {
+					eastbound[x][y] = NetworkUtils.createAndAddLink(network, Id.createLinkId("e_" + x + "_" + y), nodes[x][y], nodes[x + 1][y], 200, 15, capacity, 1);
+				}
+				if (y + 1 < GRID_SIZE) {
+					northbound[x][y] = NetworkUtils.createAndAddLink(network, Id.createLinkId("n_" + x + "_" + y), nodes[x][y], nodes[x][y + 1], 200, 15, capacity, 1);
+				}
+			}
+		}
+
+		PopulationFactory pf = scenario.getPopulation().getFactory();
+		Random random = new Random(4711);
+		for (int i = 0; i < (merging ? 400 : 200); i++) {
+			List<Link> links = new ArrayList<>();
+			if (merging) {
+				int lane = random.nextInt(GRID_SIZE - 1);
+				int turn = 1 + random.nextInt(GRID_SIZE - 2);
+				for (int x = 0; x < turn; x++) {
+					links.add(eastbound[x][lane]);
+				}
+				for (int y = lane; y < GRID_SIZE - 1; y++) {
+					links.add(northbound[turn][y]);
+				}
+			} else {
+				int lane = random.nextInt(GRID_SIZE);
+				for (int j = 0; j < GRID_SIZE - 1; j++) {
+					links.add(i % 2 == 0 ? eastbound[j][lane] : northbound[lane][j]);
+				}
+			}
+			Person person = pf.createPerson(Id.createPersonId(i));
+			Plan plan = pf.createPlan();
+			Activity home = pf.createActivityFromLinkId("h", links.get(0).getId());
+			home.setEndTime(6 * 3600 + random.nextInt(300));
+			plan.addActivity(home);
+			Leg leg = pf.createLeg(TransportMode.car);
+			TripStructureUtils.setRoutingMode(leg, TransportMode.car);
+			List<Id<Link>> linkIds = new ArrayList<>();
+			for (Link link : links) {
+				linkIds.add(link.getId());
+			}
+			NetworkRoute route = RouteUtils.createNetworkRoute(linkIds);
+			leg.setRoute(route);
+			plan.addLeg(leg);
+			plan.addActivity(pf.createActivityFromLinkId("w", links.get(links.size() - 1).getId()));
+			person.addPlan(plan);
+			scenario.getPopulation().addPerson(person);
+		}
+		return scenario;
+	}
+}
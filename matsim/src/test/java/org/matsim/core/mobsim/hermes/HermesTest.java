@@ -23,6 +23,7 @@ package org.matsim.core.mobsim.hermes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -59,6 +60,7 @@ import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.QSimConfigGroup;
 import org.matsim.core.controler.PrepareForSimUtils;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.handler.BasicEventHandler;
@@ -76,6 +78,9 @@ import org.matsim.core.utils.misc.Time;
 import org.matsim.testcases.MatsimTestCase;
 import org.matsim.testcases.utils.EventsCollector;
 import org.matsim.testcases.utils.LogCounter;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
 
 public class HermesTest {
 
@@ -148,6 +153,119 @@ public class HermesTest {
 	}
 
 
+	/**
+	 * Hermes keeps the encoded plans of its agents across iterations. Tests that unchanged plans give the same
+	 * events again, and that replanned, modified and removed persons are picked up.
+	 */
+	@Test
+	public void testPlansAcrossIterations() {
+		Fixture f = new Fixture();
+		Plan[] plans = new Plan[3];
+		for (int i = 0; i < 3; i++) {
+			Person person = PopulationUtils.getFactory().createPerson(Id.create(i, Person.class));
+			plans[i] = PersonUtils.createAndAddPlan(person, true);
+			Activity a1 = PopulationUtils.createAndAddActivityFromLinkId(plans[i], "h", f.link1.getId());
+			a1.setEndTime((6 + i) * 3600);
+			Leg leg = PopulationUtils.createAndAddLeg(plans[i], TransportMode.car);
+			TripStructureUtils.setRoutingMode(leg, TransportMode.car);
+			leg.setRoute(RouteUtils.createLinkNetworkRouteImpl(f.link1.getId(), f.linkIds2, f.link3.getId()));
+			PopulationUtils.createAndAddActivityFromLinkId(plans[i], "w", f.link3.getId());
+			f.plans.addPerson(person);
+		}
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+
+		createHermes(f, events).run();
+		List<Event> firstIteration = new ArrayList<>(collector.getEvents());
+		collector.reset(1);
+		createHermes(f, events).run();
+		Assert.assertEquals(firstIteration.toString(), collector.getEvents().toString());
+
+		// person 0 is modified in place, person 1 gets a new plan, person 2 is removed
+		PopulationUtils.getFirstActivity(plans[0]).setEndTime(6.5 * 3600);
+		Person person1 = f.plans.getPersons().get(Id.create(1, Person.class));
+		Plan newPlan = PersonUtils.createAndAddPlan(person1, true);
+		PopulationUtils.copyFromTo(plans[1], newPlan);
+		PopulationUtils.getFirstActivity(newPlan).setEndTime(9 * 3600);
+		f.plans.removePerson(Id.create(2, Person.class));
+		collector.reset(2);
+		createHermes(f, events).run();
+
+		List<PersonDepartureEvent> departures = new ArrayList<>();
+		for (Event event : collector.getEvents()) {
+			if (event instanceof PersonDepartureEvent) {
+				departures.add((PersonDepartureEvent) event);
+			}
+		}
+		Assert.assertEquals(2, departures.size());
+		Assert.assertEquals(Id.create(0, Person.class), departures.get(0).getPersonId());
+		Assert.assertEquals(6.5 * 3600, departures.get(0).getTime(), MatsimTestCase.EPSILON);
+		Assert.assertEquals(Id.create(1, Person.class), departures.get(1).getPersonId());
+		Assert.assertEquals(9 * 3600, departures.get(1).getTime(), MatsimTestCase.EPSILON);
+	}
+
+	/**
+	 * The encoded plans also depend on the vehicle of a person, tests that changes of the vehicle or its type are
+	 * picked up in the next iteration although the plan did not change.
+	 */
+	@Test
+	public void testPlansAcrossIterations_vehicleChanges() {
+		Fixture f = new Fixture();
+		f.config.qsim().setVehiclesSource(QSimConfigGroup.VehiclesSource.fromVehiclesData);
+		VehicleType type = VehicleUtils.createVehicleType(Id.create(TransportMode.car, VehicleType.class));
+		type.setMaximumVelocity(100);
+		f.scenario.getVehicles().addVehicleType(type);
+		Vehicle vehicle0 = VehicleUtils.createVehicle(Id.createVehicleId("v0"), type);
+		Vehicle vehicle1 = VehicleUtils.createVehicle(Id.createVehicleId("v1"), type);
+		f.scenario.getVehicles().addVehicle(vehicle0);
+		f.scenario.getVehicles().addVehicle(vehicle1);
+
+		Person person = PopulationUtils.getFactory().createPerson(Id.create(0, Person.class));
+		VehicleUtils.insertVehicleIdsIntoAttributes(person, Map.of(TransportMode.car, vehicle0.getId()));
+		Plan plan = PersonUtils.createAndAddPlan(person, true);
+		Activity a1 = PopulationUtils.createAndAddActivityFromLinkId(plan, "h", f.link1.getId());
+		a1.setEndTime(6 * 3600);
+		Leg leg = PopulationUtils.createAndAddLeg(plan, TransportMode.car);
+		TripStructureUtils.setRoutingMode(leg, TransportMode.car);
+		leg.setRoute(RouteUtils.createLinkNetworkRouteImpl(f.link1.getId(), f.linkIds2, f.link3.getId()));
+		PopulationUtils.createAndAddActivityFromLinkId(plan, "w", f.link3.getId());
+		f.plans.addPerson(person);
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+
+		createHermes(f, events).run();
+		LinkEnterEvent enterLink3 = getLinkEnterEvents(collector).get(1);
+		Assert.assertEquals(vehicle0.getId(), enterLink3.getVehicleId());
+		Assert.assertEquals(6 * 3600 + 11, enterLink3.getTime(), MatsimTestCase.EPSILON);
+
+		// slower vehicles need longer for link 2
+		type.setMaximumVelocity(10);
+		collector.reset(1);
+		createHermes(f, events).run();
+		enterLink3 = getLinkEnterEvents(collector).get(1);
+		Assert.assertEquals(vehicle0.getId(), enterLink3.getVehicleId());
+		Assert.assertEquals(6 * 3600 + 101, enterLink3.getTime(), MatsimTestCase.EPSILON);
+
+		VehicleUtils.insertVehicleIdsIntoAttributes(person, Map.of(TransportMode.car, vehicle1.getId()));
+		collector.reset(2);
+		createHermes(f, events).run();
+		Assert.assertEquals(vehicle1.getId(), getLinkEnterEvents(collector).get(1).getVehicleId());
+	}
+
+	private static List<LinkEnterEvent> getLinkEnterEvents(EventsCollector collector) {
+		List<LinkEnterEvent> linkEnterEvents = new ArrayList<>();
+		for (Event event : collector.getEvents()) {
+			if (event instanceof LinkEnterEvent) {
+				linkEnterEvents.add((LinkEnterEvent) event);
+			}
+		}
+		return linkEnterEvents;
+	}
+
 	/**
 	 * This test is mostly useful for manual debugging, because only a single agent is simulated
 	 * on a very simple network.
@@ -66,6 +66,7 @@ import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.config.groups.QSimConfigGroup;
+import org.matsim.core.config.groups.QSimConfigGroup.NetsimSynchronization;
 import org.matsim.core.config.groups.QSimConfigGroup.TrafficDynamics;
 import org.matsim.core.controler.PrepareForSimUtils;
 import org.matsim.core.events.EventsUtils;
@@ -102,19 +103,23 @@ public class QSimTest {
 
 	private final boolean isUsingFastCapacityUpdate;
 	private final int numberOfThreads;
+	private final NetsimSynchronization netsimSynchronization;
 
-	public QSimTest(boolean isUsingFastCapacityUpdate, int numberOfThreads) {
+	public QSimTest(boolean isUsingFastCapacityUpdate, int numberOfThreads, NetsimSynchronization netsimSynchronization) {
 		this.isUsingFastCapacityUpdate = isUsingFastCapacityUpdate;
 		this.numberOfThreads = numberOfThreads;
+		this.netsimSynchronization = netsimSynchronization;
 	}
 //	
-	@Parameters(name = "{index}: isUsingfastCapacityUpdate == {0}; numberOfThreads == {1};")
+	@Parameters(name = "{index}: isUsingfastCapacityUpdate == {0}; numberOfThreads == {1}; netsimSynchronization == {2};")
 	public static Collection<Object[]> parameterObjects () {
 		Object[][] capacityUpdates = new Object [][] {
-			new Object[] {true, 1},
-			new Object[] {false, 1},
-			new Object[] {true, 2},
-			new Object[] {false, 2}
+			new Object[] {true, 1, NetsimSynchronization.barriers},
+			new Object[] {false, 1, NetsimSynchronization.barriers},
+			new Object[] {true, 2, NetsimSynchronization.barriers},
+			new Object[] {false, 2, NetsimSynchronization.barriers},
+			new Object[] {true, 2, NetsimSynchronization.localClocks},
+			new Object[] {false, 2, NetsimSynchronization.localClocks}
 		};
 		return Arrays.asList(capacityUpdates);
 	}
@@ -145,7 +150,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testSingleAgent() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		// add a single person with leg from link1 to link3
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(0, Person.class));
@@ -185,7 +190,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testSingleAgentWithEndOnLeg() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		// add a single person with leg from link1 to link3
 		final PopulationFactory pf = f.scenario.getPopulation().getFactory();
@@ -251,7 +256,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testTwoAgent() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		// add two persons with leg from link1 to link3, the first starting at 6am, the second at 7am
 		for (int i = 0; i < 2; i++) {
@@ -292,7 +297,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testTeleportationSingleAgent() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		// add a single person with leg from link1 to link3
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(0, Person.class));
@@ -339,7 +344,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testSingleAgentImmediateDeparture() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		// add a single person with leg from link1 to link3
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(0, Person.class));
@@ -384,7 +389,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testSingleAgent_EmptyRoute() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		// add a single person with leg from link1 to link1
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(0, Person.class));
@@ -457,7 +462,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testSingleAgent_LastLinkIsLoop() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		Link loopLink = NetworkUtils.createAndAddLink(f.network,Id.create("loop", Link.class), f.node4, f.node4, 100.0, 10.0, 500, 1 );
 
 		// add a single person with leg from link1 to loop-link
@@ -527,7 +532,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testAgentWithoutLeg() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(1, Person.class));
 		Plan plan = PersonUtils.createAndAddPlan(person, true);
@@ -554,7 +559,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testAgentWithoutLegWithEndtime() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(1, Person.class));
 		Plan plan = PersonUtils.createAndAddPlan(person, true);
@@ -582,7 +587,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testAgentWithLastActWithEndtime() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(1, Person.class));
 		Plan plan = PersonUtils.createAndAddPlan(person, true);
@@ -617,7 +622,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testFlowCapacityDriving() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		// add a lot of persons with legs from link1 to link3, starting at 6:30
 		for (int i = 1; i <= 10000; i++) {
@@ -682,7 +687,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testFlowCapacityDrivingFraction() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		f.link2.setCapacity(900.0); // One vehicle every 4 seconds
 
 		// add a lot of persons with legs from link1 to link3, starting at 6:30
@@ -737,7 +742,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testFlowCapacityStarting() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		// add a lot of persons with legs from link2 to link3
 		for (int i = 1; i <= 10000; i++) {
@@ -792,7 +797,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testFlowCapacityMixed() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		// add a lot of persons with legs from link2 to link3
 		for (int i = 1; i <= 5000; i++) {
@@ -860,7 +865,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testVehicleTeleportationTrue() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(1, Person.class));
 		Plan plan = PersonUtils.createAndAddPlan(person, true);
 		Activity a1 = PopulationUtils.createAndAddActivityFromLinkId(plan, "h", f.link1.getId());
@@ -915,7 +920,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testWaitingForCar() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		f.scenario.getConfig().qsim().setVehicleBehavior(QSimConfigGroup.VehicleBehavior.wait);
 		f.scenario.getConfig().qsim().setEndTime(24.0 * 60.0 * 60.0);
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(1, Person.class));
@@ -1010,7 +1015,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testVehicleTeleportationFalse() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		f.scenario.getConfig().qsim().setVehicleBehavior(QSimConfigGroup.VehicleBehavior.exception);
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(1, Person.class));
 		Plan plan = PersonUtils.createAndAddPlan(person, true);
@@ -1063,7 +1068,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testAssignedVehicles() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(1, Person.class)); // do not add person to population, we'll do it ourselves for the test
 		Plan plan = PersonUtils.createAndAddPlan(person, true);
 		Activity a1 = PopulationUtils.createAndAddActivityFromLinkId(plan, "h", f.link2.getId());
@@ -1119,7 +1124,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testCircleAsRoute() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		Link link4 = NetworkUtils.createAndAddLink(f.network,Id.create(4, Link.class), f.node4, f.node1, 1000.0, 100.0, 6000, 1.0 ); // close the network
 
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(1, Person.class));
@@ -1177,7 +1182,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testRouteWithEndLinkTwice() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		Link link4 = NetworkUtils.createAndAddLink(f.network,Id.create(4, Link.class), f.node4, f.node1, 1000.0, 100.0, 6000, 1.0 ); // close the network
 
 		Person person = PopulationUtils.getFactory().createPerson(Id.create(1, Person.class));
@@ -1324,7 +1329,7 @@ public class QSimTest {
 	 * @author mrieser
 	 **/
 	private LogCounter runConsistentRoutesTestSim(final String startLinkId, final String linkIds, final String endLinkId, final EventsManager events) {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 
 		/* enhance network */
 		Node node5 = NetworkUtils.createAndAddNode(f.network, Id.create("5", Node.class), new Coord(3100, 0));
@@ -1443,6 +1448,7 @@ public class QSimTest {
 
 		config.qsim().setUsingFastCapacityUpdate(isUsingFastCapacityUpdate);
 		config.qsim().setNumberOfThreads(numberOfThreads);
+		config.qsim().setNetsimSynchronization(netsimSynchronization);
 
 		double simEndTime = 8.0*3600;
 
@@ -1536,7 +1542,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testFlowCapacityDrivingKinematicWavesWithFlowReductionCorrectionBehavior() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		f.config.qsim().setTrafficDynamics(TrafficDynamics.kinematicWaves);
 		f.config.qsim().setInflowCapacitySetting(QSimConfigGroup.InflowCapacitySetting.INFLOW_FROM_FDIAG);
 
@@ -1596,7 +1602,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testFlowCapacityDrivingKinematicWavesWithLaneIncreaseCorrectionBehavior() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		f.config.qsim().setTrafficDynamics(TrafficDynamics.kinematicWaves);
 		f.config.qsim().setInflowCapacitySetting(QSimConfigGroup.InflowCapacitySetting.NR_OF_LANES_FROM_FDIAG);
 
@@ -1656,7 +1662,7 @@ public class QSimTest {
 	 */
 	@Test
 	public void testFlowCapacityDrivingKinematicWavesWithInflowEqualToMaxCapForOneLane() {
-		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads);
+		Fixture f = new Fixture(isUsingFastCapacityUpdate, numberOfThreads, netsimSynchronization);
 		f.config.qsim().setTrafficDynamics(TrafficDynamics.kinematicWaves);
 		f.config.qsim().setInflowCapacitySetting(QSimConfigGroup.InflowCapacitySetting.MAX_CAP_FOR_ONE_LANE);
 
@@ -1774,7 +1780,7 @@ public class QSimTest {
 		final ArrayList<Id<Link>> linkIdsNone;
 		final ArrayList<Id<Link>> linkIds2;
 
-		public Fixture(boolean isUsingFastCapacityUpdate, int numberOfThreads) {
+		public Fixture(boolean isUsingFastCapacityUpdate, int numberOfThreads, NetsimSynchronization netsimSynchronization) {
 			this.scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
 			this.config = scenario.getConfig();
 			this.config.qsim().setFlowCapFactor(1.0);
@@ -1782,6 +1788,7 @@ public class QSimTest {
 
 			this.config.qsim().setUsingFastCapacityUpdate(isUsingFastCapacityUpdate);
 			this.config.qsim().setNumberOfThreads(numberOfThreads);
+			this.config.qsim().setNetsimSynchronization(netsimSynchronization);
 
 			/* build network */
 			this.network = this.scenario.getNetwork();
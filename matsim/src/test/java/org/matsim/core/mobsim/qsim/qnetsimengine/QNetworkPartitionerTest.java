@@ -0,0 +1,167 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QNetworkPartitionerTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.QSimConfigGroup;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.mobsim.qsim.QSimBuilder;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+public class QNetworkPartitionerTest {
+
+	private static final int GRID_SIZE = 10;
+
+	@Test
+	public void testAllNodesAssignedToConnectedRegions() {
+		Network network = createGrid();
+		IdMap<Node, Integer> partitions = QNetworkPartitioner.partition(network, 4, link -> 1.0);
+
+		Assert.assertEquals(network.getNodes().size(), partitions.size());
+		int[] nodesPerPartition = new int[4];
+		for (Node node : network.getNodes().values()) {
+			int p = partitions.get(node.getId());
+			Assert.assertTrue(p >= 0 && p < 4);
+			nodesPerPartition[p]++;
+		}
+		for (int p = 0; p < 4; p++) {
+			Assert.assertTrue("partition " + p + " is too small: " + nodesPerPartition[p], nodesPerPartition[p] >= 20);
+			Assert.assertTrue("partition " + p + " is too large: " + nodesPerPartition[p], nodesPerPartition[p] <= 30);
+			assertConnected(network, partitions, p);
+		}
+	}
+
+	@Test
+	public void testLoadIsBalancedByLinkWeights() {
+		Network network = createGrid();
+		// all traffic happens in the western half of the grid
+		IdMap<Node, Integer> partitions = QNetworkPartitioner.partition(network, 2,
+				link -> link.getFromNode().getCoord().getX() < GRID_SIZE * 50 ? 100.0 : 1.0);
+
+		int[] nodesPerPartition = new int[2];
+		for (Node node : network.getNodes().values()) {
+			nodesPerPartition[partitions.get(node.getId())]++;
+		}
+		// the busy region needs to be smaller in order to carry the same load
+		Assert.assertTrue(nodesPerPartition[0] < nodesPerPartition[1] / 2);
+		assertConnected(network, partitions, 0);
+		assertConnected(network, partitions, 1);
+	}
+
+	@Test
+	public void testDeterministic() {
+		Network network = createGrid();
+		IdMap<Node, Integer> partitions1 = QNetworkPartitioner.partition(network, 3, link -> link.getLength());
+		IdMap<Node, Integer> partitions2 = QNetworkPartitioner.partition(network, 3, link -> link.getLength());
+		Assert.assertEquals(partitions1, partitions2);
+	}
+
+	@Test
+	public void testMorePartitionsThanNodes() {
+		Network network = NetworkUtils.createNetwork();
+		Node n1 = NetworkUtils.createAndAddNode(network, Id.createNodeId(1), new Coord(0, 0));
+		Node n2 = NetworkUtils.createAndAddNode(network, Id.createNodeId(2), new Coord(100, 0));
+		NetworkUtils.createAndAddLink(network, Id.createLinkId(1), n1, n2, 100, 10, 1000, 1);
+
+		IdMap<Node, Integer> partitions = QNetworkPartitioner.partition(network, 4, link -> 1.0);
+		Assert.assertEquals(2, partitions.size());
+		for (Integer p : partitions.values()) {
+			Assert.assertTrue(p >= 0 && p < 4);
+		}
+	}
+
+	@Test
+	public void testStandaloneQSimWithoutVolumes() {
+		// no controler and no VolumesAnalyzer are bound, so all links have the same weight
+		Config config = ConfigUtils.createConfig();
+		config.qsim().setNumberOfThreads(2);
+		config.qsim().setNetsimDomainDecomposition(QSimConfigGroup.NetsimDomainDecomposition.connectedRegions);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		createGrid(scenario.getNetwork());
+
+		new QSimBuilder(config).useDefaults().build(scenario, EventsUtils.createEventsManager()).run();
+	}
+
+	private static void assertConnected(Network network, IdMap<Node, Integer> partitions, int partition) {
+		Set<Id<Node>> members = new HashSet<>();
+		for (Node node : network.getNodes().values()) {
+			if (partitions.get(node.getId()) == partition) {
+				members.add(node.getId());
+			}
+		}
+		Set<Id<Node>> reached = new HashSet<>();
+		ArrayDeque<Node> queue = new ArrayDeque<>();
+		Node start = network.getNodes().get(members.iterator().next());
+		queue.add(start);
+		reached.add(start.getId());
+		while (!queue.isEmpty()) {
+			Node node = queue.poll();
+			for (Link link : node.getOutLinks().values()) {
+				Node next = link.getToNode();
+				if (members.contains(next.getId()) && reached.add(next.getId())) {
+					queue.add(next);
+				}
+			}
+		}
+		Assert.assertEquals("partition " + partition + " is not connected", members.size(), reached.size());
+	}
+
+	private static Network createGrid() {
+		return createGrid(NetworkUtils.createNetwork());
+	}
+
+	private static Network createGrid(Network network) {
+		Node[][] nodes = new Node[GRID_SIZE][GRID_SIZE];
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int y = 0; y < GRID_SIZE; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 100, y * 100));
+			}
+		}
+		int linkCount = 0;
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int y = 0; y < GRID_SIZE; y++) {
+				if (x + 1 < GRID_SIZE) {
+					NetworkUtils.createAndAddLink(network, Id.createLinkId(linkCount++), nodes[x][y], nodes[x + 1][y], 100, 10, 1000, 1);
+					NetworkUtils.createAndAddLink(network, Id.createLinkId(linkCount++), nodes[x + 1][y], nodes[x][y], 100, 10, 1000, 1);
+				}
+				if (y + 1 < GRID_SIZE) {
+					NetworkUtils.createAndAddLink(network, Id.createLinkId(linkCount++), nodes[x][y], nodes[x][y + 1], 100, 10, 1000, 1);
+					NetworkUtils.createAndAddLink(network, Id.createLinkId(linkCount++), nodes[x][y + 1], nodes[x][y], 100, 10, 1000, 1);
+				}
+			}
+		}
+		return network;
+	}
+}
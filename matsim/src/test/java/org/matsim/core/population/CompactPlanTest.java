@@ -0,0 +1,218 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CompactPlanTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.groups.PlansConfigGroup;
+import org.matsim.core.population.routes.GenericRouteImpl;
+import org.matsim.core.router.TripStructureUtils;
+
+public class CompactPlanTest {
+
+	private static PopulationFactory createFactory() {
+		PlansConfigGroup config = new PlansConfigGroup();
+		config.setPlanElementsStorage(PlansConfigGroup.PlanElementsStorage.compact);
+		Population population = PopulationUtils.createPopulation(config, null);
+		Assert.assertTrue(population.getFactory() instanceof CompactPopulationFactoryImpl);
+		return population.getFactory();
+	}
+
+	@Test
+	public void testValues() {
+		PopulationFactory pf = createFactory();
+		Plan plan = pf.createPlan();
+		Assert.assertTrue(plan instanceof CompactPlan);
+
+		Activity home = pf.createActivityFromCoord("home", new Coord(100, 200));
+		home.setEndTime(7 * 3600);
+		home.setLinkId(Id.createLinkId("1"));
+		home.getAttributes().putAttribute("a", "b");
+		plan.addActivity(home);
+		Leg leg = pf.createLeg("car");
+		leg.setDepartureTime(7 * 3600);
+		leg.setTravelTime(600);
+		leg.setRoute(new GenericRouteImpl(Id.createLinkId("1"), Id.createLinkId("2")));
+		TripStructureUtils.setRoutingMode(leg, "car");
+		plan.addLeg(leg);
+		Activity work = pf.createActivityFromLinkId("work", Id.createLinkId("2"));
+		work.setCoord(new Coord(1, 2, 3));
+		work.setStartTime(8 * 3600);
+		work.setMaximumDuration(3600);
+		plan.addActivity(work);
+
+		Assert.assertEquals(3, plan.getPlanElements().size());
+		Assert.assertSame(home, plan.getPlanElements().get(0));
+		Assert.assertSame(leg, plan.getPlanElements().get(1));
+
+		Assert.assertEquals("home", home.getType());
+		Assert.assertEquals(new Coord(100, 200), home.getCoord());
+		Assert.assertFalse(home.getCoord().hasZ());
+		Assert.assertEquals(7 * 3600, home.getEndTime().seconds(), 0);
+		Assert.assertTrue(home.getStartTime().isUndefined());
+		Assert.assertTrue(home.getMaximumDuration().isUndefined());
+		Assert.assertEquals(Id.createLinkId("1"), home.getLinkId());
+		Assert.assertNull(home.getFacilityId());
+		Assert.assertEquals("b", home.getAttributes().getAttribute("a"));
+
+		Assert.assertEquals("car", leg.getMode());
+		Assert.assertEquals("car", TripStructureUtils.getRoutingMode(leg));
+		Assert.assertEquals(7 * 3600, leg.getDepartureTime().seconds(), 0);
+		Assert.assertEquals(600, leg.getTravelTime().seconds(), 0);
+		Assert.assertEquals(Id.createLinkId("2"), leg.getRoute().getEndLinkId());
+
+		Assert.assertEquals(new Coord(1, 2, 3), work.getCoord());
+		Assert.assertEquals(8 * 3600, work.getStartTime().seconds(), 0);
+		Assert.assertEquals(3600, work.getMaximumDuration().seconds(), 0);
+		Assert.assertTrue(work.getEndTime().isUndefined());
+
+		work.setCoord(null);
+		Assert.assertNull(work.getCoord());
+		home.setEndTimeUndefined();
+		Assert.assertTrue(home.getEndTime().isUndefined());
+		leg.setMode("bike");
+		Assert.assertNull(TripStructureUtils.getRoutingMode(leg));
+	}
+
+	@Test
+	public void testInsertAndRemove() {
+		PopulationFactory pf = createFactory();
+		Plan plan = pf.createPlan();
+		for (int i = 0; i < 10; i++) {
+			Activity act = pf.createActivityFromLinkId("act" + i, Id.createLinkId(i));
+			act.setEndTime(i * 100);
+			plan.addActivity(act);
+		}
+		Activity act3 = (Activity) plan.getPlanElements().get(3);
+		Activity act7 = (Activity) plan.getPlanElements().get(7);
+
+		Leg leg = pf.createLeg("walk");
+		plan.getPlanElements().add(4, leg);
+		Assert.assertSame(act3, plan.getPlanElements().get(3));
+		Assert.assertSame(leg, plan.getPlanElements().get(4));
+		Assert.assertSame(act7, plan.getPlanElements().get(8));
+		Assert.assertEquals("act7", act7.getType());
+
+		Activity removed = (Activity) plan.getPlanElements().remove(3);
+		Assert.assertSame(act3, removed);
+		Assert.assertEquals(10, plan.getPlanElements().size());
+		// the removed element keeps its values and is independent of the plan
+		Assert.assertEquals("act3", removed.getType());
+		Assert.assertEquals(300, removed.getEndTime().seconds(), 0);
+		removed.setEndTime(1);
+		Assert.assertEquals(700, act7.getEndTime().seconds(), 0);
+		Assert.assertEquals("act7", act7.getType());
+
+		// slots are reused
+		Activity other = pf.createActivityFromLinkId("other", Id.createLinkId("x"));
+		plan.getPlanElements().add(0, other);
+		Assert.assertEquals("act7", act7.getType());
+		Assert.assertEquals("other", other.getType());
+
+		// a removed element can be added again
+		plan.getPlanElements().add(removed);
+		Assert.assertSame(removed, plan.getPlanElements().get(11));
+		Assert.assertEquals(1, removed.getEndTime().seconds(), 0);
+
+		// adding an element of another plan adds a copy
+		Plan plan2 = pf.createPlan();
+		plan2.addActivity(act7);
+		PlanElement copy = plan2.getPlanElements().get(0);
+		Assert.assertNotSame(act7, copy);
+		Assert.assertEquals("act7", ((Activity) copy).getType());
+		((Activity) copy).setType("changed");
+		Assert.assertEquals("act7", act7.getType());
+
+		Activity replaced = (Activity) plan.getPlanElements().set(0, pf.createActivityFromLinkId("new", Id.createLinkId("y")));
+		Assert.assertSame(other, replaced);
+		Assert.assertEquals("other", replaced.getType());
+		Assert.assertEquals("new", ((Activity) plan.getPlanElements().get(0)).getType());
+
+		plan.getPlanElements().clear();
+		Assert.assertTrue(plan.getPlanElements().isEmpty());
+		Assert.assertEquals("act7", act7.getType());
+	}
+
+	@Test
+	public void testOtherElementImplementations() {
+		PopulationFactory pf = createFactory();
+		Plan plan = pf.createPlan();
+		Activity act = PopulationUtils.getFactory().createActivityFromLinkId("home", Id.createLinkId("1"));
+		Assert.assertFalse(act instanceof CompactActivity);
+		plan.addActivity(act);
+		plan.addLeg(pf.createLeg("car"));
+		Assert.assertSame(act, plan.getPlanElements().get(0));
+		Assert.assertEquals("car", ((Leg) plan.getPlanElements().get(1)).getMode());
+	}
+
+	@Test
+	public void testCopy() {
+		PopulationFactory pf = createFactory();
+		Person person = pf.createPerson(Id.createPersonId("1"));
+		Plan plan = pf.createPlan();
+		person.addPlan(plan);
+		plan.setScore(12.0);
+		plan.setType("type");
+		plan.getAttributes().putAttribute("x", 1);
+		Activity home = pf.createActivityFromCoord("home", new Coord(1, 2));
+		home.getAttributes().putAttribute("a", "b");
+		plan.addActivity(home);
+		Leg leg = pf.createLeg("car");
+		leg.setRoute(new GenericRouteImpl(Id.createLinkId("1"), Id.createLinkId("2")));
+		plan.addLeg(leg);
+		plan.addActivity(PopulationUtils.getFactory().createActivityFromLinkId("work", Id.createLinkId("2")));
+
+		Plan copy = person.createCopyOfSelectedPlanAndMakeSelected();
+		Assert.assertTrue(copy instanceof CompactPlan);
+		Assert.assertSame(person, copy.getPerson());
+		Assert.assertSame(copy, person.getSelectedPlan());
+		Assert.assertEquals(12.0, copy.getScore(), 0);
+		Assert.assertEquals("type", copy.getType());
+		Assert.assertEquals(1, copy.getAttributes().getAttribute("x"));
+
+		List<PlanElement> elements = copy.getPlanElements();
+		Assert.assertEquals(3, elements.size());
+		Activity homeCopy = (Activity) elements.get(0);
+		Leg legCopy = (Leg) elements.get(1);
+		Activity workCopy = (Activity) elements.get(2);
+		Assert.assertNotSame(home, homeCopy);
+		Assert.assertNotSame(leg.getRoute(), legCopy.getRoute());
+		Assert.assertNotSame(plan.getPlanElements().get(2), workCopy);
+		Assert.assertEquals("work", workCopy.getType());
+
+		homeCopy.setType("changed");
+		homeCopy.getAttributes().putAttribute("a", "c");
+		Assert.assertEquals("home", home.getType());
+		Assert.assertEquals("b", home.getAttributes().getAttribute("a"));
+		Assert.assertEquals(new Coord(1, 2), homeCopy.getCoord());
+	}
+}
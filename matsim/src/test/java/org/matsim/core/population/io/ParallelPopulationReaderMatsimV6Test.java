@@ -0,0 +1,224 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelPopulationReaderMatsimV6Test.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ProjectionUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.vehicles.Vehicle;
+
+public class ParallelPopulationReaderMatsimV6Test {
+
+	@Rule
+	public final MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testSameAsSequentialReader() {
+		byte[] data = writePopulation(createPopulation(1234));
+
+		Scenario sequential = readPopulation(data, 1);
+		Scenario parallel = readPopulation(data, 4);
+
+		Assert.assertEquals(1234, parallel.getPopulation().getPersons().size());
+		Assert.assertEquals(
+				new ArrayList<>(sequential.getPopulation().getPersons().keySet()),
+				new ArrayList<>(parallel.getPopulation().getPersons().keySet()));
+		Assert.assertEquals("EPSG:1234", ProjectionUtils.getCRS(parallel.getPopulation()));
+		Assert.assertEquals("test population", parallel.getPopulation().getName());
+		Assert.assertEquals(
+				new String(writePopulation(sequential.getPopulation()), StandardCharsets.UTF_8),
+				new String(writePopulation(parallel.getPopulation()), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testSameIdsAsSequentialReader() {
+		byte[] data = writePopulation(createPopulation(1234));
+
+		Id.resetCaches();
+		readPopulation(data, 1);
+		List<String> sequential = getIds();
+		Id.resetCaches();
+		readPopulation(data, 4);
+		Assert.assertEquals(sequential, getIds());
+	}
+
+	@Test
+	public void testOnlyIfEnabled() {
+		Config config = ConfigUtils.createConfig();
+		config.global().setNumberOfThreads(4);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		// without parallel reading, the converters are only called by this thread
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		PopulationReader reader = new PopulationReader(scenario);
+		reader.putAttributeConverter(Double.class, new AttributeConverter<Double>() {
+			@Override
+			public Double convert(String value) {
+				threads.add(Thread.currentThread());
+				return Double.valueOf(value);
+			}
+			@Override
+			public String convertToString(Object o) {
+				return o.toString();
+			}
+		});
+		reader.parse(new ByteArrayInputStream(writePopulation(createPopulation(1000))));
+		Assert.assertEquals(1000, scenario.getPopulation().getPersons().size());
+		Assert.assertEquals(Set.of(Thread.currentThread()), threads);
+	}
+
+	@Test
+	public void testStreaming() {
+		byte[] data = writePopulation(createPopulation(567));
+
+		List<String> sequential = streamPopulation(data, 1);
+		List<String> parallel = streamPopulation(data, 3);
+		Assert.assertEquals(567, parallel.size());
+		Assert.assertEquals(sequential, parallel);
+	}
+
+	@Test
+	public void testErrorInWorker() {
+		Population population = createPopulation(500);
+		// a plan starting with a leg cannot be read
+		Person person = population.getPersons().get(Id.createPersonId(321));
+		person.getSelectedPlan().getPlanElements().add(0, PopulationUtils.createLeg(TransportMode.walk));
+		byte[] data = writePopulation(population);
+		try {
+			readPopulation(data, 2);
+			Assert.fail("expected exception");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	/**
+	 * @return the person, link and vehicle ids in the order of their indices.
+	 */
+	private static List<String> getIds() {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < Id.getNumberOfIds(Person.class); i++) {
+			ids.add(Id.get(i, Person.class).toString());
+		}
+		for (int i = 0; i < Id.getNumberOfIds(Link.class); i++) {
+			ids.add(Id.get(i, Link.class).toString());
+		}
+		for (int i = 0; i < Id.getNumberOfIds(Vehicle.class); i++) {
+			ids.add(Id.get(i, Vehicle.class).toString());
+		}
+		return ids;
+	}
+
+	private static Population createPopulation(int size) {
+		Config config = ConfigUtils.createConfig();
+		Population population = PopulationUtils.createPopulation(config);
+		population.setName("test population");
+		ProjectionUtils.putCRS(population, "EPSG:1234");
+		PopulationFactory pf = population.getFactory();
+		Random random = new Random(20221018);
+		for (int i = 0; i < size; i++) {
+			Person person = pf.createPerson(Id.createPersonId(i));
+			person.getAttributes().putAttribute("income", random.nextDouble());
+			for (int p = 0; p < 1 + random.nextInt(3); p++) {
+				Plan plan = pf.createPlan();
+				plan.setScore(random.nextDouble());
+				person.addPlan(plan);
+				Activity home = pf.createActivityFromCoord("home", new Coord(random.nextInt(10000), random.nextInt(10000)));
+				home.setLinkId(Id.createLinkId(random.nextInt(100)));
+				home.setEndTime(6 * 3600 + random.nextInt(7200));
+				plan.addActivity(home);
+				Leg leg = pf.createLeg(TransportMode.car);
+				List<Id<Link>> links = new ArrayList<>();
+				for (int l = random.nextInt(10); l > 0; l--) {
+					links.add(Id.createLinkId(random.nextInt(100)));
+				}
+				NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(home.getLinkId(), links, Id.createLinkId(random.nextInt(100)));
+				route.setDistance(random.nextInt(10000));
+				route.setVehicleId(Id.createVehicleId("v" + i));
+				leg.setRoute(route);
+				leg.getAttributes().putAttribute("x", "y");
+				plan.addLeg(leg);
+				Activity work = pf.createActivityFromLinkId("work", route.getEndLinkId());
+				work.setMaximumDuration(8 * 3600);
+				plan.addActivity(work);
+			}
+			population.addPerson(person);
+		}
+		return population;
+	}
+
+	private static byte[] writePopulation(Population population) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new PopulationWriter(population).writeV6(out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return the ids and number of plan elements of the persons, in the order they were handed to the algorithm.
+	 */
+	private static List<String> streamPopulation(byte[] data, int numberOfThreads) {
+		Config config = ConfigUtils.createConfig();
+		config.global().setNumberOfThreads(numberOfThreads);
+		config.plans().setParallelReading(true);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		StreamingPopulationReader reader = new StreamingPopulationReader(scenario);
+		List<String> persons = new ArrayList<>();
+		reader.addAlgorithm(person -> persons.add(person.getId() + ":" + person.getSelectedPlan().getPlanElements().size()));
+		reader.parse(new ByteArrayInputStream(data));
+		return persons;
+	}
+
+	private static Scenario readPopulation(byte[] data, int numberOfThreads) {
+		Config config = ConfigUtils.createConfig();
+		config.global().setNumberOfThreads(numberOfThreads);
+		config.plans().setParallelReading(true);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		new PopulationReader(scenario).parse(new ByteArrayInputStream(data));
+		return scenario;
+	}
+}
@@ -0,0 +1,153 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelPopulationWriterV6Test.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class ParallelPopulationWriterV6Test {
+
+	@Rule
+	public final MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testGzip() throws IOException {
+		assertSameAsSequentialWriter("population.xml.gz");
+	}
+
+	@Test
+	public void testZstd() throws IOException {
+		assertSameAsSequentialWriter("population.xml.zst");
+	}
+
+	@Test
+	public void testUncompressed() throws IOException {
+		assertSameAsSequentialWriter("population.xml");
+	}
+
+	@Test
+	public void testGzip_blocks() throws IOException {
+		Population population = createPopulation(1000);
+		String filename = this.utils.getOutputDirectory() + "population.xml.gz";
+		PopulationWriter writer = new PopulationWriter(population);
+		writer.setNumberOfThreads(3);
+		writer.write(filename);
+
+		// header, 5 blocks of persons, end of the file
+		byte[] data = Files.readAllBytes(Paths.get(filename));
+		int members = 0;
+		for (int i = 0; i + 3 < data.length; i++) {
+			if (data[i] == (byte) 0x1f && data[i + 1] == (byte) 0x8b && data[i + 2] == 8 && data[i + 3] == 0) {
+				members++;
+			}
+		}
+		Assert.assertTrue("expected at least 7 gzip members, got " + members, members >= 7);
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new PopulationReader(scenario).readFile(filename);
+		Assert.assertEquals(1000, scenario.getPopulation().getPersons().size());
+		Assert.assertEquals("test population", scenario.getPopulation().getName());
+	}
+
+	private void assertSameAsSequentialWriter(String name) throws IOException {
+		Population population = createPopulation(1234);
+		String sequential = this.utils.getOutputDirectory() + "sequential_" + name;
+		String parallel = this.utils.getOutputDirectory() + "parallel_" + name;
+		new PopulationWriter(population).write(sequential);
+		PopulationWriter writer = new PopulationWriter(population);
+		writer.setNumberOfThreads(4);
+		writer.write(parallel);
+
+		Assert.assertEquals(readText(sequential), readText(parallel));
+	}
+
+	private static String readText(String filename) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = IOUtils.getInputStream(IOUtils.getFileUrl(filename))) {
+			in.transferTo(bytes);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static Population createPopulation(int size) {
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		population.setName("test population");
+		population.getAttributes().putAttribute("year", 2022);
+		PopulationFactory pf = population.getFactory();
+		Random random = new Random(20221018);
+		for (int i = 0; i < size; i++) {
+			Person person = pf.createPerson(Id.createPersonId(i));
+			person.getAttributes().putAttribute("income", random.nextDouble());
+			for (int p = 0; p < 1 + random.nextInt(3); p++) {
+				Plan plan = pf.createPlan();
+				plan.setScore(random.nextDouble());
+				person.addPlan(plan);
+				Activity home = pf.createActivityFromCoord("home", new Coord(random.nextInt(10000), random.nextInt(10000)));
+				home.setLinkId(Id.createLinkId(random.nextInt(100)));
+				home.setEndTime(6 * 3600 + random.nextInt(7200));
+				plan.addActivity(home);
+				Leg leg = pf.createLeg(TransportMode.car);
+				List<Id<Link>> links = new ArrayList<>();
+				for (int l = random.nextInt(10); l > 0; l--) {
+					links.add(Id.createLinkId(random.nextInt(100)));
+				}
+				NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(home.getLinkId(), links, Id.createLinkId(random.nextInt(100)));
+				route.setDistance(random.nextInt(10000));
+				leg.setRoute(route);
+				plan.addLeg(leg);
+				Activity work = pf.createActivityFromLinkId("work", route.getEndLinkId());
+				work.setMaximumDuration(8 * 3600);
+				plan.addActivity(work);
+			}
+			population.addPerson(person);
+		}
+		return population;
+	}
+}
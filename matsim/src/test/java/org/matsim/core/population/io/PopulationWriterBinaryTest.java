@@ -0,0 +1,249 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PopulationWriterBinaryTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlansConfigGroup;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.GenericRouteImpl;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scenario.ProjectionUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.vehicles.Vehicle;
+
+public class PopulationWriterBinaryTest {
+
+	@Rule
+	public final MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testSameAsXml() {
+		Population population = createPopulation(2345);
+		String filename = this.utils.getOutputDirectory() + "plans.bin";
+		new PopulationWriterBinary(population).write(filename);
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new PopulationReaderBinary(scenario).readFile(filename);
+
+		Assert.assertEquals(2345, scenario.getPopulation().getPersons().size());
+		Assert.assertEquals("EPSG:1234", ProjectionUtils.getCRS(scenario.getPopulation()));
+		Assert.assertEquals(writeXml(population), writeXml(scenario.getPopulation()));
+
+		Person person = scenario.getPopulation().getPersons().get(Id.createPersonId(7));
+		Assert.assertEquals(Integer.valueOf(7), person.getAttributes().getAttribute("number"));
+		Assert.assertEquals(Long.valueOf(7_000_000_000L), person.getAttributes().getAttribute("big number"));
+		Assert.assertEquals(Boolean.FALSE, person.getAttributes().getAttribute("flag"));
+		Assert.assertEquals(new Coord(7, 8), person.getAttributes().getAttribute("coord"));
+		Leg leg = (Leg) person.getSelectedPlan().getPlanElements().get(1);
+		Assert.assertEquals(TransportMode.car, TripStructureUtils.getRoutingMode(leg));
+		Assert.assertEquals(Id.create("veh7", Vehicle.class), ((NetworkRoute) leg.getRoute()).getVehicleId());
+	}
+
+	@Test
+	public void testLoadScenario() {
+		Population population = createPopulation(500);
+		String filename = this.utils.getOutputDirectory() + "plans.bin";
+		new PopulationWriterBinary(population).write(filename);
+
+		Config config = ConfigUtils.createConfig();
+		config.global().setCoordinateSystem("EPSG:1234");
+		config.plans().setInputFile(filename);
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+		Assert.assertEquals(writeXml(population), writeXml(scenario.getPopulation()));
+
+		Assert.assertEquals(writeXml(population), writeXml(PopulationUtils.readPopulation(filename)));
+	}
+
+	@Test
+	public void testCompactPlans() {
+		Population population = createPopulation(100);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new PopulationWriterBinary(population).write(out);
+
+		Config config = ConfigUtils.createConfig();
+		config.plans().setPlanElementsStorage(PlansConfigGroup.PlanElementsStorage.compact);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		new PopulationReaderBinary(scenario).readStream(new ByteArrayInputStream(out.toByteArray()));
+
+		Assert.assertEquals(writeXml(population), writeXml(scenario.getPopulation()));
+	}
+
+	@Test
+	public void testStreaming() {
+		Population population = createPopulation(1500);
+		String filename = this.utils.getOutputDirectory() + "plans.bin";
+		new PopulationWriterBinary(population).write(filename);
+
+		StreamingPopulationReader reader = new StreamingPopulationReader(ScenarioUtils.createScenario(ConfigUtils.createConfig()));
+		List<Id<Person>> persons = new ArrayList<>();
+		reader.addAlgorithm(person -> persons.add(person.getId()));
+		reader.readFile(filename);
+
+		Assert.assertEquals(new ArrayList<>(PopulationUtils.getSortedPersons(population).keySet()), persons);
+	}
+
+	@Test
+	public void testStreamingWithConvertersAndCRS() {
+		Population population = createPopulation(10);
+		population.getPersons().get(Id.createPersonId(3)).getAttributes().putAttribute("tag", new Tag("vip"));
+		String filename = this.utils.getOutputDirectory() + "plans.bin";
+		PopulationWriterBinary writer = new PopulationWriterBinary(population);
+		writer.putAttributeConverter(Tag.class, new TagConverter());
+		writer.write(filename);
+
+		StreamingPopulationReader reader = new StreamingPopulationReader(null, "EPSG:1234", ScenarioUtils.createScenario(ConfigUtils.createConfig()));
+		reader.putAttributeConverter(Tag.class, new TagConverter());
+		List<Object> tags = new ArrayList<>();
+		reader.addAlgorithm(person -> tags.add(person.getAttributes().getAttribute("tag")));
+		reader.readFile(filename);
+		Assert.assertEquals(10, tags.size());
+		Assert.assertEquals("vip", ((Tag) tags.get(3)).name);
+
+		try {
+			new StreamingPopulationReader(null, "EPSG:4321", ScenarioUtils.createScenario(ConfigUtils.createConfig())).readFile(filename);
+			Assert.fail("expected exception, the population is in another coordinate system");
+		} catch (RuntimeException expected) {
+		}
+		try {
+			new StreamingPopulationReader("EPSG:1234", "EPSG:4321", ScenarioUtils.createScenario(ConfigUtils.createConfig())).readFile(filename);
+			Assert.fail("expected exception, binary populations cannot be transformed");
+		} catch (RuntimeException expected) {
+		}
+	}
+
+	@Test
+	public void testInvalidData() {
+		try {
+			Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+			new PopulationReaderBinary(scenario).readStream(new ByteArrayInputStream("<?xml version=\"1.0\"?>".getBytes(StandardCharsets.UTF_8)));
+			Assert.fail("expected exception");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	private static class Tag {
+		private final String name;
+
+		Tag(String name) {
+			this.name = name;
+		}
+	}
+
+	private static class TagConverter implements AttributeConverter<Tag> {
+		@Override
+		public Tag convert(String value) {
+			return new Tag(value);
+		}
+
+		@Override
+		public String convertToString(Object o) {
+			return ((Tag) o).name;
+		}
+	}
+
+	private static String writeXml(Population population) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new PopulationWriter(population).writeV6(out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static Population createPopulation(int size) {
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		population.setName("test population");
+		ProjectionUtils.putCRS(population, "EPSG:1234");
+		PopulationFactory pf = population.getFactory();
+		Random random = new Random(20221018);
+		for (int i = 0; i < size; i++) {
+			Person person = pf.createPerson(Id.createPersonId(i));
+			person.getAttributes().putAttribute("income", random.nextDouble());
+			person.getAttributes().putAttribute("number", i);
+			person.getAttributes().putAttribute("big number", i * 1_000_000_000L);
+			person.getAttributes().putAttribute("flag", i % 2 == 0);
+			person.getAttributes().putAttribute("coord", new Coord(i, i + 1));
+			for (int p = 0; p < 1 + random.nextInt(3); p++) {
+				Plan plan = pf.createPlan();
+				if (p > 0) {
+					plan.setScore(random.nextDouble());
+					plan.setType("type" + p);
+				}
+				person.addPlan(plan);
+				Activity home = pf.createActivityFromCoord("home", new Coord(random.nextInt(10000), random.nextInt(10000), random.nextDouble()));
+				home.setLinkId(Id.createLinkId(random.nextInt(100)));
+				home.setEndTime(6 * 3600 + random.nextInt(7200) + (i % 10 == 0 ? 0.5 : 0));
+				plan.addActivity(home);
+				Leg leg = pf.createLeg(TransportMode.car);
+				TripStructureUtils.setRoutingMode(leg, TransportMode.car);
+				leg.setDepartureTime(home.getEndTime().seconds());
+				List<Id<Link>> links = new ArrayList<>();
+				for (int l = random.nextInt(10); l > 0; l--) {
+					links.add(Id.createLinkId(random.nextInt(100)));
+				}
+				NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(home.getLinkId(), links, Id.createLinkId(random.nextInt(100)));
+				route.setDistance(random.nextInt(10000));
+				route.setTravelTime(random.nextInt(3600));
+				route.setVehicleId(Id.create("veh" + i, Vehicle.class));
+				leg.setRoute(route);
+				plan.addLeg(leg);
+				Activity work = pf.createActivityFromLinkId("work", route.getEndLinkId());
+				work.setMaximumDuration(8 * 3600);
+				work.setFacilityId(Id.create("f" + random.nextInt(10), org.matsim.facilities.ActivityFacility.class));
+				work.getAttributes().putAttribute("note", "at work");
+				plan.addActivity(work);
+				Leg walk = pf.createLeg(TransportMode.walk);
+				Route walkRoute = new GenericRouteImpl(work.getLinkId(), home.getLinkId());
+				walkRoute.setDistance(random.nextDouble() * 1000);
+				walkRoute.setRouteDescription("some <description> & more");
+				walk.setRoute(walkRoute);
+				plan.addLeg(walk);
+				plan.addActivity(pf.createActivityFromCoord("home", home.getCoord()));
+			}
+			population.addPerson(person);
+		}
+		return population;
+	}
+}
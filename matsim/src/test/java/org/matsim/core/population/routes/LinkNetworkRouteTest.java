@@ -21,6 +21,10 @@
 package org.matsim.core.population.routes;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -67,4 +71,103 @@ public class LinkNetworkRouteTest extends AbstractNetworkRouteTest {
 		Assert.assertEquals(2, route2.getLinkIds().size());
 	}
 
+	@Test
+	public void testLinkIds_encoding() {
+		Random random = new Random(20221018);
+		List<Id<Link>> pool = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			pool.add(Id.create("enc" + i, Link.class));
+		}
+		List<Id<Link>> ids = new ArrayList<>();
+		int n = 0;
+		for (int i = 0; i < 500; i++) {
+			// mix of neighbouring, far away, and repeated links
+			n = random.nextInt(4) == 0 ? random.nextInt(pool.size()) : Math.max(0, n + random.nextInt(7) - 3);
+			ids.add(pool.get(n));
+		}
+		NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(ids.get(0), ids, ids.get(1));
+		List<Id<Link>> linkIds = route.getLinkIds();
+		Assert.assertEquals(ids, linkIds);
+		Assert.assertEquals(ids.size(), linkIds.size());
+		// sequential access, as done by the mobsim
+		for (int i = 0; i < ids.size(); i++) {
+			Assert.assertSame(ids.get(i), linkIds.get(i));
+		}
+		// random access
+		for (int i = 0; i < 1000; i++) {
+			int index = random.nextInt(ids.size());
+			Assert.assertSame(ids.get(index), linkIds.get(index));
+		}
+		Iterator<Id<Link>> iter = linkIds.iterator();
+		for (Id<Link> id : ids) {
+			Assert.assertSame(id, iter.next());
+		}
+		Assert.assertFalse(iter.hasNext());
+		try {
+			linkIds.get(ids.size());
+			Assert.fail("expected exception");
+		} catch (IndexOutOfBoundsException expected) {
+		}
+		try {
+			linkIds.add(ids.get(0));
+			Assert.fail("expected exception");
+		} catch (UnsupportedOperationException expected) {
+		}
+	}
+
+	@Test
+	public void testLinkIds_viewFollowsChanges() {
+		Id<Link> id1 = Id.create(1, Link.class);
+		Id<Link> id2 = Id.create(2, Link.class);
+		Id<Link> id3 = Id.create(3, Link.class);
+		Id<Link> id4 = Id.create(4, Link.class);
+		NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(id1, List.of(id2, id3), id4);
+		List<Id<Link>> linkIds = route.getLinkIds();
+		Assert.assertEquals(id3, linkIds.get(1));
+
+		route.setLinkIds(id1, List.of(id4, id2, id1), id4);
+		Assert.assertEquals(3, linkIds.size());
+		Assert.assertEquals(id2, linkIds.get(1));
+		Assert.assertEquals(id1, linkIds.get(2));
+
+		// a route can be set to a part of its own links
+		route.setLinkIds(id1, linkIds.subList(1, 3), id4);
+		Assert.assertEquals(List.of(id2, id1), route.getLinkIds());
+
+		route.setRouteDescription("1 3 2 4");
+		Assert.assertEquals(List.of(id3, id2), linkIds);
+		Assert.assertEquals("1 3 2 4", route.getRouteDescription());
+	}
+
+	@Test
+	public void testLinkIds_positionalAccessFollowsChanges() {
+		Id<Link> id1 = Id.create(1, Link.class);
+		Id<Link> id2 = Id.create(2, Link.class);
+		Id<Link> id3 = Id.create(3, Link.class);
+		Id<Link> id4 = Id.create(4, Link.class);
+		NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(id1, List.of(id2, id3, id2), id4);
+		List<Id<Link>> linkIds = route.getLinkIds();
+		Assert.assertTrue(linkIds instanceof RandomAccess);
+		// alternating access, as done by the transit drivers
+		List<Id<Link>> expected = List.of(id2, id3, id2);
+		for (int i = 1; i < linkIds.size(); i++) {
+			Assert.assertSame(expected.get(i), linkIds.get(i));
+			Assert.assertSame(expected.get(i - 1), linkIds.get(i - 1));
+		}
+
+		// within-day replanning changes the links of the route
+		route.setLinkIds(id1, List.of(id4, id3), id4);
+		Assert.assertSame(id3, linkIds.get(1));
+		Assert.assertEquals(List.of(id4, id3), linkIds);
+
+		// clones share the encoded links, but not changes of them
+		NetworkRoute clone = route.clone();
+		Assert.assertSame(id4, clone.getLinkIds().get(0));
+		clone.setLinkIds(id1, List.of(id2), id4);
+		Assert.assertSame(id2, clone.getLinkIds().get(0));
+		Assert.assertSame(id4, linkIds.get(0));
+
+		route.setLinkIds(id1, List.of(), id4);
+		Assert.assertEquals(0, linkIds.size());
+	}
 }
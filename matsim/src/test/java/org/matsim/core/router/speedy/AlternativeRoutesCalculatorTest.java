@@ -0,0 +1,111 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * AlternativeRoutesCalculatorTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router.speedy;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+
+public class AlternativeRoutesCalculatorTest {
+
+	@Test
+	public void testAlternativeRoutes() {
+		GridNetworkFixture grid = new GridNetworkFixture(20);
+		Network network = grid.network;
+		Node[] nodes = grid.nodes;
+		Random random = grid.random;
+		Node isolated = NetworkUtils.createAndAddNode(network, Id.createNodeId("isolated"), new Coord(-100, -100));
+
+		FreespeedTravelTimeAndDisutility tc = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		SpeedyGraph graph = new SpeedyGraph(network);
+		double maxStretch = 0.25;
+		double maxSharing = 0.75;
+		AlternativeRoutesCalculator calculator = new AlternativeRoutesCalculator(graph, tc, tc, maxStretch, maxSharing, 0.1);
+		SpeedyDijkstra dijkstra = new SpeedyDijkstra(graph, tc, tc);
+
+		int alternatives = 0;
+		for (int i = 0; i < 200; i++) {
+			Node from = nodes[random.nextInt(nodes.length)];
+			Node to = nodes[random.nextInt(nodes.length)];
+			double departureTime = 8 * 3600 + random.nextInt(7200);
+			Path expected = dijkstra.calcLeastCostPath(from, to, departureTime, null, null);
+			List<Path> paths = calculator.calcAlternativeRoutes(from, to, departureTime, null, null, 5);
+
+			Assert.assertFalse(paths.isEmpty());
+			Assert.assertTrue(paths.size() <= 5);
+			Assert.assertEquals(expected.travelCost, paths.get(0).travelCost, 1e-6);
+			alternatives += paths.size() - 1;
+			for (int p = 0; p < paths.size(); p++) {
+				Path path = paths.get(p);
+				Assert.assertEquals(from, path.getFromNode());
+				Assert.assertEquals(to, path.getToNode());
+				Assert.assertTrue(path.travelCost <= expected.travelCost * (1 + maxStretch) + 1e-6);
+				Set<Node> visited = new HashSet<>();
+				for (Node node : path.nodes) {
+					Assert.assertTrue("route contains a loop", visited.add(node));
+				}
+				for (int l = 0; l < path.links.size(); l++) {
+					Assert.assertEquals(path.nodes.get(l), path.links.get(l).getFromNode());
+					Assert.assertEquals(path.nodes.get(l + 1), path.links.get(l).getToNode());
+				}
+				for (int other = 0; other < p; other++) {
+					Assert.assertTrue(getSharedLength(path, paths.get(other)) <= maxSharing * Math.max(getLength(path), getLength(paths.get(other))) + 1e-6);
+				}
+			}
+		}
+		Assert.assertTrue("no alternatives found", alternatives > 200);
+
+		Assert.assertEquals(1, calculator.calcAlternativeRoutes(nodes[0], nodes[0], 8 * 3600, null, null, 5).size());
+		Assert.assertTrue(calculator.calcAlternativeRoutes(nodes[0], isolated, 8 * 3600, null, null, 5).isEmpty());
+	}
+
+	private static double getLength(Path path) {
+		double length = 0;
+		for (Link link : path.links) {
+			length += link.getLength();
+		}
+		return length;
+	}
+
+	private static double getSharedLength(Path path, Path other) {
+		Set<Link> otherLinks = new HashSet<>(other.links);
+		double length = 0;
+		for (Link link : path.links) {
+			if (otherLinks.contains(link)) {
+				length += link.getLength();
+			}
+		}
+		return length;
+	}
+}
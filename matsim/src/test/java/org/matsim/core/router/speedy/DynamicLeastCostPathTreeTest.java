@@ -0,0 +1,120 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * DynamicLeastCostPathTreeTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router.speedy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+public class DynamicLeastCostPathTreeTest {
+
+	@Test
+	public void testUpdate_sameAsRecalculation() {
+		int size = 20;
+		GridNetworkFixture grid = new GridNetworkFixture(size);
+		Network network = grid.network;
+		Node[] nodes = grid.nodes;
+		Random random = grid.random;
+		Node isolated = NetworkUtils.createAndAddNode(network, Id.createNodeId("isolated"), new Coord(-100, -100));
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+
+		MutableTravelTime tt = new MutableTravelTime();
+		SpeedyGraph graph = new SpeedyGraph(network);
+		Node destination = nodes[size * size / 2 + size / 2];
+		DynamicLeastCostPathTree tree = new DynamicLeastCostPathTree(graph, tt, destination, 0);
+		assertSameAsRecalculation(graph, tt, tree, destination, nodes);
+		Assert.assertEquals(Double.POSITIVE_INFINITY, tree.getCost(isolated), 0.0);
+		Assert.assertNull(tree.getPath(isolated, 0, tt, null, null));
+
+		for (int round = 0; round < 50; round++) {
+			List<Link> changed = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				Link link = links.get(random.nextInt(links.size()));
+				double factor = random.nextInt(5) == 0 ? Double.POSITIVE_INFINITY : 0.2 + random.nextDouble() * 4;
+				tt.travelTimes.put(link, link.getLength() / link.getFreespeed() * factor);
+				changed.add(link);
+			}
+			// restore some links to freespeed again
+			for (int i = 0; i < 5; i++) {
+				Link link = links.get(random.nextInt(links.size()));
+				if (tt.travelTimes.remove(link) != null) {
+					changed.add(link);
+				}
+			}
+			tree.update(changed, round * 60);
+			assertSameAsRecalculation(graph, tt, tree, destination, nodes);
+		}
+	}
+
+	private static void assertSameAsRecalculation(SpeedyGraph graph, MutableTravelTime tt, DynamicLeastCostPathTree tree, Node destination, Node[] nodes) {
+		DynamicLeastCostPathTree expected = new DynamicLeastCostPathTree(graph, tt, destination, 0);
+		for (Node node : nodes) {
+			Assert.assertEquals(expected.getCost(node), tree.getCost(node), 1e-6);
+			Path path = tree.getPath(node, 0, tt, null, null);
+			if (Double.isInfinite(expected.getCost(node))) {
+				Assert.assertNull(path);
+			} else {
+				Assert.assertEquals(node, path.getFromNode());
+				Assert.assertEquals(destination, path.getToNode());
+				Assert.assertEquals(expected.getCost(node), path.travelCost, 1e-6);
+			}
+		}
+	}
+
+	/**
+	 * Uses the travel time as disutility, with freespeed travel times unless set otherwise.
+	 */
+	private static class MutableTravelTime implements TravelTime, TravelDisutility {
+
+		private final Map<Link, Double> travelTimes = new HashMap<>();
+
+		@Override
+		public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
+			return this.travelTimes.getOrDefault(link, link.getLength() / link.getFreespeed());
+		}
+
+		@Override
+		public double getLinkTravelDisutility(Link link, double time, Person person, Vehicle vehicle) {
+			return getLinkTravelTime(link, time, person, vehicle);
+		}
+
+		@Override
+		public double getLinkMinimumTravelDisutility(Link link) {
+			return link.getLength() / link.getFreespeed();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * GridNetworkFixture.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router.speedy;
+
+import java.util.Random;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+/**
+ * A square grid network with random link lengths and freespeeds. The nodes are numbered row by row, starting at the
+ * origin, and are 100m apart. The random generator is kept, so tests can draw their requests from the same sequence.
+ */
+final class GridNetworkFixture {
+
+	final Network network = NetworkUtils.createNetwork();
+	final Node[] nodes;
+	final Random random = new Random(20221018);
+
+	GridNetworkFixture(int size) {
+		this(size, true);
+	}
+
+	/**
+	 * @param twoWayColumns if false, the links along the columns only lead north, i.e. towards nodes with higher indices.
+	 */
+	GridNetworkFixture(int size, boolean twoWayColumns) {
+		this.nodes = new Node[size * size];
+		for (int i = 0; i < this.nodes.length; i++) {
+			this.nodes[i] = NetworkUtils.createAndAddNode(this.network, Id.createNodeId(i), new Coord(i % size * 100, i / size * 100));
+		}
+		for (int i = 0; i < this.nodes.length; i++) {
+			if (i % size + 1 < size) {
+				addLink(this.nodes[i], this.nodes[i + 1]);
+				addLink(this.nodes[i + 1], this.nodes[i]);
+			}
+			if (i + size < this.nodes.length) {
+				addLink(this.nodes[i], this.nodes[i + size]);
+				if (twoWayColumns) {
+					addLink(this.nodes[i + size], this.nodes[i]);
+				}
+			}
+		}
+	}
+
+	private void addLink(Node from, Node to) {
+		NetworkUtils.createAndAddLink(this.network, Id.createLinkId(from.getId() + "_" + to.getId()), from, to,
+				100 + this.random.nextInt(400), 5 + this.random.nextInt(25), 1000, 1);
+	}
+}
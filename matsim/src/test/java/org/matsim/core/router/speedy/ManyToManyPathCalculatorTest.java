@@ -0,0 +1,89 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ManyToManyPathCalculatorTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router.speedy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+
+public class ManyToManyPathCalculatorTest {
+
+	@Test
+	public void testSameCostsAsDijkstra() {
+		GridNetworkFixture grid = new GridNetworkFixture(20);
+		Network network = grid.network;
+		Node[] nodes = grid.nodes;
+		Random random = grid.random;
+		Node isolated = NetworkUtils.createAndAddNode(network, Id.createNodeId("isolated"), new Coord(-100, -100));
+
+		List<ManyToManyPathCalculator.Request> requests = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			// few origins, so that trees are shared by several requests
+			Node from = nodes[random.nextInt(10) * 37];
+			Node to = nodes[random.nextInt(nodes.length)];
+			requests.add(new ManyToManyPathCalculator.Request(from, to, 8 * 3600 + random.nextInt(7200)));
+		}
+		requests.add(new ManyToManyPathCalculator.Request(nodes[0], nodes[0], 8 * 3600));
+		requests.add(new ManyToManyPathCalculator.Request(nodes[0], isolated, 8 * 3600));
+
+		FreespeedTravelTimeAndDisutility tc = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		SpeedyGraph graph = new SpeedyGraph(network);
+		ManyToManyPathCalculator calculator = new ManyToManyPathCalculator(graph, tc, tc, 3600, 2);
+		Path[] paths = calculator.calcLeastCostPaths(requests);
+		double[] travelTimes = new double[requests.size()];
+		double[] travelCosts = new double[requests.size()];
+		double[] distances = new double[requests.size()];
+		calculator.calcTravelTimesAndCosts(requests, travelTimes, travelCosts, distances);
+
+		SpeedyDijkstra dijkstra = new SpeedyDijkstra(graph, tc, tc);
+		for (int i = 0; i < requests.size() - 1; i++) {
+			ManyToManyPathCalculator.Request request = requests.get(i);
+			Path expected = dijkstra.calcLeastCostPath(request.getFromNode(), request.getToNode(), request.getDepartureTime(), null, null);
+			Path actual = paths[i];
+			Assert.assertEquals(expected.travelCost, actual.travelCost, 1e-6);
+			Assert.assertEquals(expected.travelTime, actual.travelTime, 1e-6);
+			Assert.assertEquals(expected.travelCost, travelCosts[i], 1e-6);
+			Assert.assertEquals(expected.travelTime, travelTimes[i], 1e-6);
+			Assert.assertEquals(request.getFromNode(), actual.getFromNode());
+			Assert.assertEquals(request.getToNode(), actual.getToNode());
+			double distance = 0;
+			for (int l = 0; l < actual.links.size(); l++) {
+				Assert.assertEquals(actual.nodes.get(l), actual.links.get(l).getFromNode());
+				Assert.assertEquals(actual.nodes.get(l + 1), actual.links.get(l).getToNode());
+				distance += actual.links.get(l).getLength();
+			}
+			Assert.assertEquals(distance, distances[i], 1e-6);
+		}
+		Assert.assertNull(paths[requests.size() - 1]);
+		Assert.assertEquals(Double.POSITIVE_INFINITY, travelTimes[requests.size() - 1], 0.0);
+	}
+}
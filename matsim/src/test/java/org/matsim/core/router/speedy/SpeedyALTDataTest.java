@@ -0,0 +1,103 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * SpeedyALTDataTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router.speedy;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import com.google.inject.Guice;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class SpeedyALTDataTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testLoadOrCalculate() {
+		GridNetworkFixture grid = new GridNetworkFixture(15, false);
+		Network network = grid.network;
+		Node[] nodes = grid.nodes;
+		Random random = grid.random;
+		java.nio.file.Path directory = Paths.get(this.utils.getOutputDirectory(), "landmarks");
+		SpeedyGraph graph = new SpeedyGraph(network);
+		FreespeedTravelTimeAndDisutility tc = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+
+		SpeedyALTData calculated = SpeedyALTData.loadOrCalculate(directory, graph, 8, tc);
+		File[] files = directory.toFile().listFiles();
+		Assert.assertEquals(1, files.length);
+		long lastModified = files[0].lastModified();
+
+		SpeedyALTData loaded = SpeedyALTData.loadOrCalculate(directory, graph, 8, tc);
+		Assert.assertEquals(1, directory.toFile().listFiles().length);
+		Assert.assertEquals(lastModified, files[0].lastModified());
+		Assert.assertEquals(calculated.getMinTravelCostPerLength(), loaded.getMinTravelCostPerLength(), 0.0);
+		for (int node = 0; node < graph.nodeCount; node++) {
+			Assert.assertEquals(calculated.getNodeDeadend(node), loaded.getNodeDeadend(node));
+			for (int landmark = 0; landmark < 8; landmark++) {
+				Assert.assertEquals(calculated.getTravelCostFromLandmark(node, landmark), loaded.getTravelCostFromLandmark(node, landmark), 0.0);
+				Assert.assertEquals(calculated.getTravelCostToLandmark(node, landmark), loaded.getTravelCostToLandmark(node, landmark), 0.0);
+			}
+		}
+
+		SpeedyALT expected = new SpeedyALT(calculated, tc, tc);
+		SpeedyALT actual = new SpeedyALT(loaded, tc, tc);
+		for (int i = 0; i < 100; i++) {
+			Node from = nodes[random.nextInt(nodes.length)];
+			Node to = nodes[random.nextInt(nodes.length)];
+			Path expectedPath = expected.calcLeastCostPath(from, to, 0, null, null);
+			Path actualPath = actual.calcLeastCostPath(from, to, 0, null, null);
+			Assert.assertEquals(expectedPath == null, actualPath == null);
+			if (expectedPath != null) {
+				Assert.assertEquals(expectedPath.links, actualPath.links);
+			}
+		}
+
+		// other costs need other landmarks
+		FreespeedTravelTimeAndDisutility otherTc = new FreespeedTravelTimeAndDisutility(-7.0, 0, 0);
+		SpeedyALTData.loadOrCalculate(directory, graph, 8, otherTc);
+		Assert.assertEquals(2, directory.toFile().listFiles().length);
+	}
+
+	@Test
+	public void testFactoryUsesConfiguredCacheDirectory() {
+		Network network = new GridNetworkFixture(5, false).network;
+		java.nio.file.Path directory = Paths.get(this.utils.getOutputDirectory(), "landmarks");
+		Config config = ConfigUtils.createConfig();
+		config.controler().setLandmarksCacheDirectory(directory.toString());
+		FreespeedTravelTimeAndDisutility tc = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+
+		SpeedyALTFactory factory = Guice.createInjector(binder -> binder.bind(Config.class).toInstance(config)).getInstance(SpeedyALTFactory.class);
+		factory.createPathCalculator(network, tc, tc);
+		Assert.assertEquals(1, directory.toFile().listFiles().length);
+	}
+}
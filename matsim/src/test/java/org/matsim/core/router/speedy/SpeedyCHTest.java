@@ -0,0 +1,144 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * SpeedyCHTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router.speedy;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.AbstractLeastCostPathCalculatorTest;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+public class SpeedyCHTest extends AbstractLeastCostPathCalculatorTest {
+
+	@Override
+	protected LeastCostPathCalculator getLeastCostPathCalculator(final Network network) {
+		FreespeedTravelTimeAndDisutility travelTimeCostCalculator = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		return new SpeedyCHFactory().createPathCalculator(network, travelTimeCostCalculator, travelTimeCostCalculator);
+	}
+
+	/**
+	 * Compares the costs of the routes with {@link SpeedyDijkstra} on a grid with random, time-dependent link costs.
+	 */
+	@Test
+	public void testSameCostsAsDijkstra() {
+		Network network = NetworkUtils.createNetwork();
+		int size = 30;
+		Node[][] nodes = new Node[size][size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 100, y * 100));
+			}
+		}
+		Random random = new Random(20221018);
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (x + 1 < size && random.nextDouble() < 0.9) {
+					addLinks(network, nodes[x][y], nodes[x + 1][y]);
+				}
+				if (y + 1 < size && random.nextDouble() < 0.9) {
+					addLinks(network, nodes[x][y], nodes[x][y + 1]);
+				}
+			}
+		}
+
+		int timeBinCount = 4;
+		double[][] costs = new double[timeBinCount][network.getLinks().size()];
+		for (double[] binCosts : costs) {
+			for (int i = 0; i < binCosts.length; i++) {
+				binCosts[i] = 1 + random.nextInt(100);
+			}
+		}
+		SpeedyGraph graph = new SpeedyGraph(network);
+		SpeedyCHMetric metric = new SpeedyCHMetric(new SpeedyCHGraph(graph), new BinnedCosts(costs, -1), 3600, timeBinCount, 3);
+		Node[] allNodes = network.getNodes().values().toArray(new Node[0]);
+		for (int bin = 0; bin < timeBinCount; bin++) {
+			BinnedCosts fixedCosts = new BinnedCosts(costs, bin);
+			SpeedyCH ch = new SpeedyCH(metric, fixedCosts, fixedCosts);
+			SpeedyDijkstra dijkstra = new SpeedyDijkstra(graph, fixedCosts, fixedCosts);
+			for (int i = 0; i < 200; i++) {
+				Node from = allNodes[random.nextInt(allNodes.length)];
+				Node to = allNodes[random.nextInt(allNodes.length)];
+				Path expected = dijkstra.calcLeastCostPath(from, to, bin * 3600 + 100, null, null);
+				Path actual = ch.calcLeastCostPath(from, to, bin * 3600 + 100, null, null);
+				if (expected == null) {
+					Assert.assertNull(actual);
+					continue;
+				}
+				Assert.assertEquals(expected.travelCost, actual.travelCost, 1e-6);
+				Assert.assertEquals(from, actual.nodes.get(0));
+				Assert.assertEquals(to, actual.nodes.get(actual.nodes.size() - 1));
+				for (int l = 0; l < actual.links.size(); l++) {
+					Assert.assertEquals(actual.nodes.get(l), actual.links.get(l).getFromNode());
+					Assert.assertEquals(actual.nodes.get(l + 1), actual.links.get(l).getToNode());
+				}
+			}
+		}
+	}
+
+	private static void addLinks(Network network, Node a, Node b) {
+		NetworkUtils.createAndAddLink(network, Id.createLinkId(network.getLinks().size()), a, b, 100, 10, 1000, 1);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId(network.getLinks().size()), b, a, 100, 10, 1000, 1);
+	}
+
+	/**
+	 * Link costs per hour. If a fixed time bin is given, the costs of this bin are used at all times.
+	 */
+	private static class BinnedCosts implements TravelTime, TravelDisutility {
+
+		private final double[][] costs;
+		private final int fixedBin;
+
+		BinnedCosts(double[][] costs, int fixedBin) {
+			this.costs = costs;
+			this.fixedBin = fixedBin;
+		}
+
+		@Override
+		public double getLinkTravelDisutility(Link link, double time, Person person, Vehicle vehicle) {
+			int bin = this.fixedBin >= 0 ? this.fixedBin : Math.min((int) (time / 3600), this.costs.length - 1);
+			return this.costs[bin][Integer.parseInt(link.getId().toString())];
+		}
+
+		@Override
+		public double getLinkMinimumTravelDisutility(Link link) {
+			return 1;
+		}
+
+		@Override
+		public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
+			return 1;
+		}
+	}
+}
@@ -22,6 +22,7 @@
  package org.matsim.core.trafficmonitoring;
 
 import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
 import com.google.inject.Singleton;
 import com.google.inject.name.Names;
 import org.junit.Rule;
@@ -39,15 +40,19 @@ import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.TravelTimeCalculatorConfigGroup;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Injector;
+import org.matsim.core.controler.events.AfterMobsimEvent;
 import org.matsim.core.events.EventsManagerImpl;
+import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.scenario.ScenarioByInstanceModule;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.testcases.MatsimTestUtils;
 
 import java.util.Arrays;
 import java.util.LinkedHashSet;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
@@ -135,4 +140,54 @@ public class TravelTimeCalculatorModuleTest {
 		assertThat(bike.getLinkTravelTimes().getLinkTravelTime(link, 0.0, null, null ), is(8.0));
 	}
 
+	@Test
+	public void testTravelTimeSnapshotPerMode() {
+		Config config = ConfigUtils.createConfig();
+		config.plansCalcRoute().setNetworkModes( new LinkedHashSet<>( Arrays.asList( TransportMode.car, TransportMode.bike ) ) );
+		config.travelTimeCalculator().setSeparateModes(true);
+		config.travelTimeCalculator().setTravelTimeSnapshot(TravelTimeCalculatorConfigGroup.TravelTimeSnapshotType.heap);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Node node0 = scenario.getNetwork().getFactory().createNode(Id.createNodeId(0), new Coord(0, 0));
+		Node node1 = scenario.getNetwork().getFactory().createNode(Id.createNodeId(1), new Coord(1, 0));
+		scenario.getNetwork().addNode(node0);
+		scenario.getNetwork().addNode(node1);
+		Id<Link> linkId = Id.createLinkId(0);
+		Link link = scenario.getNetwork().getFactory().createLink(linkId, node0, node1);
+		link.setLength(100);
+		link.setFreespeed(10);
+		scenario.getNetwork().addLink(link);
+		var eventsManagerModule = new AbstractModule() {
+
+			@Override
+			public void install() {
+				bind(EventsManager.class).to(EventsManagerImpl.class).in(Singleton.class);
+			}
+		};
+		com.google.inject.Injector injector = Injector.createInjector(config, new TravelTimeCalculatorModule(), eventsManagerModule, new ScenarioByInstanceModule(scenario));
+		Map<String, TravelTime> travelTimes = injector.getInstance(Key.get(new TypeLiteral<Map<String, TravelTime>>() {}));
+		TravelTime car = travelTimes.get(TransportMode.car);
+		TravelTime bike = travelTimes.get(TransportMode.bike);
+		assertThat(car instanceof TravelTimeSnapshot, is(true));
+		assertThat(bike instanceof TravelTimeSnapshot, is(true));
+
+		EventsManager events = injector.getInstance(EventsManager.class);
+		events.processEvent(new VehicleEntersTrafficEvent(0.0, Id.createPersonId(0), linkId, Id.createVehicleId(0), "car", 0.0));
+		events.processEvent(new LinkEnterEvent(0.0, Id.createVehicleId(0), linkId));
+		events.processEvent(new LinkLeaveEvent(12.0, Id.createVehicleId(0), linkId));
+		events.processEvent(new VehicleLeavesTrafficEvent(12.0, Id.createPersonId(0), linkId, Id.createVehicleId(0), "car", 0.0));
+
+		events.processEvent(new VehicleEntersTrafficEvent(0.0, Id.createPersonId(1), linkId, Id.createVehicleId(1), "bike", 0.0));
+		events.processEvent(new LinkEnterEvent(0.0, Id.createVehicleId(1), linkId));
+		events.processEvent(new LinkLeaveEvent(18.0, Id.createVehicleId(1), linkId));
+		events.processEvent(new VehicleLeavesTrafficEvent(18.0, Id.createPersonId(1), linkId, Id.createVehicleId(1), "bike", 0.0));
+
+		// the travel times of the running iteration are not visible before the snapshots are updated
+		assertThat(car.getLinkTravelTime(link, 0.0, null, null), is(10.0));
+		assertThat(bike.getLinkTravelTime(link, 0.0, null, null), is(10.0));
+
+		injector.getInstance(TravelTimeSnapshotUpdater.class).notifyAfterMobsim(new AfterMobsimEvent(null, 0, false));
+		assertThat(car.getLinkTravelTime(link, 0.0, null, null), is(12.0));
+		assertThat(bike.getLinkTravelTime(link, 0.0, null, null), is(18.0));
+	}
+
 }
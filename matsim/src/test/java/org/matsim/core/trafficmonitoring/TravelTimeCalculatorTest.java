@@ -24,6 +24,11 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -577,4 +582,170 @@ public class TravelTimeCalculatorTest extends MatsimTestCase {
 		Assert.assertEquals("Filtering analyzed transport modes is enabled, but no modes set. Therefore, use default (=car)", 100.0, 
 				ttc.getLinkTravelTimes().getLinkTravelTime(link2, 200, null, null), 1e-8);
 	}
+
+	/**
+	 * Feeds the events of different vehicles from multiple threads. Each link is only used by the vehicles of one
+	 * thread, so the travel times must be exactly the same as when handling all events with a single thread.
+	 */
+	public void testHandleEvents_multipleThreads() throws InterruptedException {
+		Network network = NetworkUtils.createNetwork();
+		TravelTimeCalculatorConfigGroup config = new TravelTimeCalculatorConfigGroup();
+		config.setTraveltimeBinSize(900);
+		config.setCalculateLinkToLinkTravelTimes(true);
+		int threadCount = 4;
+		int linksPerThread = 5;
+		Link[][] links = new Link[threadCount][linksPerThread];
+		for (int t = 0; t < threadCount; t++) {
+			Node fromNode = NetworkUtils.createAndAddNode(network, Id.createNodeId("mt" + t + "_0"), new Coord(0, t * 100));
+			for (int l = 0; l < linksPerThread; l++) {
+				Node toNode = NetworkUtils.createAndAddNode(network, Id.createNodeId("mt" + t + "_" + (l + 1)), new Coord((l + 1) * 100, t * 100));
+				links[t][l] = NetworkUtils.createAndAddLink(network, Id.createLinkId("mt" + t + "_" + l), fromNode, toNode, 100, 10, 1000, 1);
+				fromNode = toNode;
+			}
+		}
+
+		Random random = new Random(20221018);
+		List<List<Event>> eventsPerThread = new ArrayList<>();
+		for (int t = 0; t < threadCount; t++) {
+			List<Event> events = new ArrayList<>();
+			for (int v = 0; v < 2000; v++) {
+				Id<Vehicle> vehicleId = Id.create("mt" + t + "_" + v, Vehicle.class);
+				double time = random.nextInt(8 * 3600);
+				events.add(new LinkEnterEvent(time, vehicleId, links[t][0].getId()));
+				for (int l = 0; l < linksPerThread; l++) {
+					time += 10 + random.nextInt(300);
+					events.add(new LinkLeaveEvent(time, vehicleId, links[t][l].getId()));
+					if (l + 1 < linksPerThread) {
+						events.add(new LinkEnterEvent(time, vehicleId, links[t][l + 1].getId()));
+					}
+				}
+				events.add(new VehicleArrivesAtFacilityEvent(time, vehicleId, Id.create("stop", TransitStopFacility.class), 0));
+			}
+			eventsPerThread.add(events);
+		}
+
+		TravelTimeCalculator expected = new TravelTimeCalculator(network, config);
+		for (List<Event> events : eventsPerThread) {
+			for (Event event : events) {
+				handleEvent(expected, event);
+			}
+		}
+
+		TravelTimeCalculator actual = new TravelTimeCalculator(network, config);
+		List<Thread> threads = new ArrayList<>();
+		for (List<Event> events : eventsPerThread) {
+			threads.add(new Thread(() -> {
+				for (Event event : events) {
+					handleEvent(actual, event);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		for (int t = 0; t < threadCount; t++) {
+			for (int l = 0; l < linksPerThread; l++) {
+				Link link = links[t][l];
+				for (double time = 0; time < 9 * 3600; time += 900) {
+					assertEquals(expected.getLinkTravelTimes().getLinkTravelTime(link, time, null, null), actual.getLinkTravelTimes().getLinkTravelTime(link, time, null, null), 0.0);
+					if (l + 1 < linksPerThread) {
+						Link toLink = links[t][l + 1];
+						assertEquals(expected.getLinkToLinkTravelTimes().getLinkToLinkTravelTime(link, toLink, time, null, null),
+								actual.getLinkToLinkTravelTimes().getLinkToLinkTravelTime(link, toLink, time, null, null), 0.0);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Feeds the events of different vehicles from multiple threads, with all threads using the same links. The data of
+	 * a link is created by whichever thread handles the first event on it, so no travel times may get lost then. Each
+	 * thread uses its own time bins, as the averages stored per time bin depend on the order of the travel times.
+	 */
+	public void testHandleEvents_multipleThreadsSameLinks() throws Exception {
+		Network network = NetworkUtils.createNetwork();
+		TravelTimeCalculatorConfigGroup config = new TravelTimeCalculatorConfigGroup();
+		config.setTraveltimeBinSize(900);
+		int threadCount = 8;
+		int linkCount = 50;
+		Link[] links = new Link[linkCount];
+		Node fromNode = NetworkUtils.createAndAddNode(network, Id.createNodeId("sl_0"), new Coord(0, 0));
+		for (int l = 0; l < linkCount; l++) {
+			Node toNode = NetworkUtils.createAndAddNode(network, Id.createNodeId("sl_" + (l + 1)), new Coord((l + 1) * 100, 0));
+			links[l] = NetworkUtils.createAndAddLink(network, Id.createLinkId("sl_" + l), fromNode, toNode, 100, 10, 1000, 1);
+			fromNode = toNode;
+		}
+
+		Random random = new Random(20221018);
+		List<List<Event>> eventsPerThread = new ArrayList<>();
+		for (int t = 0; t < threadCount; t++) {
+			List<Event> events = new ArrayList<>();
+			for (int v = 0; v < 20; v++) {
+				Id<Vehicle> vehicleId = Id.create("sl" + t + "_" + v, Vehicle.class);
+				double time = t * 3600 + random.nextInt(60);
+				events.add(new LinkEnterEvent(time, vehicleId, links[0].getId()));
+				for (int l = 0; l < linkCount; l++) {
+					time += 10 + random.nextInt(10);
+					events.add(new LinkLeaveEvent(time, vehicleId, links[l].getId()));
+					if (l + 1 < linkCount) {
+						events.add(new LinkEnterEvent(time, vehicleId, links[l + 1].getId()));
+					}
+				}
+				events.add(new VehicleArrivesAtFacilityEvent(time, vehicleId, Id.create("stop", TransitStopFacility.class), 0));
+			}
+			eventsPerThread.add(events);
+		}
+
+		TravelTimeCalculator expected = new TravelTimeCalculator(network, config);
+		for (List<Event> events : eventsPerThread) {
+			for (Event event : events) {
+				handleEvent(expected, event);
+			}
+		}
+
+		for (int round = 0; round < 100; round++) {
+			TravelTimeCalculator actual = new TravelTimeCalculator(network, config);
+			CyclicBarrier start = new CyclicBarrier(threadCount);
+			List<Thread> threads = new ArrayList<>();
+			for (List<Event> events : eventsPerThread) {
+				threads.add(new Thread(() -> {
+					try {
+						start.await();
+					} catch (InterruptedException | BrokenBarrierException e) {
+						throw new RuntimeException(e);
+					}
+					for (Event event : events) {
+						handleEvent(actual, event);
+					}
+				}));
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			for (Link link : links) {
+				for (double time = 0; time < threadCount * 3600; time += 900) {
+					assertEquals(expected.getLinkTravelTimes().getLinkTravelTime(link, time, null, null), actual.getLinkTravelTimes().getLinkTravelTime(link, time, null, null), 0.0);
+				}
+			}
+		}
+	}
+
+	private static void handleEvent(TravelTimeCalculator calculator, Event event) {
+		if (event instanceof LinkEnterEvent) {
+			calculator.handleEvent((LinkEnterEvent) event);
+		} else if (event instanceof LinkLeaveEvent) {
+			calculator.handleEvent((LinkLeaveEvent) event);
+		} else if (event instanceof VehicleArrivesAtFacilityEvent) {
+			calculator.handleEvent((VehicleArrivesAtFacilityEvent) event);
+		}
+	}
 }
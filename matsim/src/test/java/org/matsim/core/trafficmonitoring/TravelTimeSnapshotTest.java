@@ -0,0 +1,111 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TravelTimeSnapshotTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.trafficmonitoring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.groups.TravelTimeCalculatorConfigGroup;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+
+public class TravelTimeSnapshotTest {
+
+	private static final double EPSILON = 1e-3; // the snapshot stores the travel times as floats
+
+	@Test
+	public void testSameTravelTimes_average() {
+		assertSameTravelTimes("average", false);
+	}
+
+	@Test
+	public void testSameTravelTimes_linearInterpolation() {
+		assertSameTravelTimes("linearinterpolation", false);
+	}
+
+	@Test
+	public void testSameTravelTimes_offHeap() {
+		assertSameTravelTimes("linearinterpolation", true);
+	}
+
+	private void assertSameTravelTimes(String travelTimeGetter, boolean offHeap) {
+		Network network = NetworkUtils.createNetwork();
+		Node[] nodes = new Node[10];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = NetworkUtils.createAndAddNode(network, Id.createNodeId(i), new Coord(i * 500, 0));
+		}
+		List<Link> links = new ArrayList<>();
+		for (int i = 0; i + 1 < nodes.length; i++) {
+			links.add(NetworkUtils.createAndAddLink(network, Id.createLinkId("s" + i), nodes[i], nodes[i + 1], 500, 10, 1000, 1));
+		}
+		TravelTimeCalculatorConfigGroup config = new TravelTimeCalculatorConfigGroup();
+		config.setTravelTimeGetterType(travelTimeGetter);
+		config.setTraveltimeBinSize(900);
+		config.setMaxTime(6 * 3600);
+		TravelTimeCalculator calculator = TravelTimeCalculator.create(network, config);
+
+		Random random = new Random(20221018);
+		addRandomEvents(calculator, links, random);
+		TravelTimeSnapshot snapshot = new TravelTimeSnapshot(calculator, network, offHeap);
+		TravelTime expected = calculator.getLinkTravelTimes();
+		VehicleType slowType = VehicleUtils.createVehicleType(Id.create("slow", VehicleType.class));
+		slowType.setMaximumVelocity(2.0);
+		Vehicle slowVehicle = VehicleUtils.createVehicle(Id.createVehicleId("slow"), slowType);
+		for (Link link : links) {
+			for (double time = 0; time < 8 * 3600; time += 97) {
+				Assert.assertEquals(expected.getLinkTravelTime(link, time, null, null), snapshot.getLinkTravelTime(link, time, null, null), EPSILON);
+				Assert.assertEquals(expected.getLinkTravelTime(link, time, null, slowVehicle), snapshot.getLinkTravelTime(link, time, null, slowVehicle), EPSILON);
+			}
+		}
+
+		// the snapshot does not change until it is updated
+		calculator.reset(1);
+		addRandomEvents(calculator, links, random);
+		Link link = links.get(3);
+		double oldTravelTime = snapshot.getLinkTravelTime(link, 2 * 3600, null, null);
+		Assert.assertNotEquals(expected.getLinkTravelTime(link, 2 * 3600, null, null), oldTravelTime, EPSILON);
+		snapshot.update();
+		Assert.assertEquals(expected.getLinkTravelTime(link, 2 * 3600, null, null), snapshot.getLinkTravelTime(link, 2 * 3600, null, null), EPSILON);
+	}
+
+	private static void addRandomEvents(TravelTimeCalculator calculator, List<Link> links, Random random) {
+		for (int i = 0; i < 500; i++) {
+			Link link = links.get(random.nextInt(links.size()));
+			Id<Vehicle> vehicleId = Id.createVehicleId(i);
+			double enterTime = random.nextInt(6 * 3600);
+			calculator.handleEvent(new LinkEnterEvent(enterTime, vehicleId, link.getId()));
+			calculator.handleEvent(new LinkLeaveEvent(enterTime + 50 + random.nextInt(1000) + random.nextDouble(), vehicleId, link.getId()));
+		}
+	}
+}